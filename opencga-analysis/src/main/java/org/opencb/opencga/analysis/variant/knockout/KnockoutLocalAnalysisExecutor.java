@@ -55,6 +55,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 import static org.opencb.biodata.models.clinical.ClinicalProperty.ModeOfInheritance.COMPOUND_HETEROZYGOUS;
@@ -73,6 +74,7 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
     private VariantStorageManager variantStorageManager;
     private boolean allProteinCoding;
     private List<String> biotype;
+    private final AtomicInteger storageQueries = new AtomicInteger();
 
     @Override
     protected void run() throws Exception {
@@ -87,10 +89,15 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
 
         String executionMethod = getExecutorParams().getString("executionMethod", "auto");
         boolean bySample;
+        boolean byCohort = false;
         switch (executionMethod) {
             case "bySample":
                 bySample = true;
                 break;
+            case "byCohort":
+                bySample = true;
+                byCohort = true;
+                break;
             case "byGene":
                 if (getSkipGenesFile()) {
                     throw new IllegalArgumentException("Unable to execute '" + executionMethod + "' "
@@ -116,7 +123,12 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
                 throw new IllegalArgumentException("Unknown executionMethod '" + executionMethod + "'");
         }
 //        if (bySample || (auto && (allProteinCoding || (getProteinCodingGenes().size() + getOtherGenes().size()) >= getSamples().size()))) {
-        if (bySample) {
+        StopWatch stopWatch = StopWatch.createStarted();
+        if (byCohort) {
+            logger.info("Execute knockout analysis by cohort");
+            addAttribute("executionMethod", "byCohort");
+            new KnockoutByCohortExecutor().run();
+        } else if (bySample) {
             logger.info("Execute knockout analysis by sample");
             addAttribute("executionMethod", "bySample");
             new KnockoutBySampleExecutor().run();
@@ -125,6 +137,9 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
             addAttribute("executionMethod", "byGene");
             new KnockoutByGeneExecutor().run();
         }
+        logger.info("Knockout analysis finished in {} with {} storage queries",
+                TimeUtils.durationToString(stopWatch), storageQueries.get());
+        addAttribute("storageQueries", storageQueries.get());
     }
 
     private class KnockoutBySampleExecutor {
@@ -206,6 +221,12 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
                         getOtherGenes()::contains);
             }
 
+            writeSample(sample, knockoutGenes);
+            logger.info("Sample {} processed in {}", sample, TimeUtils.durationToString(stopWatch));
+            logger.info("-----------------------------------------------------------");
+        }
+
+        protected void writeSample(String sample, Map<String, KnockoutGene> knockoutGenes) throws IOException {
             if (knockoutGenes.isEmpty()) {
                 logger.info("No results for sample {}", sample);
             } else {
@@ -215,8 +236,6 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
                         .setStats(stats)
                         .setGenes(knockoutGenes.values()));
             }
-            logger.info("Sample {} processed in {}", sample, TimeUtils.durationToString(stopWatch));
-            logger.info("-----------------------------------------------------------");
         }
 
         private void transposeSampleToGeneOutputFiles() throws IOException {
@@ -472,6 +491,270 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
         }
     }
 
+    /**
+     * Reads the candidate variants once for all the samples, instead of running the HOM_ALT and HET_ALT queries for each sample.
+     * COMP_HET and DELETION_OVERLAP still require specific queries, but only for the samples found as candidates in the
+     * cohort scan. Then, produces the same output files as the {@link KnockoutBySampleExecutor}.
+     */
+    private class KnockoutByCohortExecutor extends KnockoutBySampleExecutor {
+
+        private final Map<String, Integer> samplesIdx = new HashMap<>();
+        private final List<CohortScan> scans = new ArrayList<>(2);
+        private List<Map<String, KnockoutGene>> knockoutGenesBySample;
+
+        @Override
+        public void run() throws Exception {
+            for (String sample : getSamples()) {
+                samplesIdx.put(sample, samplesIdx.size());
+            }
+            knockoutGenesBySample = new ArrayList<>(Collections.nCopies(getSamples().size(), null));
+
+            Query baseQuery = new Query()
+                    .append(VariantQueryParam.STUDY.key(), getStudy())
+                    .append(VariantQueryParam.FILTER.key(), getFilter())
+                    .append(VariantQueryParam.QUAL.key(), getQual());
+
+            // Protein coding genes (if any)
+            if (allProteinCoding) {
+                scans.add(new CohortScan(new Query(baseQuery)
+                        .append(VariantQueryParam.ANNOT_BIOTYPE.key(), PROTEIN_CODING)
+                        .append(VariantQueryParam.ANNOT_CONSEQUENCE_TYPE.key(), getCt()),
+                        getCts()::contains,
+                        b -> b.equals(PROTEIN_CODING),
+                        g -> true));
+            } else if (!getProteinCodingGenes().isEmpty()) {
+                scans.add(new CohortScan(new Query(baseQuery)
+                        .append(VariantQueryParam.GENE.key(), getProteinCodingGenes())
+                        .append(VariantQueryParam.ANNOT_BIOTYPE.key(), PROTEIN_CODING)
+                        .append(VariantQueryParam.ANNOT_CONSEQUENCE_TYPE.key(), getCt()),
+                        getCts()::contains,
+                        b -> b.equals(PROTEIN_CODING),
+                        getProteinCodingGenes()::contains));
+            }
+
+            // Other genes (if any)
+            if (!getOtherGenes().isEmpty()) {
+                scans.add(new CohortScan(new Query(baseQuery)
+                        .append(VariantQueryParam.ANNOT_BIOTYPE.key(), biotype)
+                        .append(VariantQueryParam.GENE.key(), getOtherGenes()),
+                        ct -> true,  // Accept any CT
+                        biotype == null ? (b -> !b.equals(PROTEIN_CODING)) : new HashSet<>(biotype)::contains,
+                        getOtherGenes()::contains));
+            }
+
+            for (CohortScan scan : scans) {
+                scan.scan();
+            }
+
+            // Complete each sample and write the output files
+            super.run();
+        }
+
+        @Override
+        protected void processSample(String sample) throws Exception {
+            StopWatch stopWatch = StopWatch.createStarted();
+            int sampleIdx = samplesIdx.get(sample);
+            Map<String, KnockoutGene> knockoutGenes = knockoutGenesBySample.get(sampleIdx);
+            // Release memory as soon as possible
+            knockoutGenesBySample.set(sampleIdx, null);
+            if (knockoutGenes == null) {
+                knockoutGenes = new LinkedHashMap<>();
+            }
+            Trio trio = getTrios().get(sample);
+
+            for (CohortScan scan : scans) {
+                Query query = new Query(scan.query)
+                        .append(VariantQueryParam.INCLUDE_SAMPLE.key(), sample);
+                List<String> compHetGenes = scan.getCompHetCandidateGenes(sampleIdx);
+                if (trio != null && !compHetGenes.isEmpty()) {
+                    compHetKnockouts(sample, trio, knockoutGenes,
+                            new Query(query).append(VariantQueryParam.GENE.key(), compHetGenes),
+                            scan.ctFilter, scan.biotypeFilter, scan.geneFilter);
+                }
+                if (scan.deletionCarriers.get(sampleIdx)) {
+                    structuralKnockouts(sample, knockoutGenes, query, scan.ctFilter, scan.biotypeFilter, scan.geneFilter);
+                }
+            }
+
+            writeSample(sample, knockoutGenes);
+            logger.info("Sample {} processed in {}", sample, TimeUtils.durationToString(stopWatch));
+        }
+
+        private Map<String, KnockoutGene> getKnockoutGenes(int sampleIdx) {
+            Map<String, KnockoutGene> knockoutGenes = knockoutGenesBySample.get(sampleIdx);
+            if (knockoutGenes == null) {
+                knockoutGenes = new LinkedHashMap<>();
+                knockoutGenesBySample.set(sampleIdx, knockoutGenes);
+            }
+            return knockoutGenes;
+        }
+
+        /**
+         * Single pass over the variants of one query, with the genotypes of all the samples.
+         */
+        private class CohortScan {
+            private final Query query;
+            private final Predicate<String> ctFilter;
+            private final Predicate<String> biotypeFilter;
+            private final Predicate<String> geneFilter;
+
+            // Samples with one HET_REF variant on each gene
+            private Map<String, BitSet> hetCarriers = new HashMap<>();
+            // Samples with two or more HET_REF variants on each gene
+            private final Map<String, BitSet> compHetCandidates = new HashMap<>();
+            // Samples with any deletion
+            private final BitSet deletionCarriers = new BitSet();
+            // HET_ALT variants by sample
+            private final Map<Integer, Map<String, KnockoutVariant>> multiAllelicVariants = new HashMap<>();
+
+            CohortScan(Query query, Predicate<String> ctFilter, Predicate<String> biotypeFilter, Predicate<String> geneFilter) {
+                this.query = query;
+                this.ctFilter = ctFilter;
+                this.biotypeFilter = biotypeFilter;
+                this.geneFilter = geneFilter;
+            }
+
+            void scan() throws Exception {
+                StopWatch stopWatch = StopWatch.createStarted();
+                Query query = new Query(this.query)
+                        .append(VariantQueryParam.INCLUDE_SAMPLE.key(), getSamples())
+                        .append(VariantQueryParam.INCLUDE_SAMPLE_DATA.key(), includeSampleData);
+                int numVariants = iterate(query, "Read variants from " + getSamples().size() + " samples: ", this::addVariant);
+
+                hetCarriers = null;
+                multiAllelicVariants.clear();
+                logger.info("Read {} variants in {}. Found {} samples with deletions and {} genes with COMP_HET candidates",
+                        numVariants, TimeUtils.durationToString(stopWatch), deletionCarriers.cardinality(), compHetCandidates.size());
+            }
+
+            private void addVariant(Variant variant) {
+                List<ConsequenceType> cts = new ArrayList<>(variant.getAnnotation().getConsequenceTypes().size());
+                Set<String> genes = new HashSet<>();
+                for (ConsequenceType ct : variant.getAnnotation().getConsequenceTypes()) {
+                    if (validCt(ct, ctFilter, biotypeFilter, geneFilter)) {
+                        cts.add(ct);
+                    }
+                    if (StringUtils.isNotEmpty(ct.getGeneName()) && geneFilter.test(ct.getGeneName())) {
+                        genes.add(ct.getGeneName());
+                    }
+                }
+                boolean deletion = variant.getType().equals(VariantType.DELETION);
+                StudyEntry studyEntry = variant.getStudies().get(0);
+                VariantStats stats = studyEntry.getStats(StudyEntry.DEFAULT_COHORT);
+                for (SampleEntry sampleEntry : studyEntry.getSamples()) {
+                    String genotype = sampleEntry.getData().get(0);
+                    if (!GenotypeClass.MAIN_ALT.test(genotype)) {
+                        continue;
+                    }
+                    int sampleIdx = samplesIdx.get(sampleEntry.getSampleId());
+                    if (deletion) {
+                        // Check overlapping variants later
+                        deletionCarriers.set(sampleIdx);
+                    }
+                    if (isHomAlt(genotype)) {
+                        if (!cts.isEmpty()) {
+                            FileEntry fileEntry = studyEntry.getFiles().get(sampleEntry.getFileIndex());
+                            Integer depth = KnockoutVariant.getDepth(studyEntry, fileEntry, sampleEntry);
+                            Map<String, KnockoutGene> knockoutGenes = getKnockoutGenes(sampleIdx);
+                            for (ConsequenceType ct : cts) {
+                                addGene(variant, genotype, depth, fileEntry, ct, knockoutGenes, KnockoutVariant.KnockoutType.HOM_ALT,
+                                        variant.getAnnotation(), stats);
+                            }
+                        }
+                    } else if (GenotypeClass.HET_REF.test(genotype)) {
+                        for (String gene : genes) {
+                            BitSet carriers = hetCarriers.computeIfAbsent(gene, k -> new BitSet());
+                            if (carriers.get(sampleIdx)) {
+                                compHetCandidates.computeIfAbsent(gene, k -> new BitSet()).set(sampleIdx);
+                            } else {
+                                carriers.set(sampleIdx);
+                            }
+                        }
+                    } else if (isHetAlt(genotype)) {
+                        addMultiAllelicVariant(variant, cts, studyEntry, sampleEntry, sampleIdx, stats);
+                    }
+                }
+            }
+
+            private void addMultiAllelicVariant(Variant variant, List<ConsequenceType> cts, StudyEntry studyEntry,
+                                                SampleEntry sampleEntry, int sampleIdx, VariantStats stats) {
+                String genotype = sampleEntry.getData().get(0);
+                Variant secVar = getSecondaryVariant(variant, genotype);
+                FileEntry fileEntry = studyEntry.getFiles().get(sampleEntry.getFileIndex());
+                KnockoutVariant knockoutVariant = new KnockoutVariant(
+                        variant,
+                        variant.getAnnotation().getId(),
+                        genotype,
+                        KnockoutVariant.getDepth(studyEntry, fileEntry, sampleEntry),
+                        fileEntry.getData().get(StudyEntry.FILTER),
+                        fileEntry.getData().get(StudyEntry.QUAL),
+                        stats,
+                        KnockoutVariant.KnockoutType.HET_ALT,
+                        null,
+                        variant.getAnnotation().getPopulationFrequencies(),
+                        KnockoutVariant.getClinicalSignificance(variant.getAnnotation())
+                );
+                Map<String, KnockoutVariant> variants = multiAllelicVariants.computeIfAbsent(sampleIdx, k -> new HashMap<>());
+                if (variants.put(variant.toString(), knockoutVariant) == null) {
+                    // Variant not seen
+                    if (variant.overlapWith(secVar, true)) {
+                        // Add overlapping variant.
+                        // If the overlapping variant is ever seen (so it also matches the filter criteria),
+                        // the gene will be selected as knockout.
+                        variants.put(secVar.toString(), new KnockoutVariant());
+                    }
+                } else {
+                    KnockoutVariant secKnockoutVar = variants.get(secVar.toString());
+                    Map<String, KnockoutGene> knockoutGenes = getKnockoutGenes(sampleIdx);
+                    // The variant was already seen. i.e. there was a variant with this variant as secondary alternate
+                    for (ConsequenceType consequenceType : cts) {
+                        addGene(variant, knockoutVariant.getGenotype(), knockoutVariant.getDepth(),
+                                knockoutVariant.getFilter(), knockoutVariant.getQual(),
+                                consequenceType, knockoutGenes, KnockoutVariant.KnockoutType.HET_ALT,
+                                knockoutVariant.getDbSnp(), knockoutVariant.getPopulationFrequencies(),
+                                knockoutVariant.getClinicalSignificance(), knockoutVariant.getStats()
+                        );
+                        addGene(secVar,
+                                secKnockoutVar.getGenotype(), secKnockoutVar.getDepth(),
+                                secKnockoutVar.getFilter(), secKnockoutVar.getQual(),
+                                consequenceType, knockoutGenes, KnockoutVariant.KnockoutType.HET_ALT,
+                                secKnockoutVar.getDbSnp(), secKnockoutVar.getPopulationFrequencies(),
+                                secKnockoutVar.getClinicalSignificance(), secKnockoutVar.getStats()
+                        );
+                    }
+                }
+            }
+
+            /**
+             * Same genotypes returned by the "1/1" query used by the {@link KnockoutBySampleExecutor}. i.e. 1/1 and 1|1
+             */
+            private boolean isHomAlt(String genotype) {
+                return isDiploid(genotype) && GenotypeClass.HOM_ALT.test(genotype);
+            }
+
+            /**
+             * Same genotypes returned by the "1/2" query used by the {@link KnockoutBySampleExecutor}. i.e. 1/2, 1/3, 1|2, 2|1, ...
+             */
+            private boolean isHetAlt(String genotype) {
+                return isDiploid(genotype) && GenotypeClass.HET_ALT.test(genotype);
+            }
+
+            private boolean isDiploid(String genotype) {
+                return StringUtils.countMatches(genotype, '/') + StringUtils.countMatches(genotype, '|') == 1;
+            }
+
+            List<String> getCompHetCandidateGenes(int sampleIdx) {
+                List<String> genes = new ArrayList<>();
+                for (Map.Entry<String, BitSet> entry : compHetCandidates.entrySet()) {
+                    if (entry.getValue().get(sampleIdx)) {
+                        genes.add(entry.getKey());
+                    }
+                }
+                return genes;
+            }
+        }
+    }
+
     private class KnockoutByGeneExecutor {
 
         protected void run() throws Exception {
@@ -522,6 +805,7 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
                 int skip = 0;
                 int numSamples;
                 do {
+                    storageQueries.incrementAndGet();
                     DataResult<Variant> result = variantStorageManager.getSampleData(v.toString(), getStudy(),
                             new QueryOptions(QueryOptions.LIMIT, limit)
                                     .append(QueryOptions.SKIP, skip)
@@ -617,6 +901,7 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
 //                            .append(VariantCatalogQueryUtils.FAMILY_DISORDER.key(), getDisorder())
                     .append(VariantCatalogQueryUtils.FAMILY_PROBAND.key(), sampleId)
                     .append(VariantCatalogQueryUtils.FAMILY_SEGREGATION.key(), COMPOUND_HETEROZYGOUS);
+            storageQueries.incrementAndGet();
             try (VariantDBIterator iterator = variantStorageManager.iterator(query, new QueryOptions(), getToken())) {
                 while (iterator.hasNext()) {
                     Variant variant = iterator.next();
@@ -812,6 +1097,7 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
             progressLogger = null;
         }
         logger.info("Iterate with query : " + VariantQueryUtils.printQuery(query));
+        storageQueries.incrementAndGet();
         try (VariantDBIterator iterator = variantStorageManager.iterator(new Query(query), queryOptions, getToken())) {
             while (iterator.hasNext()) {
                 Variant variant = iterator.next();
@@ -877,7 +1163,11 @@ public class KnockoutLocalAnalysisExecutor extends KnockoutAnalysisExecutor impl
     }
 
     private Variant getSecondaryVariant(Variant variant) {
-        Genotype gt = new Genotype(variant.getStudies().get(0).getSampleData(0).get(0));
+        return getSecondaryVariant(variant, variant.getStudies().get(0).getSampleData(0).get(0));
+    }
+
+    private Variant getSecondaryVariant(Variant variant, String genotype) {
+        Genotype gt = new Genotype(genotype);
         Variant secVar = null;
         for (int allelesIdx : gt.getAllelesIdx()) {
             if (allelesIdx > 1) {
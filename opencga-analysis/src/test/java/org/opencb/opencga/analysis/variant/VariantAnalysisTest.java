@@ -16,6 +16,7 @@
 
 package org.opencb.opencga.analysis.variant;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.hamcrest.CoreMatchers;
@@ -55,6 +56,9 @@ import org.opencb.opencga.core.common.ExceptionUtils;
 import org.opencb.opencga.core.common.JacksonUtils;
 import org.opencb.opencga.core.config.storage.StorageConfiguration;
 import org.opencb.opencga.core.exceptions.ToolException;
+import org.opencb.opencga.core.models.analysis.knockout.KnockoutByIndividual;
+import org.opencb.opencga.core.models.analysis.knockout.KnockoutTranscript;
+import org.opencb.opencga.core.models.analysis.knockout.KnockoutVariant;
 import org.opencb.opencga.core.models.cohort.Cohort;
 import org.opencb.opencga.core.models.cohort.CohortCreateParams;
 import org.opencb.opencga.core.models.cohort.CohortUpdateParams;
@@ -616,6 +620,58 @@ public class VariantAnalysisTest {
         assertEquals(3, er.getAttributes().get("proteinCodingGenesCount"));
     }
 
+    @Test
+    public void testKnockoutGenesByCohort() throws Exception {
+        KnockoutAnalysisParams params = new KnockoutAnalysisParams();
+        params.setSample(file.getSampleIds());
+
+        Path bySampleOutDir = Paths.get(opencga.createTmpOutdir("_knockout_genes_by_sample"));
+        ExecutionResult bySample = toolRunner.execute(KnockoutAnalysis.class, params.toObjectMap().append("executionMethod", "bySample"),
+                bySampleOutDir, null, token);
+        checkExecutionResult(bySample, false);
+
+        Path byCohortOutDir = Paths.get(opencga.createTmpOutdir("_knockout_genes_by_cohort"));
+        ExecutionResult byCohort = toolRunner.execute(KnockoutAnalysis.class, params.toObjectMap().append("executionMethod", "byCohort"),
+                byCohortOutDir, null, token);
+        checkExecutionResult(byCohort, false);
+
+        assertEquals("byCohort", byCohort.getAttributes().get("executionMethod"));
+        assertEquals(readKnockoutGenesBySample(bySampleOutDir), readKnockoutGenesBySample(byCohortOutDir));
+        assertTrue(((Number) byCohort.getAttributes().get("storageQueries")).intValue()
+                < ((Number) bySample.getAttributes().get("storageQueries")).intValue());
+    }
+
+    /**
+     * Read the knockout genes of each sample, counting the variants of each gene by knockout type.
+     *
+     * @param outDir Output directory of the knockout analysis
+     * @return Map from sample to gene to number of variants by knockout type
+     * @throws IOException on error reading the file
+     */
+    private Map<String, Map<String, Map<KnockoutVariant.KnockoutType, Integer>>> readKnockoutGenesBySample(Path outDir)
+            throws IOException {
+        Map<String, Map<String, Map<KnockoutVariant.KnockoutType, Integer>>> genesBySample = new TreeMap<>();
+        Path file = outDir.resolve("knockout.individuals.json.gz");
+        try (MappingIterator<KnockoutByIndividual> iterator = JacksonUtils.getDefaultObjectMapper()
+                .readerFor(KnockoutByIndividual.class)
+                .readValues(org.opencb.commons.utils.FileUtils.newBufferedReader(file))) {
+            while (iterator.hasNext()) {
+                KnockoutByIndividual knockoutByIndividual = iterator.next();
+                Map<String, Map<KnockoutVariant.KnockoutType, Integer>> genes = new TreeMap<>();
+                for (KnockoutByIndividual.KnockoutGene gene : knockoutByIndividual.getGenes()) {
+                    Map<KnockoutVariant.KnockoutType, Integer> counts = genes.computeIfAbsent(gene.getName(), k -> new TreeMap<>());
+                    for (KnockoutTranscript transcript : gene.getTranscripts()) {
+                        for (KnockoutVariant variant : transcript.getVariants()) {
+                            counts.merge(variant.getKnockoutType(), 1, Integer::sum);
+                        }
+                    }
+                }
+                genesBySample.put(knockoutByIndividual.getSampleId(), genes);
+            }
+        }
+        return genesBySample;
+    }
+
     @Test
     public void testKnockoutGenesSpecificGenesAndBiotypeProteinCoding() throws Exception {
         Path outDir = Paths.get(opencga.createTmpOutdir("_knockout_genes_specific_genes_bt_protein_coding"));
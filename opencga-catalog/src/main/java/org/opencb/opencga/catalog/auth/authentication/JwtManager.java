@@ -16,25 +16,37 @@
 
 package org.opencb.opencga.catalog.auth.authentication;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import io.jsonwebtoken.*;
 import org.opencb.opencga.catalog.exceptions.CatalogAuthenticationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class JwtManager {
 
+    public static final int DEFAULT_CLAIMS_CACHE_SIZE = 10000;
+    public static final long DEFAULT_CLAIMS_CACHE_TTL_SECONDS = 600;
+
     private SignatureAlgorithm algorithm;
 
     private Key privateKey;
     private Key publicKey;
 
+    // Claims of already validated tokens, indexed by the token hash.
+    // Entries are never used after the token expiration.
+    private final Cache<String, ValidatedClaims> claimsCache;
+
     private Logger logger;
 
     JwtManager(String algorithm) {
@@ -49,6 +61,11 @@ public class JwtManager {
         this.algorithm = SignatureAlgorithm.forName(algorithm);
         this.privateKey = privateKey;
         this.publicKey = publicKey;
+        this.claimsCache = CacheBuilder.newBuilder()
+                .maximumSize(DEFAULT_CLAIMS_CACHE_SIZE)
+                .expireAfterWrite(DEFAULT_CLAIMS_CACHE_TTL_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
 
         logger = LoggerFactory.getLogger(JwtManager.class);
     }
@@ -77,6 +94,7 @@ public class JwtManager {
 
     public JwtManager setPublicKey(Key publicKey) {
         this.publicKey = publicKey;
+        claimsCache.invalidateAll();
         return this;
     }
 
@@ -104,12 +122,20 @@ public class JwtManager {
         return jwtBuilder.compact();
     }
 
-    void validateToken(String token) throws CatalogAuthenticationException {
-        validateToken(token, this.publicKey);
+    /**
+     * Validate the token and return its claims. Callers reading several claims from the same token should use this object
+     * instead of calling each of the getters.
+     *
+     * @param token Token
+     * @return      Claims of the validated token
+     * @throws CatalogAuthenticationException if the token is not valid or has expired
+     */
+    Claims validateToken(String token) throws CatalogAuthenticationException {
+        return validateToken(token, this.publicKey);
     }
 
-    void validateToken(String token, Key publicKey) throws CatalogAuthenticationException {
-        parseClaims(token, publicKey);
+    Claims validateToken(String token, Key publicKey) throws CatalogAuthenticationException {
+        return parseClaims(token, publicKey);
     }
 
     String getAudience(String token) throws CatalogAuthenticationException {
@@ -117,7 +143,7 @@ public class JwtManager {
     }
 
     String getAudience(String token, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().getAudience();
+        return parseClaims(token, publicKey).getAudience();
     }
 
     String getUser(String token) throws CatalogAuthenticationException {
@@ -125,11 +151,11 @@ public class JwtManager {
     }
 
     String getUser(String token, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().getSubject();
+        return parseClaims(token, publicKey).getSubject();
     }
 
     String getUser(String token, String fieldKey) throws CatalogAuthenticationException {
-        return String.valueOf(parseClaims(token, publicKey).getBody().get(fieldKey));
+        return String.valueOf(parseClaims(token, publicKey).get(fieldKey));
     }
 
     List<String> getGroups(String token, String fieldKey) throws CatalogAuthenticationException {
@@ -137,7 +163,7 @@ public class JwtManager {
     }
 
     List<String> getGroups(String token, String fieldKey, Key publicKey) throws CatalogAuthenticationException {
-        Object o = parseClaims(token, publicKey).getBody().get(fieldKey);
+        Object o = parseClaims(token, publicKey).get(fieldKey);
 
         if (o instanceof List) {
             return (List<String>) o;
@@ -151,7 +177,7 @@ public class JwtManager {
     }
 
     Date getExpiration(String token, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().getExpiration();
+        return parseClaims(token, publicKey).getExpiration();
     }
 
     Object getClaim(String token, String claimId) throws CatalogAuthenticationException {
@@ -159,10 +185,33 @@ public class JwtManager {
     }
 
     Object getClaim(String token, String claimId, Key publicKey) throws CatalogAuthenticationException {
-        return parseClaims(token, publicKey).getBody().get(claimId);
+        return parseClaims(token, publicKey).get(claimId);
+    }
+
+    long getClaimsCacheHitCount() {
+        return claimsCache.stats().hitCount();
+    }
+
+    void clearClaimsCache() {
+        claimsCache.invalidateAll();
+    }
+
+    private Claims parseClaims(String token, Key publicKey) throws CatalogAuthenticationException {
+        if (token == null) {
+            // Let the parser fail with the expected error
+            return parseClaimsJws(null, publicKey).getBody();
+        }
+        String tokenHash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        ValidatedClaims validatedClaims = claimsCache.getIfPresent(tokenHash);
+        if (validatedClaims != null && validatedClaims.isValid(publicKey)) {
+            return validatedClaims.claims;
+        }
+        Claims claims = parseClaimsJws(token, publicKey).getBody();
+        claimsCache.put(tokenHash, new ValidatedClaims(claims, publicKey));
+        return claims;
     }
 
-    private Jws<Claims> parseClaims(String token, Key publicKey) throws CatalogAuthenticationException {
+    private Jws<Claims> parseClaimsJws(String token, Key publicKey) throws CatalogAuthenticationException {
         try {
             return Jwts.parser().setSigningKey(publicKey).parseClaimsJws(token);
         } catch (ExpiredJwtException e) {
@@ -187,7 +236,7 @@ public class JwtManager {
             return true;
         }
 
-        Claims body = parseClaims(token, publicKey).getBody();
+        Claims body = parseClaims(token, publicKey);
         for (Map.Entry<String, List<String>> entry : filters.entrySet()) {
             if (!entry.getValue().contains(String.valueOf(body.get(entry.getKey())))) {
                 return false;
@@ -197,4 +246,28 @@ public class JwtManager {
         return true;
     }
 
+    private static final class ValidatedClaims {
+        private final Claims claims;
+        private final Key publicKey;
+
+        private ValidatedClaims(Claims claims, Key publicKey) {
+            this.claims = claims;
+            this.publicKey = publicKey;
+        }
+
+        /**
+         * Check if the claims can still be used.
+         *
+         * @param publicKey Key requested to validate the token
+         * @return true if the token was validated with the same key and has not expired
+         */
+        private boolean isValid(Key publicKey) {
+            if (this.publicKey == null ? publicKey != null : !this.publicKey.equals(publicKey)) {
+                return false;
+            }
+            Date expiration = claims.getExpiration();
+            return expiration == null || expiration.getTime() > System.currentTimeMillis();
+        }
+    }
+
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.auth.authorization;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.opencb.opencga.catalog.exceptions.CatalogException;
+import org.opencb.opencga.core.models.study.Group;
+import org.opencb.opencga.core.response.OpenCGAResult;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short lived cache of the study owners, group memberships, effective permissions and granted permissions.
+ *
+ * Only granted permissions of single entries are cached, so a denied check is always resolved against the database.
+ * Entries of a study are removed from the cache when its ACL version changes, which happens on any ACL or group modification made by
+ * any process. By default, the version is read from the database at most once per second.
+ * Entries also expire after a few seconds.
+ */
+public class AuthorizationCache {
+
+    public static final long DEFAULT_TTL_SECONDS = 10;
+    public static final long DEFAULT_MAX_SIZE = 100000;
+    public static final long DEFAULT_VERSION_CHECK_MILLIS = 1000;
+
+    private final long versionCheckMillis;
+    private final Cache<Long, AclVersion> versions;
+    private final Cache<Long, String> owners;
+    private final Cache<StudyMemberKey, OpenCGAResult<Group>> groups;
+    private final Cache<StudyMemberKey, EffectivePermissions> effectivePermissions;
+    private final Cache<PermissionKey, Boolean> permissions;
+
+    public AuthorizationCache() {
+        this(DEFAULT_TTL_SECONDS, DEFAULT_MAX_SIZE, DEFAULT_VERSION_CHECK_MILLIS);
+    }
+
+    public AuthorizationCache(long ttlSeconds, long maxSize) {
+        this(ttlSeconds, maxSize, DEFAULT_VERSION_CHECK_MILLIS);
+    }
+
+    public AuthorizationCache(long ttlSeconds, long maxSize, long versionCheckMillis) {
+        this.versionCheckMillis = versionCheckMillis;
+        versions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+        owners = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        groups = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        effectivePermissions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        permissions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws CatalogException;
+    }
+
+    /**
+     * Remove the cached entries of the study if its ACL version changed since the last check.
+     * The version is only loaded if it was not checked within the last milliseconds given at construction.
+     *
+     * @param studyUid Study uid
+     * @param loader   Current ACL version of the study in the database
+     * @throws CatalogException if the loader fails
+     */
+    public void checkVersion(long studyUid, Loader<Long> loader) throws CatalogException {
+        long now = System.currentTimeMillis();
+        AclVersion current = versions.getIfPresent(studyUid);
+        if (current != null && now - current.checkedAt < versionCheckMillis) {
+            return;
+        }
+        long version = loader.load();
+        if (current == null || current.version != version) {
+            // Unknown or modified version. Anything cached for this study might be outdated
+            invalidate(studyUid);
+        }
+        versions.put(studyUid, new AclVersion(version, now));
+    }
+
+    public String getOwner(long studyUid, Loader<String> loader) throws CatalogException {
+        return get(owners, studyUid, loader);
+    }
+
+    public OpenCGAResult<Group> getGroupBelonging(long studyUid, String member, Loader<OpenCGAResult<Group>> loader)
+            throws CatalogException {
+        return get(groups, new StudyMemberKey(studyUid, member), loader);
+    }
+
+    public EffectivePermissions getEffectivePermissions(long studyUid, String userId, Loader<EffectivePermissions> loader)
+            throws CatalogException {
+        return get(effectivePermissions, new StudyMemberKey(studyUid, userId), loader);
+    }
+
+    /**
+     * Check if the user has the permission over the resource. Only positive results are cached.
+     *
+     * @param studyUid   Study uid
+     * @param userId     User
+     * @param resource   Resource type
+     * @param uid        Resource uid. Study uid for study permissions
+     * @param permission Permission
+     * @param loader     Permission check against the database
+     * @return           If the user has the permission
+     * @throws CatalogException if the loader fails
+     */
+    public boolean hasPermission(long studyUid, String userId, String resource, long uid, String permission, Loader<Boolean> loader)
+            throws CatalogException {
+        PermissionKey key = new PermissionKey(studyUid, userId, resource, uid, permission);
+        if (permissions.getIfPresent(key) != null) {
+            return true;
+        }
+        boolean granted = loader.load();
+        if (granted) {
+            permissions.put(key, Boolean.TRUE);
+        }
+        return granted;
+    }
+
+    public void invalidate(long studyUid) {
+        versions.invalidate(studyUid);
+        owners.invalidate(studyUid);
+        groups.asMap().keySet().removeIf(key -> key.studyUid == studyUid);
+        effectivePermissions.asMap().keySet().removeIf(key -> key.studyUid == studyUid);
+        permissions.asMap().keySet().removeIf(key -> key.studyUid == studyUid);
+    }
+
+    public void invalidateAll() {
+        versions.invalidateAll();
+        owners.invalidateAll();
+        groups.invalidateAll();
+        effectivePermissions.invalidateAll();
+        permissions.invalidateAll();
+    }
+
+    public CacheStats getPermissionStats() {
+        return permissions.stats();
+    }
+
+    private static <K, V> V get(Cache<K, V> cache, K key, Loader<V> loader) throws CatalogException {
+        V value = cache.getIfPresent(key);
+        if (value == null) {
+            value = loader.load();
+            if (value != null) {
+                cache.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    private static final class AclVersion {
+        private final long version;
+        private final long checkedAt;
+
+        AclVersion(long version, long checkedAt) {
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    private static class StudyMemberKey {
+        protected final long studyUid;
+        protected final String member;
+
+        StudyMemberKey(long studyUid, String member) {
+            this.studyUid = studyUid;
+            this.member = member;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            StudyMemberKey that = (StudyMemberKey) o;
+            return studyUid == that.studyUid && Objects.equals(member, that.member);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(studyUid, member);
+        }
+    }
+
+    private static final class PermissionKey extends StudyMemberKey {
+        private final String resource;
+        private final long uid;
+        private final String permission;
+
+        PermissionKey(long studyUid, String userId, String resource, long uid, String permission) {
+            super(studyUid, userId);
+            this.resource = resource;
+            this.uid = uid;
+            this.permission = permission;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!super.equals(o)) {
+                return false;
+            }
+            PermissionKey that = (PermissionKey) o;
+            return uid == that.uid && Objects.equals(resource, that.resource) && Objects.equals(permission, that.permission);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(studyUid, member, resource, uid, permission);
+        }
+    }
+}
@@ -99,4 +99,31 @@ public interface AuthorizationDBAdaptor {
             throws CatalogException;
 
     OpenCGAResult removePermissionRule(long studyId, String permissionRuleToDelete, Enums.Entity entry) throws CatalogException;
+
+    /**
+     * Resolve all the permissions the user has in the study with a single query.
+     *
+     * @param studyId study uid.
+     * @param user user.
+     * @return the effective permissions of the user in the study.
+     * @throws CatalogDBException if the study does not exist.
+     */
+    EffectivePermissions getEffectivePermissions(long studyId, String user) throws CatalogDBException;
+
+    /**
+     * Get the version of the ACLs and groups of the study. It changes on every ACL or group modification.
+     *
+     * @param studyId study uid.
+     * @return the current version, or 0 if it has never been modified.
+     * @throws CatalogDBException if the study does not exist.
+     */
+    long getAclVersion(long studyId) throws CatalogDBException;
+
+    /**
+     * Increment the version of the ACLs and groups of the study so any process caching them discards its copy.
+     *
+     * @param studyId study uid.
+     * @throws CatalogDBException if the study can not be updated.
+     */
+    void updateAclVersion(long studyId) throws CatalogDBException;
 }
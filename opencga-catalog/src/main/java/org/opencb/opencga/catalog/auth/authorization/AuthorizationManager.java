@@ -456,6 +456,20 @@ public interface AuthorizationManager {
 
     void removePermissionRule(long studyId, String permissionRuleId, Enums.Entity entry) throws CatalogException;
 
+    /**
+     * Remove any cached owner, group membership or permission of the study in every process. Must be called after modifying the groups
+     * of a study.
+     *
+     * @param studyId Study uid.
+     * @throws CatalogException if the ACL version of the study can not be updated.
+     */
+    void invalidateCache(long studyId) throws CatalogException;
+
+    /**
+     * Remove any cached owner, group membership or permission of all the studies.
+     */
+    void invalidateCache();
+
     class CatalogAclParams {
         private List<Long> ids;
         private List<String> permissions;
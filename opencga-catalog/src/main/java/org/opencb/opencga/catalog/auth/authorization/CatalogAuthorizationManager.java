@@ -21,6 +21,7 @@ import org.opencb.commons.utils.CollectionUtils;
 import org.opencb.opencga.catalog.db.DBAdaptorFactory;
 import org.opencb.opencga.catalog.db.api.*;
 import org.opencb.opencga.catalog.db.mongodb.AuthorizationMongoDBAdaptor;
+import org.opencb.opencga.catalog.db.mongodb.AuthorizationMongoDBUtils;
 import org.opencb.opencga.catalog.exceptions.CatalogAuthorizationException;
 import org.opencb.opencga.catalog.exceptions.CatalogDBException;
 import org.opencb.opencga.catalog.exceptions.CatalogException;
@@ -75,11 +76,13 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
     private final boolean openRegister;
 
     private final AuthorizationDBAdaptor aclDBAdaptor;
+    private final AuthorizationCache authorizationCache;
 
     public CatalogAuthorizationManager(DBAdaptorFactory dbFactory, Configuration configuration)
             throws CatalogDBException {
         this.logger = LoggerFactory.getLogger(CatalogAuthorizationManager.class);
-        this.aclDBAdaptor = new AuthorizationMongoDBAdaptor(dbFactory, configuration);
+        this.authorizationCache = new AuthorizationCache();
+        this.aclDBAdaptor = new AuthorizationMongoDBAdaptor(dbFactory, configuration, authorizationCache);
 
         this.openRegister = configuration.isOpenRegister();
 
@@ -141,7 +144,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
         if (isInstallationAdministrator(userId)) {
             return;
         } else {
-            if (studyDBAdaptor.hasStudyPermission(studyId, userId, permission)) {
+            if (getEffectivePermissions(studyId, userId).hasStudyPermission(permission.name())) {
                 return;
             }
         }
@@ -154,7 +157,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             return;
         }
 
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
         if (!ownerId.equals(userId) && !isAdministrativeUser(studyId, userId)) {
             throw new CatalogAuthorizationException("Only owners or administrative users are allowed to modify a study");
         }
@@ -166,7 +169,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             return;
         }
 
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
         if (ownerId.equals(userId)) {
             return;
         }
@@ -183,7 +186,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             return;
         }
 
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
         if (!ownerId.equals(userId) && !isAdministrativeUser(studyId, userId)) {
             throw new CatalogAuthorizationException("Only owners or administrative users are allowed to modify a update permission rules");
         }
@@ -199,7 +202,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             return;
         }
 
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
         if (!userId.equals(ownerId) && !isAdministrativeUser(studyId, userId)) {
             throw new CatalogAuthorizationException("Only administrative users are allowed to create/remove groups.");
         }
@@ -213,7 +216,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
     @Override
     public void checkUpdateGroupPermissions(long studyId, String userId, String group, ParamUtils.BasicUpdateAction action)
             throws CatalogException {
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
 
         if (userId.equals(ownerId)) {
             // Granted permission but check it is a valid action
@@ -253,7 +256,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             return;
         }
 
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
         if (!ownerId.equals(userId) && !isAdministrativeUser(studyId, userId)) {
             throw new CatalogAuthorizationException("Only owners or administrative users are allowed to assign or see all permissions");
         }
@@ -265,7 +268,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
             return;
         }
 
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
 
         if (!ownerId.equals(userId) && !isAdministrativeUser(studyId, userId)) {
             throw new CatalogAuthorizationException("Only owners or administrative users are allowed to create/update/delete variable "
@@ -298,7 +301,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
 
     @Override
     public Boolean isOwnerOrAdmin(long studyId, String userId) throws CatalogException {
-        String ownerId = studyDBAdaptor.getOwnerId(studyId);
+        String ownerId = getStudyOwner(studyId);
 
         if (!ownerId.equals(userId) && !isAdministrativeUser(studyId, userId)) {
             return false;
@@ -325,21 +328,24 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(FileDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, fileDBAdaptor)) {
+        if (checkUserPermission(studyId, fileId, userId, permission, query, fileDBAdaptor, Enums.Resource.FILE)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "File", fileId, null);
     }
 
-    private boolean checkUserPermission(String userId, Query query, CoreDBAdaptor dbAdaptor) throws CatalogException {
+    private boolean checkUserPermission(long studyId, long id, String userId, Enum<?> permission, Query query, CoreDBAdaptor dbAdaptor,
+                                        Enums.Resource resource) throws CatalogException {
         if (isInstallationAdministrator(userId)) {
             return true;
-        } else {
-            if (dbAdaptor.count(query, userId).getNumMatches() == 1) {
-                return true;
-            }
         }
-        return false;
+        String studyPermission = AuthorizationMongoDBUtils.getStudyPermission(permission.name(), resource);
+        if (getEffectivePermissions(studyId, userId).isGrantedForAll(resource.name(), studyPermission)) {
+            // Granted at the study level with no ACLs defined in the entries for the user, so there is no need to check the entry
+            return true;
+        }
+        return authorizationCache.hasPermission(studyId, userId, resource.name(), id, permission.name(),
+                () -> dbAdaptor.count(query, userId).getNumMatches() == 1);
     }
 
     @Override
@@ -350,7 +356,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(SampleDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, sampleDBAdaptor)) {
+        if (checkUserPermission(studyId, sampleId, userId, permission, query, sampleDBAdaptor, Enums.Resource.SAMPLE)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "Sample", sampleId, null);
@@ -364,7 +370,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(IndividualDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, individualDBAdaptor)) {
+        if (checkUserPermission(studyId, individualId, userId, permission, query, individualDBAdaptor, Enums.Resource.INDIVIDUAL)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "Individual", individualId, null);
@@ -377,7 +383,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(JobDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, jobDBAdaptor)) {
+        if (checkUserPermission(studyId, jobId, userId, permission, query, jobDBAdaptor, Enums.Resource.JOB)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "Job", jobId, null);
@@ -391,7 +397,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(CohortDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, cohortDBAdaptor)) {
+        if (checkUserPermission(studyId, cohortId, userId, permission, query, cohortDBAdaptor, Enums.Resource.COHORT)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "Cohort", cohortId, null);
@@ -406,7 +412,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(PanelDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, panelDBAdaptor)) {
+        if (checkUserPermission(studyId, panelId, userId, permission, query, panelDBAdaptor, Enums.Resource.DISEASE_PANEL)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "Panel", panelId, null);
@@ -420,7 +426,7 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(FamilyDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, familyDBAdaptor)) {
+        if (checkUserPermission(studyId, familyId, userId, permission, query, familyDBAdaptor, Enums.Resource.FAMILY)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "Family", familyId, null);
@@ -435,7 +441,8 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
                 .append(ClinicalAnalysisDBAdaptor.QueryParams.STUDY_UID.key(), studyId)
                 .append(ParamConstants.ACL_PARAM, userId + ":" + permission.name());
 
-        if (checkUserPermission(userId, query, clinicalAnalysisDBAdaptor)) {
+        if (checkUserPermission(studyId, analysisId, userId, permission, query, clinicalAnalysisDBAdaptor,
+                Enums.Resource.CLINICAL_ANALYSIS)) {
             return;
         }
         throw CatalogAuthorizationException.deny(userId, permission.toString(), "ClinicalAnalysis", analysisId, null);
@@ -1190,7 +1197,34 @@ public class CatalogAuthorizationManager implements AuthorizationManager {
     }
 
     OpenCGAResult<Group> getGroupBelonging(long studyId, String members) throws CatalogException {
-        return getGroupBelonging(studyId, Arrays.asList(members.split(",")));
+        checkAclVersion(studyId);
+        return authorizationCache.getGroupBelonging(studyId, members,
+                () -> getGroupBelonging(studyId, Arrays.asList(members.split(","))));
+    }
+
+    private String getStudyOwner(long studyId) throws CatalogException {
+        checkAclVersion(studyId);
+        return authorizationCache.getOwner(studyId, () -> studyDBAdaptor.getOwnerId(studyId));
+    }
+
+    private EffectivePermissions getEffectivePermissions(long studyId, String userId) throws CatalogException {
+        checkAclVersion(studyId);
+        return authorizationCache.getEffectivePermissions(studyId, userId, () -> aclDBAdaptor.getEffectivePermissions(studyId, userId));
+    }
+
+    // Drop the cached entries of the study if any other process modified its ACLs or groups
+    private void checkAclVersion(long studyId) throws CatalogException {
+        authorizationCache.checkVersion(studyId, () -> aclDBAdaptor.getAclVersion(studyId));
+    }
+
+    @Override
+    public void invalidateCache(long studyId) throws CatalogException {
+        aclDBAdaptor.updateAclVersion(studyId);
+    }
+
+    @Override
+    public void invalidateCache() {
+        authorizationCache.invalidateAll();
     }
 
     public static void checkPermissions(List<String> permissions, Function<String, Enum> getValue) throws CatalogException {
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.auth.authorization;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Permissions a user has in a study, resolved from the study document alone.
+ *
+ * Entity permissions granted at the study level are valid for every entry of the resource unless the user, or any of its groups,
+ * has ACLs defined in the entries themselves. Only in that case the entries need to be checked one by one.
+ */
+public class EffectivePermissions {
+
+    private static final EffectivePermissions FULL_ACCESS = new EffectivePermissions(true, Collections.emptySet(),
+            Collections.emptySet());
+
+    private final boolean fullAccess;
+    private final Set<String> studyPermissions;
+    private final Set<String> resourcesWithInternalAcls;
+
+    /**
+     * Create the effective permissions of a user in a study.
+     *
+     * @param fullAccess                If the user is the owner or an administrator of the study
+     * @param studyPermissions          StudyPermissions granted to the user at the study level
+     * @param resourcesWithInternalAcls Resources where the user or any of its groups have ACLs defined in the entries
+     */
+    public EffectivePermissions(boolean fullAccess, Set<String> studyPermissions, Set<String> resourcesWithInternalAcls) {
+        this.fullAccess = fullAccess;
+        this.studyPermissions = studyPermissions;
+        this.resourcesWithInternalAcls = resourcesWithInternalAcls;
+    }
+
+    public static EffectivePermissions fullAccess() {
+        return FULL_ACCESS;
+    }
+
+    public boolean isFullAccess() {
+        return fullAccess;
+    }
+
+    public boolean hasStudyPermission(String studyPermission) {
+        return fullAccess || studyPermissions.contains(studyPermission);
+    }
+
+    /**
+     * Check if the permission is granted over every entry of the resource, so there is no need to check the entry itself.
+     *
+     * @param resource        Resource type
+     * @param studyPermission StudyPermission equivalent to the entity permission. Null if there is none.
+     * @return If the permission is granted for all the entries of the resource in the study
+     */
+    public boolean isGrantedForAll(String resource, String studyPermission) {
+        if (fullAccess) {
+            return true;
+        }
+        return studyPermission != null && studyPermissions.contains(studyPermission) && !resourcesWithInternalAcls.contains(resource);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("EffectivePermissions{");
+        sb.append("fullAccess=").append(fullAccess);
+        sb.append(", studyPermissions=").append(studyPermissions);
+        sb.append(", resourcesWithInternalAcls=").append(resourcesWithInternalAcls);
+        sb.append('}');
+        return sb.toString();
+    }
+}
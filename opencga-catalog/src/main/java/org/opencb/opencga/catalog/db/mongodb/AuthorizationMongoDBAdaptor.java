@@ -21,6 +21,7 @@ import com.mongodb.client.ClientSession;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Updates;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -31,8 +32,10 @@ import org.opencb.commons.datastore.core.QueryParam;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDBIterator;
 import org.opencb.commons.utils.CollectionUtils;
+import org.opencb.opencga.catalog.auth.authorization.AuthorizationCache;
 import org.opencb.opencga.catalog.auth.authorization.AuthorizationDBAdaptor;
 import org.opencb.opencga.catalog.auth.authorization.AuthorizationManager;
+import org.opencb.opencga.catalog.auth.authorization.EffectivePermissions;
 import org.opencb.opencga.catalog.auth.authorization.CatalogAuthorizationManager;
 import org.opencb.opencga.catalog.db.DBAdaptorFactory;
 import org.opencb.opencga.catalog.db.api.StudyDBAdaptor;
@@ -60,13 +63,28 @@ import static org.opencb.commons.datastore.core.QueryParam.Type.TEXT_ARRAY;
 public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements AuthorizationDBAdaptor {
 
     private Map<Enums.Resource, MongoDBCollection> dbCollectionMap = new HashMap<>();
+    private final AuthorizationCache authorizationCache;
 
     private static final String ANONYMOUS = "*";
     static final String MEMBER_WITH_INTERNAL_ACL = "_withInternalAcls";
 
     public AuthorizationMongoDBAdaptor(DBAdaptorFactory dbFactory, Configuration configuration) throws CatalogDBException {
+        this(dbFactory, configuration, new AuthorizationCache());
+    }
+
+    /**
+     * Create the adaptor.
+     *
+     * @param dbFactory          DBAdaptorFactory
+     * @param configuration      Configuration
+     * @param authorizationCache Cache of permissions to invalidate on every ACL modification.
+     * @throws CatalogDBException if the collections can not be accessed
+     */
+    public AuthorizationMongoDBAdaptor(DBAdaptorFactory dbFactory, Configuration configuration, AuthorizationCache authorizationCache)
+            throws CatalogDBException {
         super(configuration, LoggerFactory.getLogger(AuthorizationMongoDBAdaptor.class));
         this.dbAdaptorFactory = (MongoDBAdaptorFactory) dbFactory;
+        this.authorizationCache = authorizationCache;
         initCollectionConnections();
     }
 
@@ -319,13 +337,16 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
         logger.debug("Remove all acls for entity {} for member {} in study {}. Query: {}, pullAll: {}", resource, member, studyId,
                 query.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()),
                 update.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()));
-        return new OpenCGAResult(dbCollectionMap.get(resource).update(query, update, new QueryOptions(MongoDBCollection.MULTI, true)));
+        OpenCGAResult result = new OpenCGAResult(dbCollectionMap.get(resource)
+                .update(query, update, new QueryOptions(MongoDBCollection.MULTI, true)));
+        updateAclVersion(studyId);
+        return result;
     }
 
     @Override
     public OpenCGAResult setToMembers(long studyId, List<String> members, List<AuthorizationManager.CatalogAclParams> aclParams)
             throws CatalogDBException, CatalogParameterException, CatalogAuthorizationException {
-        return runTransaction(clientSession -> {
+        OpenCGAResult result = runTransaction(clientSession -> {
             long startTime = startQuery();
 
             // We obtain which of those members are actually users to add them to the @members group automatically
@@ -341,12 +362,14 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
             return endWrite(startTime, aclParams.get(0).getIds().size(), aclParams.get(0).getIds().size(), null);
         });
+        updateAclVersion(studyId);
+        return result;
     }
 
     @Override
     public OpenCGAResult setToMembers(List<Long> studyIds, List<String> members, List<String> permissions)
             throws CatalogDBException, CatalogParameterException, CatalogAuthorizationException {
-        return runTransaction(clientSession -> {
+        OpenCGAResult result = runTransaction(clientSession -> {
             long startTime = startQuery();
             for (Long studyId : studyIds) {
                 addToMembersGroupInStudy(studyId, members, clientSession);
@@ -355,6 +378,8 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
             return endWrite(startTime, 1, 1, null);
         });
+        updateAclVersions(studyIds);
+        return result;
     }
 
     private void setToMembers(List<Long> resourceIds, List<String> members, List<String> permissionList, Enums.Resource resource,
@@ -404,7 +429,7 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
     @Override
     public OpenCGAResult addToMembers(long studyId, List<String> members, List<AuthorizationManager.CatalogAclParams> aclParams)
             throws CatalogDBException, CatalogParameterException, CatalogAuthorizationException {
-        return runTransaction(clientSession -> {
+        OpenCGAResult result = runTransaction(clientSession -> {
             long startTime = startQuery();
             addToMembersGroupInStudy(studyId, members, clientSession);
 
@@ -418,6 +443,8 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
             return endWrite(startTime, aclParams.get(0).getIds().size(), aclParams.get(0).getIds().size(), null);
         });
+        updateAclVersion(studyId);
+        return result;
     }
 
     private void addToMembers(List<Long> resourceIds, List<String> members, List<String> permissionList, Enums.Resource resource,
@@ -453,7 +480,7 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
     @Override
     public OpenCGAResult addToMembers(List<Long> studyIds, List<String> members, List<String> permissions)
             throws CatalogDBException, CatalogParameterException, CatalogAuthorizationException {
-        return runTransaction((clientSession) -> {
+        OpenCGAResult result = runTransaction((clientSession) -> {
             long startTime = startQuery();
             for (Long studyId : studyIds) {
                 addToMembersGroupInStudy(studyId, members, clientSession);
@@ -463,6 +490,8 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
             return endWrite(startTime, 1, 1, null);
         });
+        updateAclVersions(studyIds);
+        return result;
     }
 
     private void addToMembersGroupInStudy(long studyId, List<String> members, ClientSession clientSession) throws CatalogDBException {
@@ -480,7 +509,7 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
     @Override
     public OpenCGAResult removeFromMembers(List<String> members, List<AuthorizationManager.CatalogAclParams> aclParams)
             throws CatalogDBException, CatalogParameterException, CatalogAuthorizationException {
-        return runTransaction(clientSession -> {
+        OpenCGAResult result = runTransaction(clientSession -> {
             long startTime = startQuery();
 
             for (AuthorizationManager.CatalogAclParams aclParam : aclParams) {
@@ -489,6 +518,10 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
             return endWrite(startTime, aclParams.get(0).getIds().size(), aclParams.get(0).getIds().size(), null);
         });
+        for (AuthorizationManager.CatalogAclParams aclParam : aclParams) {
+            updateAclVersion(aclParam.getResource(), aclParam.getIds());
+        }
+        return result;
     }
 
     private void removeFromMembers(ClientSession clientSession, List<Long> resourceIds, List<String> members, List<String> permissionList,
@@ -530,7 +563,7 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
             throw new CatalogDBException("Missing 'members' array.");
         }
 
-        return runTransaction(clientSession -> {
+        OpenCGAResult result = runTransaction(clientSession -> {
             long tmpStartTime = startQuery();
             logger.debug("Resetting permissions of users '{}' for study '{}'", members, studyId);
 
@@ -547,6 +580,8 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
             return endWrite(tmpStartTime, -1, -1, null);
         });
+        updateAclVersion(studyId);
+        return result;
     }
 
     // TODO: Make this method transactional
@@ -587,6 +622,7 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
             collection.update(queryDocument, update, new QueryOptions(MongoDBCollection.MULTI, true));
         }
+        updateAclVersion(resource, resourceIds);
 
         return OpenCGAResult.empty();
     }
@@ -636,7 +672,9 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
                 bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()),
                 update.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()));
 
-        return new OpenCGAResult(collection.update(bson, update, new QueryOptions("multi", true)));
+        OpenCGAResult result = new OpenCGAResult(collection.update(bson, update, new QueryOptions("multi", true)));
+        updateAclVersion(studyId);
+        return result;
     }
 
     //TODO: Make transactional !
@@ -724,6 +762,7 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
         // 2. Remove the permission rule from the map in the study
         removeReferenceToPermissionRuleInStudy(study.getUid(), permissionRuleToDeleteId, entry);
+        updateAclVersion(study.getUid());
 
         return OpenCGAResult.empty();
     }
@@ -808,6 +847,7 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
 
         // 2. Remove the permission rule from the map in the study
         removeReferenceToPermissionRuleInStudy(study.getUid(), permissionRuleToDeleteId, entry);
+        updateAclVersion(study.getUid());
 
         return OpenCGAResult.empty();
     }
@@ -839,6 +879,56 @@ public class AuthorizationMongoDBAdaptor extends MongoDBAdaptor implements Autho
         return OpenCGAResult.empty();
     }
 
+    @Override
+    public EffectivePermissions getEffectivePermissions(long studyId, String user) throws CatalogDBException {
+        Document study = getStudy(studyId, Projections.include(PRIVATE_OWNER_ID, StudyDBAdaptor.QueryParams.GROUPS.key(),
+                QueryParams.ACL.key(), MEMBER_WITH_INTERNAL_ACL));
+        return AuthorizationMongoDBUtils.getEffectivePermissions(study, user);
+    }
+
+    @Override
+    public long getAclVersion(long studyId) throws CatalogDBException {
+        Number version = getStudy(studyId, Projections.include(PRIVATE_ACL_VERSION)).get(PRIVATE_ACL_VERSION, Number.class);
+        return version == null ? 0 : version.longValue();
+    }
+
+    @Override
+    public void updateAclVersion(long studyId) throws CatalogDBException {
+        updateAclVersions(Collections.singletonList(studyId));
+    }
+
+    private void updateAclVersions(Collection<Long> studyIds) {
+        if (!studyIds.isEmpty()) {
+            dbCollectionMap.get(Enums.Resource.STUDY).update(Filters.in(PRIVATE_UID, studyIds), Updates.inc(PRIVATE_ACL_VERSION, 1),
+                    new QueryOptions(MongoDBCollection.MULTI, true));
+        }
+        studyIds.forEach(authorizationCache::invalidate);
+    }
+
+    private void updateAclVersion(Enums.Resource resource, List<Long> resourceIds) {
+        if (resource == Enums.Resource.STUDY) {
+            updateAclVersions(resourceIds);
+            return;
+        }
+        // Only the ids of the resources are known, so we look for the studies they belong to
+        Set<Long> studyIds = new HashSet<>();
+        DataResult<Document> result = dbCollectionMap.get(resource).find(Filters.in(PRIVATE_UID, resourceIds),
+                Projections.include(PRIVATE_STUDY_UID), QueryOptions.empty());
+        for (Document document : result.getResults()) {
+            studyIds.add(document.get(PRIVATE_STUDY_UID, Number.class).longValue());
+        }
+        updateAclVersions(studyIds);
+    }
+
+    private Document getStudy(long studyId, Bson projection) throws CatalogDBException {
+        DataResult<Document> result = dbCollectionMap.get(Enums.Resource.STUDY).find(Filters.eq(PRIVATE_UID, studyId), projection,
+                QueryOptions.empty());
+        if (result.getNumResults() == 0) {
+            throw new CatalogDBException("Study " + studyId + " not found");
+        }
+        return result.first();
+    }
+
     private boolean isPermissionRuleEntity(Enums.Resource resource) {
         if (Enums.Entity.CLINICAL_ANALYSES.getResource() == resource || Enums.Entity.COHORTS.getResource() == resource
                 || Enums.Entity.FAMILIES.getResource() == resource || Enums.Entity.FILES.getResource() == resource
@@ -20,6 +20,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.utils.ListUtils;
+import org.opencb.opencga.catalog.auth.authorization.EffectivePermissions;
 import org.opencb.opencga.catalog.db.api.StudyDBAdaptor;
 import org.opencb.opencga.catalog.exceptions.CatalogAuthorizationException;
 import org.opencb.opencga.catalog.exceptions.CatalogDBException;
@@ -101,6 +102,78 @@ public class AuthorizationMongoDBUtils {
         }
     }
 
+    /**
+     * Resolve all the permissions the user has in the study, following the same rules as {@link #checkStudyPermission} and
+     * {@link #getQueryForAuthorisedEntries}.
+     *
+     * @param study study document containing, at least, the owner, groups, ACLs and members with internal ACLs.
+     * @param user  user.
+     * @return the effective permissions of the user in the study.
+     */
+    public static EffectivePermissions getEffectivePermissions(Document study, String user) {
+        if (study.getString(PRIVATE_OWNER_ID).equals(user) || OPENCGA.equals(user) || getAdminUsers(study).contains(user)) {
+            return EffectivePermissions.fullAccess();
+        }
+
+        // If user does not exist in the members group, the user will not have any permission
+        if (!isUserInMembers(study, user)) {
+            return new EffectivePermissions(false, Collections.emptySet(), Collections.emptySet());
+        }
+
+        List<String> groups;
+        List<String> precedence;
+        if (user.equals(ANONYMOUS)) {
+            groups = Collections.emptyList();
+            precedence = Arrays.asList("user", "members", ANONYMOUS);
+        } else {
+            groups = getGroups(study, user);
+            precedence = Arrays.asList("user", "group", "members", REGISTERED_USERS, ANONYMOUS);
+        }
+
+        // Parse the study ACLs only once, taking the most specific permissions defined as in checkUserHasPermission
+        Map<String, Set<String>> permissionMap = parsePermissions(study.get(PRIVATE_ACL, ArrayList.class), user, groups);
+        Set<String> studyPermissions = Collections.emptySet();
+        for (String key : precedence) {
+            if (permissionMap.get(key) != null) {
+                studyPermissions = permissionMap.get(key);
+                break;
+            }
+        }
+
+        Set<String> resourcesWithInternalAcls = new HashSet<>();
+        Document internalAcls = study.get(MEMBER_WITH_INTERNAL_ACL, Document.class);
+        if (internalAcls != null) {
+            List<String> members = new ArrayList<>(groups.size() + 1);
+            members.add(user);
+            members.addAll(groups);
+            for (String member : members) {
+                List<String> entities = internalAcls.get(member, List.class);
+                if (entities != null) {
+                    resourcesWithInternalAcls.addAll(entities);
+                }
+            }
+        }
+
+        return new EffectivePermissions(false, studyPermissions, resourcesWithInternalAcls);
+    }
+
+    /**
+     * Get the study permission that grants the entity permission over all the entries of the resource.
+     *
+     * @param permission entity permission.
+     * @param resource   resource of the entity permission.
+     * @return the name of the study permission, or null if there is none.
+     */
+    public static String getStudyPermission(String permission, Enums.Resource resource) {
+        StudyAclEntry.StudyPermissions studyPermission;
+        try {
+            studyPermission = StudyAclEntry.StudyPermissions.getStudyPermission(permission, getPermissionType(resource));
+        } catch (CatalogParameterException e) {
+            return null;
+        }
+        return studyPermission == null ? null : studyPermission.name();
+    }
+
     /**
      * Removes annotation sets from results if the user does not have the proper permissions.
      *
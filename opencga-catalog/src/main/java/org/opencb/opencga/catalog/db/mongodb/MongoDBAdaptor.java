@@ -54,6 +54,7 @@ public class MongoDBAdaptor extends AbstractDBAdaptor {
     static final String PRIVATE_PROJECT_UID = PRIVATE_PROJECT + '.' + PRIVATE_UID;
     static final String PRIVATE_PROJECT_UUID = PRIVATE_PROJECT + '.' + PRIVATE_UUID;
     static final String PRIVATE_OWNER_ID = "_ownerId";
+    static final String PRIVATE_ACL_VERSION = "_aclVersion";
     public static final String PRIVATE_STUDY_UID = "studyUid";
     private static final String VERSION = "version";
 
@@ -608,7 +608,8 @@ public class StudyMongoDBAdaptor extends MongoDBAdaptor implements StudyDBAdapto
                         .append("userIds", user)
                         .append("syncedFrom.authOrigin", authOrigin)
                 ));
-        Bson pull = Updates.pull("groups.$.userIds", user);
+        // The ACL version is incremented so other processes discard the cached group memberships
+        Bson pull = Updates.combine(Updates.pull("groups.$.userIds", user), Updates.inc(PRIVATE_ACL_VERSION, 1));
 
         // Pull the user while it still belongs to a synced group
         QueryOptions multi = new QueryOptions(MongoDBCollection.MULTI, true);
@@ -626,7 +627,8 @@ public class StudyMongoDBAdaptor extends MongoDBAdaptor implements StudyDBAdapto
                             .append("syncedFrom.remoteGroup", new Document("$in", groupList))
                             .append("syncedFrom.authOrigin", authOrigin)
                     ));
-            Document push = new Document("$addToSet", new Document("groups.$.userIds", user));
+            Document push = new Document("$addToSet", new Document("groups.$.userIds", user))
+                    .append("$inc", new Document(PRIVATE_ACL_VERSION, 1));
             do {
                 update = studyCollection.update(query, push, multi);
             } while (update.getNumUpdated() > 0);
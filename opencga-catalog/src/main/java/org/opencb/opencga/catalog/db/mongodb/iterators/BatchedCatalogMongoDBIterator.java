@@ -16,23 +16,62 @@
 
 package org.opencb.opencga.catalog.db.mongodb.iterators;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.client.ClientSession;
 import org.bson.Document;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.GenericDocumentComplexConverter;
 import org.opencb.commons.datastore.mongodb.MongoDBIterator;
+import org.opencb.opencga.core.common.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
+/**
+ * Iterator reading the documents from the cursor in batches, so each batch can be completed with additional queries.
+ *
+ * Unless a client session is in use, the next batch is fetched in background while the current one is consumed.
+ * The batch size adapts to the time required to fetch each batch, unless a fixed size is given with {@link #BATCH_SIZE}.
+ */
 public abstract class BatchedCatalogMongoDBIterator<T> extends CatalogMongoDBIterator<T> {
 
+    /**
+     * QueryOptions key to set a fixed batch size.
+     */
+    public static final String BATCH_SIZE = "iteratorBatchSize";
+    /**
+     * QueryOptions key to enable or disable fetching the next batch in background. Enabled by default.
+     */
+    public static final String PREFETCH = "iteratorPrefetch";
+
+    static final int DEFAULT_BATCH_SIZE = 100;
+    static final int MIN_BATCH_SIZE = 10;
+    static final int MAX_BATCH_SIZE = 2000;
+    // Expected time to fetch each batch when adapting the batch size
+    static final long TARGET_BATCH_TIME_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("catalog-iterator-prefetch-%d")
+            .setDaemon(true)
+            .build());
+
     private Queue<Document> buffer = new LinkedList<>();
+    private Future<Queue<Document>> nextBuffer;
+    private volatile int batchSize;
+    private final boolean adaptiveBatchSize;
+    private final boolean prefetch;
+    private final IteratorStats stats = new IteratorStats();
 
     protected final QueryOptions options;
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchedCatalogMongoDBIterator.class);
+
     public BatchedCatalogMongoDBIterator(MongoDBIterator<Document> mongoCursor, GenericDocumentComplexConverter<T> converter) {
         this(mongoCursor, null, converter, null, null);
     }
@@ -42,17 +81,39 @@ public abstract class BatchedCatalogMongoDBIterator<T> extends CatalogMongoDBIte
                                          QueryOptions options) {
         super(mongoCursor, clientSession, converter, filter);
         this.options = options == null ? QueryOptions.empty() : options;
+        if (this.options.containsKey(BATCH_SIZE)) {
+            this.batchSize = Math.max(1, this.options.getInt(BATCH_SIZE));
+            this.adaptiveBatchSize = false;
+        } else {
+            this.batchSize = DEFAULT_BATCH_SIZE;
+            this.adaptiveBatchSize = true;
+        }
+        // Client sessions can not be used concurrently
+        this.prefetch = clientSession == null && this.options.getBoolean(PREFETCH, true);
     }
 
-
     @Override
     public boolean hasNext() {
         if (buffer.isEmpty()) {
-            fetchNextBatch(buffer, 100);
+            if (nextBuffer != null) {
+                buffer = waitNextBuffer();
+            } else {
+                buffer = fetchBuffer();
+            }
+            if (prefetch && !buffer.isEmpty()) {
+                nextBuffer = PREFETCH_EXECUTOR.submit(this::fetchBuffer);
+            }
         }
         return !buffer.isEmpty();
     }
 
+    /**
+     * Read the next batch of documents from the cursor.
+     * Might be executed from a different thread, but never concurrently with another call.
+     *
+     * @param buffer     Empty queue to fill
+     * @param bufferSize Max number of documents to read
+     */
     protected abstract void fetchNextBatch(Queue<Document> buffer, int bufferSize);
 
     @Override
@@ -62,13 +123,17 @@ public abstract class BatchedCatalogMongoDBIterator<T> extends CatalogMongoDBIte
         }
 
         Document next = buffer.remove();
+        long start = System.nanoTime();
         addAclInformation(next, options);
+        long aclEnd = System.nanoTime();
 
         if (filter != null) {
             next = filter.apply(next);
         }
 
-        return convert(next);
+        T t = convert(next);
+        stats.addDocument(aclEnd - start, System.nanoTime() - aclEnd);
+        return t;
     }
 
     protected T convert(Document next) {
@@ -78,4 +143,127 @@ public abstract class BatchedCatalogMongoDBIterator<T> extends CatalogMongoDBIte
             return (T) next;
         }
     }
+
+    @Override
+    public void close() {
+        if (nextBuffer != null) {
+            // Do not close the cursor while it's being read
+            try {
+                nextBuffer.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.debug("Error fetching discarded batch", e);
+            }
+            nextBuffer = null;
+        }
+        LOGGER.debug("{} {}", getClass().getSimpleName(), stats);
+        super.close();
+    }
+
+    public IteratorStats getStats() {
+        return stats;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    private Queue<Document> fetchBuffer() {
+        Queue<Document> queue = new LinkedList<>();
+        int size = batchSize;
+        long start = System.nanoTime();
+        fetchNextBatch(queue, size);
+        long time = System.nanoTime() - start;
+        stats.addBatch(queue.size(), time);
+        if (adaptiveBatchSize && queue.size() == size) {
+            batchSize = nextBatchSize(size, time);
+        }
+        return queue;
+    }
+
+    /**
+     * Estimate the next batch size to get close to the target batch time.
+     * Slow batches (e.g. big documents or slow nested queries) reduce the batch size, fast batches increase it.
+     *
+     * @param size  Size of the last batch
+     * @param nanos Time taken to fetch the last batch
+     * @return      Size of the next batch
+     */
+    static int nextBatchSize(int size, long nanos) {
+        long expected = nanos <= 0 ? MAX_BATCH_SIZE : size * TARGET_BATCH_TIME_NANOS / nanos;
+        // Do not change more than twice the size at each step
+        expected = Math.max(size / 2, Math.min(size * 2L, expected));
+        return (int) Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, expected));
+    }
+
+    private Queue<Document> waitNextBuffer() {
+        try {
+            return nextBuffer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching the next batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            nextBuffer = null;
+        }
+    }
+
+    /**
+     * Time spent by the iterator at each phase.
+     */
+    public static class IteratorStats {
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong fetchNanos = new AtomicLong();
+        private final AtomicLong aclNanos = new AtomicLong();
+        private final AtomicLong convertNanos = new AtomicLong();
+
+        void addBatch(int numDocuments, long nanos) {
+            batches.incrementAndGet();
+            documents.addAndGet(numDocuments);
+            fetchNanos.addAndGet(nanos);
+        }
+
+        void addDocument(long aclNanos, long convertNanos) {
+            this.aclNanos.addAndGet(aclNanos);
+            this.convertNanos.addAndGet(convertNanos);
+        }
+
+        public long getBatches() {
+            return batches.get();
+        }
+
+        public long getDocuments() {
+            return documents.get();
+        }
+
+        public long getFetchMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(fetchNanos.get());
+        }
+
+        public long getAclMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(aclNanos.get());
+        }
+
+        public long getConvertMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(convertNanos.get());
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("IteratorStats{");
+            sb.append("batches=").append(batches);
+            sb.append(", documents=").append(documents);
+            sb.append(", fetch=").append(TimeUtils.durationToString(getFetchMillis()));
+            sb.append(", acl=").append(TimeUtils.durationToString(getAclMillis()));
+            sb.append(", convert=").append(TimeUtils.durationToString(getConvertMillis()));
+            sb.append('}');
+            return sb.toString();
+        }
+    }
 }
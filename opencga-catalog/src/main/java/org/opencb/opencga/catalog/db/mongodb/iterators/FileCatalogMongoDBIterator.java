@@ -38,19 +38,17 @@ import java.util.function.Function;
 
 import static org.opencb.opencga.catalog.db.mongodb.MongoDBAdaptor.NATIVE_QUERY;
 
-public class FileCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIterator<E> {
+public class FileCatalogMongoDBIterator<E> extends BatchedCatalogMongoDBIterator<E> {
 
     private long studyUid;
     private String user;
 
     private FileMongoDBAdaptor fileDBAdaptor;
 
-    private Queue<Document> fileListBuffer;
+    private AnnotableConverter<? extends Annotable> converter;
 
     private Logger logger;
 
-    private static final int BUFFER_SIZE = 100;
-
     public FileCatalogMongoDBIterator(MongoDBIterator<Document> mongoCursor, ClientSession clientSession,
                                       AnnotableConverter<? extends Annotable> converter, Function<Document, Document> filter,
                                       FileMongoDBAdaptor fileMongoDBAdaptor, SampleMongoDBAdaptor sampleMongoDBAdaptor,
@@ -62,27 +60,19 @@ public class FileCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIterat
                                       AnnotableConverter<? extends Annotable> converter, Function<Document, Document> filter,
                                       FileMongoDBAdaptor fileMongoDBAdaptor, SampleMongoDBAdaptor sampleMongoDBAdaptor, long studyUid,
                                       String user, QueryOptions options) {
-        super(mongoCursor, clientSession, converter, filter, options);
+        super(mongoCursor, clientSession, null, filter, options);
 
         this.user = user;
         this.studyUid = studyUid;
+        this.converter = converter;
 
         this.fileDBAdaptor = fileMongoDBAdaptor;
 
-        this.fileListBuffer = new LinkedList<>();
         this.logger = LoggerFactory.getLogger(FileCatalogMongoDBIterator.class);
     }
 
     @Override
-    public E next() {
-        Document next = fileListBuffer.remove();
-
-        if (filter != null) {
-            next = filter.apply(next);
-        }
-
-        addAclInformation(next, options);
-
+    protected E convert(Document next) {
         if (converter != null) {
             return (E) converter.convertToDataModelType(next, options);
         } else {
@@ -91,20 +81,12 @@ public class FileCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIterat
     }
 
     @Override
-    public boolean hasNext() {
-        if (fileListBuffer.isEmpty()) {
-            fetchNextBatch();
-        }
-        return !fileListBuffer.isEmpty();
-    }
-
-    private void fetchNextBatch() {
+    protected void fetchNextBatch(Queue<Document> fileListBuffer, int bufferSize) {
         Map<String, String> relatedFileMap = new HashMap<>();
         Set<Long> relatedFileSet = new HashSet<>();
 
-        // Get next BUFFER_SIZE documents
-        int counter = 0;
-        while (mongoCursor.hasNext() && counter < BUFFER_SIZE) {
+        // Get next bufferSize documents
+        while (mongoCursor.hasNext() && fileListBuffer.size() < bufferSize) {
             Document fileDocument = mongoCursor.next();
 
             if (user != null && studyUid <= 0) {
@@ -112,7 +94,6 @@ public class FileCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIterat
             }
 
             fileListBuffer.add(fileDocument);
-            counter++;
 
             String fileUid = String.valueOf(fileDocument.get(FileDBAdaptor.QueryParams.UID.key()));
             // Extract all the related files
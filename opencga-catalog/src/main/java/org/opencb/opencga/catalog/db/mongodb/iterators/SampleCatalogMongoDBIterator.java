@@ -38,7 +38,7 @@ import java.util.function.Function;
 
 import static org.opencb.opencga.catalog.db.mongodb.MongoDBAdaptor.NATIVE_QUERY;
 
-public class SampleCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIterator<E> {
+public class SampleCatalogMongoDBIterator<E> extends BatchedCatalogMongoDBIterator<E> {
 
     private long studyUid;
     private String user;
@@ -46,12 +46,10 @@ public class SampleCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIter
     private IndividualMongoDBAdaptor individualDBAdaptor;
     private QueryOptions individualQueryOptions;
 
-    private Queue<Document> sampleListBuffer;
+    private AnnotableConverter<? extends Annotable> converter;
 
     private Logger logger;
 
-    private static final int BUFFER_SIZE = 100;
-
     public SampleCatalogMongoDBIterator(MongoDBIterator<Document> mongoCursor, ClientSession clientSession,
                                         AnnotableConverter<? extends Annotable> converter, Function<Document, Document> filter,
                                         IndividualMongoDBAdaptor individualDBAdaptor, QueryOptions options) {
@@ -61,28 +59,20 @@ public class SampleCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIter
     public SampleCatalogMongoDBIterator(MongoDBIterator<Document> mongoCursor, ClientSession clientSession,
                                         AnnotableConverter<? extends Annotable> converter, Function<Document, Document> filter,
                                         IndividualMongoDBAdaptor individualDBAdaptor, long studyUid, String user, QueryOptions options) {
-        super(mongoCursor, clientSession, converter, filter, options);
+        super(mongoCursor, clientSession, null, filter, options);
 
         this.user = user;
         this.studyUid = studyUid;
+        this.converter = converter;
 
         this.individualDBAdaptor = individualDBAdaptor;
         this.individualQueryOptions = createIndividualQueryOptions();
 
-        this.sampleListBuffer = new LinkedList<>();
         this.logger = LoggerFactory.getLogger(SampleCatalogMongoDBIterator.class);
     }
 
     @Override
-    public E next() {
-        Document next = sampleListBuffer.remove();
-
-        if (filter != null) {
-            next = filter.apply(next);
-        }
-
-        addAclInformation(next, options);
-
+    protected E convert(Document next) {
         if (converter != null) {
             return (E) converter.convertToDataModelType(next, options);
         } else {
@@ -90,21 +80,12 @@ public class SampleCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIter
         }
     }
 
-
     @Override
-    public boolean hasNext() {
-        if (sampleListBuffer.isEmpty()) {
-            fetchNextBatch();
-        }
-        return !sampleListBuffer.isEmpty();
-    }
-
-    private void fetchNextBatch() {
-        Map<Long, Document> sampleUidMap = new HashMap<>(BUFFER_SIZE);
+    protected void fetchNextBatch(Queue<Document> sampleListBuffer, int bufferSize) {
+        Map<Long, Document> sampleUidMap = new HashMap<>(bufferSize);
 
-        // Get next BUFFER_SIZE documents
-        int counter = 0;
-        while (mongoCursor.hasNext() && counter < BUFFER_SIZE) {
+        // Get next bufferSize documents
+        while (mongoCursor.hasNext() && sampleListBuffer.size() < bufferSize) {
             Document sampleDocument = mongoCursor.next();
 
             if (user != null && studyUid <= 0) {
@@ -112,7 +93,6 @@ public class SampleCatalogMongoDBIterator<E> extends AnnotableCatalogMongoDBIter
             }
 
             sampleListBuffer.add(sampleDocument);
-            counter++;
 
             // Extract the sample uids
             if (!options.getBoolean(NATIVE_QUERY) && options.getBoolean(ParamConstants.SAMPLE_INCLUDE_INDIVIDUAL_PARAM)) {
@@ -57,6 +57,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -73,6 +74,7 @@ public class JobManager extends ResourceManager<Job> {
     private IOManagerFactory ioManagerFactory;
 
     private final String defaultFacet = "creationYear>>creationMonth;toolId>>executorId";
+    private final List<JobEventListener> jobEventListeners = new CopyOnWriteArrayList<>();
 
     public static final QueryOptions INCLUDE_JOB_IDS = new QueryOptions(QueryOptions.INCLUDE,
             Arrays.asList(JobDBAdaptor.QueryParams.ID.key(), JobDBAdaptor.QueryParams.UID.key(), JobDBAdaptor.QueryParams.UUID.key(),
@@ -92,6 +94,41 @@ public class JobManager extends ResourceManager<Job> {
         return Enums.Resource.JOB;
     }
 
+    /**
+     * Listener to be notified of every job submitted or updated through this manager.
+     * Only the events produced in this JVM are notified.
+     */
+    @FunctionalInterface
+    public interface JobEventListener {
+        /**
+         * Called after a job has been successfully submitted or updated.
+         *
+         * @param studyFqn  Study fqn of the job
+         * @param jobId     Job id
+         */
+        void onJobEvent(String studyFqn, String jobId);
+    }
+
+    public JobManager addJobEventListener(JobEventListener listener) {
+        jobEventListeners.add(listener);
+        return this;
+    }
+
+    public JobManager removeJobEventListener(JobEventListener listener) {
+        jobEventListeners.remove(listener);
+        return this;
+    }
+
+    private void notifyJobEvent(String studyFqn, String jobId) {
+        for (JobEventListener listener : jobEventListeners) {
+            try {
+                listener.onJobEvent(studyFqn, jobId);
+            } catch (RuntimeException e) {
+                logger.warn("Error notifying event of job '{}' to listener {}", jobId, listener, e);
+            }
+        }
+    }
+
 //    @Override
 //    OpenCGAResult<Job> internalGet(long studyUid, String entry, @Nullable Query query, QueryOptions options, String user)
 //            throws CatalogException {
@@ -493,6 +530,7 @@ public class JobManager extends ResourceManager<Job> {
 
             auditManager.auditCreate(userId, Enums.Resource.JOB, job.getId(), "", study.getId(), study.getUuid(), auditParams,
                     new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
+            notifyJobEvent(study.getFqn(), job.getId());
 
             return jobResult;
         } catch (CatalogException e) {
@@ -1159,7 +1197,9 @@ public class JobManager extends ResourceManager<Job> {
 //            updateParams.setErrorLog(getFile(study.getUid(), updateParams.getErrorLog().getPath(), userId));
 //        }
 
-        return jobDBAdaptor.update(job.getUid(), updateMap, options);
+        OpenCGAResult<Job> result = jobDBAdaptor.update(job.getUid(), updateMap, options);
+        notifyJobEvent(study.getFqn(), job.getId());
+        return result;
     }
 
     private File getFile(long studyUid, String path, String userId) throws CatalogException {
@@ -1221,6 +1261,7 @@ public class JobManager extends ResourceManager<Job> {
 
                 OpenCGAResult updateResult = jobDBAdaptor.update(job.getUid(), parameters, options);
                 result.append(updateResult);
+                notifyJobEvent(study.getFqn(), job.getId());
 
                 auditManager.auditUpdate(operationId, userId, Enums.Resource.JOB, job.getId(), job.getUuid(), study.getId(),
                         study.getUuid(), auditParams, new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
@@ -1272,6 +1313,7 @@ public class JobManager extends ResourceManager<Job> {
 
             OpenCGAResult updateResult = jobDBAdaptor.update(job.getUid(), parameters, options);
             result.append(updateResult);
+            notifyJobEvent(study.getFqn(), job.getId());
 
             auditManager.auditUpdate(operationId, userId, Enums.Resource.JOB, job.getId(), job.getUuid(), study.getId(),
                     study.getUuid(), auditParams, new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
@@ -1332,6 +1374,7 @@ public class JobManager extends ResourceManager<Job> {
 
                 OpenCGAResult updateResult = jobDBAdaptor.update(job.getUid(), parameters, options);
                 result.append(updateResult);
+                notifyJobEvent(study.getFqn(), job.getId());
 
                 auditManager.auditUpdate(operationId, userId, Enums.Resource.JOB, job.getId(), job.getUuid(), study.getId(),
                         study.getUuid(), auditParams, new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
@@ -908,6 +908,7 @@ public class StudyManager extends AbstractManager {
 
             // Create the group
             OpenCGAResult result = studyDBAdaptor.createGroup(study.getUid(), group);
+            authorizationManager.invalidateCache(study.getUid());
 
             OpenCGAResult<Group> queryResult = studyDBAdaptor.getGroup(study.getUid(), group.getId(), null);
             queryResult.setTime(queryResult.getTime() + result.getTime());
@@ -1089,6 +1090,7 @@ public class StudyManager extends AbstractManager {
                 default:
                     throw new CatalogException("Unknown action " + action + " found.");
             }
+            authorizationManager.invalidateCache(study.getUid());
 
             auditManager.audit(userId, Enums.Action.UPDATE_USERS_FROM_STUDY_GROUP, Enums.Resource.STUDY, study.getId(),
                     study.getUuid(), study.getId(), study.getUuid(), auditParams,
@@ -1206,6 +1208,7 @@ public class StudyManager extends AbstractManager {
             updateAcl(Collections.singletonList(studyId), groupId, aclParams, ParamUtils.AclAction.RESET, token);
 
             studyDBAdaptor.deleteGroup(study.getUid(), groupId);
+            authorizationManager.invalidateCache(study.getUid());
 
             auditManager.audit(userId, Enums.Action.REMOVE_STUDY_GROUP, Enums.Resource.STUDY, study.getId(), study.getUuid(),
                     study.getId(), study.getUuid(), auditParams, new AuditRecord.Status(AuditRecord.Status.Result.SUCCESS));
@@ -843,6 +843,7 @@ public class UserManager extends AbstractManager {
 
                 // Resync synced groups of user in OpenCGA
                 studyDBAdaptor.resyncUserWithSyncedGroups(userId, remoteGroups, authId);
+                authorizationManager.invalidateCache();
             } catch (CatalogException e) {
                 logger.error("Could not update synced groups for user '" + userId + "'\n" + e.getMessage(), e);
             }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.auth.authentication;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
+import org.opencb.opencga.catalog.exceptions.CatalogAuthenticationException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of a typical REST request reading several claims from a token
+ * with and without previously validated claims.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtManagerBenchmark {
+
+    private JwtManager jwtManager;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        Key key = new SecretKeySpec(TextCodec.BASE64.decode("12345678901234567890123456789012"), SignatureAlgorithm.HS256.getJcaName());
+        jwtManager = new JwtManager(SignatureAlgorithm.HS256.getValue(), key, key);
+        token = jwtManager.createJWTToken("testUser", Collections.singletonMap("groups", "g1"), 3600L);
+    }
+
+    @Benchmark
+    public void cold(Blackhole blackhole) throws CatalogAuthenticationException {
+        jwtManager.clearClaimsCache();
+        readClaims(blackhole);
+    }
+
+    @Benchmark
+    public void warm(Blackhole blackhole) throws CatalogAuthenticationException {
+        readClaims(blackhole);
+    }
+
+    private void readClaims(Blackhole blackhole) throws CatalogAuthenticationException {
+        jwtManager.validateToken(token);
+        blackhole.consume(jwtManager.getUser(token));
+        blackhole.consume(jwtManager.getAudience(token));
+        blackhole.consume(jwtManager.getExpiration(token));
+        blackhole.consume(jwtManager.getClaim(token, "groups"));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtManagerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Created by wasim on 06/06/17.
@@ -80,4 +81,19 @@ public class JwtSessionManagerTest extends GenericTest {
         assertEquals(jwtSessionManager.getUser(nonExpiringToken), "System");
         assertNull(jwtSessionManager.getExpiration(nonExpiringToken));
     }
+
+    @Test
+    public void testClaimsCache() throws CatalogException {
+        long hits = jwtSessionManager.getClaimsCacheHitCount();
+        assertEquals("testUser", jwtSessionManager.getUser(jwtToken));
+        assertSame(jwtSessionManager.validateToken(jwtToken), jwtSessionManager.validateToken(jwtToken));
+        assertEquals(hits + 2, jwtSessionManager.getClaimsCacheHitCount());
+    }
+
+    @Test(expected = CatalogAuthenticationException.class)
+    public void testClaimsCacheWrongKey() throws CatalogAuthenticationException {
+        jwtSessionManager.validateToken(jwtToken);
+        jwtSessionManager.validateToken(jwtToken,
+                new SecretKeySpec(TextCodec.BASE64.decode("wrongKey"), SignatureAlgorithm.HS256.getJcaName()));
+    }
 }
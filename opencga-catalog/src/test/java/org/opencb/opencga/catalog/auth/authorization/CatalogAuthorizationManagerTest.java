@@ -744,6 +744,49 @@ public class CatalogAuthorizationManagerTest extends GenericTest {
         catalogManager.getSampleManager().get(studyFqn, smp1.getId(), null, externalSessionId);
     }
 
+    @Test
+    public void checkSamplePermissionAfterRemovingAcls() throws CatalogException {
+        AuthorizationManager authorizationManager = catalogManager.getAuthorizationManager();
+        authorizationManager.checkSamplePermission(studyUid, smp1.getUid(), externalUser, SampleAclEntry.SamplePermissions.VIEW);
+        // Cached permission
+        authorizationManager.checkSamplePermission(studyUid, smp1.getUid(), externalUser, SampleAclEntry.SamplePermissions.VIEW);
+
+        authorizationManager.removeAcls(Collections.singletonList(externalUser),
+                new AuthorizationManager.CatalogAclParams(Collections.singletonList(smp1.getUid()), null, Enums.Resource.SAMPLE));
+        thrown.expect(CatalogAuthorizationException.class);
+        authorizationManager.checkSamplePermission(studyUid, smp1.getUid(), externalUser, SampleAclEntry.SamplePermissions.VIEW);
+    }
+
+    @Test
+    public void checkSamplePermissionAfterRemovingAclsFromOtherCatalogManager() throws Exception {
+        AuthorizationManager authorizationManager = catalogManager.getAuthorizationManager();
+        authorizationManager.checkSamplePermission(studyUid, smp1.getUid(), externalUser, SampleAclEntry.SamplePermissions.VIEW);
+
+        // Another catalog manager, as if it were another process, with its own cache
+        CatalogManager otherCatalogManager = new CatalogManager(catalogManager.getConfiguration());
+        try {
+            otherCatalogManager.getAuthorizationManager().removeAcls(Collections.singletonList(externalUser),
+                    new AuthorizationManager.CatalogAclParams(Collections.singletonList(smp1.getUid()), null, Enums.Resource.SAMPLE));
+            // Wait for the ACL version to be checked again
+            Thread.sleep(AuthorizationCache.DEFAULT_VERSION_CHECK_MILLIS + 100);
+
+            thrown.expect(CatalogAuthorizationException.class);
+            authorizationManager.checkSamplePermission(studyUid, smp1.getUid(), externalUser, SampleAclEntry.SamplePermissions.VIEW);
+        } finally {
+            otherCatalogManager.close();
+        }
+    }
+
+    @Test
+    public void checkStudyPermissionWithEffectivePermissions() throws CatalogException {
+        AuthorizationManager authorizationManager = catalogManager.getAuthorizationManager();
+        authorizationManager.checkStudyPermission(studyUid, ownerUser, StudyAclEntry.StudyPermissions.WRITE_SAMPLES);
+        authorizationManager.checkStudyPermission(studyUid, studyAdminUser1, StudyAclEntry.StudyPermissions.WRITE_SAMPLES);
+
+        thrown.expect(CatalogAuthorizationException.class);
+        authorizationManager.checkStudyPermission(studyUid, externalUser, StudyAclEntry.StudyPermissions.WRITE_SAMPLES);
+    }
+
     @Test
     public void readSampleNoShared() throws CatalogException {
         thrown.expect(CatalogAuthorizationException.class);
@@ -25,8 +25,10 @@ import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.catalog.db.DBAdaptorFactory;
 import org.opencb.opencga.catalog.db.api.CohortDBAdaptor;
+import org.opencb.opencga.catalog.db.api.DBIterator;
 import org.opencb.opencga.catalog.db.api.FileDBAdaptor;
 import org.opencb.opencga.catalog.db.api.SampleDBAdaptor;
+import org.opencb.opencga.catalog.db.mongodb.iterators.BatchedCatalogMongoDBIterator;
 import org.opencb.opencga.catalog.exceptions.CatalogAuthorizationException;
 import org.opencb.opencga.catalog.exceptions.CatalogDBException;
 import org.opencb.opencga.catalog.exceptions.CatalogException;
@@ -285,6 +287,32 @@ public class SampleMongoDBAdaptorTest {
         assertTrue(result.first().getUid() > 0);
     }
 
+    @Test
+    public void iteratorPrefetchTest() throws Exception {
+        for (int i = 0; i < 250; i++) {
+            catalogSampleDBAdaptor.insert(studyId, new Sample(String.format("SAMPLE_%03d", i), null, "", 1), Collections.emptyList(),
+                    null);
+        }
+
+        Query query = new Query(SampleDBAdaptor.QueryParams.STUDY_UID.key(), studyId);
+        QueryOptions options = new QueryOptions(QueryOptions.SORT, SampleDBAdaptor.QueryParams.ID.key())
+                .append(QueryOptions.INCLUDE, SampleDBAdaptor.QueryParams.ID.key());
+        List<String> expected = catalogSampleDBAdaptor.get(query, options).getResults()
+                .stream().map(Sample::getId).collect(Collectors.toList());
+        assertEquals(252, expected.size());
+
+        options.append(BatchedCatalogMongoDBIterator.BATCH_SIZE, 20)
+                .append(BatchedCatalogMongoDBIterator.PREFETCH, true);
+        List<String> actual = new ArrayList<>();
+        try (DBIterator<Sample> iterator = catalogSampleDBAdaptor.iterator(query, options)) {
+            while (iterator.hasNext()) {
+                actual.add(iterator.next().getId());
+            }
+            assertEquals(252, ((BatchedCatalogMongoDBIterator<Sample>) iterator).getStats().getDocuments());
+        }
+        assertEquals(expected, actual);
+    }
+
     @Test
     public void searchSampleByDateTest() throws Exception {
         long studyId = user3.getProjects().get(0).getStudies().get(0).getUid();
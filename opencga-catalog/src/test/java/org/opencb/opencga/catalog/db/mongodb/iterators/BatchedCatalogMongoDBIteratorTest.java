@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.catalog.db.mongodb.iterators;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.opencb.opencga.catalog.db.mongodb.iterators.BatchedCatalogMongoDBIterator.*;
+
+public class BatchedCatalogMongoDBIteratorTest {
+
+    @Test
+    public void testNextBatchSize() {
+        // On target
+        assertEquals(100, nextBatchSize(100, TARGET_BATCH_TIME_NANOS));
+        // Fast batches grow, at most twice the size
+        assertEquals(150, nextBatchSize(100, TARGET_BATCH_TIME_NANOS * 2 / 3));
+        assertEquals(200, nextBatchSize(100, TimeUnit.MILLISECONDS.toNanos(1)));
+        assertEquals(200, nextBatchSize(100, 0));
+        // Slow batches shrink, at most half the size
+        assertEquals(80, nextBatchSize(100, TARGET_BATCH_TIME_NANOS * 5 / 4));
+        assertEquals(50, nextBatchSize(100, TimeUnit.SECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void testNextBatchSizeLimits() {
+        assertEquals(MIN_BATCH_SIZE, nextBatchSize(MIN_BATCH_SIZE, TimeUnit.SECONDS.toNanos(10)));
+        assertEquals(MAX_BATCH_SIZE, nextBatchSize(MAX_BATCH_SIZE, TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+}
@@ -23,6 +23,7 @@ public class Monitor {
 
     private int daysToRemove;
     private int executionDaemonInterval;
+    private int executionDaemonRescanInterval;
     private int fileDaemonInterval;
 
     private int port;
@@ -35,6 +36,7 @@ public class Monitor {
         final StringBuilder sb = new StringBuilder("Monitor{");
         sb.append("daysToRemove=").append(daysToRemove);
         sb.append(", executionDaemonInterval=").append(executionDaemonInterval);
+        sb.append(", executionDaemonRescanInterval=").append(executionDaemonRescanInterval);
         sb.append(", fileDaemonInterval=").append(fileDaemonInterval);
         sb.append(", port=").append(port);
         sb.append('}');
@@ -59,6 +61,15 @@ public class Monitor {
         return this;
     }
 
+    public int getExecutionDaemonRescanInterval() {
+        return executionDaemonRescanInterval;
+    }
+
+    public Monitor setExecutionDaemonRescanInterval(int executionDaemonRescanInterval) {
+        this.executionDaemonRescanInterval = executionDaemonRescanInterval;
+        return this;
+    }
+
     public int getFileDaemonInterval() {
         return fileDaemonInterval;
     }
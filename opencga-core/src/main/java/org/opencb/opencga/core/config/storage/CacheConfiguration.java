@@ -31,10 +31,29 @@ public class CacheConfiguration {
      * Accepted values are: JSON, Kryo.
      */
     private String serialization;
+    /**
+     * Minimum time, in milliseconds, that a query must take to be cached.
+     */
     private int slowThreshold;
+    /**
+     * Results with more elements than this value will not be cached.
+     */
     private int maxResultSize;
     private String password;
 
+    /**
+     * Maximum memory, in bytes, used by the local in-process cache.
+     */
+    private long localMaxMemory;
+    /**
+     * Time, in seconds, after which a cached result expires.
+     */
+    private int expiration;
+    /**
+     * Use a remote (Redis) cache as second tier, shared between processes.
+     */
+    private boolean remote;
+
     /**
      * Accepted values are: aln(alignment), var(variant).
      */
@@ -46,6 +65,8 @@ public class CacheConfiguration {
     public static final String DEFAULT_HOST = "localhost:6379";
     public static final String DEFAULT_PASSWORD = "";
     public static final int DEFAULT_MAX_FILE_SIZE = 500;
+    public static final long DEFAULT_LOCAL_MAX_MEMORY = 256L * 1024 * 1024;
+    public static final int DEFAULT_EXPIRATION = 300;
 
     public CacheConfiguration() {
         this(DEFAULT_HOST, DEFAULT_ACTVE, DEFAULT_SERIALIZATION, 50, DEFAULT_MAX_FILE_SIZE, DEFAULT_PASSWORD,
@@ -61,6 +82,9 @@ public class CacheConfiguration {
         this.maxResultSize = maxFileSize;
         this.password = password;
         this.allowedTypes = allowedTypes;
+        this.localMaxMemory = DEFAULT_LOCAL_MAX_MEMORY;
+        this.expiration = DEFAULT_EXPIRATION;
+        this.remote = false;
     }
 
     @Override
@@ -72,6 +96,9 @@ public class CacheConfiguration {
                 + ", slowThreshold=" + slowThreshold
                 + ", maxResultSize=" + maxResultSize
                 + ", allowedTypes='" + allowedTypes + '\''
+                + ", localMaxMemory=" + localMaxMemory
+                + ", expiration=" + expiration
+                + ", remote=" + remote
                 + '}');
         return sb.toString();
     }
@@ -138,4 +165,31 @@ public class CacheConfiguration {
         this.allowedTypes = allowedTypes;
         return this;
     }
+
+    public long getLocalMaxMemory() {
+        return localMaxMemory;
+    }
+
+    public CacheConfiguration setLocalMaxMemory(long localMaxMemory) {
+        this.localMaxMemory = localMaxMemory;
+        return this;
+    }
+
+    public int getExpiration() {
+        return expiration;
+    }
+
+    public CacheConfiguration setExpiration(int expiration) {
+        this.expiration = expiration;
+        return this;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+
+    public CacheConfiguration setRemote(boolean remote) {
+        this.remote = remote;
+        return this;
+    }
 }
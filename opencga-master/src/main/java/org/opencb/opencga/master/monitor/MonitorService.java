@@ -75,8 +75,8 @@ public class MonitorService {
         this.catalogManager = new CatalogManager(this.configuration);
         String nonExpiringToken = this.catalogManager.getUserManager().getAdminNonExpiringToken(token);
 
-        executionDaemon = new ExecutionDaemon(configuration.getMonitor().getExecutionDaemonInterval(), nonExpiringToken,
-                catalogManager, appHome);
+        executionDaemon = new ExecutionDaemon(configuration.getMonitor().getExecutionDaemonInterval(),
+                configuration.getMonitor().getExecutionDaemonRescanInterval(), nonExpiringToken, catalogManager, appHome);
 //            fileDaemon = new FileDaemon(configuration.getMonitor().getFileDaemonInterval(),
 //                    configuration.getMonitor().getDaysToRemove(), nonExpiringToken, catalogManager);
 
@@ -122,8 +122,11 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -162,6 +165,17 @@ public class ExecutionDaemon extends MonitorParentDaemon {
     private final Query runningJobsQuery;
     private final QueryOptions queryOptions;
 
+    // Jobs are checked as soon as an event is received. A full rescan of all the jobs is executed every "rescanInterval"
+    // milliseconds, as a safety net for the jobs modified outside this JVM, or executors not able to notify status changes.
+    private final int rescanInterval;
+    private final BlockingQueue<JobEvent> jobEvents = new LinkedBlockingQueue<>();
+    private final JobManager.JobEventListener jobEventListener;
+    private final JobSchedulingMetrics metrics = new JobSchedulingMetrics();
+    // Marks the threads of this daemon. Jobs updated by the daemon itself must not produce new events.
+    private final ThreadLocal<Boolean> daemonThread = ThreadLocal.withInitial(() -> false);
+    // Study of the jobs sent to the batchExecutor, which only notifies the job id
+    private final Map<String, String> executedJobStudies = new ConcurrentHashMap<>();
+
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     static {
@@ -244,7 +258,13 @@ public class ExecutionDaemon extends MonitorParentDaemon {
     }
 
     public ExecutionDaemon(int interval, String token, CatalogManager catalogManager, String appHome) throws CatalogDBException {
+        this(interval, interval, token, catalogManager, appHome);
+    }
+
+    public ExecutionDaemon(int interval, int rescanInterval, String token, CatalogManager catalogManager, String appHome)
+            throws CatalogDBException {
         super(interval, token, catalogManager);
+        this.rescanInterval = rescanInterval > 0 ? rescanInterval : interval;
 
         this.jobManager = catalogManager.getJobManager();
         this.fileManager = catalogManager.getFileManager();
@@ -260,13 +280,30 @@ public class ExecutionDaemon extends MonitorParentDaemon {
                 .append(QueryOptions.SORT, Arrays.asList(JobDBAdaptor.QueryParams.PRIORITY.key(),
                         JobDBAdaptor.QueryParams.CREATION_DATE.key()))
                 .append(QueryOptions.ORDER, QueryOptions.ASCENDING);
+
+        // Any job submitted or updated might unblock some pending job
+        jobEventListener = (studyFqn, jobId) -> {
+            if (!daemonThread.get()) {
+                addJobEvent(new JobEvent(studyFqn, jobId, false));
+            }
+        };
+        jobManager.addJobEventListener(jobEventListener);
+        batchExecutor.addStatusChangeListener((jobId, status) -> addJobEvent(new JobEvent(executedJobStudies.get(jobId), jobId, true)));
     }
 
     @Override
     public void run() {
+        daemonThread.set(true);
+        long nextRescan = 0;
         while (!exit) {
+            List<JobEvent> events = new ArrayList<>();
             try {
-                Thread.sleep(interval);
+                long wait = nextRescan - System.currentTimeMillis();
+                JobEvent event = wait > 0 ? jobEvents.poll(wait, TimeUnit.MILLISECONDS) : jobEvents.poll();
+                if (event != null) {
+                    events.add(event);
+                    jobEvents.drainTo(events);
+                }
             } catch (InterruptedException e) {
                 if (!exit) {
                     e.printStackTrace();
@@ -274,11 +311,17 @@ public class ExecutionDaemon extends MonitorParentDaemon {
             }
 
             try {
-                checkJobs();
+                if (System.currentTimeMillis() >= nextRescan) {
+                    checkJobs();
+                    nextRescan = System.currentTimeMillis() + rescanInterval;
+                } else if (!events.isEmpty()) {
+                    checkJobs(events);
+                }
             } catch (Exception e) {
                 logger.error("Catch exception " + e.getMessage(), e);
             }
         }
+        jobManager.removeJobEventListener(jobEventListener);
 
         try {
             logger.info("Attempt to shutdown webhook executor");
@@ -306,7 +349,9 @@ public class ExecutionDaemon extends MonitorParentDaemon {
         } catch (CatalogException e) {
             logger.error("{}", e.getMessage(), e);
         }
+        metrics.addFullScan();
         logger.info("----- EXECUTION DAEMON  ----- pending={}, queued={}, running={}", pendingJobs, queuedJobs, runningJobs);
+        logger.info("Job scheduling metrics: {}", metrics);
 
             /*
             PENDING JOBS
@@ -324,6 +369,68 @@ public class ExecutionDaemon extends MonitorParentDaemon {
         checkRunningJobs();
     }
 
+    /**
+     * Check only the jobs affected by the given events.
+     *
+     * Executor events trigger a check of the job that changed its status. Catalog events, or jobs finishing,
+     * might unblock some pending job, so they trigger a check of the pending jobs.
+     * Jobs updated by this daemon do not produce catalog events.
+     *
+     * @param events List of events received since the last check.
+     */
+    protected void checkJobs(List<JobEvent> events) {
+        metrics.addEventCheck();
+        Map<String, Set<String>> statusChangedJobs = new LinkedHashMap<>();
+        boolean checkPending = false;
+        for (JobEvent event : events) {
+            if (!event.isStatusChange()) {
+                checkPending = true;
+            } else if (event.getStudyFqn() == null) {
+                // Job not executed by this daemon. Will be checked on the next rescan
+                logger.debug("Ignore status change of job '{}' from unknown study", event.getJobId());
+            } else {
+                statusChangedJobs.computeIfAbsent(event.getStudyFqn(), k -> new LinkedHashSet<>()).add(event.getJobId());
+            }
+        }
+        logger.debug("Received {} job events. Jobs with status changes: {}", events.size(), statusChangedJobs);
+
+        for (Map.Entry<String, Set<String>> entry : statusChangedJobs.entrySet()) {
+            checkPending = true;
+            Query query = new Query(JobDBAdaptor.QueryParams.ID.key(), new ArrayList<>(entry.getValue()))
+                    .append(JobDBAdaptor.QueryParams.INTERNAL_STATUS_NAME.key(),
+                            Arrays.asList(Enums.ExecutionStatus.QUEUED, Enums.ExecutionStatus.RUNNING));
+            try (DBIterator<Job> iterator = jobManager.iterator(entry.getKey(), query, queryOptions, token)) {
+                while (iterator.hasNext()) {
+                    try {
+                        Job job = iterator.next();
+                        if (Enums.ExecutionStatus.QUEUED.equals(job.getInternal().getStatus().getName())) {
+                            checkQueuedJob(job);
+                        } else {
+                            checkRunningJob(job);
+                        }
+                    } catch (Exception e) {
+                        logger.error("{}", e.getMessage(), e);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("{}", e.getMessage(), e);
+            }
+        }
+
+        if (checkPending) {
+            checkPendingJobs();
+        }
+    }
+
+    private void addJobEvent(JobEvent event) {
+        metrics.addEvent();
+        jobEvents.add(event);
+    }
+
+    public JobSchedulingMetrics getMetrics() {
+        return metrics;
+    }
+
     protected void checkRunningJobs() {
         int handledRunningJobs = 0;
         try (DBIterator<Job> iterator = jobManager.iterator(runningJobsQuery, queryOptions, token)) {
@@ -417,6 +524,7 @@ public class ExecutionDaemon extends MonitorParentDaemon {
                         job.getOutDir().getUri().resolve(getLogFileName(job)).getPath());
                 logger.info("[{}] - stderr file: '{}'", job.getId(),
                         job.getOutDir().getUri().resolve(getErrorLogFileName(job)).getPath());
+                metrics.getQueuedToRunning().add(job.getInternal().getStatus().getDate(), new Date());
                 return setStatus(job, new Enums.ExecutionStatus(Enums.ExecutionStatus.RUNNING));
             case Enums.ExecutionStatus.ABORTED:
             case Enums.ExecutionStatus.ERROR:
@@ -573,11 +681,13 @@ public class ExecutionDaemon extends MonitorParentDaemon {
         try {
             String queue = getQueue(tool);
             logger.info("Queue job '{}' on queue '{}'", job.getId(), queue);
+            executedJobStudies.put(job.getId(), job.getStudy().getId());
             batchExecutor.execute(job.getId(), queue, authenticatedCommandLine, stdout, stderr);
         } catch (Exception e) {
             logger.error("Error executing job {}.", job.getId(), e);
             return abortJob(job, "Error executing job. " + e.getMessage());
         }
+        metrics.getPendingToQueued().add(job.getCreationDate(), new Date());
 
         job.getInternal().setStatus(updateParams.getInternal().getStatus());
         notifyStatusChange(job);
@@ -715,7 +825,9 @@ public class ExecutionDaemon extends MonitorParentDaemon {
                     .append("files", folder.getUuid())
                     .append("study", job.getStudy().getId())
                     .append(Constants.SKIP_TRASH, true);
-            jobManager.submit(job.getStudy().getId(), FileDeleteTask.ID, Enums.Priority.LOW, params, token);
+            Job deleteJob = jobManager.submit(job.getStudy().getId(), FileDeleteTask.ID, Enums.Priority.LOW, params, token).first();
+            // Jobs submitted by the daemon do not produce events
+            addJobEvent(new JobEvent(job.getStudy().getId(), deleteJob.getId(), false));
             throw new CatalogException("Cannot create job directory '" + folder.getUri() + "' for path '" + folder.getPath() + "'");
         }
 
@@ -1135,8 +1247,13 @@ public class ExecutionDaemon extends MonitorParentDaemon {
     }
 
     private void notifyStatusChange(Job job) {
+        String status = job.getInternal().getStatus().getName();
+        if (!Enums.ExecutionStatus.QUEUED.equals(status) && !Enums.ExecutionStatus.RUNNING.equals(status)) {
+            executedJobStudies.remove(job.getId());
+        }
         if (job.getInternal().getWebhook().getUrl() != null) {
             executor.submit(() -> {
+                daemonThread.set(true);
                 try {
                     sendWebhookNotification(job, job.getInternal().getWebhook().getUrl());
                 } catch (URISyntaxException | CatalogException | CloneNotSupportedException e) {
@@ -1193,4 +1310,28 @@ public class ExecutionDaemon extends MonitorParentDaemon {
         return job.getId() + ".log";
     }
 
+    static final class JobEvent {
+        private final String studyFqn;
+        private final String jobId;
+        // True if the event comes from the BatchExecutor, false if it comes from the catalog
+        private final boolean statusChange;
+
+        JobEvent(String studyFqn, String jobId, boolean statusChange) {
+            this.studyFqn = studyFqn;
+            this.jobId = jobId;
+            this.statusChange = statusChange;
+        }
+
+        public String getStudyFqn() {
+            return studyFqn;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public boolean isStatusChange() {
+            return statusChange;
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.master.monitor.daemons;
+
+import org.opencb.opencga.core.common.TimeUtils;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduling metrics of the {@link ExecutionDaemon}.
+ *
+ * Tracks the time that jobs spend waiting in each status before being moved to the next one,
+ * and how many times the daemon was woken up by an event or by the periodic rescan.
+ */
+public class JobSchedulingMetrics {
+
+    private final WaitTime pendingToQueued = new WaitTime();
+    private final WaitTime queuedToRunning = new WaitTime();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong eventChecks = new AtomicLong();
+    private final AtomicLong fullScans = new AtomicLong();
+
+    public WaitTime getPendingToQueued() {
+        return pendingToQueued;
+    }
+
+    public WaitTime getQueuedToRunning() {
+        return queuedToRunning;
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    public long getEventChecks() {
+        return eventChecks.get();
+    }
+
+    public long getFullScans() {
+        return fullScans.get();
+    }
+
+    void addEvent() {
+        events.incrementAndGet();
+    }
+
+    void addEventCheck() {
+        eventChecks.incrementAndGet();
+    }
+
+    void addFullScan() {
+        fullScans.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("JobSchedulingMetrics{");
+        sb.append("pendingToQueued=").append(pendingToQueued);
+        sb.append(", queuedToRunning=").append(queuedToRunning);
+        sb.append(", events=").append(events);
+        sb.append(", eventChecks=").append(eventChecks);
+        sb.append(", fullScans=").append(fullScans);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Accumulated wait time between two job status.
+     */
+    public static class WaitTime {
+        private long count;
+        private long totalMillis;
+        private long maxMillis;
+
+        /**
+         * Register a status transition.
+         *
+         * @param from  Date, in OpenCGA time format, when the job entered the previous status.
+         * @param to    Date when the job entered the new status.
+         */
+        void add(String from, Date to) {
+            Date fromDate = from == null ? null : TimeUtils.toDate(from);
+            if (fromDate == null) {
+                return;
+            }
+            add(Math.max(0, to.getTime() - fromDate.getTime()));
+        }
+
+        synchronized void add(long millis) {
+            count++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public synchronized long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public synchronized double getAvgMillis() {
+            return count == 0 ? 0 : ((double) totalMillis) / count;
+        }
+
+        @Override
+        public synchronized String toString() {
+            final StringBuilder sb = new StringBuilder("{");
+            sb.append("count=").append(count);
+            sb.append(", avg=").append(TimeUtils.durationToString((long) getAvgMillis()));
+            sb.append(", max=").append(TimeUtils.durationToString(maxMillis));
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+}
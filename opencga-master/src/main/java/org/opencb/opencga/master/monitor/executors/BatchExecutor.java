@@ -17,6 +17,7 @@
 package org.opencb.opencga.master.monitor.executors;
 
 import java.nio.file.Path;
+import java.util.function.BiConsumer;
 
 /**
  * Created by pfurio on 22/08/16.
@@ -50,6 +51,16 @@ public interface BatchExecutor {
 
     boolean isExecutorAlive();
 
+    /**
+     * Register a listener to be notified whenever the executor detects a status change of a job.
+     * The listener receives the job id and the new status. Executors that are not able to detect
+     * status changes by themselves will ignore the listener, and their jobs will be checked by polling.
+     *
+     * @param listener Status change listener
+     */
+    default void addStatusChangeListener(BiConsumer<String, String> listener) {
+    }
+
     default String getCommandLine(String commandLine) {
         return getCommandLine(commandLine, null, null);
     }
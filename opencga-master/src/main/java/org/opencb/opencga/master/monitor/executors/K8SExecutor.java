@@ -38,6 +38,8 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 
 public class K8SExecutor implements BatchExecutor {
@@ -96,6 +98,9 @@ public class K8SExecutor implements BatchExecutor {
     private static Logger logger = LoggerFactory.getLogger(K8SExecutor.class);
 
     private final Map<String, Pair<Instant, String>> jobStatusCache = new ConcurrentHashMap<>();
+    // Map from k8s job name to OpenCGA job id. Used to notify status changes received from the watchers.
+    private final Map<String, String> jobNameToJobId = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, String>> statusChangeListeners = new CopyOnWriteArrayList<>();
     private final Watch podsWatcher;
     private final Watch jobsWatcher;
     private String imagePullPolicy;
@@ -173,9 +178,10 @@ public class K8SExecutor implements BatchExecutor {
                 logger.debug("Received event '{}' from JOB '{}'", action, k8sJobName);
                 if (action == Action.DELETED) {
                     jobStatusCache.remove(k8sJobName);
+                    jobNameToJobId.remove(k8sJobName);
                 } else {
                     String status = getStatusFromK8sJob(k8Job, k8sJobName);
-                    jobStatusCache.put(k8sJobName, Pair.of(Instant.now(), status));
+                    updateStatusCache(k8sJobName, status);
                 }
             }
 
@@ -198,9 +204,10 @@ public class K8SExecutor implements BatchExecutor {
                 }
                 if (action == Action.DELETED) {
                     jobStatusCache.remove(k8jobName);
+                    jobNameToJobId.remove(k8jobName);
                 } else {
                     String status = getStatusFromPod(pod);
-                    jobStatusCache.put(k8jobName, Pair.of(Instant.now(), status));
+                    updateStatusCache(k8jobName, status);
                 }
             }
 
@@ -263,10 +270,32 @@ public class K8SExecutor implements BatchExecutor {
         if (shouldAddDockerDaemon(queue)) {
             k8sJob.getSpec().getTemplate().getSpec().getContainers().add(dockerDaemonSidecar);
         }
+        jobNameToJobId.put(jobName, jobId);
         jobStatusCache.put(jobName, Pair.of(Instant.now(), Enums.ExecutionStatus.QUEUED));
         getKubernetesClient().batch().jobs().inNamespace(namespace).create(k8sJob);
     }
 
+    private void updateStatusCache(String k8sJobName, String status) {
+        Pair<Instant, String> old = jobStatusCache.put(k8sJobName, Pair.of(Instant.now(), status));
+        if (old == null || !old.getValue().equals(status)) {
+            String jobId = jobNameToJobId.get(k8sJobName);
+            if (jobId != null) {
+                for (BiConsumer<String, String> listener : statusChangeListeners) {
+                    try {
+                        listener.accept(jobId, status);
+                    } catch (RuntimeException e) {
+                        logger.warn("Error notifying status change of job {}", jobId, e);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addStatusChangeListener(BiConsumer<String, String> listener) {
+        statusChangeListeners.add(listener);
+    }
+
     private boolean shouldAddDockerDaemon(String queue) {
 //        return queue != null && queue.toLowerCase().contains("docker");
         return true;
@@ -29,9 +29,12 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
 
 /**
  * Created by pfurio on 22/08/16.
@@ -45,6 +48,7 @@ public class LocalExecutor implements BatchExecutor {
     private final ExecutorService threadPool;
     private final Map<String, String> jobStatus;
     private final int maxConcurrentJobs;
+    private final List<BiConsumer<String, String>> statusChangeListeners = new CopyOnWriteArrayList<>();
 
     public LocalExecutor(Execution execution) {
         logger = LoggerFactory.getLogger(LocalExecutor.class);
@@ -60,12 +64,12 @@ public class LocalExecutor implements BatchExecutor {
 
     @Override
     public void execute(String jobId, String queue, String commandLine, Path stdout, Path stderr) throws Exception {
-        jobStatus.put(jobId, Enums.ExecutionStatus.QUEUED);
+        setStatus(jobId, Enums.ExecutionStatus.QUEUED);
         Runnable runnable = () -> {
             try {
                 Thread.currentThread().setName("LocalExecutor-" + nextThreadNum());
                 logger.info("Ready to run - {}", commandLine);
-                jobStatus.put(jobId, Enums.ExecutionStatus.RUNNING);
+                setStatus(jobId, Enums.ExecutionStatus.RUNNING);
                 Command com = new Command(commandLine);
 
                 DataOutputStream dataOutputStream = new DataOutputStream(new FileOutputStream(stdout.toFile()));
@@ -79,7 +83,7 @@ public class LocalExecutor implements BatchExecutor {
                     com.setStatus(RunnableProcess.Status.KILLED);
                     com.setExitValue(-2);
                     closeOutputStreams(com);
-                    jobStatus.put(jobId, Enums.ExecutionStatus.ERROR);
+                    setStatus(jobId, Enums.ExecutionStatus.ERROR);
                 });
 
                 logger.info("==========================================");
@@ -102,18 +106,29 @@ public class LocalExecutor implements BatchExecutor {
                 logger.info("==========================================");
 
                 if (com.getStatus().equals(RunnableProcess.Status.DONE)) {
-                    jobStatus.put(jobId, Enums.ExecutionStatus.DONE);
+                    setStatus(jobId, Enums.ExecutionStatus.DONE);
                 } else {
-                    jobStatus.put(jobId, Enums.ExecutionStatus.ERROR);
+                    setStatus(jobId, Enums.ExecutionStatus.ERROR);
                 }
             } catch (Throwable throwable) {
                 logger.error("Error running job " + jobId, throwable);
-                jobStatus.put(jobId, Enums.ExecutionStatus.ERROR);
+                setStatus(jobId, Enums.ExecutionStatus.ERROR);
             }
         };
         threadPool.submit(runnable);
     }
 
+    private void setStatus(String jobId, String status) {
+        jobStatus.put(jobId, status);
+        for (BiConsumer<String, String> listener : statusChangeListeners) {
+            try {
+                listener.accept(jobId, status);
+            } catch (RuntimeException e) {
+                logger.warn("Error notifying status change of job {}", jobId, e);
+            }
+        }
+    }
+
     private static synchronized int nextThreadNum() {
         return threadInitNumber++;
     }
@@ -151,6 +166,11 @@ public class LocalExecutor implements BatchExecutor {
         return true;
     }
 
+    @Override
+    public void addStatusChangeListener(BiConsumer<String, String> listener) {
+        statusChangeListeners.add(listener);
+    }
+
     private void closeOutputStreams(Command command) {
         /** Close output streams **/
         if (command.getOutputOutputStream() != null) {
@@ -146,6 +146,29 @@ public class ExecutionDaemonTest extends AbstractManagerTest {
         assertEquals(JobInternalWebhook.Status.ERROR, job.getInternal().getWebhook().getStatus().get("QUEUED"));
     }
 
+    @Test
+    public void testEventDrivenCheck() throws Exception {
+        HashMap<String, Object> params = new HashMap<>();
+        long events = daemon.getMetrics().getEvents();
+        String jobId = catalogManager.getJobManager().submit(studyFqn, "files-delete", Enums.Priority.MEDIUM, params, token).first().getId();
+        assertTrue(daemon.getMetrics().getEvents() > events);
+
+        // Catalog events trigger the check of pending jobs
+        daemon.checkJobs(Collections.singletonList(new ExecutionDaemon.JobEvent(studyFqn, jobId, false)));
+        assertEquals(Enums.ExecutionStatus.QUEUED, getJob(jobId).getInternal().getStatus().getName());
+        assertEquals(1, daemon.getMetrics().getPendingToQueued().getCount());
+
+        // Executor events trigger the check of the job that changed
+        executor.jobStatus.put(jobId, Enums.ExecutionStatus.RUNNING);
+        // Events are scoped by study
+        daemon.checkJobs(Collections.singletonList(new ExecutionDaemon.JobEvent("other@project:study", jobId, true)));
+        assertEquals(Enums.ExecutionStatus.QUEUED, getJob(jobId).getInternal().getStatus().getName());
+        daemon.checkJobs(Collections.singletonList(new ExecutionDaemon.JobEvent(studyFqn, jobId, true)));
+        assertEquals(Enums.ExecutionStatus.RUNNING, getJob(jobId).getInternal().getStatus().getName());
+        assertEquals(1, daemon.getMetrics().getQueuedToRunning().getCount());
+        assertEquals(3, daemon.getMetrics().getEventChecks());
+    }
+
     @Test
     public void testCreateOutDir() throws Exception {
         HashMap<String, Object> params = new HashMap<>();
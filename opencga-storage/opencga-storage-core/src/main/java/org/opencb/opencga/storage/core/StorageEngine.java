@@ -24,6 +24,7 @@ import org.opencb.opencga.storage.core.io.managers.IOConnectorProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
@@ -122,6 +123,7 @@ public abstract class StorageEngine<DBADAPTOR> implements AutoCloseable {
                             URI inputFileUri, URI outdirUri) throws StoragePipelineException {
         result.setLoadExecuted(true);
         long millis = System.currentTimeMillis();
+        updateStartTime(result, millis);
         try {
             logger.info("PreLoad '{}'", inputFileUri);
             inputFileUri = storagePipeline.preLoad(inputFileUri, outdirUri);
@@ -140,6 +142,7 @@ public abstract class StorageEngine<DBADAPTOR> implements AutoCloseable {
         } finally {
             result.setLoadTimeMillis(System.currentTimeMillis() - millis);
             result.setLoadStats(storagePipeline.getLoadStats());
+            updateWallTimeAndTransformedFileSize(result);
         }
     }
 
@@ -147,6 +150,7 @@ public abstract class StorageEngine<DBADAPTOR> implements AutoCloseable {
                                 URI inputFileUri, URI outdirUri) throws StoragePipelineException {
         result.setTransformExecuted(true);
         long millis = System.currentTimeMillis();
+        updateStartTime(result, millis);
         try {
             logger.info("PreTransform '{}'", inputFileUri);
             inputFileUri = storagePipeline.preTransform(inputFileUri);
@@ -165,10 +169,45 @@ public abstract class StorageEngine<DBADAPTOR> implements AutoCloseable {
         } finally {
             result.setTransformTimeMillis(System.currentTimeMillis() - millis);
             result.setTransformStats(storagePipeline.getTransformStats());
+            updateWallTimeAndTransformedFileSize(result);
         }
         return inputFileUri;
     }
 
+    /**
+     * Mark the start of a step. Only the first step sets the start time of the result.
+     *
+     * @param result StoragePipelineResult to update
+     * @param millis Start timestamp of the step
+     */
+    protected void updateStartTime(StoragePipelineResult result, long millis) {
+        if (result.getStartTimeMillis() == 0) {
+            result.setStartTimeMillis(millis);
+        }
+    }
+
+    /**
+     * Update the wall time since the start of the first step, and the size of the intermediate transformed file, if any.
+     *
+     * @param result StoragePipelineResult to update
+     */
+    protected void updateWallTimeAndTransformedFileSize(StoragePipelineResult result) {
+        if (result.getStartTimeMillis() > 0) {
+            result.setWallTimeMillis(System.currentTimeMillis() - result.getStartTimeMillis());
+        }
+        URI transformResult = result.getTransformResult();
+        if (transformResult != null) {
+            try {
+                // The transformed file may not exist if it was streamed into the load step
+                if (ioConnectorProvider.exists(transformResult)) {
+                    result.setTransformedFileSize(ioConnectorProvider.size(transformResult));
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to get size of '{}'", transformResult, e);
+            }
+        }
+    }
+
     public abstract DBADAPTOR getDBAdaptor() throws StorageEngineException;
 
     public abstract void testConnection() throws StorageEngineException;
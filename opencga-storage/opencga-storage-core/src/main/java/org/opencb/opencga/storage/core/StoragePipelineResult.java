@@ -77,6 +77,21 @@ public class StoragePipelineResult {
      */
     protected Exception loadError;
 
+    /**
+     * Timestamp in milliseconds of the start of the first executed step.
+     */
+    protected long startTimeMillis;
+    /**
+     * Wall time in milliseconds from the start of the first executed step to the end of the last one.
+     * Unlike the sum of the transform and load times, it does not count twice a transform streamed into the load.
+     */
+    protected long wallTimeMillis;
+    /**
+     * Size in bytes of the intermediate transformed file. Zero if the transformed variants were streamed into the load
+     * step without writing the file.
+     */
+    protected long transformedFileSize;
+
     public StoragePipelineResult() {
         this(null);
     }
@@ -129,7 +144,11 @@ public class StoragePipelineResult {
                 + "\tloadExecuted : " + loadExecuted + ",\n "
                 + "\tloadError : " + loadError + ",\n "
                 + "\tloadTimeMillis : " + loadTimeMillis + ",\n "
-                + "\tloadStats : " + loadStats
+                + "\tloadStats : " + loadStats + ",\n "
+
+                + "\tstartTimeMillis : " + startTimeMillis + ",\n "
+                + "\twallTimeMillis : " + wallTimeMillis + ",\n "
+                + "\ttransformedFileSize : " + transformedFileSize
                 + "\n}";
     }
 
@@ -276,4 +295,31 @@ public class StoragePipelineResult {
         this.loadStats = loadStats;
         return this;
     }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public StoragePipelineResult setStartTimeMillis(long startTimeMillis) {
+        this.startTimeMillis = startTimeMillis;
+        return this;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    public StoragePipelineResult setWallTimeMillis(long wallTimeMillis) {
+        this.wallTimeMillis = wallTimeMillis;
+        return this;
+    }
+
+    public long getTransformedFileSize() {
+        return transformedFileSize;
+    }
+
+    public StoragePipelineResult setTransformedFileSize(long transformedFileSize) {
+        this.transformedFileSize = transformedFileSize;
+        return this;
+    }
 }
@@ -5,7 +5,9 @@ import org.opencb.opencga.core.config.ConfigurationOption;
 
 public enum AlignmentStorageOptions implements ConfigurationOption {
 
-    BIG_WIG_WINDOWS_SIZE("bigWigWindowsSize", BamManager.DEFAULT_WINDOW_SIZE);
+    BIG_WIG_WINDOWS_SIZE("bigWigWindowsSize", BamManager.DEFAULT_WINDOW_SIZE),
+    // Bin sizes of the coverage pyramid, from finer to coarser. Empty to skip the coverage pyramid.
+    COVERAGE_PYRAMID_BIN_SIZES("coveragePyramidBinSizes", "64,4096,262144");
 
     private final String key;
     private final Object value;
@@ -25,14 +25,30 @@ import org.opencb.biodata.tools.alignment.iterators.BamIterator;
 public class ProtoAlignmentIterator extends AlignmentIterator<Reads.ReadAlignment> {
 
     private BamIterator<Reads.ReadAlignment> protoIterator;
+    private AutoCloseable onClose;
 
     public ProtoAlignmentIterator(BamIterator<Reads.ReadAlignment> protoIterator) {
+        this(protoIterator, null);
+    }
+
+    /**
+     * @param protoIterator Iterator to wrap
+     * @param onClose       Resource to close after closing the iterator. e.g. the BamManager
+     */
+    public ProtoAlignmentIterator(BamIterator<Reads.ReadAlignment> protoIterator, AutoCloseable onClose) {
         this.protoIterator = protoIterator;
+        this.onClose = onClose;
     }
 
     @Override
     public void close() throws Exception {
-        protoIterator.close();
+        try {
+            protoIterator.close();
+        } finally {
+            if (onClose != null) {
+                onClose.close();
+            }
+        }
     }
 
     @Override
@@ -25,14 +25,30 @@ import org.opencb.biodata.tools.alignment.iterators.BamIterator;
 public class SamRecordAlignmentIterator extends AlignmentIterator<SAMRecord> {
 
     private BamIterator<SAMRecord> bamIterator;
+    private AutoCloseable onClose;
 
     public SamRecordAlignmentIterator(BamIterator<SAMRecord> bamIterator) {
+        this(bamIterator, null);
+    }
+
+    /**
+     * @param bamIterator Iterator to wrap
+     * @param onClose     Resource to close after closing the iterator. e.g. the BamManager
+     */
+    public SamRecordAlignmentIterator(BamIterator<SAMRecord> bamIterator, AutoCloseable onClose) {
         this.bamIterator = bamIterator;
+        this.onClose = onClose;
     }
 
     @Override
     public void close() throws Exception {
-        bamIterator.close();
+        try {
+            bamIterator.close();
+        } finally {
+            if (onClose != null) {
+                onClose.close();
+            }
+        }
     }
 
     @Override
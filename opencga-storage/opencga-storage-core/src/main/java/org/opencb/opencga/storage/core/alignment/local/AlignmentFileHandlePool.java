@@ -0,0 +1,333 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.alignment.local;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Bounded pool of open file handles (e.g. BamManager or BigWigManager), keyed by path and modification time.
+ *
+ * Each {@link #lease} references one open handle, that goes back to the pool when the lease is closed. Handles are reference
+ * counted, and only closed once no lease references them. Shared pools give the same handle to concurrent leases, so the handles
+ * must be thread safe. Otherwise, each handle is referenced by at most one lease at a time.
+ *
+ * The pool keeps at most {@code maxHandles} open handles. Only idle handles, not referenced by any lease, are evicted, the least
+ * recently used first. If all the handles are in use, new leases wait for a handle to be released. Handles opened over a file
+ * that has been modified since are not reused.
+ *
+ * @param <T> Type of handle
+ */
+public class AlignmentFileHandlePool<T> implements Closeable {
+
+    private final Opener<T> opener;
+    private final Closer<T> closer;
+    private final int maxHandles;
+    private final boolean shared;
+    private final long maxWaitMillis;
+    // Most recently used first
+    private final LinkedList<Handle<T>> handles = new LinkedList<>();
+    // Handles being opened. Count against the maximum number of handles
+    private int opening;
+    private boolean closed;
+
+    private static Logger logger = LoggerFactory.getLogger(AlignmentFileHandlePool.class);
+
+    @FunctionalInterface
+    public interface Opener<T> {
+        T open(Path path) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Closer<T> {
+        void close(T handle) throws Exception;
+    }
+
+    /**
+     * Pool of exclusive handles.
+     *
+     * @param opener        Opens a handle
+     * @param closer        Closes a handle
+     * @param maxHandles    Maximum number of open handles
+     * @param maxWaitMillis Maximum time to wait for a handle when all of them are in use
+     */
+    public AlignmentFileHandlePool(Opener<T> opener, Closer<T> closer, int maxHandles, long maxWaitMillis) {
+        this(opener, closer, maxHandles, maxWaitMillis, false);
+    }
+
+    /**
+     * @param opener        Opens a handle
+     * @param closer        Closes a handle
+     * @param maxHandles    Maximum number of open handles
+     * @param maxWaitMillis Maximum time to wait for a handle when all of them are in use
+     * @param shared        Share the handles between concurrent leases. Only for thread safe handles.
+     */
+    public AlignmentFileHandlePool(Opener<T> opener, Closer<T> closer, int maxHandles, long maxWaitMillis, boolean shared) {
+        if (maxHandles <= 0) {
+            throw new IllegalArgumentException("Expected a positive number of handles. Got " + maxHandles);
+        }
+        this.opener = opener;
+        this.closer = closer;
+        this.maxHandles = maxHandles;
+        this.maxWaitMillis = maxWaitMillis;
+        this.shared = shared;
+    }
+
+    /**
+     * Get an open handle for the given file. Reuses an idle handle, or a shared handle, if possible.
+     *
+     * @param path File to open
+     * @return Lease to be closed after using the handle
+     * @throws IOException if the file can not be opened, or no handle was released in time
+     */
+    public Lease<T> lease(Path path) throws IOException {
+        String file = path.toAbsolutePath().normalize().toString();
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        List<Handle<T>> toClose = new ArrayList<>();
+        try {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + maxWaitMillis;
+                while (true) {
+                    if (closed) {
+                        throw new IllegalStateException("Pool closed");
+                    }
+                    Handle<T> handle = find(file, lastModified, toClose);
+                    if (handle != null) {
+                        handle.references++;
+                        handles.remove(handle);
+                        handles.addFirst(handle);
+                        return new Lease<>(this, handle);
+                    }
+                    if (handles.size() + opening >= maxHandles) {
+                        evictIdle(toClose);
+                    }
+                    if (handles.size() + opening < maxHandles) {
+                        opening++;
+                        break;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new IOException("Unable to open file " + file + ". All the " + maxHandles + " handles are in use");
+                    }
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for a handle of file " + file, e);
+                    }
+                }
+            }
+        } finally {
+            closeAll(toClose);
+        }
+
+        Handle<T> handle = null;
+        try {
+            handle = new Handle<>(file, lastModified, opener.open(path));
+        } finally {
+            synchronized (this) {
+                opening--;
+                if (handle != null) {
+                    handle.references++;
+                    // Pool closed while opening the handle. Close once released
+                    handle.reusable = !closed;
+                    handles.addFirst(handle);
+                }
+                notifyAll();
+            }
+        }
+        return new Lease<>(this, handle);
+    }
+
+    /**
+     * @return Number of open handles referenced by at least one lease
+     */
+    public synchronized int getLeased() {
+        int leased = 0;
+        for (Handle<T> handle : handles) {
+            if (handle.references > 0) {
+                leased++;
+            }
+        }
+        return leased;
+    }
+
+    /**
+     * @return Number of open handles not in use
+     */
+    public synchronized int getIdle() {
+        return handles.size() - getLeased();
+    }
+
+    @Override
+    public void close() {
+        List<Handle<T>> toClose = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            Iterator<Handle<T>> iterator = handles.iterator();
+            while (iterator.hasNext()) {
+                Handle<T> handle = iterator.next();
+                // Handles in use are closed when released
+                handle.reusable = false;
+                if (handle.references == 0) {
+                    iterator.remove();
+                    toClose.add(handle);
+                }
+            }
+            notifyAll();
+        }
+        closeAll(toClose);
+    }
+
+    // Find a reusable handle. Idle handles over an old version of the file are removed.
+    private Handle<T> find(String file, long lastModified, List<Handle<T>> toClose) {
+        Handle<T> found = null;
+        Iterator<Handle<T>> iterator = handles.iterator();
+        while (iterator.hasNext()) {
+            Handle<T> handle = iterator.next();
+            if (!handle.file.equals(file)) {
+                continue;
+            }
+            if (handle.lastModified != lastModified) {
+                // The file has changed
+                handle.reusable = false;
+                if (handle.references == 0) {
+                    iterator.remove();
+                    toClose.add(handle);
+                }
+            } else if (found == null && handle.reusable && (shared || handle.references == 0)) {
+                found = handle;
+            }
+        }
+        return found;
+    }
+
+    // Remove the least recently used idle handles, until there is room for a new handle.
+    private void evictIdle(List<Handle<T>> toClose) {
+        Iterator<Handle<T>> iterator = handles.descendingIterator();
+        while (handles.size() + opening >= maxHandles && iterator.hasNext()) {
+            Handle<T> handle = iterator.next();
+            if (handle.references == 0) {
+                iterator.remove();
+                toClose.add(handle);
+            }
+        }
+    }
+
+    private void release(Handle<T> handle) {
+        boolean close = false;
+        synchronized (this) {
+            handle.references--;
+            if (handle.references == 0) {
+                if (!handle.reusable) {
+                    handles.remove(handle);
+                    close = true;
+                }
+                notifyAll();
+            }
+        }
+        if (close) {
+            closeAll(Collections.singletonList(handle));
+        }
+    }
+
+    private void discard(Handle<T> handle) {
+        synchronized (this) {
+            handle.reusable = false;
+        }
+    }
+
+    private void closeAll(List<Handle<T>> toClose) {
+        for (Handle<T> handle : toClose) {
+            try {
+                closer.close(handle.handle);
+            } catch (Exception e) {
+                logger.warn("Error closing handle of file " + handle.file, e);
+            }
+        }
+    }
+
+    private static final class Handle<T> {
+        private final String file;
+        private final long lastModified;
+        private final T handle;
+        // Number of leases referencing this handle. Guarded by the pool
+        private int references;
+        // False if the handle must be closed once released
+        private boolean reusable = true;
+
+        private Handle(String file, long lastModified, T handle) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.handle = handle;
+        }
+    }
+
+    /**
+     * Reference to one handle of the pool. Each lease is released only once.
+     *
+     * @param <T> Type of handle
+     */
+    public static final class Lease<T> implements AutoCloseable {
+        private final AlignmentFileHandlePool<T> pool;
+        private final Handle<T> handle;
+        private volatile boolean released;
+
+        private Lease(AlignmentFileHandlePool<T> pool, Handle<T> handle) {
+            this.pool = pool;
+            this.handle = handle;
+        }
+
+        public T get() {
+            if (released) {
+                throw new IllegalStateException("Handle of file " + handle.file + " already released");
+            }
+            return handle.handle;
+        }
+
+        /**
+         * Do not reuse this handle, as it might be in an inconsistent state. It will be closed once released by all its leases.
+         */
+        public void discard() {
+            pool.discard(handle);
+        }
+
+        /**
+         * Give back the handle to the pool.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            pool.release(handle);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.alignment.local;
+
+import org.opencb.biodata.models.core.Region;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed mean coverage at several resolutions (e.g. bins of 64bp, 4kb and 256kb).
+ *
+ * Wide regions are read from the coarsest level with bins not larger than the requested window size, so the cost of a query
+ * depends on the number of bins read, not on the size of the region.
+ *
+ * File format:
+ * <pre>
+ *   int      MAGIC
+ *   int      VERSION
+ *   int      numLevels
+ *   int[]    binSize, for each level. From finer to coarser.
+ *   int      numChromosomes
+ *   (UTF, int)[] chromosome name and length, for each chromosome
+ *   float[]  mean coverage of each bin, for each chromosome and level
+ * </pre>
+ *
+ * The bins are memory mapped when read. Thread safe.
+ */
+public class CoveragePyramid implements Closeable {
+
+    public static final String EXTENSION = ".coverage.pyramid";
+
+    private static final int MAGIC = 0x4F435650; // OCVP
+    private static final int VERSION = 1;
+    // Size of the regions read from the source at each step while building the pyramid, in number of bins of the first level
+    private static final int BUILD_CHUNK_BINS = 16384;
+
+    private final FileChannel channel;
+    private final int[] binSizes;
+    private final Map<String, Integer> chromosomeLengths;
+    private final Map<String, long[]> offsets;
+    private final Map<String, FloatBuffer> levels = new ConcurrentHashMap<>();
+
+    /**
+     * Source of coverage for building the pyramid. e.g. a BAM or a BigWig file.
+     */
+    @FunctionalInterface
+    public interface CoverageSource {
+        /**
+         * Mean coverage of each window of the region.
+         *
+         * @param region     Region to read
+         * @param windowSize Window size
+         * @return Mean coverage by window
+         * @throws Exception on error reading the coverage
+         */
+        double[] coverage(Region region, int windowSize) throws Exception;
+    }
+
+    private CoveragePyramid(FileChannel channel, int[] binSizes, Map<String, Integer> chromosomeLengths, Map<String, long[]> offsets) {
+        this.channel = channel;
+        this.binSizes = binSizes;
+        this.chromosomeLengths = chromosomeLengths;
+        this.offsets = offsets;
+    }
+
+    public static CoveragePyramid open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long headerSize;
+            int[] binSizes;
+            Map<String, Integer> chromosomeLengths = new LinkedHashMap<>();
+            try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                DataInputStream dis = new DataInputStream(counter);
+                if (dis.readInt() != MAGIC) {
+                    throw new IOException("File " + path + " is not a coverage pyramid");
+                }
+                int version = dis.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported coverage pyramid version " + version + " at file " + path);
+                }
+                binSizes = new int[dis.readInt()];
+                for (int i = 0; i < binSizes.length; i++) {
+                    binSizes[i] = dis.readInt();
+                }
+                int numChromosomes = dis.readInt();
+                for (int i = 0; i < numChromosomes; i++) {
+                    String chromosome = dis.readUTF();
+                    chromosomeLengths.put(chromosome, dis.readInt());
+                }
+                headerSize = counter.count;
+            }
+
+            Map<String, long[]> offsets = new LinkedHashMap<>();
+            long offset = headerSize;
+            for (Map.Entry<String, Integer> entry : chromosomeLengths.entrySet()) {
+                long[] chromosomeOffsets = new long[binSizes.length];
+                for (int level = 0; level < binSizes.length; level++) {
+                    chromosomeOffsets[level] = offset;
+                    offset += (long) numBins(entry.getValue(), binSizes[level]) * Float.BYTES;
+                }
+                offsets.put(entry.getKey(), chromosomeOffsets);
+            }
+            if (offset != channel.size()) {
+                throw new IOException("Corrupted coverage pyramid " + path + ". Expected " + offset + " bytes, found " + channel.size());
+            }
+            return new CoveragePyramid(channel, binSizes, chromosomeLengths, offsets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Build a coverage pyramid. The first level is read from the source, and the rest are computed from the first level.
+     *
+     * @param output            Output file
+     * @param chromosomeLengths Chromosomes to include, with their length
+     * @param binSizes          Bin size of each level, from finer to coarser
+     * @param source            Source of coverage
+     * @throws Exception on error reading the source or writing the pyramid
+     */
+    public static void build(Path output, Map<String, Integer> chromosomeLengths, int[] binSizes, CoverageSource source)
+            throws Exception {
+        if (binSizes.length == 0) {
+            throw new IllegalArgumentException("Missing bin sizes");
+        }
+        for (int i = 1; i < binSizes.length; i++) {
+            if (binSizes[i] <= binSizes[i - 1]) {
+                throw new IllegalArgumentException("Bin sizes must be sorted from finer to coarser : " + Arrays.toString(binSizes));
+            }
+        }
+        Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(binSizes.length);
+            for (int binSize : binSizes) {
+                os.writeInt(binSize);
+            }
+            os.writeInt(chromosomeLengths.size());
+            for (Map.Entry<String, Integer> entry : chromosomeLengths.entrySet()) {
+                os.writeUTF(entry.getKey());
+                os.writeInt(entry.getValue());
+            }
+
+            for (Map.Entry<String, Integer> entry : chromosomeLengths.entrySet()) {
+                String chromosome = entry.getKey();
+                int length = entry.getValue();
+                float[] firstLevel = readFirstLevel(chromosome, length, binSizes[0], source);
+                write(os, firstLevel);
+                for (int level = 1; level < binSizes.length; level++) {
+                    write(os, resample(i -> firstLevel[i], firstLevel.length, binSizes[0], length, 1, length, binSizes[level]));
+                }
+            }
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Mean coverage of each window of the region, read from the coarsest level with bins not larger than the window size.
+     *
+     * @param region     Region
+     * @param windowSize Window size
+     * @return Mean coverage of each window, or null if the chromosome is unknown or the window size is smaller than the finer level
+     * @throws IOException on error reading the file
+     */
+    public double[] coverage(Region region, int windowSize) throws IOException {
+        int level = getLevel(windowSize);
+        Integer length = chromosomeLengths.get(region.getChromosome());
+        if (level < 0 || length == null) {
+            return null;
+        }
+        FloatBuffer bins = getLevel(region.getChromosome(), level);
+        float[] values = resample(bins::get, bins.limit(), binSizes[level], length, region.getStart(), region.getEnd(), windowSize);
+        double[] coverage = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            coverage[i] = values[i];
+        }
+        return coverage;
+    }
+
+    /**
+     * @param windowSize Window size
+     * @return Coarsest level with bins not larger than the window size, or -1 if none.
+     */
+    public int getLevel(int windowSize) {
+        for (int level = binSizes.length - 1; level >= 0; level--) {
+            if (binSizes[level] <= windowSize) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    public int[] getBinSizes() {
+        return Arrays.copyOf(binSizes, binSizes.length);
+    }
+
+    public Map<String, Integer> getChromosomeLengths() {
+        return chromosomeLengths;
+    }
+
+    @Override
+    public void close() throws IOException {
+        levels.clear();
+        channel.close();
+    }
+
+    private FloatBuffer getLevel(String chromosome, int level) throws IOException {
+        String key = chromosome + ":" + level;
+        FloatBuffer buffer = levels.get(key);
+        if (buffer == null) {
+            long offset = offsets.get(chromosome)[level];
+            long size = (long) numBins(chromosomeLengths.get(chromosome), binSizes[level]) * Float.BYTES;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size).asFloatBuffer();
+            levels.put(key, buffer);
+        }
+        // Only absolute reads are used, so the buffer can be shared between threads
+        return buffer;
+    }
+
+    private static float[] readFirstLevel(String chromosome, int length, int binSize, CoverageSource source) throws Exception {
+        float[] bins = new float[numBins(length, binSize)];
+        long chunkSize = (long) binSize * BUILD_CHUNK_BINS;
+        for (long start = 1; start <= length; start += chunkSize) {
+            int end = (int) Math.min(length, start + chunkSize - 1);
+            double[] values = source.coverage(new Region(chromosome, (int) start, end), binSize);
+            int firstBin = (int) ((start - 1) / binSize);
+            int numBins = Math.min(values.length, bins.length - firstBin);
+            for (int i = 0; i < numBins; i++) {
+                bins[firstBin + i] = (float) values[i];
+            }
+        }
+        return bins;
+    }
+
+    private static void write(DataOutputStream os, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES);
+        buffer.asFloatBuffer().put(values);
+        os.write(buffer.array());
+    }
+
+    @FunctionalInterface
+    interface Bins {
+        float get(int bin);
+    }
+
+    /**
+     * Mean coverage of each window of the region, from the mean coverage of each bin.
+     * Bins partially overlapping a window contribute proportionally to the overlap.
+     *
+     * @param bins       Mean coverage of each bin
+     * @param numBins    Number of bins
+     * @param binSize    Bin size
+     * @param length     Chromosome length
+     * @param start      Region start, 1-based
+     * @param end        Region end, 1-based, inclusive
+     * @param windowSize Window size
+     * @return           Mean coverage of each window
+     */
+    static float[] resample(Bins bins, int numBins, int binSize, int length, int start, int end, int windowSize) {
+        start = Math.max(1, start);
+        int numWindows = end < start ? 0 : (int) ((end - start + (long) windowSize) / windowSize);
+        float[] windows = new float[numWindows];
+        for (int w = 0; w < numWindows; w++) {
+            // 0-based, half open
+            long windowStart = start - 1 + (long) w * windowSize;
+            long windowEnd = Math.min((long) end, windowStart + windowSize);
+            long bin = windowStart / binSize;
+            double sum = 0;
+            while (bin < numBins && bin * binSize < windowEnd) {
+                long overlapStart = Math.max(windowStart, bin * binSize);
+                long overlapEnd = Math.min(Math.min(windowEnd, (bin + 1) * binSize), length);
+                if (overlapEnd > overlapStart) {
+                    sum += bins.get((int) bin) * (double) (overlapEnd - overlapStart);
+                }
+                bin++;
+            }
+            windows[w] = (float) (sum / (windowEnd - windowStart));
+        }
+        return windows;
+    }
+
+    private static int numBins(int length, int binSize) {
+        return (int) ((length + (long) binSize - 1) / binSize);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -63,10 +63,22 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
     private static final int MINOR_CHUNK_SIZE = 1000;
     private static final int DEFAULT_CHUNK_SIZE = 1000;
     private static final int DEFAULT_WINDOW_SIZE = 1000000;
+    private static final int MAX_HANDLES = 32;
+    private static final long MAX_HANDLE_WAIT_MILLIS = 30000;
 
     private static final String COVERAGE_SUFFIX = ".coverage";
     private static final String COVERAGE_DATABASE_NAME = "coverage.db";
 
+    // Open handles are reused between queries, so the files and their indexes are not read again at each query.
+    // Shared by all the adaptors of the process, as a new adaptor is created for each request.
+    private static final AlignmentFileHandlePool<BamManager> BAM_MANAGERS =
+            new AlignmentFileHandlePool<>(BamManager::new, BamManager::close, MAX_HANDLES, MAX_HANDLE_WAIT_MILLIS);
+    private static final AlignmentFileHandlePool<BigWigManager> BIG_WIG_MANAGERS = new AlignmentFileHandlePool<>(BigWigManager::new,
+            LocalAlignmentDBAdaptor::closeBigWigManager, MAX_HANDLES, MAX_HANDLE_WAIT_MILLIS);
+    // Coverage pyramids are thread safe, so each file is opened only once
+    private static final AlignmentFileHandlePool<CoveragePyramid> COVERAGE_PYRAMIDS =
+            new AlignmentFileHandlePool<>(CoveragePyramid::open, CoveragePyramid::close, MAX_HANDLES, MAX_HANDLE_WAIT_MILLIS, true);
+
 
     public LocalAlignmentDBAdaptor() {
         this(DEFAULT_CHUNK_SIZE);
@@ -76,6 +88,16 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
         this.chunkSize = chunkSize;
     }
 
+    /**
+     * Close the file opened by the BigWigManager, as it does not implement Closeable.
+     *
+     * @param bigWigManager BigWigManager to close
+     * @throws IOException on error closing the file
+     */
+    static void closeBigWigManager(BigWigManager bigWigManager) throws IOException {
+        bigWigManager.getBbFileReader().getBBFis().close();
+    }
+
 
     @Override
     public OpenCGAResult<ReadAlignment> get(Path path, Query query, QueryOptions options) {
@@ -84,19 +106,24 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
 
             StopWatch watch = StopWatch.createStarted();
 
-            BamManager bamManager = new BamManager(path);
             Region region = parseRegion(query);
             AlignmentFilters<SAMRecord> alignmentFilters = parseQuery(query);
             AlignmentOptions alignmentOptions = parseQueryOptions(options);
 
             List<ReadAlignment> readAlignmentList;
-            if (region != null) {
-                readAlignmentList = bamManager.query(region, alignmentFilters, alignmentOptions, ReadAlignment.class);
-            } else {
-                readAlignmentList = bamManager.query(alignmentFilters, alignmentOptions, ReadAlignment.class);
+            try (AlignmentFileHandlePool.Lease<BamManager> lease = BAM_MANAGERS.lease(path)) {
+                try {
+                    if (region != null) {
+                        readAlignmentList = lease.get().query(region, alignmentFilters, alignmentOptions, ReadAlignment.class);
+                    } else {
+                        readAlignmentList = lease.get().query(alignmentFilters, alignmentOptions, ReadAlignment.class);
+                    }
+                } catch (Exception e) {
+                    lease.discard();
+                    throw e;
+                }
             }
 
-            bamManager.close();
             watch.stop();
             return new OpenCGAResult<>(((int) watch.getTime()), Collections.emptyList(), readAlignmentList.size(), readAlignmentList,
                     readAlignmentList.size());
@@ -121,27 +148,36 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
         try {
             FileUtils.checkFile(path);
 
-            BamManager bamManager = new BamManager(path);
             Region region = parseRegion(query);
             AlignmentFilters<SAMRecord> alignmentFilters = parseQuery(query);
             AlignmentOptions alignmentOptions = parseQueryOptions(options);
 
-            if (region != null) {
-                if (Reads.ReadAlignment.class == clazz) {
-                    return (AlignmentIterator<T>) new ProtoAlignmentIterator(bamManager.iterator(region,
-                            alignmentFilters, alignmentOptions, Reads.ReadAlignment.class));
-                } else if (SAMRecord.class == clazz) {
-                    return (AlignmentIterator<T>) new SamRecordAlignmentIterator(bamManager.iterator(region,
-                            alignmentFilters, alignmentOptions, SAMRecord.class));
-                }
-            } else {
-                if (Reads.ReadAlignment.class == clazz) {
-                    return (AlignmentIterator<T>) new ProtoAlignmentIterator(bamManager.iterator(alignmentFilters,
-                            alignmentOptions, Reads.ReadAlignment.class));
-                } else if (SAMRecord.class == clazz) {
-                    return (AlignmentIterator<T>) new SamRecordAlignmentIterator(bamManager.iterator(alignmentFilters,
-                            alignmentOptions, SAMRecord.class));
+            // The BamManager goes back to the pool when the iterator is closed
+            AlignmentFileHandlePool.Lease<BamManager> lease = BAM_MANAGERS.lease(path);
+            try {
+                BamManager bamManager = lease.get();
+                if (region != null) {
+                    if (Reads.ReadAlignment.class == clazz) {
+                        return (AlignmentIterator<T>) new ProtoAlignmentIterator(bamManager.iterator(region,
+                                alignmentFilters, alignmentOptions, Reads.ReadAlignment.class), lease);
+                    } else if (SAMRecord.class == clazz) {
+                        return (AlignmentIterator<T>) new SamRecordAlignmentIterator(bamManager.iterator(region,
+                                alignmentFilters, alignmentOptions, SAMRecord.class), lease);
+                    }
+                } else {
+                    if (Reads.ReadAlignment.class == clazz) {
+                        return (AlignmentIterator<T>) new ProtoAlignmentIterator(bamManager.iterator(alignmentFilters,
+                                alignmentOptions, Reads.ReadAlignment.class), lease);
+                    } else if (SAMRecord.class == clazz) {
+                        return (AlignmentIterator<T>) new SamRecordAlignmentIterator(bamManager.iterator(alignmentFilters,
+                                alignmentOptions, SAMRecord.class), lease);
+                    }
                 }
+                lease.close();
+            } catch (Exception e) {
+                lease.discard();
+                lease.close();
+                throw e;
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -158,17 +194,21 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
 
         RegionCoverage regionCoverage;
         if (path.toString().endsWith("bw") || path.toString().endsWith("bigwig")) {
-            regionCoverage = BamUtils.getCoverageFromBigWig(region, windowSize, path);
+            regionCoverage = bigWigCoverage(path, region, windowSize);
 //            System.out.println("BW region coverage:\t" + regionCoverage.toString());
         } else {
-            File bwFile = new File(path.toAbsolutePath() + ".bw");
-            if (bwFile.exists()) {
-                regionCoverage = BamUtils.getCoverageFromBigWig(region, windowSize, bwFile.toPath());
-            } else {
-                BamManager bamManager = new BamManager(path);
-                regionCoverage = bamManager.coverage(region, windowSize);
-                bamManager.close();
+            // Wide windows are read from the coverage pyramid, if any
+            regionCoverage = coveragePyramidCoverage(Paths.get(path.toAbsolutePath() + CoveragePyramid.EXTENSION), region, windowSize);
+            if (regionCoverage == null) {
+                File bwFile = new File(path.toAbsolutePath() + ".bw");
+                if (bwFile.exists()) {
+                    regionCoverage = bigWigCoverage(bwFile.toPath(), region, windowSize);
+                } else {
+                    try (AlignmentFileHandlePool.Lease<BamManager> lease = BAM_MANAGERS.lease(path)) {
+                        regionCoverage = lease.get().coverage(region, windowSize);
+                    }
 //            System.out.println("BAM region coverage:\t" + regionCoverage.toString());
+                }
             }
         }
 
@@ -200,14 +240,18 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
 
         StopWatch watch = StopWatch.createStarted();
         long totalCounts;
+        Path bigWigPath;
         if (path.toFile().getName().endsWith(".bam")) {
             if (new File(path.toString() + ".bw").exists()) {
-                totalCounts = WigUtils.getTotalCounts(new BigWigManager(Paths.get(path + ".bw")).getBbFileReader());
+                bigWigPath = Paths.get(path + ".bw");
             } else {
                 throw new AlignmentCoverageException("BigWig file not found and getTotalCount is not supported for BAM files.");
             }
         } else {
-            totalCounts = WigUtils.getTotalCounts(new BigWigManager(path).getBbFileReader());
+            bigWigPath = path;
+        }
+        try (AlignmentFileHandlePool.Lease<BigWigManager> lease = BIG_WIG_MANAGERS.lease(bigWigPath)) {
+            totalCounts = WigUtils.getTotalCounts(lease.get().getBbFileReader());
         }
         watch.stop();
         return new OpenCGAResult<>(((int) watch.getTime()), Collections.emptyList(), 1, Collections.singletonList(totalCounts), 1);
@@ -217,11 +261,14 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
     public OpenCGAResult<Long> count(Path path, Query query, QueryOptions options) {
         StopWatch watch = StopWatch.createStarted();
 
-        ProtoAlignmentIterator iterator = iterator(path, query, options);
         long count = 0;
-        while (iterator.hasNext()) {
-            iterator.next();
-            count++;
+        try (ProtoAlignmentIterator iterator = iterator(path, query, options)) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Error counting alignments from " + path, e);
         }
 
         watch.stop();
@@ -257,6 +304,30 @@ public class LocalAlignmentDBAdaptor implements AlignmentDBAdaptor {
     // PRIVATE METHODS
     //-------------------------------------------------------------------------
 
+    private RegionCoverage bigWigCoverage(Path bigWigPath, Region region, int windowSize) throws IOException {
+        try (AlignmentFileHandlePool.Lease<BigWigManager> lease = BIG_WIG_MANAGERS.lease(bigWigPath)) {
+            return new RegionCoverage(region, windowSize, lease.get().groupBy(region, windowSize));
+        }
+    }
+
+    /**
+     * Read the coverage from the coarsest level of the coverage pyramid with bins not larger than the window size.
+     *
+     * @return the coverage, or null if there is no coverage pyramid or the window size is too small
+     */
+    private RegionCoverage coveragePyramidCoverage(Path pyramidPath, Region region, int windowSize) throws IOException {
+        if (windowSize <= 1 || !pyramidPath.toFile().exists()) {
+            return null;
+        }
+        try (AlignmentFileHandlePool.Lease<CoveragePyramid> lease = COVERAGE_PYRAMIDS.lease(pyramidPath)) {
+            double[] values = lease.get().coverage(region, windowSize);
+            if (values == null) {
+                return null;
+            }
+            return new RegionCoverage(region, windowSize, values);
+        }
+    }
+
     private Region parseRegion(Query query) {
         Region region = null;
         if (query != null) {
@@ -18,10 +18,13 @@ package org.opencb.opencga.storage.core.alignment.local;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.formats.io.FileFormatException;
 import org.opencb.biodata.tools.alignment.BamManager;
 import org.opencb.biodata.tools.alignment.BamUtils;
 import org.opencb.biodata.tools.alignment.stats.AlignmentGlobalStats;
+import org.opencb.biodata.tools.feature.BigWigManager;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.utils.FileUtils;
 import org.opencb.opencga.storage.core.StoragePipeline;
@@ -33,6 +36,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Created by pfurio on 31/10/16.
@@ -90,6 +96,27 @@ public class LocalAlignmentStoragePipeline implements StoragePipeline {
                 AlignmentStorageOptions.BIG_WIG_WINDOWS_SIZE.defaultValue());
         bamManager.calculateBigWigCoverage(bwPath, windowSize);
 
+        // 4) Create the coverage pyramid, to read the coverage of wide regions. It is computed from the BigWig file, so the BAM
+        // file is not read again
+        String binSizes = configuration.getString(AlignmentStorageOptions.COVERAGE_PYRAMID_BIN_SIZES.key(),
+                AlignmentStorageOptions.COVERAGE_PYRAMID_BIN_SIZES.defaultValue());
+        Path pyramidPath = workspace.resolve(path.getFileName() + CoveragePyramid.EXTENSION);
+        if (StringUtils.isNotEmpty(binSizes) && !pyramidPath.toFile().exists()) {
+            Map<String, Integer> chromosomes = new LinkedHashMap<>();
+            for (SAMSequenceRecord sequence : bamManager.getHeader().getSequenceDictionary().getSequences()) {
+                chromosomes.put(sequence.getSequenceName(), sequence.getSequenceLength());
+            }
+            BigWigManager bigWigManager = new BigWigManager(bwPath);
+            try {
+                CoveragePyramid.build(pyramidPath, chromosomes,
+                        Arrays.stream(binSizes.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray(),
+                        bigWigManager::groupBy);
+            } finally {
+                LocalAlignmentDBAdaptor.closeBigWigManager(bigWigManager);
+            }
+        }
+        bamManager.close();
+
         return input;
     }
 
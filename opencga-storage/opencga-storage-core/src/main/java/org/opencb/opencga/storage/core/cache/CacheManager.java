@@ -16,11 +16,18 @@
 
 package org.opencb.opencga.storage.core.cache;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.opencb.commons.datastore.core.DataResult;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
-import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.core.common.JacksonUtils;
 import org.opencb.opencga.core.config.storage.CacheConfiguration;
 import org.opencb.opencga.core.config.storage.StorageConfiguration;
 import org.redisson.Config;
@@ -31,53 +38,93 @@ import org.redisson.codec.JsonJacksonCodec;
 import org.redisson.codec.KryoCodec;
 import org.redisson.core.RKeys;
 import org.redisson.core.RMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
+ * Two tier query result cache.
+ *
+ * The local tier is an in-process cache bounded by the estimated size in bytes of the cached results.
+ * The optional remote tier is a Redis server shared between processes.
+ *
+ * Every entry is associated to the studies it depends on, so entries can be invalidated per study.
+ *
  * Created by wasim on 26/10/16.
  */
-public class CacheManager {
+public class CacheManager implements AutoCloseable {
+
+    /**
+     * QueryOptions key to skip the cache. Use {@code cache=false} to always run the query against the database.
+     */
+    public static final String CACHE = "cache";
+
+    private static final String PREFIX_DATABASE_KEY = "ocga:";
+    private static final String ALL_STUDIES = "{all}";
+    private static final int DEFAULT_ENTRY_SIZE = 1024;
 
-    private StorageConfiguration storageConfiguration;
+    private final CacheConfiguration cacheConfiguration;
+    private final Set<String> allowedTypesSet;
+    private final Cache<String, CacheEntry> localCache;
 
     private Config redissonConfig;
-    private Set<String> allowedTypesSet;
     private RedissonClient redissonClient;
-    private boolean redisState;
+    private volatile boolean redisState;
 
+    private final AtomicLong remoteHits = new AtomicLong();
+    private final AtomicLong remoteMisses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
 
-    private static final String PREFIX_DATABASE_KEY = "ocga:";
+    private final Logger logger = LoggerFactory.getLogger(CacheManager.class);
 
     public CacheManager() {
+        this(null);
     }
 
     public CacheManager(StorageConfiguration configuration) {
-
-        CacheConfiguration cache;
-
         if (configuration != null && configuration.getCache() != null) {
+            cacheConfiguration = configuration.getCache();
+        } else {
+            cacheConfiguration = new CacheConfiguration().setActive(false);
+        }
 
-            this.storageConfiguration = configuration;
-
-            cache = configuration.getCache();
+        String allowedTypes = StringUtils.isNotEmpty(cacheConfiguration.getAllowedTypes())
+                ? cacheConfiguration.getAllowedTypes()
+                : CacheConfiguration.DEFAULT_ALLOWED_TYPE;
+        this.allowedTypesSet = new HashSet<>(Arrays.asList(allowedTypes.split(",")));
+
+        long maxMemory = cacheConfiguration.getLocalMaxMemory() > 0
+                ? cacheConfiguration.getLocalMaxMemory()
+                : CacheConfiguration.DEFAULT_LOCAL_MAX_MEMORY;
+        int expiration = cacheConfiguration.getExpiration() > 0
+                ? cacheConfiguration.getExpiration()
+                : CacheConfiguration.DEFAULT_EXPIRATION;
+        localCache = CacheBuilder.newBuilder()
+                .maximumWeight(maxMemory)
+                .weigher((String key, CacheEntry entry) -> entry.getSize())
+                .expireAfterWrite(expiration, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        if (cacheConfiguration.isActive() && cacheConfiguration.isRemote()) {
             redissonConfig = new Config();
 
-            String host = (StringUtils.isNotEmpty(cache.getHost()))
-                    ? cache.getHost()
+            String host = (StringUtils.isNotEmpty(cacheConfiguration.getHost()))
+                    ? cacheConfiguration.getHost()
                     : CacheConfiguration.DEFAULT_HOST;
             redissonConfig.useSingleServer().setAddress(host);
 
-            String codec = (StringUtils.isNotEmpty(cache.getSerialization()))
-                    ? cache.getSerialization()
+            String codec = (StringUtils.isNotEmpty(cacheConfiguration.getSerialization()))
+                    ? cacheConfiguration.getSerialization()
                     : CacheConfiguration.DEFAULT_SERIALIZATION;
 
-            this.allowedTypesSet = new HashSet<>(Arrays.asList(cache.getAllowedTypes().split(",")));
-
-
-            if (StringUtils.isNotEmpty(cache.getPassword())) {
-                redissonConfig.useSingleServer().setPassword(cache.getPassword());
+            if (StringUtils.isNotEmpty(cacheConfiguration.getPassword())) {
+                redissonConfig.useSingleServer().setPassword(cacheConfiguration.getPassword());
             }
 
             if ("KRYO".equalsIgnoreCase(codec)) {
@@ -87,106 +134,265 @@ public class CacheManager {
             }
 
             redisState = true;
-
-//            redissonClient = Redisson.create(redissonConfig);
-            redissonClient = null;
         }
     }
 
+    /**
+     * Get a cached result.
+     *
+     * @param key   Key obtained from {@link #createKey}
+     * @param <T>   Result type
+     * @return      The cached result, or null if missing
+     */
+    public <T> T get(String key) {
+        if (!isActive()) {
+            return null;
+        }
+        CacheEntry entry = localCache.getIfPresent(key);
+        if (entry != null) {
+            return (T) entry.getValue();
+        }
 
-    public <T> QueryResult<T> get(String key) {
-
-        QueryResult<T> queryResult = new QueryResult<>();
-        if (isActive()) {
-            long start = System.currentTimeMillis();
-            RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
-
+        if (isRemoteActive()) {
             try {
+                RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
                 // We only retrieve the first field of the HASH, which is the only one that exist.
                 Map<Integer, Map<String, Object>> result = map.getAll(new HashSet<>(Collections.singletonList(0)));
-
                 if (result != null && !result.isEmpty()) {
-                    Object resultMap = result.get(0).get("result");
-                    queryResult = (QueryResult<T>) resultMap;
-                    queryResult.setDbTime((int) (System.currentTimeMillis() - start));
+                    remoteHits.incrementAndGet();
+                    Object value = result.get(0).get("result");
+                    localCache.put(key, new CacheEntry(value, estimateSize(value)));
+                    return (T) value;
+                } else {
+                    remoteMisses.incrementAndGet();
                 }
             } catch (RedisConnectionException e) {
+                logger.warn("Unable to connect to Redis Cache. Disable remote cache.", e);
                 redisState = false;
-                queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
-                return queryResult;
             }
         }
-        return queryResult;
+        return null;
     }
 
-    public void set(String key, Query query, QueryResult queryResult) {
+    /**
+     * Cache the result of a query.
+     *
+     * Only results slower than {@link CacheConfiguration#getSlowThreshold()} and with no more than
+     * {@link CacheConfiguration#getMaxResultSize()} elements are cached.
+     *
+     * @param key       Key obtained from {@link #createKey}
+     * @param result    Result to cache
+     */
+    public void set(String key, DataResult<?> result) {
+        if (!isActive() || result == null) {
+            return;
+        }
+        if (result.getTime() < cacheConfiguration.getSlowThreshold()
+                || cacheConfiguration.getMaxResultSize() > 0 && result.getNumResults() > cacheConfiguration.getMaxResultSize()) {
+            return;
+        }
 
-        if (isActive()) {
-            if (queryResult.getDbTime() >= storageConfiguration.getCache().getSlowThreshold()
-                    && queryResult.getResult().size() >= storageConfiguration.getCache().getMaxResultSize()) {
+        localCache.put(key, new CacheEntry(result, estimateSize(result)));
+
+        if (isRemoteActive()) {
+            try {
                 RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
                 Map<String, Object> record = new HashMap<>();
-                record.put("query", query);
-                record.put("result", queryResult);
-                try {
-                    map.fastPut(0, record);
-                } catch (RedisConnectionException e) {
-                    redisState = false;
-                    queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
-                }
+                record.put("result", result);
+                map.fastPut(0, record);
+                map.expire(localCacheExpiration(), TimeUnit.SECONDS);
+            } catch (RedisConnectionException e) {
+                logger.warn("Unable to connect to Redis Cache. Disable remote cache.", e);
+                redisState = false;
             }
         }
     }
 
-    public String createKey(String studyId, String allowedType, Query query, QueryOptions queryOptions) {
-
-        queryOptions.remove("cache");
-        queryOptions.remove("sId");
+    /**
+     * Build a key for the given query.
+     *
+     * Query and options are sorted by key, so the same query always produces the same key.
+     * The order of the values is preserved, as it might be relevant (e.g. sort or include).
+     *
+     * @param dbName        Database name
+     * @param studies       Studies that the query depends on. Null or empty if it depends on all the studies.
+     * @param allowedType   Type of the query (e.g. "var" or "aln")
+     * @param method        Name of the method executed (e.g. "get" or "count")
+     * @param query         Query
+     * @param queryOptions  Query options
+     * @return              Cache key
+     */
+    public String createKey(String dbName, Collection<Integer> studies, String allowedType, String method,
+                            Query query, QueryOptions queryOptions) {
+        StringBuilder canonical = new StringBuilder();
+        appendSorted(canonical, query);
+        canonical.append('|');
+        appendSorted(canonical, queryOptions, CACHE);
 
         StringBuilder key = new StringBuilder(PREFIX_DATABASE_KEY);
-        key.append(studyId).append(":").append(allowedType);
-        SortedMap<String, SortedSet<Object>> map = new TreeMap<>();
+        key.append(dbName).append(':').append(studiesKey(studies)).append(':').append(allowedType).append(':').append(method);
+        key.append(':').append(Hashing.murmur3_128().hashString(canonical, StandardCharsets.UTF_8));
+        return key.toString();
+    }
 
-        for (String item : query.keySet()) {
-            map.put(item.toLowerCase(), new TreeSet<>(query.getAsStringList(item)));
+    /**
+     * Remove all the entries depending on the given study.
+     * Entries depending on all the studies will be removed as well.
+     *
+     * @param studyId Study id, or null to remove all the entries.
+     */
+    public void invalidate(Integer studyId) {
+        invalidations.incrementAndGet();
+        if (studyId == null) {
+            localCache.invalidateAll();
+        } else {
+            String studyKey = studyKey(studyId);
+            localCache.asMap().keySet().removeIf(key -> key.contains(ALL_STUDIES) || key.contains(studyKey));
         }
-
-        for (String item : queryOptions.keySet()) {
-            map.put(item.toLowerCase(), new TreeSet<>(queryOptions.getAsStringList(item)));
+        if (isRemoteActive()) {
+            try {
+                RKeys redisKeys = getRedissonClient().getKeys();
+                if (studyId == null) {
+                    redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*");
+                } else {
+                    redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*" + ALL_STUDIES + "*");
+                    redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*" + studyKey(studyId) + "*");
+                }
+            } catch (RedisConnectionException e) {
+                logger.warn("Unable to connect to Redis Cache. Disable remote cache.", e);
+                redisState = false;
+            }
         }
-
-        String sha1 = DigestUtils.sha1Hex(map.toString());
-        key.append(":").append(sha1);
-
-        queryOptions.add("cache", "true");
-        return key.toString();
     }
 
     public boolean isActive() {
-        return storageConfiguration.getCache().isActive() && redisState;
+        return cacheConfiguration.isActive();
     }
 
     public boolean isTypeAllowed(String type) {
         return allowedTypesSet.contains(type);
     }
 
+    public long getHitCount() {
+        return localCache.stats().hitCount() + remoteHits.get();
+    }
+
+    public long getMissCount() {
+        return localCache.stats().missCount() - remoteHits.get();
+    }
+
+    public long getEvictionCount() {
+        return localCache.stats().evictionCount();
+    }
+
+    public ObjectMap getStats() {
+        CacheStats stats = localCache.stats();
+        return new ObjectMap()
+                .append("active", isActive())
+                .append("remoteActive", isRemoteActive())
+                .append("entries", localCache.size())
+                .append("hits", getHitCount())
+                .append("misses", getMissCount())
+                .append("localHits", stats.hitCount())
+                .append("remoteHits", remoteHits.get())
+                .append("remoteMisses", remoteMisses.get())
+                .append("evictions", stats.evictionCount())
+                .append("invalidations", invalidations.get());
+    }
+
     public void clear() {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*");
+        localCache.invalidateAll();
+        if (isRemoteActive()) {
+            RKeys redisKeys = getRedissonClient().getKeys();
+            redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*");
+        }
     }
 
     public void clear(Pattern pattern) {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(pattern.toString());
+        localCache.asMap().keySet().removeIf(key -> pattern.matcher(key).matches());
+        if (isRemoteActive()) {
+            RKeys redisKeys = getRedissonClient().getKeys();
+            redisKeys.deleteByPattern(pattern.toString());
+        }
     }
 
+    @Override
     public void close() {
+        localCache.invalidateAll();
         if (redissonClient != null) {
             redissonClient.shutdown();
             redissonClient = null;
         }
     }
 
+    @Override
+    public String toString() {
+        return "CacheManager{" + getStats().toJson() + '}';
+    }
+
+    private boolean isRemoteActive() {
+        return cacheConfiguration.isActive() && redissonConfig != null && redisState;
+    }
+
+    private int localCacheExpiration() {
+        return cacheConfiguration.getExpiration() > 0 ? cacheConfiguration.getExpiration() : CacheConfiguration.DEFAULT_EXPIRATION;
+    }
+
+    private static String studiesKey(Collection<Integer> studies) {
+        if (studies == null || studies.isEmpty()) {
+            return ALL_STUDIES;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Integer study : new TreeSet<>(studies)) {
+            sb.append(studyKey(study));
+        }
+        return sb.toString();
+    }
+
+    private static String studyKey(int studyId) {
+        return "{" + studyId + "}";
+    }
+
+    private static void appendSorted(StringBuilder sb, Map<String, Object> map, String... skipKeys) {
+        if (map == null) {
+            return;
+        }
+        List<String> skip = Arrays.asList(skipKeys);
+        for (String key : new TreeSet<>(map.keySet())) {
+            Object value = map.get(key);
+            if (value == null || skip.contains(key)) {
+                continue;
+            }
+            sb.append(key).append('=');
+            if (value instanceof Collection) {
+                for (Object o : ((Collection<?>) value)) {
+                    sb.append(o).append(',');
+                }
+            } else {
+                sb.append(value);
+            }
+            sb.append(';');
+        }
+    }
+
+    /**
+     * Estimate the memory used by a result from its serialized JSON size.
+     * The JSON is written into a counting stream, so no buffer is allocated.
+     *
+     * @param value Value to measure
+     * @return      Estimated size in bytes
+     */
+    private int estimateSize(Object value) {
+        try {
+            CountingOutputStream os = new CountingOutputStream(ByteStreams.nullOutputStream());
+            JacksonUtils.getDefaultNonNullObjectMapper().writeValue(os, value);
+            return (int) Math.min(Integer.MAX_VALUE, os.getCount());
+        } catch (Exception e) {
+            logger.debug("Unable to estimate size of cached value", e);
+            return DEFAULT_ENTRY_SIZE;
+        }
+    }
+
     private synchronized RedissonClient getRedissonClient() {
         if (redissonClient == null) {
             redissonClient = Redisson.create(redissonConfig);
@@ -194,4 +400,21 @@ public class CacheManager {
         return redissonClient;
     }
 
+    private static final class CacheEntry {
+        private final Object value;
+        private final int size;
+
+        private CacheEntry(Object value, int size) {
+            this.value = value;
+            this.size = size;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
 }
@@ -2,8 +2,19 @@ package org.opencb.opencga.storage.core.io.bit;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Arrays;
+
+/**
+ * Bit container over a byte array. Bits are stored from the least significant bit of each byte.
+ *
+ * Values are read and written through 64 bits little endian words, so any value of up to 32 bits
+ * is extracted with a single load, shift and mask, regardless of its alignment.
+ */
 public class BitBuffer {
 
+    // Max bits read or written at once. Any bit alignment within a word leaves room for 57 bits.
+    private static final int WORD_BITS = Long.SIZE - Byte.SIZE + 1;
+
     private final byte[] buffer;
     private final int bitOffset;
     private final int bitLength;
@@ -68,16 +79,43 @@ public class BitBuffer {
         if (bitLength > Integer.SIZE) {
             throw new IllegalArgumentException("Reading " + bitLength + " bits. Expecting read a partial int, up to 32 bits");
         }
-        int r = 0;
-        int bytes = bitLength / Byte.SIZE;
-        int bits = bitLength % Byte.SIZE;
-        for (int i = 0; i < bitLength - bits; i += 8) {
-            r |= (Byte.toUnsignedInt(getByte(bitOffset + i))) << i;
+        checkBounds(bitOffset, bitLength);
+        return (int) getBits(this.bitOffset + bitOffset, bitLength);
+    }
+
+    /**
+     * Read consecutive values of the same bit length.
+     *
+     * @param out            Array to store the values
+     * @param outOffset      First position to write in the array
+     * @param bitOffset      Bit offset of the first value
+     * @param valueBitLength Bit length of each value, up to 32 bits
+     * @param count          Number of values to read
+     */
+    public void getInts(int[] out, int outOffset, int bitOffset, int valueBitLength, int count) {
+        if (valueBitLength > Integer.SIZE) {
+            throw new IllegalArgumentException("Reading " + valueBitLength + " bits. Expecting read a partial int, up to 32 bits");
+        }
+        checkBounds(bitOffset, valueBitLength * count);
+        if (valueBitLength == 0) {
+            Arrays.fill(out, outOffset, outOffset + count, 0);
+            return;
         }
-        if (bits != 0) {
-            r |= (Byte.toUnsignedInt(getBytePartial(bitOffset + bytes * Byte.SIZE, bits)) << (bytes * Byte.SIZE));
+        long mask = longMask(valueBitLength);
+        int valuesPerWord = WORD_BITS / valueBitLength;
+        int totalBitOffset = this.bitOffset + bitOffset;
+        int i = 0;
+        while (i < count) {
+            // Extract as many values as possible from each word
+            long word = getBits(totalBitOffset, WORD_BITS);
+            int n = Math.min(valuesPerWord, count - i);
+            for (int j = 0; j < n; j++) {
+                out[outOffset + i + j] = (int) (word & mask);
+                word >>>= valueBitLength;
+            }
+            i += n;
+            totalBitOffset += n * valueBitLength;
         }
-        return r;
     }
 
     public byte getByte(int bitOffset) {
@@ -85,46 +123,23 @@ public class BitBuffer {
     }
 
     public byte getBytePartial(int bitOffset, int length) {
-        if ((bitOffset + length) > this.bitLength) {
-            throw new IndexOutOfBoundsException("Bit offset request: " + bitOffset
-                    + ", bit length request: " + length
-                    + ", actual bit length: " + this.bitLength);
-        }
+        checkBounds(bitOffset, length);
         if (length > Byte.SIZE) {
             throw new IllegalArgumentException("Reading " + length + " bits. Expecting read a partial byte");
         }
-        if (length == 0) {
-            return 0;
-        }
-        int totalBitOffset = bitOffset + this.bitOffset;
-        int byteOffset = totalBitOffset / Byte.SIZE;
-        int partialBitOffset = totalBitOffset % Byte.SIZE;
-
-        int r;
-        if (length > (Byte.SIZE - partialBitOffset)) {
-            r = ((buffer[byteOffset] >>> partialBitOffset) & mask(Byte.SIZE - partialBitOffset));
-            length -= Byte.SIZE - partialBitOffset;
-            r |= (buffer[byteOffset + 1] & mask(length)) << (Byte.SIZE - partialBitOffset);
-        } else {
-            r = ((buffer[byteOffset] >>> partialBitOffset) & mask(length));
-        }
-        return (byte) r;
+        return (byte) getBits(this.bitOffset + bitOffset, length);
     }
 
-
     public void setInt(int value, int bitOffset) {
         setIntPartial(value, bitOffset, Integer.SIZE);
     }
 
     public void setIntPartial(int value, int bitOffset, int bitLength) {
-        int bytes = bitLength / Byte.SIZE;
-        int bits = bitLength % Byte.SIZE;
-
-        int i;
-        for (i = 0; i < (bitLength - bits); i += 8) {
-            setByte((byte) (value >> i), bitOffset + i);
+        if (bitLength > Integer.SIZE) {
+            throw new IllegalArgumentException("Writing " + bitLength + " bits. Expecting write a partial int, up to 32 bits");
         }
-        setBytePartial((byte) (value >> i), bitOffset + i, bits);
+        checkBounds(bitOffset, bitLength);
+        setBits(value, this.bitOffset + bitOffset, bitLength);
     }
 
     public void setByte(byte value) {
@@ -141,51 +156,200 @@ public class BitBuffer {
                     + ", bit length request: " + value.getBitLength()
                     + ", actual bit length: " + this.bitLength);
         }
-        // TODO: Speed up with System.arrayCopy if possible
-        int bytes = value.getBitLength() / 8;
-        int bits = value.getBitLength() % 8;
-        for (int i = 0; i < bytes; i++) {
-            byte aByte = value.getByte(i * Byte.SIZE);
-            setByte(aByte, i * Byte.SIZE + bitOffset);
-        }
-        if (bits != 0) {
-            setBytePartial(value.getBytePartial(bytes * Byte.SIZE, bits), bytes * Byte.SIZE + bitOffset, bits);
+        int length = value.getBitLength();
+        int offset = 0;
+        while (offset < length) {
+            int bits = Math.min(WORD_BITS, length - offset);
+            setBits(value.getBits(value.bitOffset + offset, bits), this.bitOffset + bitOffset + offset, bits);
+            offset += bits;
         }
     }
 
     public void setBytePartial(byte value, int bitOffset, int length) {
-        if ((bitOffset + length) > bitLength) {
+        checkBounds(bitOffset, length);
+        if (length > Byte.SIZE) {
+            throw new IllegalArgumentException("Reading " + length + " bits. Expecting read a partial byte");
+        }
+        setBits(value, this.bitOffset + bitOffset, length);
+    }
+
+    /**
+     * Bitwise AND with another BitBuffer of the same length. The result is stored in this BitBuffer.
+     *
+     * @param other BitBuffer
+     */
+    public void and(BitBuffer other) {
+        checkSameLength(other);
+        for (int offset = 0; offset < bitLength; offset += WORD_BITS) {
+            int bits = Math.min(WORD_BITS, bitLength - offset);
+            long word = getBits(bitOffset + offset, bits) & other.getBits(other.bitOffset + offset, bits);
+            setBits(word, bitOffset + offset, bits);
+        }
+    }
+
+    /**
+     * Bitwise OR with another BitBuffer of the same length. The result is stored in this BitBuffer.
+     *
+     * @param other BitBuffer
+     */
+    public void or(BitBuffer other) {
+        checkSameLength(other);
+        for (int offset = 0; offset < bitLength; offset += WORD_BITS) {
+            int bits = Math.min(WORD_BITS, bitLength - offset);
+            long word = getBits(bitOffset + offset, bits) | other.getBits(other.bitOffset + offset, bits);
+            setBits(word, bitOffset + offset, bits);
+        }
+    }
+
+    /**
+     * Check if this BitBuffer shares any set bit with another BitBuffer of the same length.
+     *
+     * @param other BitBuffer
+     * @return true if the AND of both BitBuffers is not zero
+     */
+    public boolean intersects(BitBuffer other) {
+        checkSameLength(other);
+        for (int offset = 0; offset < bitLength; offset += WORD_BITS) {
+            int bits = Math.min(WORD_BITS, bitLength - offset);
+            if ((getBits(bitOffset + offset, bits) & other.getBits(other.bitOffset + offset, bits)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int popCount() {
+        return popCount(0, bitLength);
+    }
+
+    /**
+     * Count the number of bits set to 1 in a region of the BitBuffer.
+     *
+     * @param bitOffset Bit offset of the region
+     * @param bitLength Bit length of the region
+     * @return number of set bits
+     */
+    public int popCount(int bitOffset, int bitLength) {
+        checkBounds(bitOffset, bitLength);
+        int count = 0;
+        for (int offset = 0; offset < bitLength; offset += WORD_BITS) {
+            int bits = Math.min(WORD_BITS, bitLength - offset);
+            count += Long.bitCount(getBits(this.bitOffset + bitOffset + offset, bits));
+        }
+        return count;
+    }
+
+    /**
+     * Count the number of values that match the given mask, from consecutive values of the same bit length.
+     *
+     * @param bitOffset      Bit offset of the first value
+     * @param valueBitLength Bit length of each value, up to 32 bits
+     * @param count          Number of values
+     * @param mask           Mask to test
+     * @return number of values where {@code (value & mask) != 0}
+     */
+    public int countMatches(int bitOffset, int valueBitLength, int count, int mask) {
+        if (valueBitLength > Integer.SIZE) {
+            throw new IllegalArgumentException("Reading " + valueBitLength + " bits. Expecting read a partial int, up to 32 bits");
+        }
+        checkBounds(bitOffset, valueBitLength * count);
+        if (valueBitLength == 0) {
+            return 0;
+        }
+        long valueMask = mask & longMask(valueBitLength);
+        int valuesPerWord = WORD_BITS / valueBitLength;
+        int totalBitOffset = this.bitOffset + bitOffset;
+        int matches = 0;
+        int i = 0;
+        while (i < count) {
+            long word = getBits(totalBitOffset, WORD_BITS);
+            int n = Math.min(valuesPerWord, count - i);
+            for (int j = 0; j < n; j++) {
+                // Branch free. (x | -x) >>> 63 is 1 for any non zero x
+                long match = word & valueMask;
+                matches += (int) ((match | -match) >>> 63);
+                word >>>= valueBitLength;
+            }
+            i += n;
+            totalBitOffset += n * valueBitLength;
+        }
+        return matches;
+    }
+
+    private void checkBounds(int bitOffset, int length) {
+        if ((bitOffset + length) > this.bitLength) {
             throw new IndexOutOfBoundsException("Bit offset request: " + bitOffset
                     + ", bit length request: " + length
                     + ", actual bit length: " + this.bitLength);
         }
-        if (length > Byte.SIZE) {
-            throw new IllegalArgumentException("Reading " + length + " bits. Expecting read a partial byte");
+    }
+
+    private void checkSameLength(BitBuffer other) {
+        if (other.bitLength != bitLength) {
+            throw new IllegalArgumentException("Expected BitBuffer of " + bitLength + " bits, got " + other.bitLength + " bits");
         }
+    }
+
+    /**
+     * Read up to {@link #WORD_BITS} bits from an absolute bit offset of the underlying byte array.
+     * The bits are read with a single little endian word load, then shifted and masked.
+     *
+     * @param totalBitOffset Bit offset in the byte array
+     * @param length         Number of bits
+     * @return the bits, right aligned
+     */
+    private long getBits(int totalBitOffset, int length) {
+        long word = getWord(totalBitOffset >>> 3);
+        return (word >>> (totalBitOffset & 7)) & longMask(length);
+    }
+
+    /**
+     * Write up to {@link #WORD_BITS} bits at an absolute bit offset of the underlying byte array.
+     * Only the bytes containing bits of the region are modified.
+     *
+     * @param value          Bits to write, right aligned
+     * @param totalBitOffset Bit offset in the byte array
+     * @param length         Number of bits
+     */
+    private void setBits(long value, int totalBitOffset, int length) {
         if (length == 0) {
             return;
         }
+        int byteOffset = totalBitOffset >>> 3;
+        int partialBitOffset = totalBitOffset & 7;
+        long mask = longMask(length) << partialBitOffset;
+        long word = getWord(byteOffset);
+        word = (word & ~mask) | ((value << partialBitOffset) & mask);
+        int bytes = (partialBitOffset + length + 7) >>> 3;
+        for (int i = 0; i < bytes; i++) {
+            buffer[byteOffset + i] = (byte) (word >>> (i * Byte.SIZE));
+        }
+    }
 
-        int totalBitOffset = bitOffset + this.bitOffset;
-        int byteOffset = totalBitOffset / Byte.SIZE;
-        int partialBitOffset = totalBitOffset % Byte.SIZE;
-
-        if (length <= (Byte.SIZE - partialBitOffset)) {
-            // Clear
-            buffer[byteOffset] &= ~(mask(length) << partialBitOffset);
-            // Set
-            buffer[byteOffset] |= (value & mask(length)) << partialBitOffset;
+    private long getWord(int byteOffset) {
+        if (byteOffset + Long.BYTES <= buffer.length) {
+            return (buffer[byteOffset] & 0xFFL)
+                    | (buffer[byteOffset + 1] & 0xFFL) << 8
+                    | (buffer[byteOffset + 2] & 0xFFL) << 16
+                    | (buffer[byteOffset + 3] & 0xFFL) << 24
+                    | (buffer[byteOffset + 4] & 0xFFL) << 32
+                    | (buffer[byteOffset + 5] & 0xFFL) << 40
+                    | (buffer[byteOffset + 6] & 0xFFL) << 48
+                    | (buffer[byteOffset + 7] & 0xFFL) << 56;
         } else {
-            // Clear
-            buffer[byteOffset]     &= mask(partialBitOffset);
-            buffer[byteOffset + 1] &= ~(mask(length - (Byte.SIZE - partialBitOffset)));
-
-            // Set
-            buffer[byteOffset] |= value << partialBitOffset;
-            buffer[byteOffset + 1] |= (value >>> (Byte.SIZE - partialBitOffset)) & mask(length - (Byte.SIZE - partialBitOffset));
+            // Last bytes of the array
+            long word = 0;
+            for (int i = 0; byteOffset + i < buffer.length; i++) {
+                word |= (buffer[byteOffset + i] & 0xFFL) << (i * Byte.SIZE);
+            }
+            return word;
         }
     }
 
+    private static long longMask(int bits) {
+        return (1L << bits) - 1;
+    }
+
     public static BitBuffer copy(byte[] buffer, int offset, int length) {
         // TODO: Smart copy
         byte[] copy = new byte[buffer.length];
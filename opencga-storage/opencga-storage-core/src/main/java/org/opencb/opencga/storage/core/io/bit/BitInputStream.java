@@ -64,6 +64,20 @@ public class BitInputStream extends BitBuffer {
         return r;
     }
 
+    /**
+     * Read consecutive values of the same bit length, up to 32 bits each.
+     *
+     * @param out            Array to store the values
+     * @param outOffset      First position to write in the array
+     * @param count          Number of values to read
+     * @param valueBitLength Bit length of each value
+     */
+    public void readInts(int[] out, int outOffset, int count, int valueBitLength) {
+        getInts(out, outOffset, bitsRead, valueBitLength, count);
+        bitsRead += valueBitLength * count;
+        bitsAvailable -= valueBitLength * count;
+    }
+
     /**
      * Read up to 8 bits (one byte).
      *
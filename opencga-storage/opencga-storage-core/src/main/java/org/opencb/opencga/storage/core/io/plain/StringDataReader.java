@@ -25,8 +25,12 @@ import org.xerial.snappy.SnappyInputStream;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -83,38 +87,48 @@ public class StringDataReader implements DataReader<String> {
     @Override
     public boolean open() {
         try {
-            if (is != null) {
-                sizeInputStream = new SizeInputStream(is, 0);
-                this.reader = new BufferedReader(new InputStreamReader(sizeInputStream));
-            } else {
-                String fileName;
-                if (uri != null) {
-                    fileName = UriUtils.fileName(uri);
-                    lastAvailable = ioConnector.size(uri);
-                    sizeInputStream = new SizeInputStream(ioConnector.newInputStreamRaw(uri), lastAvailable);
-                } else {
-                    fileName = path.toFile().getName();
-                    lastAvailable = getFileSize();
-                    sizeInputStream = new SizeInputStream(new FileInputStream(path.toFile()), lastAvailable);
-                }
-                if (fileName.endsWith(".gz")) {
-                    logger.debug("Gzip input compress");
-                    this.reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(sizeInputStream)));
-                } else if (fileName.endsWith(".snappy") || fileName.endsWith(".snz")) {
-                    logger.debug("Snappy input compress");
-                    this.reader = new BufferedReader(new InputStreamReader(new SnappyInputStream(sizeInputStream)));
-                } else {
-                    logger.debug("Plain input compress");
-//                this.reader = Files.newBufferedReader(path, Charset.defaultCharset());
-                    this.reader = new BufferedReader(new InputStreamReader(sizeInputStream));
-                }
-            }
+            this.reader = new BufferedReader(new InputStreamReader(openInputStream()));
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
         return true;
     }
 
+    /**
+     * Open the input, uncompressing it if needed.
+     *
+     * @return the uncompressed input stream
+     * @throws IOException on error opening the input
+     */
+    protected InputStream openInputStream() throws IOException {
+        if (is != null) {
+            sizeInputStream = new SizeInputStream(is, 0);
+            return sizeInputStream;
+        } else {
+            String fileName;
+            if (uri != null) {
+                fileName = UriUtils.fileName(uri);
+                lastAvailable = ioConnector.size(uri);
+                sizeInputStream = new SizeInputStream(ioConnector.newInputStreamRaw(uri), lastAvailable);
+            } else {
+                fileName = path.toFile().getName();
+                lastAvailable = getFileSize();
+                sizeInputStream = new SizeInputStream(new FileInputStream(path.toFile()), lastAvailable);
+            }
+            if (fileName.endsWith(".gz")) {
+                logger.debug("Gzip input compress");
+                return new GZIPInputStream(sizeInputStream);
+            } else if (fileName.endsWith(".snappy") || fileName.endsWith(".snz")) {
+                logger.debug("Snappy input compress");
+                return new SnappyInputStream(sizeInputStream);
+            } else {
+                logger.debug("Plain input compress");
+//                this.reader = Files.newBufferedReader(path, Charset.defaultCharset());
+                return sizeInputStream;
+            }
+        }
+    }
+
     @Override
     public boolean close() {
         try {
@@ -172,9 +186,12 @@ public class StringDataReader implements DataReader<String> {
     }
 
     private void onReadBytes() throws IOException {
-        long newAvailable = sizeInputStream.availableLong();
+        onReadBytes(sizeInputStream.size(), sizeInputStream.availableLong());
+    }
+
+    private void onReadBytes(long size, long newAvailable) {
         if (readBytesListener != null) {
-            readBytesListener.accept(sizeInputStream.size() - newAvailable, lastAvailable - newAvailable);
+            readBytesListener.accept(size - newAvailable, lastAvailable - newAvailable);
         }
 //        logger.info((sizeInputStream.size - newAvailable) + "/" + sizeInputStream.size + " : " + (lastAvailable - newAvailable));
         lastAvailable = newAvailable;
@@ -191,6 +208,19 @@ public class StringDataReader implements DataReader<String> {
         return this;
     }
 
+    /**
+     * Get a reader over the same input returning each line as a {@link ByteBuffer}, without decoding the bytes into Strings.
+     * Uncompressed local files are memory mapped. Other inputs are read in chunks, and lines are slices of those chunks.
+     * Lines do not include the end of line characters.
+     *
+     * Only one of the two readers should be used.
+     *
+     * @return DataReader of lines as ByteBuffers
+     */
+    public DataReader<ByteBuffer> asByteBufferReader() {
+        return new ByteBufferLineReader();
+    }
+
     public long getFileSize() throws IOException {
         if (path != null) {
             return Files.size(path);
@@ -199,6 +229,145 @@ public class StringDataReader implements DataReader<String> {
         }
     }
 
+    private class ByteBufferLineReader implements DataReader<ByteBuffer> {
+        private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+        private static final long MAX_MAP_SIZE = 256L * 1024 * 1024;
+        private InputStream inputStream;
+        private FileChannel channel;
+        // Position of the current buffer in the mapped file
+        private long mappedOffset;
+        private ByteBuffer buffer;
+        private boolean eof;
+
+        @Override
+        public boolean open() {
+            try {
+                Path localPath = path;
+                if (localPath == null && uri != null && "file".equals(uri.getScheme())) {
+                    localPath = Paths.get(uri);
+                }
+                String fileName = localPath == null ? null : localPath.toFile().getName();
+                if (localPath != null && !fileName.endsWith(".gz") && !fileName.endsWith(".snappy") && !fileName.endsWith(".snz")) {
+                    logger.debug("Memory mapped input");
+                    channel = FileChannel.open(localPath, StandardOpenOption.READ);
+                    lastAvailable = channel.size();
+                    mappedOffset = 0;
+                    buffer = map(0);
+                } else {
+                    inputStream = openInputStream();
+                    buffer = ByteBuffer.allocate(0);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                } else if (closeReader) {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public List<ByteBuffer> read(int batchSize) {
+            List<ByteBuffer> batch = new ArrayList<>(batchSize);
+            try {
+                for (int i = 0; i < batchSize; i++) {
+                    ByteBuffer line = nextLine();
+                    if (line == null) {
+                        break;
+                    }
+                    batch.add(line);
+                    onReadLine();
+                }
+                if (channel != null) {
+                    long size = channel.size();
+                    onReadBytes(size, size - mappedOffset - buffer.position());
+                } else {
+                    onReadBytes();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return batch;
+        }
+
+        private ByteBuffer nextLine() throws IOException {
+            while (true) {
+                int start = buffer.position();
+                int limit = buffer.limit();
+                for (int i = start; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        buffer.position(i + 1);
+                        return slice(start, i);
+                    }
+                }
+                if (eof) {
+                    if (start == limit) {
+                        return null;
+                    }
+                    buffer.position(limit);
+                    return slice(start, limit);
+                }
+                refill();
+            }
+        }
+
+        private ByteBuffer slice(int start, int end) {
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            ByteBuffer line = buffer.duplicate();
+            line.limit(end).position(start);
+            return line.slice();
+        }
+
+        /**
+         * Read more data, keeping the incomplete line at the beginning of the new buffer.
+         * Previous buffers are never modified, as the lines returned in other batches might still be in use.
+         */
+        private void refill() throws IOException {
+            if (channel != null) {
+                if (buffer.position() == 0) {
+                    throw new IOException("Line too long at offset " + mappedOffset);
+                }
+                mappedOffset += buffer.position();
+                buffer = map(mappedOffset);
+            } else {
+                int remaining = buffer.remaining();
+                byte[] chunk = new byte[Math.max(CHUNK_SIZE, remaining * 2)];
+                buffer.get(chunk, 0, remaining);
+                int size = remaining;
+                while (size < chunk.length) {
+                    int read = inputStream.read(chunk, size, chunk.length - size);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    size += read;
+                }
+                buffer = ByteBuffer.wrap(chunk, 0, size);
+            }
+        }
+
+        private ByteBuffer map(long offset) throws IOException {
+            long size = Math.min(MAX_MAP_SIZE, channel.size() - offset);
+            if (offset + size == channel.size()) {
+                eof = true;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        }
+    }
+
     private static class SizeInputStream extends InputStream {
         // The InputStream to read bytes from
         private InputStream in = null;
@@ -1,15 +1,32 @@
 package org.opencb.opencga.storage.core.metadata;
 
-import java.util.concurrent.ConcurrentHashMap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
+ * Size bounded cache of metadata values, indexed by study and resource id.
+ *
+ * Integer resource ids are packed together with the study id into a single long key. Least recently used
+ * entries are evicted once the cache reaches its maximum size (or weight, if a weigher is provided).
+ *
  * Created by jacobo on 27/02/19.
  */
 public class MetadataCache<ID, R> {
 
-    private final ConcurrentHashMap<String, R> cache;
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    private final Cache<Object, R> cache;
+    private final ConcurrentMap<Object, R> map;
     private final BiFunction<Integer, ID, R> function;
 
     public MetadataCache(BiFunction<Integer, ID, R> function) {
@@ -17,19 +34,36 @@ public class MetadataCache<ID, R> {
     }
 
     public MetadataCache(BiFunction<Integer, ID, R> function, Predicate<R> reuseValue) {
-        this.cache = new ConcurrentHashMap<>();
+        this(function, reuseValue, null, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a new MetadataCache.
+     *
+     * @param function   Function to load missing values
+     * @param reuseValue Values matching this predicate are interned, so equal values share the same instance.
+     * @param weigher    Weight of each value. If null, every entry has weight 1.
+     * @param maxWeight  Max accumulated weight of the cache. Non positive values for an unbounded cache.
+     */
+    public MetadataCache(BiFunction<Integer, ID, R> function, Predicate<R> reuseValue, ToIntFunction<R> weigher, long maxWeight) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        if (maxWeight > 0) {
+            if (weigher == null) {
+                builder.maximumSize(maxWeight);
+            } else {
+                builder.maximumWeight(maxWeight).weigher((Object key, Object value) -> Math.max(1, weigher.applyAsInt((R) value)));
+            }
+        }
+        this.cache = builder.build();
+        this.map = cache.asMap();
         if (reuseValue != null) {
-            // Try to reuse the value from another already existing in the cache.
+            // Try to reuse the value from another equal value already loaded.
             // Allows to avoid duplicated values and lets the GC to claim the unused values.
+            Interner<R> interner = Interners.newWeakInterner();
             this.function = function.andThen(value -> {
-                // Once we have the value, try to find an equal value in the cache
                 if (value != null && reuseValue.test(value)) {
-                    for (R cachedValue : cache.values()) {
-                        if (cachedValue.equals(value)) {
-                            // Use the cached value. The GC will claim the 'value'. Multiple entries will point to the same value.
-                            return cachedValue;
-                        }
-                    }
+                    // Multiple entries will point to the same value.
+                    return interner.intern(value);
                 }
                 return value;
             });
@@ -46,16 +80,14 @@ public class MetadataCache<ID, R> {
      * @return        Value
      */
     public R get(int studyId, ID id) {
-        String key = getKey(studyId, id);
+        Object key = getKey(studyId, id);
 
-        // Avoid unnecessary synchronize blocks.
-        // ConcurrentHashMap::get does not have any synchronization block
-        R r = cache.get(key);
+        R r = cache.getIfPresent(key);
         if (r != null) {
             return r;
         } else {
-            // Use this method to avoid executing the function twice
-            return cache.computeIfAbsent(key, k -> this.function.apply(studyId, id));
+            // Null values are not stored
+            return map.computeIfAbsent(key, k -> this.function.apply(studyId, id));
         }
     }
 
@@ -68,14 +100,11 @@ public class MetadataCache<ID, R> {
      * @return Value
      */
     public R get(int studyId, ID id, R invalidValue) {
-        String key = getKey(studyId, id);
+        Object key = getKey(studyId, id);
 
-        // Avoid unnecessary synchronize blocks.
-        // ConcurrentHashMap::get does not have any synchronization block
-        R r = cache.get(key);
+        R r = cache.getIfPresent(key);
         if (r == null || r.equals(invalidValue)) {
-            // Use this method to avoid executing the function twice
-            return cache.compute(key, (k, v) -> {
+            return map.compute(key, (k, v) -> {
                 if (v == null || v.equals(invalidValue)) {
                     return this.function.apply(studyId, id);
                 } else {
@@ -91,12 +120,80 @@ public class MetadataCache<ID, R> {
         cache.put(getKey(studyId, id), value);
     }
 
+    /**
+     * Remove all the values from the given study.
+     *
+     * @param studyId Study id
+     */
+    public void invalidate(int studyId) {
+        map.keySet().removeIf(key -> getStudy(key) == studyId);
+    }
+
     public void clear() {
-        cache.clear();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public ObjectMap getStatsMap() {
+        CacheStats stats = cache.stats();
+        return new ObjectMap()
+                .append("size", cache.size())
+                .append("hits", stats.hitCount())
+                .append("misses", stats.missCount())
+                .append("hitRate", stats.hitRate())
+                .append("evictions", stats.evictionCount());
     }
 
-    private String getKey(int studyId, ID id) {
-        return studyId + "_" + id;
+    private static Object getKey(int studyId, Object id) {
+        if (id instanceof Integer) {
+            return (((long) studyId) << 32) | (((Integer) id) & 0xFFFFFFFFL);
+        } else {
+            return new StudyResourceKey(studyId, id);
+        }
+    }
+
+    private static int getStudy(Object key) {
+        if (key instanceof Long) {
+            return (int) (((Long) key) >>> 32);
+        } else {
+            return ((StudyResourceKey) key).studyId;
+        }
+    }
+
+    private static final class StudyResourceKey {
+        private final int studyId;
+        private final Object id;
+        private final int hash;
+
+        private StudyResourceKey(int studyId, Object id) {
+            this.studyId = studyId;
+            this.id = id;
+            this.hash = 31 * studyId + Objects.hashCode(id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            StudyResourceKey that = (StudyResourceKey) o;
+            return studyId == that.studyId && Objects.equals(id, that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 
 }
@@ -48,6 +48,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
@@ -93,6 +94,8 @@ public class VariantStorageMetadataManager implements AutoCloseable {
     private final int lockDuration;
     private final int lockTimeout;
 
+    private final List<MetadataUpdateListener> updateListeners = new CopyOnWriteArrayList<>();
+
     public VariantStorageMetadataManager(VariantStorageMetadataDBAdaptorFactory dbAdaptorFactory) {
         this.projectDBAdaptor = dbAdaptorFactory.buildProjectMetadataDBAdaptor();
         this.studyDBAdaptor = dbAdaptorFactory.buildStudyMetadataDBAdaptor();
@@ -104,28 +107,30 @@ public class VariantStorageMetadataManager implements AutoCloseable {
                 .getInt(VariantStorageOptions.METADATA_LOCK_DURATION.key(), VariantStorageOptions.METADATA_LOCK_DURATION.defaultValue());
         lockTimeout = dbAdaptorFactory.getConfiguration()
                 .getInt(VariantStorageOptions.METADATA_LOCK_TIMEOUT.key(), VariantStorageOptions.METADATA_LOCK_TIMEOUT.defaultValue());
-        sampleIdCache = new MetadataCache<>(sampleDBAdaptor::getSampleId);
+        int cacheMaxSize = dbAdaptorFactory.getConfiguration()
+                .getInt(VariantStorageOptions.METADATA_CACHE_MAX_SIZE.key(), VariantStorageOptions.METADATA_CACHE_MAX_SIZE.defaultValue());
+        sampleIdCache = new MetadataCache<>(sampleDBAdaptor::getSampleId, null, null, cacheMaxSize);
         sampleNameCache = new MetadataCache<>((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = sampleDBAdaptor.getSampleMetadata(studyId, sampleId, null);
             if (sampleMetadata == null) {
                 throw VariantQueryException.sampleNotFound(sampleId, getStudyName(studyId));
             }
             return sampleMetadata.getName();
-        });
+        }, null, null, cacheMaxSize);
         sampleIdIndexedCache = new MetadataCache<>((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = sampleDBAdaptor.getSampleMetadata(studyId, sampleId, null);
             if (sampleMetadata == null) {
                 throw VariantQueryException.sampleNotFound(sampleId, getStudyName(studyId));
             }
             return sampleMetadata.isIndexed();
-        });
+        }, null, null, cacheMaxSize);
         sampleIdsFromFileIdCache = new MetadataCache<>((studyId, fileId) -> {
             FileMetadata fileMetadata = fileDBAdaptor.getFileMetadata(studyId, fileId, null);
             if (fileMetadata == null) {
                 throw VariantQueryException.fileNotFound(fileId, getStudyName(studyId));
             }
             return fileMetadata.getSamples();
-        }, samples -> samples.size() > 100);
+        }, samples -> samples.size() > 100, Collection::size, cacheMaxSize);
         splitDataCache = new MetadataCache<>((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = sampleDBAdaptor.getSampleMetadata(studyId, sampleId, null);
             if (sampleMetadata == null) {
@@ -137,39 +142,39 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             } else {
                 return splitData.ordinal();
             }
-        });
+        }, null, null, cacheMaxSize);
 
-        fileIdCache = new MetadataCache<>(fileDBAdaptor::getFileId);
+        fileIdCache = new MetadataCache<>(fileDBAdaptor::getFileId, null, null, cacheMaxSize);
         fileNameCache = new MetadataCache<>((studyId, fileId) -> {
             FileMetadata fileMetadata = fileDBAdaptor.getFileMetadata(studyId, fileId, null);
             if (fileMetadata == null) {
                 throw VariantQueryException.fileNotFound(fileId, getStudyName(studyId));
             }
             return fileMetadata.getName();
-        });
+        }, null, null, cacheMaxSize);
         fileIdIndexedCache = new MetadataCache<>((studyId, fileId) -> {
             FileMetadata fileMetadata = fileDBAdaptor.getFileMetadata(studyId, fileId, null);
             if (fileMetadata == null) {
                 throw VariantQueryException.fileNotFound(fileId, getStudyName(studyId));
             }
             return fileMetadata.isIndexed();
-        });
+        }, null, null, cacheMaxSize);
         fileIdsFromSampleIdCache = new MetadataCache<>((studyId, sampleId) -> {
             SampleMetadata sampleMetadata = getSampleMetadata(studyId, sampleId);
             if (sampleMetadata == null) {
                 throw VariantQueryException.sampleNotFound(sampleId, getStudyName(studyId));
             }
             return sampleMetadata.getFiles();
-        }, files -> files.size() > 20);
+        }, files -> files.size() > 20, Collection::size, cacheMaxSize);
 
-        cohortIdCache = new MetadataCache<>(cohortDBAdaptor::getCohortId);
+        cohortIdCache = new MetadataCache<>(cohortDBAdaptor::getCohortId, null, null, cacheMaxSize);
         cohortNameCache = new MetadataCache<>((studyId, cohortId) -> {
             CohortMetadata cohortMetadata = cohortDBAdaptor.getCohortMetadata(studyId, cohortId, null);
             if (cohortMetadata == null) {
                 throw VariantQueryException.cohortNotFound(cohortId, studyId, getAvailableCohorts(studyId));
             }
             return cohortMetadata.getName();
-        });
+        }, null, null, cacheMaxSize);
     }
 
     public Lock lockGlobal(long lockDuration, long timeout, String lockName)
@@ -233,6 +238,40 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         T update(T t) throws E;
     }
 
+    /**
+     * Listener notified every time some metadata is modified through this manager.
+     * Modifications done by other instances, or other processes, are not notified.
+     */
+    @FunctionalInterface
+    public interface MetadataUpdateListener {
+        /**
+         * Called after modifying the metadata of a study.
+         *
+         * @param studyId Modified study, or null if the modification affects all the studies of the project.
+         */
+        void onUpdate(Integer studyId);
+    }
+
+    public VariantStorageMetadataManager addUpdateListener(MetadataUpdateListener listener) {
+        updateListeners.add(listener);
+        return this;
+    }
+
+    public VariantStorageMetadataManager removeUpdateListener(MetadataUpdateListener listener) {
+        updateListeners.remove(listener);
+        return this;
+    }
+
+    protected void notifyUpdate(Integer studyId) {
+        for (MetadataUpdateListener listener : updateListeners) {
+            try {
+                listener.onUpdate(studyId);
+            } catch (RuntimeException e) {
+                logger.warn("Error notifying metadata update of study {}", studyId, e);
+            }
+        }
+    }
+
     public <E extends Exception> StudyMetadata updateStudyMetadata(Object study, UpdateFunction<StudyMetadata, E> updater)
             throws StorageEngineException, E {
         int studyId = getStudyId(study);
@@ -266,6 +305,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
 
     public void unsecureUpdateStudyMetadata(StudyMetadata sm) {
         studyDBAdaptor.updateStudyMetadata(sm);
+        notifyUpdate(sm.getId());
     }
 
     @Deprecated
@@ -524,6 +564,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
 
             lock.checkLocked();
             projectDBAdaptor.updateProjectMetadata(projectMetadata, updateCounters);
+            notifyUpdate(null);
             return projectMetadata;
         } finally {
             lock.unlock();
@@ -587,11 +628,12 @@ public class VariantStorageMetadataManager implements AutoCloseable {
 
     public void updateVariantFileMetadata(int studyId, VariantFileMetadata metadata) throws StorageEngineException {
         fileDBAdaptor.updateVariantFileMetadata(studyId, metadata);
+        notifyUpdate(studyId);
     }
 
     public void updateVariantFileMetadata(String study, VariantFileMetadata metadata) throws StorageEngineException {
         int studyId = getStudyId(study);
-        fileDBAdaptor.updateVariantFileMetadata(studyId, metadata);
+        updateVariantFileMetadata(studyId, metadata);
     }
 
     public void removeVariantFileMetadata(int studyId, int fileId) throws StorageEngineException {
@@ -600,6 +642,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         } catch (IOException e) {
             throw new StorageEngineException("Error deleting VariantFileMetadata for file " + fileId, e);
         }
+        notifyUpdate(studyId);
     }
 
     public FileMetadata getFileMetadata(int studyId, Object fileObj) {
@@ -614,6 +657,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
     public void unsecureUpdateFileMetadata(int studyId, FileMetadata file) {
         file.setStudyId(studyId);
         fileDBAdaptor.updateFileMetadata(studyId, file, null);
+        notifyUpdate(studyId);
     }
 
     public <E extends Exception> FileMetadata updateFileMetadata(int studyId, int fileId, UpdateFunction<FileMetadata, E> update)
@@ -740,8 +784,8 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             logger.info("Register file " + name + " as INDEXED");
         }
         fileDBAdaptor.addIndexedFiles(studyId, fileIds);
-        fileIdsFromSampleIdCache.clear();
-        fileIdIndexedCache.clear();
+        fileIdsFromSampleIdCache.invalidate(studyId);
+        fileIdIndexedCache.invalidate(studyId);
     }
 
     public void removeIndexedFiles(int studyId, Collection<Integer> fileIds) throws StorageEngineException {
@@ -770,6 +814,9 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             });
         }
         fileDBAdaptor.removeIndexedFiles(studyId, fileIds);
+        fileIdsFromSampleIdCache.invalidate(studyId);
+        fileIdIndexedCache.invalidate(studyId);
+        sampleIdIndexedCache.invalidate(studyId);
     }
 
     public Iterator<FileMetadata> fileMetadataIterator(int studyId) {
@@ -783,6 +830,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
     public void unsecureUpdateSampleMetadata(int studyId, SampleMetadata sample) {
         sample.setStudyId(studyId);
         sampleDBAdaptor.updateSampleMetadata(studyId, sample, null);
+        notifyUpdate(studyId);
     }
 
     public <E extends Exception> SampleMetadata updateSampleMetadata(int studyId, int sampleId, UpdateFunction<SampleMetadata, E> update)
@@ -958,6 +1006,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
     public void unsecureUpdateCohortMetadata(int studyId, CohortMetadata cohort) {
         cohort.setStudyId(studyId);
         cohortDBAdaptor.updateCohortMetadata(studyId, cohort, null);
+        notifyUpdate(studyId);
     }
 
     public <E extends Exception> CohortMetadata updateCohortMetadata(int studyId, int cohortId, UpdateFunction<CohortMetadata, E> update)
@@ -981,6 +1030,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             throw VariantQueryException.cohortNotFound(cohort.toString(), studyId, this);
         }
         cohortDBAdaptor.removeCohort(studyId, cohortId);
+        notifyUpdate(studyId);
     }
 
     public Integer getCohortId(int studyId, String cohortName) {
@@ -1195,6 +1245,7 @@ public class VariantStorageMetadataManager implements AutoCloseable {
             task.setId(newTaskId(studyId));
         }
         taskDBAdaptor.updateTask(studyId, task, null);
+        notifyUpdate(studyId);
     }
 
     public <E extends Exception> TaskMetadata updateTask(int studyId, int taskId, UpdateFunction<TaskMetadata, E> update)
@@ -1816,6 +1867,44 @@ public class VariantStorageMetadataManager implements AutoCloseable {
         cohortNameCache.clear();
     }
 
+    /**
+     * Remove from the caches all the values from the given study.
+     *
+     * @param studyId Study id
+     */
+    public void clearCaches(int studyId) {
+        for (MetadataCache<?, ?> cache : getCaches().values()) {
+            cache.invalidate(studyId);
+        }
+    }
+
+    /**
+     * Get usage statistics of the metadata caches, such as size, hit rate and number of evictions.
+     *
+     * @return Statistics per cache
+     */
+    public ObjectMap getCacheStats() {
+        ObjectMap stats = new ObjectMap();
+        getCaches().forEach((name, cache) -> stats.put(name, cache.getStatsMap()));
+        return stats;
+    }
+
+    private Map<String, MetadataCache<?, ?>> getCaches() {
+        Map<String, MetadataCache<?, ?>> caches = new LinkedHashMap<>();
+        caches.put("sampleId", sampleIdCache);
+        caches.put("sampleName", sampleNameCache);
+        caches.put("sampleIdIndexed", sampleIdIndexedCache);
+        caches.put("sampleIdsFromFileId", sampleIdsFromFileIdCache);
+        caches.put("splitData", splitDataCache);
+        caches.put("fileId", fileIdCache);
+        caches.put("fileName", fileNameCache);
+        caches.put("fileIdIndexed", fileIdIndexedCache);
+        caches.put("fileIdsFromSampleId", fileIdsFromSampleIdCache);
+        caches.put("cohortId", cohortIdCache);
+        caches.put("cohortName", cohortNameCache);
+        return caches;
+    }
+
     @Override
     public void close() throws IOException {
         studyDBAdaptor.close();
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.metadata.lock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.opencb.opencga.storage.core.metadata.models.Lock;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local {@link LockManager}, for a single process.
+ *
+ * Applicants take a ticket, and get the lock in ticket order (FIFO). Waiters are notified when the lock is released,
+ * or when the lease of the current holder expires.
+ */
+public class InMemoryLockManager implements LockManager<Object> {
+
+    private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("local-lock-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private final ReentrantLock mutex = new ReentrantLock();
+    private final Map<Object, LockState> locks = new HashMap<>();
+    private final LockMetrics metrics = new LockMetrics();
+    /** Tickets are unique for all the elements, so an expired token can not match any later lock. */
+    private long nextTicket = 1;
+
+    private final class LockState {
+        private final Condition changed = mutex.newCondition();
+        private final ArrayDeque<Long> queue = new ArrayDeque<>();
+        /** Ticket of the current holder, or 0 if free. */
+        private long token;
+        private long expireTime;
+
+        private boolean isTaken(long now) {
+            return token != 0 && expireTime >= now;
+        }
+    }
+
+    @Override
+    public Lock lock(Object id, long lockDuration, long timeout) throws InterruptedException, TimeoutException {
+        long start = System.currentTimeMillis();
+        long ticket;
+        mutex.lockInterruptibly();
+        try {
+            LockState state = locks.computeIfAbsent(id, k -> new LockState());
+            ticket = nextTicket++;
+            state.queue.add(ticket);
+            boolean acquired = false;
+            try {
+                long now = System.currentTimeMillis();
+                while (state.queue.peekFirst() != ticket || state.isTaken(now)) {
+                    long remaining = start + timeout - now;
+                    if (remaining <= 0) {
+                        metrics.timeout();
+                        throw new TimeoutException("Unable to get the lock");
+                    }
+                    long wait = remaining;
+                    if (state.isTaken(now)) {
+                        // Wake up when the lease of the current holder expires
+                        wait = Math.min(wait, state.expireTime - now + 1);
+                    }
+                    state.changed.await(wait, TimeUnit.MILLISECONDS);
+                    now = System.currentTimeMillis();
+                }
+                state.queue.pollFirst();
+                state.token = ticket;
+                state.expireTime = now + lockDuration;
+                acquired = true;
+            } finally {
+                if (!acquired) {
+                    state.queue.remove(ticket);
+                    if (state.queue.isEmpty() && state.token == 0) {
+                        locks.remove(id);
+                    }
+                    // The next applicant might be the first in the queue now
+                    state.changed.signalAll();
+                }
+            }
+        } finally {
+            mutex.unlock();
+        }
+
+        long acquireTime = System.currentTimeMillis();
+        metrics.acquired(acquireTime - start);
+        return new Lock(THREAD_POOL, (int) Math.max(1, lockDuration / 4), ticket) {
+            @Override
+            protected void unlock0() {
+                InMemoryLockManager.this.unlock(id, getToken());
+                metrics.released(System.currentTimeMillis() - acquireTime);
+            }
+
+            @Override
+            public void refresh() {
+                InMemoryLockManager.this.refresh(id, getToken(), lockDuration);
+            }
+        };
+    }
+
+    /**
+     * Refreshes the lease of the lock.
+     *
+     * @param id            Locked element
+     * @param lockToken     Lock token
+     * @param lockDuration  Duration in milliseconds of the lease
+     * @throws IllegalStateException  if the lockToken does not match with the current lockToken
+     */
+    public void refresh(Object id, long lockToken, long lockDuration) {
+        mutex.lock();
+        try {
+            LockState state = getLockState(id, lockToken);
+            state.expireTime = System.currentTimeMillis() + lockDuration;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Releases the lock.
+     *
+     * @param id            Locked element
+     * @param lockToken     Lock token
+     * @throws IllegalStateException  if the lockToken does not match with the current lockToken
+     */
+    public void unlock(Object id, long lockToken) {
+        mutex.lock();
+        try {
+            LockState state = getLockState(id, lockToken);
+            state.token = 0;
+            state.changed.signalAll();
+            if (state.queue.isEmpty()) {
+                locks.remove(id);
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    @Override
+    public LockMetrics getMetrics() {
+        return metrics;
+    }
+
+    private LockState getLockState(Object id, long lockToken) {
+        LockState state = locks.get(id);
+        if (state == null || state.token != lockToken) {
+            throw new IllegalStateException("Lock token " + lockToken + " not found!");
+        }
+        return state;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.metadata.lock;
+
+import org.opencb.opencga.storage.core.metadata.models.Lock;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Exclusive locks over the elements of the metadata store.
+ *
+ * Locks are leases. The returned {@link Lock} renews the lease from a background thread until it is unlocked.
+ * If the lease expires, the lock can be taken by the next applicant.
+ *
+ * @param <T> Type of the locked element identifier
+ */
+public interface LockManager<T> {
+
+    /**
+     * Apply for the lock.
+     *
+     * @param id            Element to lock
+     * @param lockDuration  Duration in milliseconds of the lease. After this time, if not refreshed, the lock is expired.
+     * @param timeout       Max time in milliseconds to wait for the lock
+     *
+     * @return              Lock token
+     *
+     * @throws InterruptedException if any thread has interrupted the current thread.
+     * @throws TimeoutException if the operations takes more than the timeout value.
+     * @throws IOException      if there is an error accessing the lock.
+     */
+    Lock lock(T id, long lockDuration, long timeout) throws InterruptedException, TimeoutException, IOException;
+
+    /**
+     * @return Wait time and hold time statistics of the locks managed by this instance.
+     */
+    LockMetrics getMetrics();
+
+}
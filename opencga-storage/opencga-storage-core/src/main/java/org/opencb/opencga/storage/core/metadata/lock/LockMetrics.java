@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.metadata.lock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Wait time and hold time histograms of a {@link LockManager}.
+ */
+public class LockMetrics {
+
+    private final TimeHistogram waitTime = new TimeHistogram();
+    private final TimeHistogram holdTime = new TimeHistogram();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public void acquired(long waitTimeMillis) {
+        waitTime.add(waitTimeMillis);
+    }
+
+    public void released(long holdTimeMillis) {
+        holdTime.add(holdTimeMillis);
+    }
+
+    public void timeout() {
+        timeouts.incrementAndGet();
+    }
+
+    /**
+     * @return Time waiting until the lock was acquired. Does not include the applications that timed out.
+     */
+    public TimeHistogram getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return Time between acquiring and releasing the lock.
+     */
+    public TimeHistogram getHoldTime() {
+        return holdTime;
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LockMetrics{"
+                + "waitTime=" + waitTime
+                + ", holdTime=" + holdTime
+                + ", timeouts=" + timeouts
+                + '}';
+    }
+
+    /**
+     * Histogram of durations in milliseconds, with fixed exponential buckets from 1ms to 1h.
+     */
+    public static class TimeHistogram {
+        private static final long[] BUCKETS = {
+                1, 2, 5, 10, 20, 50, 100, 200, 500,
+                1000, 2000, 5000, 10000, 30000,
+                60000, 300000, 600000, 1800000, 3600000,
+        };
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void add(long millis) {
+            millis = Math.max(0, millis);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(millis);
+            max.accumulateAndGet(millis, Math::max);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMean() {
+            long count = this.count.get();
+            return count == 0 ? 0 : ((double) sum.get()) / count;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Approximated percentile, given by the upper bound of the bucket containing it.
+         *
+         * @param percentile Percentile, between 0 and 100
+         * @return Upper bound of the percentile, in milliseconds
+         */
+        public long getPercentile(double percentile) {
+            long count = this.count.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long accumulated = 0;
+            for (int bucket = 0; bucket < BUCKETS.length; bucket++) {
+                accumulated += counts.get(bucket);
+                if (accumulated >= rank) {
+                    return Math.min(BUCKETS[bucket], getMax());
+                }
+            }
+            return getMax();
+        }
+
+        /**
+         * @return Number of values for each bucket, by the upper bound of the bucket in milliseconds.
+         */
+        public Map<Long, Long> getBuckets() {
+            Map<Long, Long> buckets = new LinkedHashMap<>();
+            for (int bucket = 0; bucket < BUCKETS.length; bucket++) {
+                buckets.put(BUCKETS[bucket], counts.get(bucket));
+            }
+            buckets.put(Long.MAX_VALUE, counts.get(BUCKETS.length));
+            return buckets;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + getCount()
+                    + ", mean=" + Math.round(getMean()) + "ms"
+                    + ", p50=" + getPercentile(50) + "ms"
+                    + ", p90=" + getPercentile(90) + "ms"
+                    + ", p99=" + getPercentile(99) + "ms"
+                    + ", max=" + getMax() + "ms"
+                    + '}';
+        }
+    }
+}
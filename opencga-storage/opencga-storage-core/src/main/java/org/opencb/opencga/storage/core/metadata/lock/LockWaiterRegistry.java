@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.metadata.lock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process registry of threads waiting for a lock.
+ *
+ * Lock managers backed by an external store can not be notified when a lock is released by another process, so they
+ * need to poll the store. Instead of sleeping between polls, waiters wait in this registry, and are woken up as soon as
+ * the lock is released from the same process. Spurious and lost wake-ups are possible, so the waiters must check
+ * the lock status again after waiting, and always wait with a timeout.
+ */
+public class LockWaiterRegistry {
+
+    private final Map<Object, Waiters> waiters = new ConcurrentHashMap<>();
+
+    private static class Waiters {
+        private int count;
+    }
+
+    /**
+     * Wait until the lock is released from this process, or until the timeout.
+     *
+     * @param key           Lock key
+     * @param timeoutMillis Max time in milliseconds to wait
+     * @throws InterruptedException if any thread has interrupted the current thread.
+     */
+    public void await(Object key, long timeoutMillis) throws InterruptedException {
+        if (timeoutMillis <= 0) {
+            return;
+        }
+        Waiters w = waiters.compute(key, (k, v) -> {
+            if (v == null) {
+                v = new Waiters();
+            }
+            v.count++;
+            return v;
+        });
+        try {
+            synchronized (w) {
+                w.wait(timeoutMillis);
+            }
+        } finally {
+            waiters.computeIfPresent(key, (k, v) -> {
+                v.count--;
+                return v.count == 0 ? null : v;
+            });
+        }
+    }
+
+    /**
+     * Wake up all the threads waiting for the lock.
+     *
+     * @param key Lock key
+     */
+    public void signalAll(Object key) {
+        Waiters w = waiters.get(key);
+        if (w != null) {
+            synchronized (w) {
+                w.notifyAll();
+            }
+        }
+    }
+
+    public int getNumWaiters(Object key) {
+        Waiters w = waiters.get(key);
+        return w == null ? 0 : w.count;
+    }
+}
@@ -3,6 +3,7 @@ package org.opencb.opencga.storage.core.metadata.models;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 
 import java.util.*;
@@ -23,6 +24,8 @@ public class ProjectMetadata {
 
     private Map<String, Integer> counters;
 
+    private SecondaryIndexCheckpoint secondaryIndexCheckpoint;
+
     private ObjectMap attributes;
 
     public static class VariantAnnotationSets {
@@ -208,6 +211,82 @@ public class ProjectMetadata {
 
     }
 
+    /**
+     * Last successful synchronization of the secondary index (SearchEngine).
+     * Changes made after the timestamp of the checkpoint are not in the secondary index yet.
+     */
+    public static class SecondaryIndexCheckpoint {
+        private long timestamp;
+        private Date date;
+        private long numVariants;
+        private boolean incremental;
+
+        public SecondaryIndexCheckpoint() {
+        }
+
+        public SecondaryIndexCheckpoint(long timestamp, long numVariants, boolean incremental) {
+            this.timestamp = timestamp;
+            this.date = new Date(timestamp);
+            this.numVariants = numVariants;
+            this.incremental = incremental;
+        }
+
+        /**
+         * @return Time when the synchronization started. 0 if never synchronized.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public SecondaryIndexCheckpoint setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public SecondaryIndexCheckpoint setDate(Date date) {
+            this.date = date;
+            return this;
+        }
+
+        /**
+         * @return Number of variants pushed to the secondary index in the synchronization.
+         */
+        public long getNumVariants() {
+            return numVariants;
+        }
+
+        public SecondaryIndexCheckpoint setNumVariants(long numVariants) {
+            this.numVariants = numVariants;
+            return this;
+        }
+
+        /**
+         * @return If only the variants changed since the previous checkpoint were pushed.
+         */
+        public boolean isIncremental() {
+            return incremental;
+        }
+
+        public SecondaryIndexCheckpoint setIncremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                    .append("timestamp", timestamp)
+                    .append("date", date)
+                    .append("numVariants", numVariants)
+                    .append("incremental", incremental)
+                    .toString();
+        }
+    }
+
     public ProjectMetadata() {
         release = 1;
         annotation = new VariantAnnotationSets();
@@ -230,7 +309,8 @@ public class ProjectMetadata {
     }
 
     public ProjectMetadata copy() {
-        return new ProjectMetadata(species, assembly, release, new ObjectMap(attributes), new HashMap<>(counters), annotation);
+        return new ProjectMetadata(species, assembly, release, new ObjectMap(attributes), new HashMap<>(counters), annotation)
+                .setSecondaryIndexCheckpoint(secondaryIndexCheckpoint);
     }
 
     public String getSpecies() {
@@ -278,6 +358,23 @@ public class ProjectMetadata {
         return this;
     }
 
+    /**
+     * @return Last successful synchronization of the secondary index. Never null.
+     */
+    public SecondaryIndexCheckpoint getSecondaryIndexCheckpoint() {
+        if (secondaryIndexCheckpoint == null) {
+            // Projects synchronized before the checkpoint was introduced only have the timestamp
+            long timestamp = attributes == null ? 0 : attributes.getLong(VariantStorageOptions.SEARCH_INDEX_LAST_TIMESTAMP.key());
+            return new SecondaryIndexCheckpoint(timestamp, 0, false);
+        }
+        return secondaryIndexCheckpoint;
+    }
+
+    public ProjectMetadata setSecondaryIndexCheckpoint(SecondaryIndexCheckpoint secondaryIndexCheckpoint) {
+        this.secondaryIndexCheckpoint = secondaryIndexCheckpoint;
+        return this;
+    }
+
     public ObjectMap getAttributes() {
         return attributes;
     }
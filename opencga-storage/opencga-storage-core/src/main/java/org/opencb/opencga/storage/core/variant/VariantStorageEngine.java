@@ -32,6 +32,7 @@ import org.opencb.opencga.core.config.storage.StorageConfiguration;
 import org.opencb.opencga.core.response.VariantQueryResult;
 import org.opencb.opencga.storage.core.StorageEngine;
 import org.opencb.opencga.storage.core.StoragePipelineResult;
+import org.opencb.opencga.storage.core.cache.CacheManager;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.exceptions.StoragePipelineException;
 import org.opencb.opencga.storage.core.exceptions.VariantSearchException;
@@ -59,6 +60,7 @@ import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
 import org.opencb.opencga.storage.core.variant.query.executors.*;
 import org.opencb.opencga.storage.core.variant.score.VariantScoreFormatDescriptor;
 import org.opencb.opencga.storage.core.variant.search.SamplesSearchIndexVariantQueryExecutor;
+import org.opencb.opencga.storage.core.variant.search.SecondaryIndexChangeLog;
 import org.opencb.opencga.storage.core.variant.search.SearchIndexVariantAggregationExecutor;
 import org.opencb.opencga.storage.core.variant.search.SearchIndexVariantQueryExecutor;
 import org.opencb.opencga.storage.core.variant.search.VariantSecondaryIndexFilter;
@@ -90,11 +92,13 @@ import static org.opencb.opencga.storage.core.variant.search.VariantSearchUtils.
 public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdaptor> implements VariantIterable {
 
     private final AtomicReference<VariantSearchManager> variantSearchManager = new AtomicReference<>();
+    private final AtomicReference<CacheManager> cacheManager = new AtomicReference<>();
     private final List<VariantQueryExecutor> lazyVariantQueryExecutorsList = new ArrayList<>();
     private final List<VariantAggregationExecutor> lazyVariantAggregationExecutorsList = new ArrayList<>();
     private CellBaseUtils cellBaseUtils;
 
     public static final String REMOVE_OPERATION_NAME = TaskMetadata.Type.REMOVE.name().toLowerCase();
+    public static final String CACHE_TYPE = "var";
 
     private Logger logger = LoggerFactory.getLogger(VariantStorageEngine.class);
     private ObjectMap options;
@@ -292,6 +296,7 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
     @Override
     public List<StoragePipelineResult> index(List<URI> inputFiles, URI outdirUri, boolean doExtract, boolean doTransform, boolean doLoad)
             throws StorageEngineException {
+        checkTransformStream(doTransform, doLoad);
         List<StoragePipelineResult> results = super.index(inputFiles, outdirUri, doExtract, doTransform, doLoad);
         if (doLoad) {
             annotateLoadedFiles(outdirUri, inputFiles, results, getOptions());
@@ -301,6 +306,20 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         return results;
     }
 
+    /**
+     * The transform step can only be streamed into the load step if both steps are executed.
+     *
+     * @param doTransform   Execute transform step
+     * @param doLoad        Execute load step
+     */
+    protected void checkTransformStream(boolean doTransform, boolean doLoad) {
+        if (getOptions().getBoolean(TRANSFORM_STREAM.key(), TRANSFORM_STREAM.defaultValue()) && !(doTransform && doLoad)) {
+            logger.warn("Unable to stream the transform step without executing both transform and load. Ignore {}",
+                    TRANSFORM_STREAM.key());
+            getOptions().put(TRANSFORM_STREAM.key(), false);
+        }
+    }
+
     @Override
     public abstract VariantStoragePipeline newStoragePipeline(boolean connected) throws StorageEngineException;
 
@@ -603,8 +622,6 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         Query query = VariantQueryUtils.copy(inputQuery);
         QueryOptions queryOptions = VariantQueryUtils.copy(inputQueryOptions);
 
-        VariantDBAdaptor dbAdaptor = getDBAdaptor();
-
         VariantSearchManager variantSearchManager = getVariantSearchManager();
         // first, create the collection it it does not exist
         variantSearchManager.create(dbName);
@@ -612,19 +629,31 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
             throw new StorageEngineException("Solr is not alive!");
         }
 
+        // Changes made while synchronizing will be pushed in the next synchronization
+        long timestamp = System.currentTimeMillis();
+        ProjectMetadata.SecondaryIndexCheckpoint since = overwrite ? null : getMetadataManager().getProjectMetadata()
+                .getSecondaryIndexCheckpoint();
+        if (since != null && since.getTimestamp() <= 0) {
+            // Never synchronized. Index all the variants
+            since = null;
+        }
+        if (since != null) {
+            logger.info("Secondary index incremental synchronization. Last checkpoint: {}", since);
+        }
+        SecondaryIndexChangeLog changeLog = getSecondaryIndexChangeLog();
+        changeLog.prepare(since, queryOptions);
+
         // then, load variants
         queryOptions.put(QueryOptions.EXCLUDE, Arrays.asList(VariantField.STUDIES_SAMPLES, VariantField.STUDIES_FILES));
-        try (VariantDBIterator iterator = getVariantsToSecondaryIndex(overwrite, query, queryOptions, dbAdaptor)) {
+        try (VariantDBIterator iterator = changeLog.iterator(since, query, queryOptions)) {
             VariantSearchLoadResult load = variantSearchManager.load(dbName, iterator, newVariantSearchDataWriter(dbName));
 
             if (isValidParam(query, VariantQueryParam.REGION)) {
-                logger.info("Partial secondary index. Do not update {} timestamp", SEARCH_INDEX_LAST_TIMESTAMP.key());
+                logger.info("Partial secondary index. Do not update the secondary index checkpoint");
             } else {
-                long value = System.currentTimeMillis();
-                getMetadataManager().updateProjectMetadata(projectMetadata -> {
-                    projectMetadata.getAttributes().put(SEARCH_INDEX_LAST_TIMESTAMP.key(), value);
-                    return projectMetadata;
-                });
+                ProjectMetadata.SecondaryIndexCheckpoint checkpoint =
+                        new ProjectMetadata.SecondaryIndexCheckpoint(timestamp, load.getNumLoadedVariants(), since != null);
+                getMetadataManager().updateProjectMetadata(projectMetadata -> projectMetadata.setSecondaryIndexCheckpoint(checkpoint));
             }
 
             return load;
@@ -635,14 +664,22 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         }
     }
 
-    protected VariantDBIterator getVariantsToSecondaryIndex(boolean overwrite, Query query, QueryOptions queryOptions,
-                                                            VariantDBAdaptor dbAdaptor)
-            throws StorageEngineException {
-        if (!overwrite) {
-            query.put(VariantQueryUtils.VARIANTS_TO_INDEX.key(), true);
-        }
+    /**
+     * Tracks the variants to be updated in the secondary index. By default, filters the variants from the DBAdaptor with the
+     * {@link VariantQueryUtils#VARIANTS_TO_INDEX} param, that the backends should resolve from the secondary index checkpoint.
+     *
+     * @return SecondaryIndexChangeLog
+     * @throws StorageEngineException on error accessing the backend
+     */
+    protected SecondaryIndexChangeLog getSecondaryIndexChangeLog() throws StorageEngineException {
+        VariantDBAdaptor dbAdaptor = getDBAdaptor();
         VariantSecondaryIndexFilter filter = new VariantSecondaryIndexFilter(getMetadataManager().getStudies());
-        return dbAdaptor.iterator(query, queryOptions).mapBuffered(filter, 10);
+        return (since, query, queryOptions) -> {
+            if (since != null) {
+                query.put(VariantQueryUtils.VARIANTS_TO_INDEX.key(), true);
+            }
+            return dbAdaptor.iterator(query, queryOptions).mapBuffered(filter, 10);
+        };
     }
 
     protected void searchIndexLoadedFiles(List<URI> inputFiles, ObjectMap options) throws StorageEngineException {
@@ -658,7 +695,8 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
     protected SolrInputDocumentDataWriter newVariantSearchDataWriter(String collection) throws StorageEngineException {
         return new SolrInputDocumentDataWriter(collection,
                 getVariantSearchManager().getSolrClient(),
-                getVariantSearchManager().getInsertBatchSize());
+                getVariantSearchManager().getInsertBatchSize(),
+                getOptions());
     }
 
     public void secondaryIndexSamples(String study, List<String> samples)
@@ -692,7 +730,8 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
                 variantSearchManager.load(collectionName, iterator,
                         new SolrInputDocumentDataWriter(collectionName,
                                 variantSearchManager.getSolrClient(),
-                                variantSearchManager.getInsertBatchSize()));
+                                variantSearchManager.getInsertBatchSize(),
+                                getOptions()));
             } else {
                 throw new StorageEngineException("Solr is not alive!");
             }
@@ -1031,7 +1070,23 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         addDefaultLimit(options, getOptions());
         addDefaultSampleLimit(query, getOptions());
         query = preProcessQuery(query, options);
-        return getVariantQueryExecutor(query, options).get(query, options);
+
+        String cacheKey = getCacheKey("get", query, options);
+        if (cacheKey != null) {
+            VariantQueryResult<Variant> cached = getCacheManager().get(cacheKey);
+            if (cached != null) {
+                VariantQueryResult<Variant> result = new VariantQueryResult<>(cached);
+                result.setResults(new ArrayList<>(cached.getResults()));
+                result.setEvents(new ArrayList<>(cached.getEvents()));
+                result.setAttributes(new ObjectMap(cached.getAttributes()));
+                return result;
+            }
+        }
+        VariantQueryResult<Variant> result = getVariantQueryExecutor(query, options).get(query, options);
+        if (cacheKey != null) {
+            getCacheManager().set(cacheKey, result);
+        }
+        return result;
     }
 
     @Override
@@ -1144,8 +1199,22 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
 
     public DataResult<Long> count(Query query) throws StorageEngineException {
         query = preProcessQuery(query, QueryOptions.empty());
-        VariantQueryExecutor variantQueryExecutor = getVariantQueryExecutor(query, new QueryOptions(QueryOptions.COUNT, true));
-        return variantQueryExecutor.count(query);
+        QueryOptions options = new QueryOptions(QueryOptions.COUNT, true);
+
+        String cacheKey = getCacheKey("count", query, options);
+        if (cacheKey != null) {
+            DataResult<Long> cached = getCacheManager().get(cacheKey);
+            if (cached != null) {
+                return new DataResult<>(cached.getTime(), new ArrayList<>(cached.getEvents()), cached.getNumResults(),
+                        new ArrayList<>(cached.getResults()), cached.getNumMatches());
+            }
+        }
+        VariantQueryExecutor variantQueryExecutor = getVariantQueryExecutor(query, options);
+        DataResult<Long> result = variantQueryExecutor.count(query);
+        if (cacheKey != null) {
+            getCacheManager().set(cacheKey, result);
+        }
+        return result;
     }
 
 
@@ -1171,7 +1240,98 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         query = preProcessQuery(query, options);
 //        logger.info("Filter transcript = {} (raw: '{}')",
 //                options.getBoolean("filterTranscript", false), options.get("filterTranscript"));
-        return getVariantAggregationExecutor(query, options).aggregation(query, options);
+
+        String cacheKey = getCacheKey("facet", query, options);
+        if (cacheKey != null) {
+            DataResult<FacetField> cached = getCacheManager().get(cacheKey);
+            if (cached != null) {
+                return new DataResult<>(cached.getTime(), new ArrayList<>(cached.getEvents()), cached.getNumResults(),
+                        new ArrayList<>(cached.getResults()), cached.getNumMatches());
+            }
+        }
+        DataResult<FacetField> result = getVariantAggregationExecutor(query, options).aggregation(query, options);
+        if (cacheKey != null) {
+            getCacheManager().set(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Get the query result cache. The cache is invalidated every time the metadata of a study is modified
+     * through the {@link VariantStorageMetadataManager} of this engine, e.g. when loading files, annotating
+     * or calculating stats.
+     *
+     * @return CacheManager
+     */
+    public CacheManager getCacheManager() {
+        CacheManager cm = cacheManager.get();
+        if (cm == null) {
+            synchronized (cacheManager) {
+                cm = cacheManager.get();
+                if (cm == null) {
+                    cm = new CacheManager(configuration);
+                    if (cm.isActive()) {
+                        try {
+                            getMetadataManager().addUpdateListener(cm::invalidate);
+                        } catch (StorageEngineException e) {
+                            throw VariantQueryException.internalException(e);
+                        }
+                    }
+                    cacheManager.set(cm);
+                }
+            }
+        }
+        return cm;
+    }
+
+    /**
+     * Build the cache key for a pre-processed query.
+     *
+     * @param method    Method executed
+     * @param query     Pre-processed query
+     * @param options   Query options
+     * @return          The cache key, or null if the query should not use the cache.
+     */
+    private String getCacheKey(String method, Query query, QueryOptions options) {
+        CacheManager cm = getCacheManager();
+        if (!cm.isActive() || !cm.isTypeAllowed(CACHE_TYPE) || !options.getBoolean(CacheManager.CACHE, true)) {
+            return null;
+        }
+        try {
+            return cm.createKey(dbName, getQueryStudies(query), CACHE_TYPE, method, query, options);
+        } catch (StorageEngineException e) {
+            throw VariantQueryException.internalException(e).setQuery(query);
+        }
+    }
+
+    /**
+     * Studies that the result of the query depends on.
+     *
+     * @param query Pre-processed query
+     * @return      List of studies, or null if the query might depend on any study.
+     * @throws StorageEngineException if there is an error reading the metadata
+     */
+    private List<Integer> getQueryStudies(Query query) throws StorageEngineException {
+        Set<Integer> studies = new HashSet<>();
+        for (VariantQueryParam param : Arrays.asList(VariantQueryParam.STUDY, VariantQueryParam.INCLUDE_STUDY)) {
+            if (!isValidParam(query, param)) {
+                continue;
+            }
+            String value = query.getString(param.key());
+            if (value.equals(ALL)) {
+                return null;
+            } else if (value.equals(NONE)) {
+                continue;
+            }
+            for (String study : splitValue(value, checkOperator(value))) {
+                Integer studyId = getMetadataManager().getStudyIdOrNull(study);
+                if (studyId == null) {
+                    return null;
+                }
+                studies.add(studyId);
+            }
+        }
+        return studies.isEmpty() ? null : new ArrayList<>(studies);
     }
 
     protected final List<VariantAggregationExecutor> getVariantAggregationExecutors() {
@@ -1223,6 +1383,9 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
     @Override
     public void close() throws IOException {
         cellBaseUtils = null;
+        if (cacheManager.get() != null) {
+            cacheManager.getAndSet(null).close();
+        }
         if (variantSearchManager.get() != null) {
             try {
                 variantSearchManager.get().close();
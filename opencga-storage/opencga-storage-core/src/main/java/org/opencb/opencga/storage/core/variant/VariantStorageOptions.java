@@ -4,6 +4,7 @@ import org.opencb.biodata.models.variant.metadata.Aggregation;
 import org.opencb.opencga.core.api.ParamConstants;
 import org.opencb.opencga.core.common.YesNoAuto;
 import org.opencb.opencga.core.config.ConfigurationOption;
+import org.opencb.opencga.storage.core.metadata.MetadataCache;
 
 public enum VariantStorageOptions implements ConfigurationOption {
 
@@ -24,6 +25,10 @@ public enum VariantStorageOptions implements ConfigurationOption {
     TRANSFORM_FAIL_ON_MALFORMED_VARIANT("transform.failOnMalformed", true),
     TRANSFORM_COMPRESSION("transform.compression", "gzip"),
     TRANSFORM_ISOLATE("transform.isolate", false), // Do not store file in metadata
+    TRANSFORM_PARSER("transform.parser", "htsjdk"), // VCF parser. Use "bytes" to parse simple records without decoding the lines
+    TRANSFORM_STREAM("transform.stream", false), // Stream the transformed variants directly to the load step. Requires transform and load
+    TRANSFORM_STREAM_TEE("transform.stream.tee", false), // Also write the transformed file while streaming
+    TRANSFORM_STREAM_QUEUE_SIZE("transform.stream.queueSize", 10), // Batches of variants buffered between the transform and the load
     NORMALIZATION_SKIP("normalization.skip", false), // Do not run normalization
     NORMALIZATION_REFERENCE_GENOME("normalization.referenceGenome"),
     NORMALIZATION_EXTENSIONS("normalization.extensions", ParamConstants.NONE),
@@ -45,11 +50,16 @@ public enum VariantStorageOptions implements ConfigurationOption {
 
     DELETE_PARALLEL("delete.parallel", false),
 
+    EXPORT_THREADS("export.numThreads", 4),             // Threads formatting and compressing VCF.GZ blocks. Use 1 to disable
+    EXPORT_BATCH_SIZE("export.batchSize", 100),
+    EXPORT_TABIX("export.tabix", false),                // Build the tabix index of VCF.GZ exports. Forces sorted output
+
     STATS_DEFAULT_GENOTYPE("stats.defaultGenotype", "0/0"), // Default genotype to be used for calculating stats.
     STATS_MULTI_ALLELIC("stats.multiAllelic", false),  // Include secondary alternates in the variant stats calculation
     STATS_CALCULATE("stats.calculate", false),          //Calculate stats on the postLoad step
     STATS_CALCULATE_BATCH_SIZE("stats.calculate.batchSize", 100),
     STATS_CALCULATE_THREADS("stats.calculate.numThreads", 6),
+    STATS_CALCULATE_FORK_JOIN("stats.calculate.forkJoin", true), // Split each batch across variants in the common ForkJoinPool
     STATS_LOAD_THREADS("stats.load.numThreads", 4),
     STATS_LOAD_BATCH_SIZE("stats.load.batchSize", 100),
     STATS_OVERWRITE("stats.overwrite", false),          //Overwrite stats already present
@@ -83,6 +93,8 @@ public enum VariantStorageOptions implements ConfigurationOption {
 
     METADATA_LOCK_DURATION("metadata.lock.duration", 5000),
     METADATA_LOCK_TIMEOUT("metadata.lock.timeout", 60000),
+    // Max elements per metadata cache. Collection values count each element.
+    METADATA_CACHE_MAX_SIZE("metadata.cache.maxSize", MetadataCache.DEFAULT_MAX_SIZE),
 
     QUERY_DEFAULT_TIMEOUT("query.timeout.default", 10000), // Default timeout for DBAdaptor operations. Only used if none is provided.
     QUERY_MAX_TIMEOUT("query.timeout.max", 30000),         // Max allowed timeout for DBAdaptor operations
@@ -90,6 +102,8 @@ public enum VariantStorageOptions implements ConfigurationOption {
     QUERY_LIMIT_MAX("query.limit.max", 5000),
     QUERY_SAMPLE_LIMIT_DEFAULT("query.sample.limit.default", 100),
     QUERY_SAMPLE_LIMIT_MAX("query.sample.limit.max", 1000),
+    QUERY_MULTI_ITERATOR_BATCHES_IN_FLIGHT("query.multiIterator.batchesInFlight", 1), // Queries in flight in two phase queries
+    QUERY_MULTI_ITERATOR_BUFFER_SIZE("query.multiIterator.bufferSize", 20000),      // Max variants in flight in two phase queries
 
     // Search intersect options
     INTERSECT_ACTIVE("search.intersect.active", true),                       // Allow intersect queries with the SearchEngine (Solr)
@@ -97,6 +111,11 @@ public enum VariantStorageOptions implements ConfigurationOption {
     INTERSECT_PARAMS_THRESHOLD("search.intersect.params.threshold", 3),      // Minimum number of QueryParams in the query to intersect
     SEARCH_LOAD_BATCH_SIZE("search.load.batchSize", 100),
     SEARCH_LOAD_THREADS("search.load.numThreads", 2),
+    SEARCH_LOAD_WRITERS("search.load.numWriters", 0),                     // Concurrent Solr writers. 0 for one per shard
+    SEARCH_LOAD_MAX_IN_FLIGHT_BATCHES("search.load.maxInFlightBatches", 2), // Batches queued by each writer before blocking the load
+    SEARCH_LOAD_MAX_BATCH_SIZE("search.load.maxBatchSize", 2000),         // Upper limit for the adaptive batch size
+    SEARCH_LOAD_TARGET_LATENCY("search.load.targetLatency", 1000),        // (ms) Expected time of each add request. Drives the batch size
+    SEARCH_LOAD_MAX_RETRIES("search.load.maxRetries", 3),                 // Retries of failed add requests
 
     APPROXIMATE_COUNT_SAMPLING_SIZE("approximateCountSamplingSize", 1000),
     @Deprecated
@@ -120,6 +139,7 @@ public enum VariantStorageOptions implements ConfigurationOption {
     RELEASE("release", 1),
 
     MERGE_MODE("merge.mode", VariantStorageEngine.MergeMode.ADVANCED),
+    @Deprecated // Replaced by ProjectMetadata.SecondaryIndexCheckpoint
     SEARCH_INDEX_LAST_TIMESTAMP("search.index.last.timestamp", 0);
 
     private final String key;
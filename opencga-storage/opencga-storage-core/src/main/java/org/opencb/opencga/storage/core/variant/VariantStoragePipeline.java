@@ -28,12 +28,14 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.formats.variant.vcf4.VariantVcfFactory;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantFileMetadata;
 import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.biodata.models.variant.metadata.VariantFileHeaderComplexLine;
+import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.biodata.tools.variant.VariantNormalizer;
 import org.opencb.biodata.tools.variant.VariantReferenceBlockCreatorTask;
 import org.opencb.biodata.tools.variant.VariantSorterTask;
@@ -68,6 +70,7 @@ import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
 import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
 import org.opencb.opencga.storage.core.variant.transform.MalformedVariantHandler;
+import org.opencb.opencga.storage.core.variant.transform.VariantTransformStream;
 import org.opencb.opencga.storage.core.variant.transform.VariantTransformTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -92,6 +95,7 @@ import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.*;
 public abstract class VariantStoragePipeline implements StoragePipeline {
 
     private static final String HTSJDK_PARSER = "htsjdk";
+    private static final String BYTES_PARSER = "bytes";
     protected final StorageConfiguration configuration;
     protected final String storageEngineId;
     protected final ObjectMap options;
@@ -103,6 +107,7 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
     protected final ObjectMap loadStats = new ObjectMap();
     protected Integer privateFileId;
     protected Integer privateStudyId;
+    private VariantTransformStream transformStream;
 //    protected StudyMetadata privateStudyMetadata;
 
     /**
@@ -210,7 +215,13 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         String format = options.getString(
                 VariantStorageOptions.TRANSFORM_FORMAT.key(),
                 VariantStorageOptions.TRANSFORM_FORMAT.defaultValue());
-        String parser = options.getString("transform.parser", HTSJDK_PARSER);
+        String parser = options.getString(
+                VariantStorageOptions.TRANSFORM_PARSER.key(),
+                VariantStorageOptions.TRANSFORM_PARSER.defaultValue());
+        if (!parser.equals(HTSJDK_PARSER) && !parser.equals(BYTES_PARSER)) {
+            throw new IllegalArgumentException("Unknown parser " + parser);
+        }
+        boolean bytesParser = parser.equals(BYTES_PARSER);
 
         boolean stdin = options.getBoolean(STDIN.key(), STDIN.defaultValue());
         boolean stdout = options.getBoolean(STDOUT.key(), STDOUT.defaultValue());
@@ -287,7 +298,7 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
 
         VariantSetStatsCalculator statsCalculator = new VariantSetStatsCalculator(studyId, metadata);
 
-        logger.info("Using HTSJDK to read variants.");
+        logger.info(bytesParser ? "Using bytes parser to read variants." : "Using HTSJDK to read variants.");
         Pair<VCFHeader, VCFHeaderVersion> header = variantReaderUtils.readHtsHeader(input, stdin);
 
         boolean parallelParse = true;
@@ -301,50 +312,65 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
             normalizer = initNormalizer(metadata);
         }
 
-        Supplier<Task<String, Variant>> task = () ->
+        Supplier<VariantTransformTask> transformTask = () ->
                 new VariantTransformTask(header.getKey(), header.getValue(), studyId, metadata, statsCalculator, normalizer)
                 .setFailOnError(failOnError)
                 .addMalformedErrorHandler(malformedHandler)
                 .setIncludeSrc(false);
+        Supplier<Task<String, Variant>> task = transformTask::get;
+        Supplier<Task<ByteBuffer, Variant>> bytesTask = () -> transformTask.get().asBytesTask();
+        DataReader<ByteBuffer> bytesReader = bytesParser ? stringReader.asByteBufferReader() : null;
+
+        if (isTransformStream(format, stdout)) {
+            boolean tee = options.getBoolean(TRANSFORM_STREAM_TEE.key(), TRANSFORM_STREAM_TEE.defaultValue());
+            int queueSize = options.getInt(TRANSFORM_STREAM_QUEUE_SIZE.key(), TRANSFORM_STREAM_QUEUE_SIZE.defaultValue());
+            boolean finalParallelParse = parallelParse;
+            Supplier<Task<Variant, Variant>> identity = () -> batch -> batch;
+            logger.info("Stream transformed variants into the load step. Write transformed file: {}", tee);
+            transformStream = new VariantTransformStream(metadata, queueSize,
+                    queueWriter -> bytesParser
+                            ? buildTransformPtr(finalParallelParse, bytesReader, bytesTask, identity, queueWriter, config)
+                            : buildTransformPtr(finalParallelParse, stringReader, task, identity, queueWriter, config),
+                    () -> transformSuccess(metadata, outputMetaFile, malformedHandler));
+            if (tee) {
+                if ("avro".equals(format)) {
+                    transformStream.setTee(newAvroEncoder(), newAvroWriter(outputVariantsFile, compression, false));
+                } else {
+                    transformStream.setTee(Task.forEach(Variant::toJson), newJsonWriter(outputVariantsFile, false));
+                }
+            }
+            return outputVariantsFile;
+        }
 
         ParallelTaskRunner ptr;
         if ("avro".equals(format)) {
-            Supplier<Task<Variant, ByteBuffer>> encoder = () -> Task.forEach(Variant::getImpl)
-                    .then(new AvroEncoder<>(VariantAvro.getClassSchema(), true));
+            Supplier<Task<Variant, ByteBuffer>> encoder = this::newAvroEncoder;
 
             //Writer
-            DataWriter<ByteBuffer> dataWriter;
-            try {
-                if (stdout) {
-                    dataWriter = new AvroFileWriter<>(VariantAvro.getClassSchema(), compression, System.out);
-                } else {
-                    dataWriter = new AvroFileWriter<>(VariantAvro.getClassSchema(), compression,
-                            ioConnectorProvider.newOutputStreamRaw(outputVariantsFile), true);
-                }
-            } catch (IOException e) {
-                throw StorageEngineException.ioException(e);
-            }
+            DataWriter<ByteBuffer> dataWriter = newAvroWriter(outputVariantsFile, compression, stdout);
 
-            ptr = buildTransformPtr(parallelParse, stringReader, task, encoder, dataWriter, config);
+            if (bytesParser) {
+                ptr = buildTransformPtr(parallelParse, bytesReader, bytesTask, encoder, dataWriter, config);
+            } else {
+                ptr = buildTransformPtr(parallelParse, stringReader, task, encoder, dataWriter, config);
+            }
         } else if ("json".equals(format)) {
             Supplier<Task<Variant, String>> encoder = () -> Task.forEach(Variant::toJson);
 
             //Writers
-            StringDataWriter dataWriter;
-            if (stdout) {
-                dataWriter = new StringDataWriter(System.out, true);
+            StringDataWriter dataWriter = newJsonWriter(outputVariantsFile, stdout);
+
+            if (bytesParser) {
+                ptr = buildTransformPtr(parallelParse, bytesReader, bytesTask, encoder, dataWriter, config);
             } else {
-                try {
-                    dataWriter = new StringDataWriter(
-                            ioConnectorProvider.newOutputStream(outputVariantsFile), true, true);
-                } catch (IOException e) {
-                    throw StorageEngineException.ioException(e);
-                }
+                ptr = buildTransformPtr(parallelParse, stringReader, task, encoder, dataWriter, config);
             }
-
-            ptr = buildTransformPtr(parallelParse, stringReader, task, encoder, dataWriter, config);
         } else if ("proto".equals(format)) {
-            ptr = transformProto(metadata, outputVariantsFile, stringReader, task);
+            if (bytesParser) {
+                ptr = transformProto(metadata, outputVariantsFile, bytesReader, bytesTask);
+            } else {
+                ptr = transformProto(metadata, outputVariantsFile, stringReader, task);
+            }
         } else {
             throw new IllegalArgumentException("Unknown format " + format);
         }
@@ -359,6 +385,70 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
 
         logger.info("Variants transformed in " + TimeUtils.durationToString(stopWatch));
 
+        transformSuccess(metadata, outputMetaFile, malformedHandler);
+
+        return outputVariantsFile;
+    }
+
+    /**
+     * Check if the transformed variants can be streamed directly into the load step.
+     *
+     * @param format    Transform format
+     * @param stdout    Transform into the standard output
+     * @return          if the transform is streamed
+     */
+    protected boolean isTransformStream(String format, boolean stdout) {
+        if (!options.getBoolean(TRANSFORM_STREAM.key(), TRANSFORM_STREAM.defaultValue())) {
+            return false;
+        }
+        if (!supportsTransformStream() || dbAdaptor == null || stdout || !("avro".equals(format) || "json".equals(format))) {
+            logger.warn("Unable to stream the transformed variants into the load step. Write the transformed file.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Pipelines reading the transformed variants with {@link #getVariantReader} can stream the transform into the load step.
+     *
+     * @return if the transform can be streamed
+     */
+    protected boolean supportsTransformStream() {
+        return false;
+    }
+
+    private Task<Variant, ByteBuffer> newAvroEncoder() {
+        return Task.forEach(Variant::getImpl).then(new AvroEncoder<>(VariantAvro.getClassSchema(), true));
+    }
+
+    private DataWriter<ByteBuffer> newAvroWriter(URI outputVariantsFile, String compression, boolean stdout)
+            throws StorageEngineException {
+        try {
+            if (stdout) {
+                return new AvroFileWriter<>(VariantAvro.getClassSchema(), compression, System.out);
+            } else {
+                return new AvroFileWriter<>(VariantAvro.getClassSchema(), compression,
+                        ioConnectorProvider.newOutputStreamRaw(outputVariantsFile), true);
+            }
+        } catch (IOException e) {
+            throw StorageEngineException.ioException(e);
+        }
+    }
+
+    private StringDataWriter newJsonWriter(URI outputVariantsFile, boolean stdout) throws StorageEngineException {
+        if (stdout) {
+            return new StringDataWriter(System.out, true);
+        } else {
+            try {
+                return new StringDataWriter(ioConnectorProvider.newOutputStream(outputVariantsFile), true, true);
+            } catch (IOException e) {
+                throw StorageEngineException.ioException(e);
+            }
+        }
+    }
+
+    private void transformSuccess(VariantFileMetadata metadata, URI outputMetaFile, MalformedVariantHandler malformedHandler)
+            throws StorageEngineException {
         try (OutputStream outputMetadataStream = ioConnectorProvider.newOutputStream(outputMetaFile)) {
             ObjectMapper jsonObjectMapper = new ObjectMapper();
             jsonObjectMapper.addMixIn(GenericRecord.class, GenericRecordAvroJsonMixin.class);
@@ -373,8 +463,6 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         if (malformedHandler.getMalformedLines() > 0) {
             getTransformStats().put("malformed lines", malformedHandler.getMalformedLines());
         }
-
-        return outputVariantsFile;
     }
 
     protected Task<Variant, Variant> initNormalizer(VariantFileMetadata metadata) throws StorageEngineException {
@@ -419,16 +507,16 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         return normalizer;
     }
 
-    protected <W> ParallelTaskRunner<?, W> buildTransformPtr(boolean parallelParse,
-                                                     DataReader<String> stringReader,
-                                                     Supplier<Task<String, Variant>> task,
+    protected <I, W> ParallelTaskRunner<?, W> buildTransformPtr(boolean parallelParse,
+                                                     DataReader<I> stringReader,
+                                                     Supplier<Task<I, Variant>> task,
                                                      Supplier<Task<Variant, W>> encoder,
                                                      DataWriter<W> dataWriter,
                                                      ParallelTaskRunner.Config config) {
 
         logger.info("Multi thread transform... [1 reading, {} transforming, 1 writing]", config.getNumTasks());
         if (parallelParse) {
-            return new ParallelTaskRunner<String, W>(
+            return new ParallelTaskRunner<I, W>(
                     stringReader,
                     () -> task.get().then(encoder.get()),
                     dataWriter,
@@ -454,9 +542,9 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         return factory;
     }
 
-    protected ParallelTaskRunner transformProto(
+    protected <I> ParallelTaskRunner transformProto(
             VariantFileMetadata metadata, URI outputVariantsFile,
-            DataReader<String> stringReader, Supplier<Task<String, Variant>> task)
+            DataReader<I> stringReader, Supplier<Task<I, Variant>> task)
             throws StorageEngineException {
         throw new NotImplementedException("Please request feature");
     }
@@ -509,17 +597,21 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         VariantFileMetadata fileMetadata = readVariantFileMetadata(input);
         if (YesNoAuto.parse(getOptions(), INCLUDE_GENOTYPE.key()) == YesNoAuto.AUTO) {
             YesNoAuto includeGenotype = YesNoAuto.YES;
-            if (!fileMetadata.getSampleIds().isEmpty()) {
+            if (fileMetadata.getSampleIds().isEmpty()) {
                 // Do not even check if the file doesn't have samples
-                if (fileMetadata.getStats().getGenotypeCount().size() == 1) {
-                    String gt = fileMetadata.getStats().getGenotypeCount().keySet().iterator().next();
-                    if (GenotypeClass.MISS.test(gt) || GenotypeClass.HOM_REF.test(gt)) {
-                        logger.info("Automatically exclude genotypes. All genotypes are '{}'", gt);
-                        includeGenotype = YesNoAuto.NO;
-                    } else if (GenotypeClass.NA.test(gt)) {
-                        logger.info("Automatically exclude genotypes. No genotypes found.");
-                        includeGenotype = YesNoAuto.NO;
-                    }
+                logger.debug("Include genotypes. File without samples");
+            } else if (transformStream != null || fileMetadata.getStats() == null) {
+                // When streaming, the genotype counts are only complete once the transform finishes, at the end of the load
+                logger.warn("Unable to resolve {}={} without the genotype counts of the file. Including genotypes. "
+                        + "Set {}={} to exclude them.", INCLUDE_GENOTYPE.key(), YesNoAuto.AUTO, INCLUDE_GENOTYPE.key(), YesNoAuto.NO);
+            } else if (fileMetadata.getStats().getGenotypeCount().size() == 1) {
+                String gt = fileMetadata.getStats().getGenotypeCount().keySet().iterator().next();
+                if (GenotypeClass.MISS.test(gt) || GenotypeClass.HOM_REF.test(gt)) {
+                    logger.info("Automatically exclude genotypes. All genotypes are '{}'", gt);
+                    includeGenotype = YesNoAuto.NO;
+                } else if (GenotypeClass.NA.test(gt)) {
+                    logger.info("Automatically exclude genotypes. No genotypes found.");
+                    includeGenotype = YesNoAuto.NO;
                 }
             }
             getOptions().put(INCLUDE_GENOTYPE.key(), includeGenotype);
@@ -736,6 +828,10 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
     }
 
     public VariantFileMetadata readVariantFileMetadata(URI input) throws StorageEngineException {
+        if (transformStream != null) {
+            // Shared with the running transform, which already set the fileId. Stats are completed at the end of the transform
+            return transformStream.getVariantFileMetadata();
+        }
         VariantFileMetadata variantFileMetadata = variantReaderUtils.readVariantFileMetadata(input);
         // Ensure correct fileId
         // FIXME
@@ -744,6 +840,24 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         return variantFileMetadata;
     }
 
+    /**
+     * Get a reader for the transformed variants to load.
+     *
+     * If the transform step was streamed, returns the stream of transformed variants, and the input file is not read.
+     *
+     * @param input     Transformed variants file
+     * @param metadata  Variant study metadata
+     * @return          VariantReader
+     * @throws StorageEngineException if the format is not valid or there is an error reading
+     */
+    protected VariantReader getVariantReader(URI input, VariantStudyMetadata metadata) throws StorageEngineException {
+        if (transformStream != null) {
+            return transformStream;
+        }
+        boolean stdin = options.getBoolean(STDIN.key(), STDIN.defaultValue());
+        return variantReaderUtils.getVariantReader(input, metadata, stdin);
+    }
+
     /* --------------------------------------- */
     /*  StudyMetadata utils methods        */
     /* --------------------------------------- */
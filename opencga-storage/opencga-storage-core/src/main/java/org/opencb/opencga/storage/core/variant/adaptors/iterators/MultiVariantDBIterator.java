@@ -17,28 +17,54 @@
 package org.opencb.opencga.storage.core.variant.adaptors.iterators;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.time.StopWatch;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
 /**
  * Iterates multiple variant iterators. Every time that voids one iterator, creates a new one using the iteratorFactory.
  *
+ * If {@link #BATCHES_IN_FLIGHT} is greater than 1, the queries are executed in background, with up to N queries in flight.
+ * Results are returned in the same order as the queries were created. The number of variants in flight is bounded by
+ * {@link #BUFFER_SIZE}.
+ *
  * Created on 04/07/17.
  *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
 public class MultiVariantDBIterator extends VariantDBIterator {
 
+    /**
+     * QueryOptions key. Max number of queries executed in parallel. Use 1 to execute the queries one after the other.
+     */
+    public static final String BATCHES_IN_FLIGHT = "multiIteratorBatchesInFlight";
+    /**
+     * QueryOptions key. Max number of variants from the primary iterator with a query in flight.
+     */
+    public static final String BUFFER_SIZE = "multiIteratorBufferSize";
+    public static final int DEFAULT_BATCHES_IN_FLIGHT = 1;
+    public static final int DEFAULT_BUFFER_SIZE = 20000;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("multi-variant-iterator-%d")
+            .setDaemon(true)
+            .build());
+
     private final VariantQueryIterator queryIterator;
     private final QueryOptions options;
     private final BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory;
@@ -55,6 +81,21 @@ public class MultiVariantDBIterator extends VariantDBIterator {
     private Query query;
     private int numQueries;
     private Variant lastVariant = null;
+    // Variants from the primary iterator used to build the query of the current iterator
+    private List<Object> currentBatch = Collections.emptyList();
+    // Total number of variants from the primary iterator, up to the current iterator
+    private int currentBatchTotal;
+
+    private final int batchesInFlight;
+    private final int bufferSize;
+    private final Deque<Future<Batch>> pendingBatches = new ArrayDeque<>();
+    private int pendingVariants;
+    private volatile boolean closed;
+
+    private long timeBuildingQueries;
+    private long timeWaiting;
+    private long timeBatchFetching;
+    private long timeBatchConverting;
 
     /**
      * Creates a multi iterator given a iterator of variants. It will apply the query (if any) to all the variants in the iterator.
@@ -91,6 +132,11 @@ public class MultiVariantDBIterator extends VariantDBIterator {
         this.options.remove(QueryOptions.LIMIT);
         this.options.remove(QueryOptions.SKIP);
 
+        batchesInFlight = Math.max(1, this.options.getInt(BATCHES_IN_FLIGHT, DEFAULT_BATCHES_IN_FLIGHT));
+        bufferSize = Math.max(1, this.options.getInt(BUFFER_SIZE, DEFAULT_BUFFER_SIZE));
+        this.options.remove(BATCHES_IN_FLIGHT);
+        this.options.remove(BUFFER_SIZE);
+
         query = null;
         numQueries = 0;
     }
@@ -118,21 +164,20 @@ public class MultiVariantDBIterator extends VariantDBIterator {
      * Get the next non-empty valid {@link #variantDBIterator}. If none, use {@link #emptyIterator()}
      */
     private void nextVariantIterator() {
+        if (batchesInFlight > 1) {
+            nextVariantIteratorPipelined();
+            return;
+        }
         while (!fetch(variantDBIterator::hasNext) && fetch(queryIterator::hasNext)) {
             terminateIterator();
             numQueries++;
-            QueryOptions options;
-            int limit;
-            if (maxResults != Integer.MAX_VALUE) {
-                // We are expecting no more than maxResults - numResults
-                // Modify the limit in the query
-                limit = maxResults - numResults;
-                options = new QueryOptions(this.options).append(QueryOptions.LIMIT, limit);
-            } else {
-                limit = Integer.MAX_VALUE;
-                options = this.options;
-            }
+            QueryOptions options = getBatchOptions();
+            int limit = options.getInt(QueryOptions.LIMIT, Integer.MAX_VALUE);
+            long start = System.nanoTime();
             query = fetch(() -> queryIterator.next(numResults, limit));
+            timeBuildingQueries += System.nanoTime() - start;
+            currentBatch = queryIterator.lastBatch;
+            currentBatchTotal = queryIterator.totalBatchSizeCount;
 
             variantDBIterator = fetch(() -> iteratorFactory.apply(query, options));
         }
@@ -141,10 +186,99 @@ public class MultiVariantDBIterator extends VariantDBIterator {
         }
     }
 
+    /**
+     * Get the next non-empty batch from the queries in flight, and fill the pipeline with new queries.
+     */
+    private void nextVariantIteratorPipelined() {
+        submitBatches();
+        while (!variantDBIterator.hasNext() && !pendingBatches.isEmpty()) {
+            terminateIterator();
+            Batch batch = waitBatch(pendingBatches.remove());
+            pendingVariants -= batch.primaryVariants.size();
+            timeBatchFetching += batch.timeFetching;
+            timeBatchConverting += batch.timeConverting;
+
+            query = batch.query;
+            currentBatch = batch.primaryVariants;
+            currentBatchTotal = batch.primaryVariantsTotal;
+            variantDBIterator = VariantDBIterator.wrapper(batch.variants.iterator());
+            submitBatches();
+        }
+        if (!variantDBIterator.hasNext()) {
+            terminateIterator();
+        }
+    }
+
+    private void submitBatches() {
+        while (pendingBatches.size() < batchesInFlight
+                && (pendingBatches.isEmpty() || pendingVariants < bufferSize)
+                && numResults < maxResults
+                && fetch(queryIterator::hasNext)) {
+            numQueries++;
+            QueryOptions options = getBatchOptions();
+            int limit = options.getInt(QueryOptions.LIMIT, Integer.MAX_VALUE);
+            long start = System.nanoTime();
+            Query batchQuery = fetch(() -> queryIterator.next(numResults, limit));
+            timeBuildingQueries += System.nanoTime() - start;
+            List<Object> primaryVariants = queryIterator.lastBatch;
+            int primaryVariantsTotal = queryIterator.totalBatchSizeCount;
+
+            pendingVariants += primaryVariants.size();
+            pendingBatches.add(EXECUTOR.submit(() -> fetchBatch(batchQuery, options, primaryVariants, primaryVariantsTotal)));
+        }
+    }
+
+    /**
+     * Execute the query and read all the results. Executed in background.
+     */
+    private Batch fetchBatch(Query query, QueryOptions options, List<Object> primaryVariants, int primaryVariantsTotal)
+            throws Exception {
+        Batch batch = new Batch(query, primaryVariants, primaryVariantsTotal);
+        try (VariantDBIterator iterator = iteratorFactory.apply(query, options)) {
+            while (!closed && iterator.hasNext()) {
+                batch.variants.add(iterator.next());
+            }
+            batch.timeFetching = iterator.getTimeFetching();
+            batch.timeConverting = iterator.getTimeConverting();
+        }
+        return batch;
+    }
+
+    private Batch waitBatch(Future<Batch> future) {
+        long start = System.nanoTime();
+        try {
+            return fetch(future::get);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw VariantQueryException.internalException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException || e.getCause() instanceof Error) {
+                throw Throwables.propagate(e.getCause());
+            }
+            throw VariantQueryException.internalException((Exception) e.getCause());
+        } catch (Exception e) {
+            throw VariantQueryException.internalException(e);
+        } finally {
+            timeWaiting += System.nanoTime() - start;
+        }
+    }
+
+    private QueryOptions getBatchOptions() {
+        if (maxResults != Integer.MAX_VALUE) {
+            // We are expecting no more than maxResults - numResults
+            // Modify the limit in the query
+            return new QueryOptions(this.options).append(QueryOptions.LIMIT, maxResults - numResults);
+        } else {
+            return this.options;
+        }
+    }
+
     private void terminateIterator() {
         // Accumulate statistics from previous iterator.
         timeFetching += variantDBIterator.getTimeFetching();
         timeConverting += variantDBIterator.getTimeConverting();
+        timeBatchFetching += variantDBIterator.getTimeFetching();
+        timeBatchConverting += variantDBIterator.getTimeConverting();
         try {
             variantDBIterator.close();
         } catch (Exception e) {
@@ -195,9 +329,61 @@ public class MultiVariantDBIterator extends VariantDBIterator {
         }
     }
 
+    /**
+     * Time spent reading the primary iterator to build the queries.
+     *
+     * @param timeUnit Time unit
+     * @return time
+     */
+    public long getTimeBuildingQueries(TimeUnit timeUnit) {
+        return timeUnit.convert(timeBuildingQueries, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time blocked waiting for queries in flight. Only for pipelined iterators.
+     *
+     * @param timeUnit Time unit
+     * @return time
+     */
+    public long getTimeWaiting(TimeUnit timeUnit) {
+        return timeUnit.convert(timeWaiting, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Accumulated time fetching data from all the queries. Queries in flight run in parallel,
+     * so this time might be larger than the total time.
+     *
+     * @param timeUnit Time unit
+     * @return time
+     */
+    public long getTimeBatchFetching(TimeUnit timeUnit) {
+        return timeUnit.convert(timeBatchFetching + variantDBIterator.getTimeFetching(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Accumulated time converting data from all the queries.
+     *
+     * @param timeUnit Time unit
+     * @return time
+     */
+    public long getTimeBatchConverting(TimeUnit timeUnit) {
+        return timeUnit.convert(timeBatchConverting + variantDBIterator.getTimeConverting(), TimeUnit.NANOSECONDS);
+    }
+
     @Override
     public void close() throws Exception {
+        closed = true;
+        // Discard queries in flight. Running queries will stop reading results.
+        for (Future<Batch> future : pendingBatches) {
+            future.cancel(false);
+        }
+        pendingBatches.clear();
+        pendingVariants = 0;
         terminateIterator();
+        logger.debug("MultiVariantDBIterator: {} queries, {} batches in flight. Building queries {}ms, waiting {}ms, "
+                        + "fetching {}ms, converting {}ms", numQueries, batchesInFlight,
+                getTimeBuildingQueries(TimeUnit.MILLISECONDS), getTimeWaiting(TimeUnit.MILLISECONDS),
+                getTimeBatchFetching(TimeUnit.MILLISECONDS), getTimeBatchConverting(TimeUnit.MILLISECONDS));
         super.close();
     }
 
@@ -214,15 +400,31 @@ public class MultiVariantDBIterator extends VariantDBIterator {
         if (lastVariant != null) {
             int usedVariantsFromLastBatch = 0;
             String lastVariantStr = lastVariant.toString();
-            for (Object variant : queryIterator.lastBatch) {
+            for (Object variant : currentBatch) {
                 usedVariantsFromLastBatch++;
                 if (lastVariantStr.equals(variant.toString())) {
                     break;
                 }
             }
-            unusedVariantsFromLastBatch = queryIterator.lastBatch.size() - usedVariantsFromLastBatch;
+            unusedVariantsFromLastBatch = currentBatch.size() - usedVariantsFromLastBatch;
+        }
+        return currentBatchTotal - unusedVariantsFromLastBatch;
+    }
+
+    private static final class Batch {
+        private final Query query;
+        private final List<Object> primaryVariants;
+        private final int primaryVariantsTotal;
+        private final List<Variant> variants;
+        private long timeFetching;
+        private long timeConverting;
+
+        private Batch(Query query, List<Object> primaryVariants, int primaryVariantsTotal) {
+            this.query = query;
+            this.primaryVariants = primaryVariants;
+            this.primaryVariantsTotal = primaryVariantsTotal;
+            this.variants = new ArrayList<>(primaryVariants.size());
         }
-        return queryIterator.totalBatchSizeCount - unusedVariantsFromLastBatch;
     }
 
     private static class VariantQueryIterator implements Iterator<Query>, AutoCloseable {
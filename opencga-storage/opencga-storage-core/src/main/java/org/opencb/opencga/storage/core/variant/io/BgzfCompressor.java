@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses data into independent BGZF blocks.
+ *
+ * BGZF blocks are regular gzip members with the block size in an extra field. Any concatenation of blocks, terminated
+ * with the {@link #EOF_BLOCK}, is a valid bgzip file, so each block can be compressed in a different thread.
+ *
+ * This class is not thread safe.
+ *
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class BgzfCompressor {
+
+    public static final int MAX_BLOCK_SIZE = 64 * 1024;
+    // Same as bgzip, so the compressed block always fits in MAX_BLOCK_SIZE
+    public static final int MAX_UNCOMPRESSED_BLOCK_SIZE = 0xff00;
+    public static final byte[] EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00,
+            0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+    private static final int HEADER_SIZE = 18;
+    private static final int FOOTER_SIZE = 8;
+
+    private final Deflater deflater;
+    private final Deflater noCompressionDeflater;
+    private final CRC32 crc32 = new CRC32();
+    private final byte[] buffer = new byte[MAX_BLOCK_SIZE];
+
+    public BgzfCompressor() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public BgzfCompressor(int compressionLevel) {
+        deflater = new Deflater(compressionLevel, true);
+        noCompressionDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
+    }
+
+    /**
+     * Compress the data into as many BGZF blocks as needed, and write them into the output stream.
+     *
+     * @param data      Data to compress
+     * @param offset    Offset of the data
+     * @param length    Length of the data
+     * @param out       Output stream
+     * @return          Compressed size of each block
+     * @throws IOException if there is an error writing into the output stream
+     */
+    public int[] compress(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        int numBlocks = (length + MAX_UNCOMPRESSED_BLOCK_SIZE - 1) / MAX_UNCOMPRESSED_BLOCK_SIZE;
+        int[] blockSizes = new int[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            int blockOffset = offset + i * MAX_UNCOMPRESSED_BLOCK_SIZE;
+            int blockLength = Math.min(MAX_UNCOMPRESSED_BLOCK_SIZE, offset + length - blockOffset);
+            blockSizes[i] = compressBlock(data, blockOffset, blockLength, out);
+        }
+        return blockSizes;
+    }
+
+    /**
+     * Release the native resources of the deflaters.
+     */
+    public void end() {
+        deflater.end();
+        noCompressionDeflater.end();
+    }
+
+    private int compressBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        int compressedSize = deflate(deflater, data, offset, length);
+        if (compressedSize < 0) {
+            // Incompressible data. Store the block
+            compressedSize = deflate(noCompressionDeflater, data, offset, length);
+        }
+        int blockSize = HEADER_SIZE + compressedSize + FOOTER_SIZE;
+        crc32.reset();
+        crc32.update(data, offset, length);
+
+        // Gzip header with the "BC" extra subfield
+        out.write(0x1f);
+        out.write(0x8b);
+        out.write(Deflater.DEFLATED);
+        out.write(0x04); // FLG.FEXTRA
+        writeInt(out, 0); // MTIME
+        out.write(0); // XFL
+        out.write(0xff); // OS unknown
+        writeShort(out, 6); // XLEN
+        out.write('B');
+        out.write('C');
+        writeShort(out, 2); // SLEN
+        writeShort(out, blockSize - 1); // BSIZE
+
+        out.write(buffer, 0, compressedSize);
+
+        writeInt(out, (int) crc32.getValue());
+        writeInt(out, length);
+        return blockSize;
+    }
+
+    private int deflate(Deflater deflater, byte[] data, int offset, int length) {
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        int size = deflater.deflate(buffer, 0, MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE);
+        return deflater.finished() ? size : -1;
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value);
+        writeShort(out, value >>> 16);
+    }
+}
@@ -25,6 +25,7 @@ import org.opencb.biodata.models.variant.VariantFileMetadata;
 import org.opencb.biodata.models.variant.metadata.VariantMetadata;
 import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.commons.ProgressLogger;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.io.DataWriter;
@@ -49,6 +50,8 @@ import java.util.Iterator;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.*;
+
 /**
  * Prints the result of a given query in the selected output format, and the associated metadata.
  *
@@ -62,6 +65,7 @@ public class VariantExporter {
     public static final String METADATA_FILE_EXTENSION = ".meta.json.gz";
     public static final String TPED_FILE_EXTENSION = ".tped";
     public static final String TFAM_FILE_EXTENSION = ".tfam";
+    public static final String TABIX_FILE_EXTENSION = ".tbi";
     protected final VariantStorageEngine engine;
     protected final VariantWriterFactory variantWriterFactory;
     protected final VariantMetadataFactory metadataFactory;
@@ -99,9 +103,31 @@ public class VariantExporter {
             ioConnectorProvider.checkWritable(outputFile);
         }
 
-        try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, outputFormat, ioConnectorProvider)) {
-            boolean logProgress = !VariantWriterFactory.isStandardOutput(outputFile);
-            exportData(os, outputFormat, variantsFile, query.getInputQuery(), query.getInputOptions(), logProgress);
+        boolean logProgress = !VariantWriterFactory.isStandardOutput(outputFile);
+        ObjectMap options = new ObjectMap(engine.getOptions());
+        if (query.getInputOptions() != null) {
+            options.putAll(query.getInputOptions());
+        }
+        int numThreads = options.getInt(EXPORT_THREADS.key(), EXPORT_THREADS.defaultValue());
+        if (outputFormat == VariantOutputFormat.VCF_GZ && numThreads > 1) {
+            int batchSize = options.getInt(EXPORT_BATCH_SIZE.key(), EXPORT_BATCH_SIZE.defaultValue());
+            boolean tabix = options.getBoolean(EXPORT_TABIX.key(), EXPORT_TABIX.defaultValue())
+                    && !VariantWriterFactory.isStandardOutput(outputFile);
+            QueryOptions queryOptions = new QueryOptions(query.getInputOptions());
+            URI tabixFile = null;
+            if (tabix) {
+                // Tabix index requires sorted variants
+                queryOptions.put(QueryOptions.SORT, true);
+                tabixFile = UriUtils.replacePath(outputFile, outputFile.getPath() + TABIX_FILE_EXTENSION);
+            }
+            try (OutputStream os = new BufferedOutputStream(VariantWriterFactory.getRawOutputStream(outputFile, ioConnectorProvider));
+                 OutputStream tabixOs = tabix ? new BufferedOutputStream(ioConnectorProvider.newOutputStreamRaw(tabixFile)) : null) {
+                exportVcfBgzf(os, tabixOs, variantsFile, query.getInputQuery(), queryOptions, numThreads, batchSize, logProgress);
+            }
+        } else {
+            try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, outputFormat, ioConnectorProvider)) {
+                exportData(os, outputFormat, variantsFile, query.getInputQuery(), query.getInputOptions(), logProgress);
+            }
         }
         if (metadataFactory != null && !VariantWriterFactory.isStandardOutput(outputFile)) {
             VariantMetadata metadata = metadataFactory.makeVariantMetadata(query.getInputQuery(), query.getInputOptions());
@@ -124,15 +150,85 @@ public class VariantExporter {
         }
 
         // DataReader
-        VariantDBReader variantDBReader;
+        VariantDBReader variantDBReader = newVariantDBReader(variantsFile, query, queryOptions);
+
+        // TaskMetadata<Variant, Variant>
+        Task<Variant, Variant> progressTask = newProgressTask(variantsFile, query, queryOptions, logProgress);
+
+        // DataWriter
+        DataWriter<Variant> variantDataWriter = variantWriterFactory.newDataWriter(outputFormat, outputStream, query, queryOptions);
+
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder().setNumTasks(1).setBatchSize(10).build();
+
+        ParallelTaskRunner<Variant, Variant> ptr = new ParallelTaskRunner<>(variantDBReader, progressTask, variantDataWriter, config);
+        try {
+            ptr.run();
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Error exporting variants", e);
+        }
+
+        logger.info("Time fetching data: " + variantDBReader.getTimeFetching(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+        logger.info("Time converting data: " + variantDBReader.getTimeConverting(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+
+    }
+
+    /**
+     * Exports the variants in VCF.GZ format, formatting and compressing in parallel independent BGZF blocks.
+     *
+     * @param outputStream      Raw output stream
+     * @param tabixOutputStream Optional output stream for the tabix index. Requires sorted variants.
+     * @param variantsFile      Optional variants file.
+     * @param query             Query with the variants to export
+     * @param queryOptions      Query options
+     * @param numThreads        Number of threads formatting and compressing the variants
+     * @param batchSize         Number of variants per batch
+     * @param logProgress       Log the progress
+     * @throws StorageEngineException  If there is any error exporting variants
+     * @throws IOException  If there is any IO error
+     */
+    protected void exportVcfBgzf(OutputStream outputStream, @Nullable OutputStream tabixOutputStream, URI variantsFile,
+                                 Query query, QueryOptions queryOptions, int numThreads, int batchSize, boolean logProgress)
+            throws StorageEngineException, IOException {
+        if (query == null) {
+            query = new Query();
+        }
+        if (queryOptions == null) {
+            queryOptions = new QueryOptions();
+        }
+
+        VariantDBReader variantDBReader = newVariantDBReader(variantsFile, query, queryOptions);
+        Task<Variant, Variant> progressTask = newProgressTask(variantsFile, query, queryOptions, logProgress);
+        VcfBgzfDataWriter writer = variantWriterFactory.newVcfBgzfDataWriter(outputStream, tabixOutputStream, query, queryOptions);
+
+        // Sorted, so the writer receives the blocks in the same order they were read
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                .setNumTasks(numThreads)
+                .setBatchSize(batchSize)
+                .setSorted(true)
+                .build();
+
+        ParallelTaskRunner<Variant, VcfBgzfDataWriter.BgzfBatch> ptr = new ParallelTaskRunner<>(variantDBReader,
+                () -> progressTask.then(writer.newEncoderTask()), writer, config);
+        try {
+            ptr.run();
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Error exporting variants", e);
+        }
+
+        logger.info("Time fetching data: " + variantDBReader.getTimeFetching(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+        logger.info("Time converting data: " + variantDBReader.getTimeConverting(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+    }
+
+    private VariantDBReader newVariantDBReader(URI variantsFile, Query query, QueryOptions queryOptions) {
         if (variantsFile != null) {
             Iterator<Variant> variants = toVariantsIterator(variantsFile);
-            variantDBReader = new VariantDBReader(engine.iterator(variants, query, queryOptions));
+            return new VariantDBReader(engine.iterator(variants, query, queryOptions));
         } else {
-            variantDBReader = new VariantDBReader(engine, query, queryOptions);
+            return new VariantDBReader(engine, query, queryOptions);
         }
+    }
 
-        // TaskMetadata<Variant, Variant>
+    private Task<Variant, Variant> newProgressTask(URI variantsFile, Query query, QueryOptions queryOptions, boolean logProgress) {
         Task<Variant, Variant> progressTask;
         if (logProgress) {
             final Query finalQuery = query;
@@ -154,22 +250,7 @@ public class VariantExporter {
         } else {
             progressTask = batch -> batch;
         }
-
-        // DataWriter
-        DataWriter<Variant> variantDataWriter = variantWriterFactory.newDataWriter(outputFormat, outputStream, query, queryOptions);
-
-        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder().setNumTasks(1).setBatchSize(10).build();
-
-        ParallelTaskRunner<Variant, Variant> ptr = new ParallelTaskRunner<>(variantDBReader, progressTask, variantDataWriter, config);
-        try {
-            ptr.run();
-        } catch (ExecutionException e) {
-            throw new StorageEngineException("Error exporting variants", e);
-        }
-
-        logger.info("Time fetching data: " + variantDBReader.getTimeFetching(TimeUnit.MILLISECONDS) / 1000.0 + 's');
-        logger.info("Time converting data: " + variantDBReader.getTimeConverting(TimeUnit.MILLISECONDS) / 1000.0 + 's');
-
+        return progressTask;
     }
 
     protected void writeMetadata(VariantMetadata metadata, URI metadataFile) throws IOException {
@@ -219,14 +219,7 @@ public class VariantWriterFactory {
         boolean gzip = outputFormat.isGzip();
 
         // output format has priority over output name
-        OutputStream outputStream;
-        if (isStandardOutput(output)) {
-            // Unclosable OutputStream
-            outputStream = new UnclosableOutputStream(System.out);
-        } else {
-            outputStream = ioConnectorProvider.newOutputStreamRaw(output);
-            logger.debug("writing to %s", output);
-        }
+        OutputStream outputStream = getRawOutputStream(output, ioConnectorProvider);
 
         // If compressed a GZip output stream is used
         if (gzip && outputFormat != VariantOutputFormat.AVRO_GZ) {
@@ -240,6 +233,47 @@ public class VariantWriterFactory {
         return outputStream;
     }
 
+    /**
+     * Get the output stream without any compression nor buffer.
+     *
+     * @param output                Output URI. Standard output if null or empty.
+     * @param ioConnectorProvider   IOConnectorProvider
+     * @return                      Raw output stream
+     * @throws IOException          if the output can not be open
+     */
+    public static OutputStream getRawOutputStream(URI output, IOConnectorProvider ioConnectorProvider) throws IOException {
+        OutputStream outputStream;
+        if (isStandardOutput(output)) {
+            // Unclosable OutputStream
+            outputStream = new UnclosableOutputStream(System.out);
+        } else {
+            outputStream = ioConnectorProvider.newOutputStreamRaw(output);
+            logger.debug("writing to %s", output);
+        }
+        return outputStream;
+    }
+
+    public VcfBgzfDataWriter newVcfBgzfDataWriter(OutputStream outputStream, @Nullable OutputStream tabixOutputStream,
+                                                  Query query, QueryOptions queryOptions) throws IOException {
+        VariantMetadata variantMetadata = makeVcfMetadata(query, queryOptions);
+        List<String> annotations = queryOptions.getAsStringList("annotations");
+        return new VcfBgzfDataWriter(variantMetadata, annotations, outputStream, tabixOutputStream);
+    }
+
+    private VariantMetadata makeVcfMetadata(Query query, QueryOptions queryOptions) throws IOException {
+        VariantMetadataFactory metadataFactory = new VariantMetadataFactory(variantStorageMetadataManager);
+        VariantMetadata variantMetadata;
+        try {
+            variantMetadata = metadataFactory.makeVariantMetadata(query, queryOptions, true);
+        } catch (StorageEngineException e) {
+            throw new IOException(e);
+        }
+        if (variantMetadata.getStudies().isEmpty()) {
+            throw new IllegalArgumentException("No study found named " + query.getAsStringList(INCLUDE_STUDY.key()));
+        }
+        return variantMetadata;
+    }
+
     public DataWriter<Variant> newDataWriter(VariantOutputFormat outputFormat, final OutputStream outputStream,
                                                 Query query, QueryOptions queryOptions) throws IOException {
         final DataWriter<Variant> exporter;
@@ -247,19 +281,9 @@ public class VariantWriterFactory {
         switch (outputFormat) {
             case VCF_GZ:
             case VCF:
-                VariantMetadataFactory metadataFactory = new VariantMetadataFactory(variantStorageMetadataManager);
-                VariantMetadata variantMetadata;
-                try {
-                    variantMetadata = metadataFactory.makeVariantMetadata(query, queryOptions, true);
-                } catch (StorageEngineException e) {
-                    throw new IOException(e);
-                }
-                if (!variantMetadata.getStudies().isEmpty()) {
-                    List<String> annotations = queryOptions.getAsStringList("annotations");
-                    exporter = VcfDataWriter.newWriterForAvro(variantMetadata, annotations, outputStream);
-                } else {
-                    throw new IllegalArgumentException("No study found named " + query.getAsStringList(INCLUDE_STUDY.key()));
-                }
+                VariantMetadata variantMetadata = makeVcfMetadata(query, queryOptions);
+                List<String> annotations = queryOptions.getAsStringList("annotations");
+                exporter = VcfDataWriter.newWriterForAvro(variantMetadata, annotations, outputStream);
                 break;
 
             case JSON_GZ:
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io;
+
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import org.opencb.biodata.formats.variant.vcf4.VcfUtils;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.metadata.VariantMetadata;
+import org.opencb.biodata.tools.variant.converters.avro.VariantAvroToVariantContextConverter;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.commons.run.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.opencb.opencga.storage.core.variant.io.BgzfCompressor.MAX_UNCOMPRESSED_BLOCK_SIZE;
+
+/**
+ * Parallel VCF.GZ writer.
+ *
+ * Each batch of variants is formatted to VCF text and compressed into independent BGZF blocks by the
+ * {@link #newEncoderTask() encoder tasks}, that can run in parallel. This writer concatenates the blocks in the same
+ * order they were read, so the ParallelTaskRunner must be sorted. The output is a valid bgzip file, and, optionally,
+ * the tabix index is built on the fly. This requires the variants to be sorted.
+ *
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class VcfBgzfDataWriter implements DataWriter<VcfBgzfDataWriter.BgzfBatch> {
+
+    private final OutputStream outputStream;
+    private final OutputStream tabixOutputStream;
+    private final List<String> annotations;
+    private final String study;
+    private final List<String> samples;
+    private final VCFHeader header;
+    private final byte[] headerBytes;
+    private final BgzfCompressor compressor = new BgzfCompressor();
+    private TabixIndexCreator tabixIndexCreator;
+    /** Compressed bytes written so far. */
+    private long filePosition;
+
+    private final AtomicLong numVariants = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong formatTime = new AtomicLong();
+    private final AtomicLong compressTime = new AtomicLong();
+    private long writeTime;
+
+    private final Logger logger = LoggerFactory.getLogger(VcfBgzfDataWriter.class);
+
+    /**
+     * Compressed batch of variants.
+     */
+    public static final class BgzfBatch {
+        private final byte[] blocks;
+        private final int[] blockSizes;
+        private final int[] recordOffsets;
+        private final List<Feature> features;
+
+        private BgzfBatch(byte[] blocks, int[] blockSizes, int[] recordOffsets, List<Feature> features) {
+            this.blocks = blocks;
+            this.blockSizes = blockSizes;
+            this.recordOffsets = recordOffsets;
+            this.features = features;
+        }
+    }
+
+    public VcfBgzfDataWriter(VariantMetadata metadata, List<String> annotations, OutputStream outputStream,
+                             @Nullable OutputStream tabixOutputStream) {
+        this.outputStream = outputStream;
+        this.tabixOutputStream = tabixOutputStream;
+        this.annotations = annotations;
+        study = metadata.getStudies().get(0).getId();
+        samples = VcfDataWriter.getSamples(metadata);
+        header = VcfDataWriter.buildHeader(metadata, annotations);
+
+        // Serialize the header before starting the encoder tasks, which share the VCFHeader
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        VariantContextWriter headerWriter = VcfUtils.createVariantContextWriter(os, null, Options.ALLOW_MISSING_FIELDS_IN_HEADER);
+        headerWriter.writeHeader(header);
+        headerWriter.close();
+        headerBytes = os.toByteArray();
+    }
+
+    /**
+     * Creates a new task to format and compress batches of variants. Use one task per thread.
+     *
+     * @return new encoder task
+     */
+    public Task<Variant, BgzfBatch> newEncoderTask() {
+        return new EncoderTask();
+    }
+
+    @Override
+    public boolean pre() {
+        if (tabixOutputStream != null) {
+            tabixIndexCreator = new TabixIndexCreator(TabixFormat.VCF);
+        }
+        try {
+            filePosition += writeCompressed(outputStream, headerBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean write(List<BgzfBatch> batches) {
+        long start = System.nanoTime();
+        try {
+            for (BgzfBatch batch : batches) {
+                if (tabixIndexCreator != null) {
+                    addToIndex(batch);
+                }
+                outputStream.write(batch.blocks);
+                filePosition += batch.blocks.length;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writeTime += System.nanoTime() - start;
+        return true;
+    }
+
+    private void addToIndex(BgzfBatch batch) {
+        long blockAddress = filePosition;
+        int block = 0;
+        for (int i = 0; i < batch.recordOffsets.length; i++) {
+            int offset = batch.recordOffsets[i];
+            while (offset >= (block + 1) * MAX_UNCOMPRESSED_BLOCK_SIZE) {
+                blockAddress += batch.blockSizes[block];
+                block++;
+            }
+            // BGZF virtual file offset
+            long virtualOffset = (blockAddress << 16) | (offset - block * MAX_UNCOMPRESSED_BLOCK_SIZE);
+            tabixIndexCreator.addFeature(batch.features.get(i), virtualOffset);
+        }
+    }
+
+    @Override
+    public boolean post() {
+        try {
+            outputStream.write(BgzfCompressor.EOF_BLOCK);
+            outputStream.flush();
+            if (tabixIndexCreator != null) {
+                Index index = tabixIndexCreator.finalizeIndex(filePosition << 16);
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                index.write(new LittleEndianOutputStream(os));
+                writeCompressed(tabixOutputStream, os.toByteArray());
+                tabixOutputStream.write(BgzfCompressor.EOF_BLOCK);
+                tabixOutputStream.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logStats();
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        compressor.end();
+        return true;
+    }
+
+    private long writeCompressed(OutputStream os, byte[] bytes) throws IOException {
+        long size = 0;
+        for (int blockSize : compressor.compress(bytes, 0, bytes.length, os)) {
+            size += blockSize;
+        }
+        return size;
+    }
+
+    private void logStats() {
+        long variants = numVariants.get();
+        double megaBytes = uncompressedBytes.get() / 1024.0 / 1024.0;
+        logger.info("Exported {} variants, {} MB of VCF, {} MB compressed",
+                variants, String.format("%.2f", megaBytes), String.format("%.2f", filePosition / 1024.0 / 1024.0));
+        logStage("format", formatTime.get(), variants, megaBytes);
+        logStage("compress", compressTime.get(), variants, megaBytes);
+        logStage("write", writeTime, variants, megaBytes);
+    }
+
+    private void logStage(String stage, long nanos, long variants, double megaBytes) {
+        double seconds = Math.max(nanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        // Time of the parallel stages is aggregated from all the threads
+        logger.info("Stage '{}' : {}s, {} variants/s, {} MB/s", stage,
+                String.format("%.3f", seconds), String.format("%.0f", variants / seconds), String.format("%.2f", megaBytes / seconds));
+    }
+
+    private class EncoderTask implements Task<Variant, BgzfBatch> {
+
+        private final VariantAvroToVariantContextConverter converter;
+        private final VCFEncoder encoder;
+        private final BgzfCompressor taskCompressor = new BgzfCompressor();
+        private final ByteArrayOutputStream text = new ByteArrayOutputStream(MAX_UNCOMPRESSED_BLOCK_SIZE);
+
+        EncoderTask() {
+            converter = new VariantAvroToVariantContextConverter(study, samples, annotations);
+            encoder = new VCFEncoder(header, true, false);
+        }
+
+        @Override
+        public List<BgzfBatch> apply(List<Variant> variants) throws IOException {
+            long start = System.nanoTime();
+            List<VariantContext> contexts = converter.apply(variants);
+            text.reset();
+            int[] recordOffsets = new int[contexts.size()];
+            List<Feature> features = tabixOutputStream == null ? null : new ArrayList<>(contexts.size());
+            for (int i = 0; i < contexts.size(); i++) {
+                VariantContext context = contexts.get(i);
+                recordOffsets[i] = text.size();
+                text.write(encoder.encode(context).getBytes(StandardCharsets.UTF_8));
+                text.write('\n');
+                if (features != null) {
+                    features.add(new SimpleFeature(context.getContig(), context.getStart(), context.getEnd()));
+                }
+            }
+            long formatEnd = System.nanoTime();
+
+            byte[] data = text.toByteArray();
+            ByteArrayOutputStream blocks = new ByteArrayOutputStream(data.length / 3 + 64);
+            int[] blockSizes = taskCompressor.compress(data, 0, data.length, blocks);
+            long compressEnd = System.nanoTime();
+
+            numVariants.addAndGet(contexts.size());
+            uncompressedBytes.addAndGet(data.length);
+            formatTime.addAndGet(formatEnd - start);
+            compressTime.addAndGet(compressEnd - formatEnd);
+
+            List<BgzfBatch> batches = new ArrayList<>(1);
+            batches.add(new BgzfBatch(blocks.toByteArray(), blockSizes, recordOffsets, features));
+            return batches;
+        }
+
+        @Override
+        public void post() {
+            taskCompressor.end();
+        }
+    }
+}
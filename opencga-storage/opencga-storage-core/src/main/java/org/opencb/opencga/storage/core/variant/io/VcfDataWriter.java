@@ -83,11 +83,10 @@ public abstract class VcfDataWriter<T> implements DataWriter<T> {
     public boolean pre() {
         String study = metadata.getStudies().get(0).getId();
         if (samples == null) {
-            samples = metadata.getStudies().get(0).getIndividuals().stream()
-                    .flatMap(individual -> individual.getSamples().stream()).map(Sample::getId).collect(Collectors.toList());
+            samples = getSamples(metadata);
         }
 
-        VCFHeader vcfHeader = new VariantStudyMetadataToVCFHeaderConverter().convert(metadata.getStudies().get(0), annotations);
+        VCFHeader vcfHeader = buildHeader(metadata, annotations);
         // Warning: Calling to vcfHeader.getSequenceDictionary() may fail if any contig has null length
         variantContextWriter = VcfUtils.createVariantContextWriter(outputStream, null, Options.ALLOW_MISSING_FIELDS_IN_HEADER);
         variantContextWriter.writeHeader(vcfHeader);
@@ -96,6 +95,15 @@ public abstract class VcfDataWriter<T> implements DataWriter<T> {
         return true;
     }
 
+    static List<String> getSamples(VariantMetadata metadata) {
+        return metadata.getStudies().get(0).getIndividuals().stream()
+                .flatMap(individual -> individual.getSamples().stream()).map(Sample::getId).collect(Collectors.toList());
+    }
+
+    static VCFHeader buildHeader(VariantMetadata metadata, List<String> annotations) {
+        return new VariantStudyMetadataToVCFHeaderConverter().convert(metadata.getStudies().get(0), annotations);
+    }
+
     public abstract VariantContextConverter<T> newConverter(String study, List<String> samples, List<String> annotations);
 
     @Override
@@ -10,12 +10,12 @@ import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantIterable;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.MultiVariantDBIterator;
 import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
 
 import java.util.Collections;
 
-import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.QUERY_DEFAULT_TIMEOUT;
-import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.QUERY_MAX_TIMEOUT;
+import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.*;
 
 /**
  * Created on 01/04/19.
@@ -68,6 +68,21 @@ public abstract class VariantQueryExecutor implements VariantIterable {
         queryOptions.put(QueryOptions.TIMEOUT, timeout);
     }
 
+    /**
+     * Copy the query options, adding the default configuration for the {@link MultiVariantDBIterator} if missing.
+     *
+     * @param queryOptions Query options
+     * @return new QueryOptions
+     */
+    public QueryOptions multiIteratorOptions(QueryOptions queryOptions) {
+        QueryOptions multiIteratorOptions = new QueryOptions(queryOptions);
+        multiIteratorOptions.putIfAbsent(MultiVariantDBIterator.BATCHES_IN_FLIGHT, getOptions().getInt(
+                QUERY_MULTI_ITERATOR_BATCHES_IN_FLIGHT.key(), QUERY_MULTI_ITERATOR_BATCHES_IN_FLIGHT.defaultValue()));
+        multiIteratorOptions.putIfAbsent(MultiVariantDBIterator.BUFFER_SIZE, getOptions().getInt(
+                QUERY_MULTI_ITERATOR_BUFFER_SIZE.key(), QUERY_MULTI_ITERATOR_BUFFER_SIZE.defaultValue()));
+        return multiIteratorOptions;
+    }
+
     /**
      * Determine if this VariantQueryExecutor can run the given query.
      * @param query    Query to execute
@@ -157,6 +157,7 @@ public class SearchIndexVariantQueryExecutor extends AbstractSearchIndexVariantQ
                 variantsIterator = variantIdIteratorFromSearch(searchEngineQuery, Integer.MAX_VALUE, 0, searchCount);
             }
 
+            options = multiIteratorOptions(options);
             logger.debug("Intersect query " + engineQuery.toJson() + " options " + options.toJson());
             if (iterator) {
                 return dbAdaptor.iterator(variantsIterator, engineQuery, options);
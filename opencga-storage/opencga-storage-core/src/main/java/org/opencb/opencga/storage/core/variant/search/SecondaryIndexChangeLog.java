@@ -0,0 +1,39 @@
+package org.opencb.opencga.storage.core.variant.search;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.metadata.models.ProjectMetadata.SecondaryIndexCheckpoint;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
+
+/**
+ * Tracks the variants that need to be updated in the secondary index (SearchEngine). This is, variants with changes in the
+ * annotation, the stats or the studies since the last synchronization.
+ *
+ * Each storage backend records the changes in its own way, e.g. with a timestamp per variant, or with a table of pending variants.
+ */
+public interface SecondaryIndexChangeLog {
+
+    /**
+     * Prepare the list of changes, if the backend needs to precompute it.
+     *
+     * @param since   Last successful synchronization, or null to include all the variants.
+     * @param options Options
+     * @throws StorageEngineException on error preparing the changes
+     */
+    default void prepare(SecondaryIndexCheckpoint since, ObjectMap options) throws StorageEngineException {
+    }
+
+    /**
+     * Iterate over the variants changed since the checkpoint.
+     *
+     * @param since   Last successful synchronization, or null to include all the variants.
+     * @param query   Query to filter the variants, e.g. by region
+     * @param options QueryOptions
+     * @return Iterator over the changed variants
+     * @throws StorageEngineException on error reading the changes
+     */
+    VariantDBIterator iterator(SecondaryIndexCheckpoint since, Query query, QueryOptions options) throws StorageEngineException;
+
+}
@@ -1,42 +1,119 @@
 package org.opencb.opencga.storage.core.variant.search.solr;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.cloud.DocCollection;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.io.DataWriter;
 import org.opencb.opencga.core.common.TimeUtils;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Loads documents into a Solr collection using several concurrent writers.
+ *
+ * The received documents are regrouped into add requests, and queued into a bounded queue shared by all the writers. When the
+ * writers are behind, the caller is blocked until there is room in the queue. The size of the add requests adapts to the latency
+ * of the Search Engine, and failed requests are retried with an exponential backoff.
+ *
+ * Commits are deferred until more than insertBatchSize documents are pending. A commit waits for the add requests in flight, and
+ * blocks the new ones until it finishes.
+ */
 public class SolrInputDocumentDataWriter implements DataWriter<SolrInputDocument> {
 
+    private static final int MIN_BATCH_SIZE = 10;
+    private static final long RETRY_BACKOFF_MS = 500;
+
     private final String collection;
     private final SolrClient solrClient;
     private final int insertBatchSize;
-    private int serverBufferSize = 0;
-    private int insertedDocuments = 0;
-    private long addTimeMs = 0;
-    private long commitTimeMs = 0;
+    private final int numWriters;
+    private final int maxInFlightBatches;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatencyMs;
+    private final int maxRetries;
+
+    // Marks the end of the input for one writer. Compared by reference.
+    private final List<SolrInputDocument> endOfInput = new ArrayList<>(0);
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final AtomicInteger serverBufferSize = new AtomicInteger();
+    private final AtomicLong insertedDocuments = new AtomicLong();
+    private final AtomicLong addTimeMs = new AtomicLong();
+    private final AtomicLong commitTimeMs = new AtomicLong();
+    private final AtomicLong numRetries = new AtomicLong();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final List<VariantSearchLoadResult.WriterStats> writerStats = new ArrayList<>();
+    private volatile int batchSize;
+
+    private BlockingQueue<List<SolrInputDocument>> queue;
+    private ExecutorService executor;
+    private List<Future<?>> writers;
+    private List<SolrInputDocument> buffer;
+    private int maxQueueDepth;
+    private long blockedTimeMs;
+
     private final Logger logger = LoggerFactory.getLogger(VariantSearchManager.class);
 
     public SolrInputDocumentDataWriter(String collection, SolrClient solrClient, int insertBatchSize) {
+        this(collection, solrClient, insertBatchSize, new ObjectMap());
+    }
+
+    public SolrInputDocumentDataWriter(String collection, SolrClient solrClient, int insertBatchSize, ObjectMap options) {
         this.collection = collection;
         this.solrClient = solrClient;
         this.insertBatchSize = insertBatchSize;
+
+        int numWriters = options.getInt(VariantStorageOptions.SEARCH_LOAD_WRITERS.key(),
+                VariantStorageOptions.SEARCH_LOAD_WRITERS.defaultValue());
+        this.numWriters = numWriters > 0 ? numWriters : getNumShards();
+        this.maxInFlightBatches = Math.max(1, options.getInt(VariantStorageOptions.SEARCH_LOAD_MAX_IN_FLIGHT_BATCHES.key(),
+                VariantStorageOptions.SEARCH_LOAD_MAX_IN_FLIGHT_BATCHES.defaultValue()));
+        this.batchSize = Math.max(1, options.getInt(VariantStorageOptions.SEARCH_LOAD_BATCH_SIZE.key(),
+                VariantStorageOptions.SEARCH_LOAD_BATCH_SIZE.defaultValue()));
+        this.minBatchSize = Math.min(batchSize, MIN_BATCH_SIZE);
+        this.maxBatchSize = Math.max(batchSize, options.getInt(VariantStorageOptions.SEARCH_LOAD_MAX_BATCH_SIZE.key(),
+                VariantStorageOptions.SEARCH_LOAD_MAX_BATCH_SIZE.defaultValue()));
+        this.targetLatencyMs = options.getInt(VariantStorageOptions.SEARCH_LOAD_TARGET_LATENCY.key(),
+                VariantStorageOptions.SEARCH_LOAD_TARGET_LATENCY.defaultValue());
+        this.maxRetries = options.getInt(VariantStorageOptions.SEARCH_LOAD_MAX_RETRIES.key(),
+                VariantStorageOptions.SEARCH_LOAD_MAX_RETRIES.defaultValue());
+    }
+
+    @Override
+    public boolean pre() {
+        startWriters();
+        return true;
     }
 
     @Override
     public final boolean write(List<SolrInputDocument> batch) {
-        try {
-            add(batch);
-            if (serverBufferSize > insertBatchSize) {
-                commit();
+        checkFailure();
+        startWriters();
+        for (SolrInputDocument document : batch) {
+            buffer.add(document);
+            if (buffer.size() >= batchSize) {
+                enqueue(buffer);
+                buffer = new ArrayList<>(batchSize);
             }
-        } catch (Exception e) {
-            Throwables.propagate(e);
         }
         return true;
     }
@@ -44,35 +121,258 @@ public class SolrInputDocumentDataWriter implements DataWriter<SolrInputDocument
     @Override
     public boolean post() {
         try {
-            commit();
+            stopWriters();
+            checkFailure();
+            commitLock.writeLock().lock();
+            try {
+                commit();
+            } finally {
+                commitLock.writeLock().unlock();
+            }
         } catch (Exception e) {
-            Throwables.propagate(e);
+            throw Throwables.propagate(e);
         }
         logger.info("Finish Solr Bulk Load: {} inserted documents.", insertedDocuments);
-        logger.info("Push (add) time :{}", TimeUtils.durationToString(addTimeMs));
-        logger.info("Commit time: {}", TimeUtils.durationToString(commitTimeMs));
+        logger.info("Push (add) time :{}", TimeUtils.durationToString(addTimeMs.get()));
+        logger.info("Commit time: {}", TimeUtils.durationToString(commitTimeMs.get()));
+        logger.info("Writers: {}, final batch size: {}, max queue depth: {}/{}, blocked time: {}, retries: {}",
+                numWriters, batchSize, maxQueueDepth, numWriters * maxInFlightBatches, TimeUtils.durationToString(blockedTimeMs),
+                numRetries);
+        for (VariantSearchLoadResult.WriterStats stats : writerStats) {
+            logger.info(" - {}", stats);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
         return true;
     }
 
+    /**
+     * Add a batch of documents to the collection. Called concurrently from the writers, never while a commit is running.
+     *
+     * @param batch Documents to add
+     * @throws Exception on error adding the documents
+     */
     protected void add(List<SolrInputDocument> batch) throws Exception {
         UpdateResponse response = solrClient.add(collection, batch);
-        addTimeMs += response.getElapsedTime();
+        addTimeMs.addAndGet(response.getElapsedTime());
         if (response.getException() != null) {
             // FIXME: Is this even possible?
             throw response.getException();
         }
-        serverBufferSize += batch.size();
+        serverBufferSize.addAndGet(batch.size());
     }
 
+    /**
+     * Commit the added documents. Never concurrent with other commits or adds.
+     *
+     * @throws Exception on error committing the documents
+     */
     protected void commit() throws Exception {
         UpdateResponse response = solrClient.commit(collection, true, true, false);
-        commitTimeMs += response.getElapsedTime();
+        commitTimeMs.addAndGet(response.getElapsedTime());
         if (response.getException() != null) {
             // FIXME: Is this even possible?
             throw response.getException();
         }
-        insertedDocuments += serverBufferSize;
-        serverBufferSize = 0;
+        insertedDocuments.addAndGet(serverBufferSize.getAndSet(0));
+    }
+
+    public int getNumWriters() {
+        return numWriters;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getInsertedDocuments() {
+        return insertedDocuments.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getNumRetries() {
+        return numRetries.get();
+    }
+
+    public List<VariantSearchLoadResult.WriterStats> getWriterStats() {
+        return Collections.unmodifiableList(writerStats);
+    }
+
+    private int getNumShards() {
+        if (solrClient instanceof CloudSolrClient) {
+            try {
+                DocCollection docCollection = ((CloudSolrClient) solrClient).getZkStateReader().getClusterState()
+                        .getCollectionOrNull(collection);
+                if (docCollection != null) {
+                    return Math.max(1, docCollection.getActiveSlices().size());
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Unable to read the number of shards of collection '" + collection + "'. Using one writer", e);
+            }
+        }
+        return 1;
+    }
+
+    private void startWriters() {
+        if (executor != null) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(numWriters * maxInFlightBatches);
+        buffer = new ArrayList<>(batchSize);
+        executor = Executors.newFixedThreadPool(numWriters, new ThreadFactoryBuilder()
+                .setNameFormat("solr-writer-" + collection + "-%d")
+                .setDaemon(true)
+                .build());
+        writers = new ArrayList<>(numWriters);
+        for (int i = 0; i < numWriters; i++) {
+            VariantSearchLoadResult.WriterStats stats = new VariantSearchLoadResult.WriterStats("writer-" + i);
+            writerStats.add(stats);
+            writers.add(executor.submit(() -> runWriter(stats)));
+        }
+    }
+
+    private void stopWriters() throws ExecutionException, InterruptedException {
+        if (executor == null || writers == null) {
+            return;
+        }
+        if (!buffer.isEmpty()) {
+            enqueue(buffer);
+            buffer = new ArrayList<>(batchSize);
+        }
+        for (int i = 0; i < numWriters; i++) {
+            queue.put(endOfInput);
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writers = null;
+        executor.shutdown();
+    }
+
+    private void enqueue(List<SolrInputDocument> request) {
+        try {
+            if (!queue.offer(request)) {
+                long start = System.currentTimeMillis();
+                queue.put(request);
+                blockedTimeMs += System.currentTimeMillis() - start;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+    }
+
+    private void checkFailure() {
+        Exception e = failure.get();
+        if (e != null) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private void runWriter(VariantSearchLoadResult.WriterStats stats) {
+        try {
+            while (true) {
+                List<SolrInputDocument> request = queue.take();
+                if (request == endOfInput) {
+                    return;
+                }
+                // After a failure, keep draining the queue so the producer is never blocked
+                if (failure.get() == null) {
+                    try {
+                        addWithRetries(request, stats);
+                        if (serverBufferSize.get() > insertBatchSize) {
+                            commitIfNeeded();
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void addWithRetries(List<SolrInputDocument> request, VariantSearchLoadResult.WriterStats stats) throws Exception {
+        int attempt = 0;
+        while (true) {
+            long start = System.currentTimeMillis();
+            commitLock.readLock().lock();
+            try {
+                add(request);
+                long elapsed = System.currentTimeMillis() - start;
+                stats.addRequest(request.size(), elapsed);
+                adaptBatchSize(request.size(), elapsed);
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                logger.warn("Error adding {} documents to collection '{}'. Retry {}/{} : {}",
+                        request.size(), collection, attempt + 1, maxRetries, e.getMessage());
+                stats.addRetry();
+                numRetries.incrementAndGet();
+                shrinkBatchSize();
+            } finally {
+                commitLock.readLock().unlock();
+            }
+            Thread.sleep(RETRY_BACKOFF_MS << attempt);
+            attempt++;
+        }
+    }
+
+    private void commitIfNeeded() throws Exception {
+        commitLock.writeLock().lock();
+        try {
+            // Another writer might have committed already
+            if (serverBufferSize.get() > insertBatchSize) {
+                commit();
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scale the batch size to reach the target latency. Changes are limited to half or double of the size of the last request.
+     *
+     * @param size      Size of the last request
+     * @param elapsedMs Time of the last request
+     */
+    private synchronized void adaptBatchSize(int size, long elapsedMs) {
+        long target = elapsedMs > 0 ? size * targetLatencyMs / elapsedMs : size * 2L;
+        target = Math.max(size / 2, Math.min(size * 2L, target));
+        int newBatchSize = (int) Math.max(minBatchSize, Math.min(maxBatchSize, target));
+        if (elapsedMs > targetLatencyMs) {
+            // Requests queued before the last change might be larger than the current batch size
+            batchSize = Math.min(batchSize, newBatchSize);
+        } else if (size >= batchSize) {
+            // Fast small requests (e.g. the last one) can not tell if larger requests would be fast as well
+            batchSize = newBatchSize;
+        }
+    }
+
+    private synchronized void shrinkBatchSize() {
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof SolrException) {
+            int code = ((SolrException) e).code();
+            // Server errors, or too many requests
+            return code >= 500 || code == 429;
+        }
+        return e instanceof IOException || e instanceof SolrServerException;
     }
 
 }
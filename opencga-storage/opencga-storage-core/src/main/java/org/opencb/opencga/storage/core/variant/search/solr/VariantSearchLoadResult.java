@@ -3,6 +3,9 @@ package org.opencb.opencga.storage.core.variant.search.solr;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Created on 23/04/18.
  *
@@ -26,10 +29,39 @@ public class VariantSearchLoadResult {
      */
     private final long numDeletedVariants;
 
+    /**
+     * Wall time of the load, in milliseconds.
+     */
+    private final long loadTimeMs;
+
+    /**
+     * Max number of batches waiting for a writer. If it reaches the limit, the load was blocked by the Search Engine.
+     */
+    private final int maxQueueDepth;
+
+    /**
+     * Number of add requests retried after a failure.
+     */
+    private final long numRetries;
+
+    /**
+     * Statistics of each concurrent writer.
+     */
+    private final List<WriterStats> writers;
+
     public VariantSearchLoadResult(long numProcessedVariants, long numLoadedVariants, long numDeletedVariants) {
+        this(numProcessedVariants, numLoadedVariants, numDeletedVariants, 0, 0, 0, Collections.emptyList());
+    }
+
+    public VariantSearchLoadResult(long numProcessedVariants, long numLoadedVariants, long numDeletedVariants, long loadTimeMs,
+                                   int maxQueueDepth, long numRetries, List<WriterStats> writers) {
         this.numProcessedVariants = numProcessedVariants;
         this.numLoadedVariants = numLoadedVariants;
         this.numDeletedVariants = numDeletedVariants;
+        this.loadTimeMs = loadTimeMs;
+        this.maxQueueDepth = maxQueueDepth;
+        this.numRetries = numRetries;
+        this.writers = writers;
     }
 
     public long getNumProcessedVariants() {
@@ -44,12 +76,96 @@ public class VariantSearchLoadResult {
         return numDeletedVariants;
     }
 
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+
+    /**
+     * @return Loaded variants per second
+     */
+    public double getThroughput() {
+        return loadTimeMs > 0 ? numLoadedVariants * 1000.0 / loadTimeMs : 0;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getNumRetries() {
+        return numRetries;
+    }
+
+    public List<WriterStats> getWriters() {
+        return writers;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this, ToStringStyle.JSON_STYLE)
                 .append("numProcessedVariants", numProcessedVariants)
                 .append("numLoadedVariants", numLoadedVariants)
                 .append("numDeletedVariants", numDeletedVariants)
+                .append("loadTimeMs", loadTimeMs)
+                .append("throughput", getThroughput())
+                .append("maxQueueDepth", maxQueueDepth)
+                .append("numRetries", numRetries)
+                .append("writers", writers)
                 .toString();
     }
+
+    /**
+     * Statistics of one of the concurrent writers of the Search Engine.
+     */
+    public static final class WriterStats {
+        private final String name;
+        private long numDocuments;
+        private long numRequests;
+        private long numRetries;
+        private long addTimeMs;
+
+        public WriterStats(String name) {
+            this.name = name;
+        }
+
+        void addRequest(int documents, long timeMs) {
+            numDocuments += documents;
+            numRequests++;
+            addTimeMs += timeMs;
+        }
+
+        void addRetry() {
+            numRetries++;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNumDocuments() {
+            return numDocuments;
+        }
+
+        public long getNumRequests() {
+            return numRequests;
+        }
+
+        public long getNumRetries() {
+            return numRetries;
+        }
+
+        public long getAddTimeMs() {
+            return addTimeMs;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this, ToStringStyle.JSON_STYLE)
+                    .append("name", name)
+                    .append("numDocuments", numDocuments)
+                    .append("numRequests", numRequests)
+                    .append("numRetries", numRetries)
+                    .append("addTimeMs", addTimeMs)
+                    .toString();
+        }
+    }
 }
@@ -229,8 +229,11 @@ public class VariantSearchManager {
         }
 
         int count = variantDBIterator.getCount();
-        logger.info("Variant Search loading done. " + count + " variants indexed in " + TimeUtils.durationToString(stopWatch));
-        return new VariantSearchLoadResult(count, count, 0);
+        VariantSearchLoadResult result = new VariantSearchLoadResult(count, count, 0, stopWatch.getTime(),
+                writer.getMaxQueueDepth(), writer.getNumRetries(), writer.getWriterStats());
+        logger.info("Variant Search loading done. " + count + " variants indexed in " + TimeUtils.durationToString(stopWatch)
+                + String.format(" (%.1f variants/s)", result.getThroughput()));
+        return result;
     }
 
 
@@ -58,6 +58,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 /**
@@ -182,6 +183,9 @@ public class DefaultVariantStatisticsManager extends VariantStatisticsManager {
                 VariantStorageOptions.STATS_MULTI_ALLELIC.key(),
                 VariantStorageOptions.STATS_MULTI_ALLELIC.defaultValue());
         boolean overwrite = options.getBoolean(VariantStorageOptions.STATS_OVERWRITE.key(), false);
+        boolean forkJoin = options.getBoolean(
+                VariantStorageOptions.STATS_CALCULATE_FORK_JOIN.key(),
+                VariantStorageOptions.STATS_CALCULATE_FORK_JOIN.defaultValue());
         Properties tagmap = VariantStatisticsManager.getAggregationMappingProperties(options);
 //            fileId = options.getString(VariantStorageEngine.Options.FILE_ID.key());
         Aggregation aggregation = getAggregation(studyMetadata, options);
@@ -217,7 +221,7 @@ public class DefaultVariantStatisticsManager extends VariantStatisticsManager {
         ProgressLogger progressLogger = buildCreateStatsProgressLogger(dbAdaptor, readerQuery, readerOptions);
         for (int i = 0; i < numTasks; i++) {
             tasks.add(new VariantStatsWrapperTask(overwrite, cohorts, studyMetadata, tagmap, progressLogger,
-                    aggregation));
+                    aggregation, forkJoin ? ForkJoinPool.commonPool() : null));
         }
         StringDataWriter writer = buildVariantStatsStringDataWriter(output);
 
@@ -278,7 +282,7 @@ public class DefaultVariantStatisticsManager extends VariantStatisticsManager {
 
         VariantStatsWrapperTask(boolean overwrite, Map<String, Set<String>> cohorts,
                                 StudyMetadata studyMetadata, Properties tagmap,
-                                ProgressLogger progressLogger, Aggregation aggregation) {
+                                ProgressLogger progressLogger, Aggregation aggregation, ForkJoinPool pool) {
             this.overwrite = overwrite;
             this.cohorts = cohorts;
             this.studyMetadata = studyMetadata;
@@ -289,7 +293,7 @@ public class DefaultVariantStatisticsManager extends VariantStatisticsManager {
             variantsWriter = jsonObjectMapper.writerFor(VariantStatsWrapper.class);
 //            this.variantSourceStats = variantSourceStats;
             this.tagmap = tagmap;
-            variantStatisticsCalculator = new VariantStatisticsCalculator(overwrite);
+            variantStatisticsCalculator = new VariantStatisticsCalculator(overwrite, pool);
             variantStatisticsCalculator.setAggregationType(aggregation, tagmap);
         }
 
@@ -16,31 +16,56 @@
 
 package org.opencb.opencga.storage.core.variant.stats;
 
+import org.opencb.biodata.models.variant.Genotype;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.FileEntry;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
 import org.opencb.biodata.models.variant.metadata.Aggregation;
 import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.biodata.tools.variant.stats.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
  * Created by jmmut on 28/01/15.
+ *
+ * Cohorts are resolved into arrays of sample positions once, and genotypes are counted into primitive counters.
+ * Batches can be split across variants in a {@link ForkJoinPool}.
  */
 public class VariantStatisticsCalculator {
 
+    // Min number of variants to process at each fork-join task
+    static final int FORK_JOIN_THRESHOLD = 16;
+    // Genotype used for samples without GT, or not present in the variant
+    static final String MISSING_GENOTYPE = "./.";
+
     private int skippedFiles;
     private boolean overwrite;
     private VariantAggregatedStatsCalculator aggregatedCalculator;
     private Aggregation aggregation;
+    private final ForkJoinPool pool;
+    private final Map<String, CohortSamples> cohortSamplesCache = new ConcurrentHashMap<>();
 
     public VariantStatisticsCalculator() {
         this(false);
     }
 
     public VariantStatisticsCalculator(boolean overwrite) {
+        this(overwrite, null);
+    }
+
+    /**
+     * @param overwrite Overwrite existing stats from the input variants
+     * @param pool      ForkJoinPool to compute the stats of each batch in parallel. If null, batches are processed sequentially.
+     */
+    public VariantStatisticsCalculator(boolean overwrite, ForkJoinPool pool) {
         this.overwrite = overwrite;
+        this.pool = pool;
         skippedFiles = 0;
     }
 
@@ -111,9 +136,31 @@ public class VariantStatisticsCalculator {
      */
     public List<VariantStatsWrapper> calculateBatch(List<Variant> variants, String studyId,
                                                     Map<String, Set<String>> samples) {
+        VariantStatsWrapper[] wrappers = new VariantStatsWrapper[variants.size()];
+        if (pool == null || variants.size() <= FORK_JOIN_THRESHOLD) {
+            calculate(variants, studyId, samples, wrappers, 0, variants.size());
+        } else {
+            pool.invoke(new CalculateStatsAction(variants, studyId, samples, wrappers, 0, variants.size()));
+        }
+
         List<VariantStatsWrapper> variantStatsWrappers = new ArrayList<>(variants.size());
+        int skipped = 0;
+        for (VariantStatsWrapper wrapper : wrappers) {
+            if (wrapper == null) {
+                skipped++;
+            } else {
+                variantStatsWrappers.add(wrapper);
+            }
+        }
+        skippedFiles += skipped;
+        return variantStatsWrappers;
+    }
 
-        for (Variant variant : variants) {
+    private void calculate(List<Variant> variants, String studyId, Map<String, Set<String>> samples,
+                           VariantStatsWrapper[] wrappers, int from, int to) {
+        GenotypeCounter counter = new GenotypeCounter();
+        for (int i = from; i < to; i++) {
+            Variant variant = variants.get(i);
             StudyEntry study = null;
             for (StudyEntry entry : variant.getStudies()) {
                 if (entry.getStudyId().equals(studyId)) {
@@ -122,7 +169,6 @@ public class VariantStatisticsCalculator {
                 }
             }
             if (study == null) {
-                skippedFiles++;
                 continue;
             }
 
@@ -130,8 +176,8 @@ public class VariantStatisticsCalculator {
                 List<VariantStats> stats = new ArrayList<>(samples.size());
                 for (Map.Entry<String, Set<String>> cohort : samples.entrySet()) {
                     if (overwrite || study.getStats(cohort.getKey()) == null) {
-
-                        VariantStats variantStats = VariantStatsCalculator.calculate(variant, study, cohort.getValue());
+                        CohortSamples cohortSamples = getCohortSamples(cohort.getKey(), cohort.getValue(), study);
+                        VariantStats variantStats = calculate(variant, study, cohortSamples, counter);
                         variantStats.setCohortId(cohort.getKey());
                         stats.add(variantStats);
                     }
@@ -150,9 +196,173 @@ public class VariantStatisticsCalculator {
 //                        , allVariantStats.calculate(file.getSamplesData(), file.getAttributes(), null));
 //
 //            }
-            variantStatsWrappers.add(new VariantStatsWrapper(variant, study.getStats()));
+            wrappers[i] = new VariantStatsWrapper(variant, study.getStats());
+        }
+    }
+
+    /**
+     * Equivalent to {@link VariantStatsCalculator#calculate(Variant, StudyEntry, Collection)}, reading the samples by position
+     * and counting genotypes into primitive counters.
+     */
+    private static VariantStats calculate(Variant variant, StudyEntry study, CohortSamples cohortSamples, GenotypeCounter counter) {
+        Integer gtIdx = study.getSampleDataKeyPosition("GT");
+        List<FileEntry> files = study.getFiles();
+        BitSet cohortFiles = new BitSet(files == null ? 0 : files.size());
+        boolean samplesWithFile = false;
+
+        counter.reset();
+        for (int position : cohortSamples.positions) {
+            if (position < 0) {
+                // Sample not present in this variant
+                counter.add(MISSING_GENOTYPE);
+                continue;
+            }
+            SampleEntry sampleEntry = study.getSample(position);
+            List<String> data = sampleEntry.getData();
+            if (gtIdx == null || data == null || data.size() <= gtIdx || data.get(gtIdx) == null) {
+                counter.add(MISSING_GENOTYPE);
+            } else {
+                counter.add(data.get(gtIdx));
+            }
+            Integer fileIndex = sampleEntry.getFileIndex();
+            if (fileIndex != null) {
+                cohortFiles.set(fileIndex);
+                samplesWithFile = true;
+            }
+        }
+
+        VariantStats variantStats = VariantStatsCalculator.calculate(variant, counter.toGenotypeCount(), false);
+
+        int numFiles = 0;
+        int numQualFiles = 0;
+        double qualSum = 0;
+        if (files != null) {
+            for (int fileIdx = 0; fileIdx < files.size(); fileIdx++) {
+                // Without file information at the samples, use all the files
+                if (samplesWithFile && !cohortFiles.get(fileIdx)) {
+                    continue;
+                }
+                Map<String, String> fileData = files.get(fileIdx).getData();
+                VariantStatsCalculator.addFileFilter(fileData.get(StudyEntry.FILTER), variantStats.getFilterCount());
+                numFiles++;
+                String qual = fileData.get(StudyEntry.QUAL);
+                if (qual != null && !qual.isEmpty() && !qual.equals(".")) {
+                    numQualFiles++;
+                    qualSum += Double.parseDouble(qual);
+                }
+            }
+        }
+        VariantStatsCalculator.calculateFilterFreq(variantStats, numFiles);
+        variantStats.setQualityAvg((float) (qualSum / numQualFiles));
+        variantStats.setQualityCount(numQualFiles);
+        return variantStats;
+    }
+
+    /**
+     * Get the positions of the cohort samples. Variants read from the same source usually share the samples position map,
+     * so the positions are only computed again if the samples position changes.
+     */
+    private CohortSamples getCohortSamples(String cohort, Set<String> sampleNames, StudyEntry study) {
+        Map<String, Integer> samplesPosition = study.getSamplesPosition();
+        CohortSamples cohortSamples = cohortSamplesCache.get(cohort);
+        if (cohortSamples == null || !cohortSamples.isValid(sampleNames, samplesPosition)) {
+            cohortSamples = new CohortSamples(sampleNames, samplesPosition);
+            cohortSamplesCache.put(cohort, cohortSamples);
+        }
+        return cohortSamples;
+    }
+
+    private static final class CohortSamples {
+        private final Set<String> sampleNames;
+        private final Map<String, Integer> samplesPosition;
+        private final int[] positions;
+
+        private CohortSamples(Set<String> sampleNames, Map<String, Integer> samplesPosition) {
+            this.sampleNames = sampleNames;
+            this.samplesPosition = samplesPosition;
+            int[] positions = new int[sampleNames.size()];
+            int i = 0;
+            for (String sampleName : sampleNames) {
+                // Samples not found in the variant are counted as missing
+                Integer position = samplesPosition.get(sampleName);
+                positions[i++] = position == null ? -1 : position;
+            }
+            this.positions = positions;
+        }
+
+        private boolean isValid(Set<String> sampleNames, Map<String, Integer> samplesPosition) {
+            return this.sampleNames == sampleNames
+                    && (this.samplesPosition == samplesPosition || this.samplesPosition.equals(samplesPosition));
+        }
+    }
+
+    /**
+     * Counts genotype strings. Each variant has a few different genotypes, so a linear search is faster than a hash map.
+     */
+    static final class GenotypeCounter {
+        private String[] genotypes = new String[8];
+        private int[] counts = new int[8];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void add(String gt) {
+            for (int i = 0; i < size; i++) {
+                String other = genotypes[i];
+                if (other == gt || other != null && other.equals(gt)) {
+                    counts[i]++;
+                    return;
+                }
+            }
+            if (size == genotypes.length) {
+                genotypes = Arrays.copyOf(genotypes, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            genotypes[size] = gt;
+            counts[size] = 1;
+            size++;
+        }
+
+        Map<Genotype, Integer> toGenotypeCount() {
+            Map<Genotype, Integer> gtCount = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                // Different strings might be parsed into equal genotypes
+                gtCount.merge(new Genotype(genotypes[i]), counts[i], Integer::sum);
+            }
+            return gtCount;
+        }
+    }
+
+    private final class CalculateStatsAction extends RecursiveAction {
+        private final List<Variant> variants;
+        private final String studyId;
+        private final Map<String, Set<String>> samples;
+        private final VariantStatsWrapper[] wrappers;
+        private final int from;
+        private final int to;
+
+        CalculateStatsAction(List<Variant> variants, String studyId, Map<String, Set<String>> samples,
+                             VariantStatsWrapper[] wrappers, int from, int to) {
+            this.variants = variants;
+            this.studyId = studyId;
+            this.samples = samples;
+            this.wrappers = wrappers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FORK_JOIN_THRESHOLD) {
+                calculate(variants, studyId, samples, wrappers, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CalculateStatsAction(variants, studyId, samples, wrappers, from, mid),
+                        new CalculateStatsAction(variants, studyId, samples, wrappers, mid, to));
+            }
         }
-        return variantStatsWrappers;
     }
 
     @Deprecated
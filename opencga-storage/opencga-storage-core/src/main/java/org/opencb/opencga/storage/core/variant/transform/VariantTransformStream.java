@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.transform;
+
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantFileMetadata;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.commons.run.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Streams the output of the transform step directly into the load step.
+ *
+ * The transform {@link ParallelTaskRunner} runs in a background thread when this reader is opened, and hands the
+ * normalized variants to the loader through a bounded queue. The loader never reads back the intermediate file, which
+ * can still be written as an optional tee.
+ *
+ * This reader can only be read once.
+ *
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class VariantTransformStream implements VariantReader {
+
+    private static final List<Variant> END = Collections.unmodifiableList(new ArrayList<>());
+
+    private final VariantFileMetadata metadata;
+    private final BlockingQueue<List<Variant>> queue;
+    private final ParallelTaskRunner<?, Variant> ptr;
+    private final Finisher finisher;
+    private DataWriter<Variant> tee;
+
+    private Thread producer;
+    private volatile boolean closed;
+    private volatile Exception error;
+    private boolean finished;
+    private List<Variant> pending = Collections.emptyList();
+    private int pendingIdx;
+
+    private long numVariants;
+    private long loadWaitNanos;
+    private long transformWaitNanos;
+
+    private final Logger logger = LoggerFactory.getLogger(VariantTransformStream.class);
+
+    /**
+     * Executed by the transform thread after the last variant is transformed, before the end of the stream.
+     */
+    @FunctionalInterface
+    public interface Finisher {
+        void finish() throws Exception;
+    }
+
+    /**
+     * @param metadata      Metadata of the file being transformed. Completed with the stats at the end of the transform.
+     * @param queueSize     Maximum number of batches in the queue
+     * @param ptrBuilder    Builds the transform ParallelTaskRunner given the writer that feeds the queue
+     * @param finisher      Executed after the transform
+     */
+    public VariantTransformStream(VariantFileMetadata metadata, int queueSize,
+                                  Function<DataWriter<Variant>, ParallelTaskRunner<?, Variant>> ptrBuilder, Finisher finisher) {
+        this.metadata = metadata;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.ptr = ptrBuilder.apply(new QueueWriter());
+        this.finisher = finisher;
+    }
+
+    /**
+     * Write the transformed variants also to a file.
+     *
+     * @param encoder   Encoder task
+     * @param writer    File writer
+     * @param <W>       Encoded type
+     * @return          this
+     */
+    public <W> VariantTransformStream setTee(Task<Variant, W> encoder, DataWriter<W> writer) {
+        tee = new DataWriter<Variant>() {
+            @Override
+            public boolean open() {
+                return writer.open();
+            }
+
+            @Override
+            public boolean pre() {
+                return writer.pre();
+            }
+
+            @Override
+            public boolean write(List<Variant> batch) {
+                try {
+                    return writer.write(encoder.apply(batch));
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public boolean post() {
+                return writer.post();
+            }
+
+            @Override
+            public boolean close() {
+                return writer.close();
+            }
+        };
+        return this;
+    }
+
+    @Override
+    public List<String> getSampleNames() {
+        return new ArrayList<>(metadata.getSampleIds());
+    }
+
+    @Override
+    public VariantFileMetadata getVariantFileMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public boolean open() {
+        if (producer != null) {
+            throw new IllegalStateException("Transform stream can only be read once");
+        }
+        producer = new Thread(this::produce, "transform-stream");
+        producer.setDaemon(true);
+        producer.start();
+        return true;
+    }
+
+    @Override
+    public List<Variant> read(int batchSize) {
+        List<Variant> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && !finished) {
+            if (pendingIdx == pending.size()) {
+                List<Variant> next = take();
+                if (next == END) {
+                    finished = true;
+                    if (error != null) {
+                        throw new IllegalStateException("Error transforming variants", error);
+                    }
+                    break;
+                }
+                pending = next;
+                pendingIdx = 0;
+            }
+            int size = Math.min(batchSize - batch.size(), pending.size() - pendingIdx);
+            batch.addAll(pending.subList(pendingIdx, pendingIdx + size));
+            pendingIdx += size;
+        }
+        numVariants += batch.size();
+        return batch;
+    }
+
+    @Override
+    public boolean close() {
+        closed = true;
+        if (producer != null) {
+            try {
+                // The transform thread aborts if it is blocked writing into the queue
+                producer.join(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Streamed {} transformed variants. Load waited {}s for the transform, transform waited {}s for the load",
+                    numVariants, TimeUnit.NANOSECONDS.toMillis(loadWaitNanos) / 1000.0,
+                    TimeUnit.NANOSECONDS.toMillis(transformWaitNanos) / 1000.0);
+        }
+        return true;
+    }
+
+    private void produce() {
+        try {
+            ptr.run();
+            finisher.finish();
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            try {
+                put(END);
+            } catch (RuntimeException | InterruptedException e) {
+                logger.warn("Unable to signal the end of the transform stream", e);
+            }
+        }
+    }
+
+    private List<Variant> take() {
+        long start = System.nanoTime();
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for transformed variants", e);
+        } finally {
+            loadWaitNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void put(List<Variant> batch) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                if (closed) {
+                    throw new IllegalStateException("Transform stream closed by the loader");
+                }
+            }
+        } finally {
+            transformWaitNanos += System.nanoTime() - start;
+        }
+    }
+
+    private class QueueWriter implements DataWriter<Variant> {
+        @Override
+        public boolean open() {
+            return tee == null || tee.open();
+        }
+
+        @Override
+        public boolean pre() {
+            return tee == null || tee.pre();
+        }
+
+        @Override
+        public boolean write(List<Variant> batch) {
+            if (batch.isEmpty()) {
+                return true;
+            }
+            // Write the tee first, as the loader may modify the variants
+            if (tee != null) {
+                tee.write(batch);
+            }
+            try {
+                put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return tee == null || tee.post();
+        }
+
+        @Override
+        public boolean close() {
+            return tee == null || tee.close();
+        }
+    }
+}
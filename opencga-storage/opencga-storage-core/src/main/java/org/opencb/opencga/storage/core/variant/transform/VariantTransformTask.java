@@ -42,6 +42,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -62,6 +64,7 @@ public class VariantTransformTask implements Task<String, Variant> {
     protected final Logger logger = LoggerFactory.getLogger(VariantTransformTask.class);
     protected final VCFCodec vcfCodec;
     protected final VariantContextToVariantConverter converter;
+    protected final VariantVcfBytesParser bytesParser;
     protected final Task<Variant, Variant> normalizer;
     protected final VariantSetStatsCalculator variantStatsTask;
     protected final AtomicLong htsConvertTime = new AtomicLong(0);
@@ -81,6 +84,7 @@ public class VariantTransformTask implements Task<String, Variant> {
 
         this.vcfCodec = null;
         this.converter = null;
+        this.bytesParser = null;
         this.normalizer = normalizer;
     }
 
@@ -95,6 +99,7 @@ public class VariantTransformTask implements Task<String, Variant> {
         this.vcfCodec = new FullVcfCodec();
         this.vcfCodec.setVCFHeader(header, version);
         this.converter = new VariantContextToVariantConverter(studyId, fileMetadata.getId(), fileMetadata.getSampleIds());
+        this.bytesParser = new VariantVcfBytesParser(studyId, fileMetadata.getId(), fileMetadata.getSampleIds());
         this.normalizer = normalizer;
     }
 
@@ -177,6 +182,79 @@ public class VariantTransformTask implements Task<String, Variant> {
         return transformedVariants;
     }
 
+    /**
+     * Transform a batch of VCF lines read as bytes. Simple records are parsed with the {@link VariantVcfBytesParser},
+     * without decoding the line into a String. Any other line is decoded and parsed with htsjdk.
+     *
+     * @param batch VCF lines
+     * @return Transformed variants
+     */
+    public List<Variant> applyBytes(List<ByteBuffer> batch) {
+        if (bytesParser == null) {
+            throw new IllegalStateException("Unable to transform bytes without a VCF header");
+        }
+        List<Variant> variants = new ArrayList<>(batch.size());
+        logger.debug("Transforming {} lines", batch.size());
+        long curr = System.currentTimeMillis();
+        for (ByteBuffer line : batch) {
+            if (!line.hasRemaining() || line.get(line.position()) == '#') {
+                continue;
+            }
+            Variant variant = bytesParser.parse(line);
+            if (variant != null) {
+                variants.add(variant);
+            } else {
+                String lineStr = StandardCharsets.UTF_8.decode(line.duplicate()).toString();
+                if (lineStr.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    variants.addAll(converter.apply(Collections.singletonList(vcfCodec.decode(lineStr))));
+                } catch (RuntimeException e) {
+                    onError(e, lineStr);
+                }
+            }
+        }
+        this.biodataConvertTime.addAndGet(System.currentTimeMillis() - curr);
+
+        List<Variant> normalizedVariants = normalize(variants);
+
+        variantStatsTask.apply(normalizedVariants);
+
+        return normalizedVariants;
+    }
+
+    /**
+     * Get a view of this task reading VCF lines as bytes.
+     *
+     * @return Task transforming bytes
+     * @see #applyBytes(List)
+     */
+    public Task<ByteBuffer, Variant> asBytesTask() {
+        VariantTransformTask task = this;
+        return new Task<ByteBuffer, Variant>() {
+            @Override
+            public void pre() throws Exception {
+                task.pre();
+            }
+
+            @Override
+            public List<Variant> apply(List<ByteBuffer> batch) {
+                return task.applyBytes(batch);
+            }
+
+            @Override
+            public List<Variant> drain() throws Exception {
+                return task.drain();
+            }
+
+            @Override
+            public void post() throws Exception {
+                task.post();
+            }
+        };
+    }
+
     public List<Variant> normalize(List<Variant> variants) {
         long curr;
         curr = System.currentTimeMillis();
@@ -223,6 +301,9 @@ public class VariantTransformTask implements Task<String, Variant> {
         if (normalizer != null) {
             normalizer.post();
         }
+        if (bytesParser != null && bytesParser.getUnsupportedLines() > 0) {
+            logger.info("{} lines not supported by the bytes parser were read with htsjdk", bytesParser.getUnsupportedLines());
+        }
         logger.debug("Time txt2hts: " + this.htsConvertTime.get());
         logger.debug("Time hts2biodata: " + this.biodataConvertTime.get());
         logger.debug("Time normalization: " + this.normTime.get());
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.transform;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Byte oriented VCF record parser. Builds {@link Variant} objects directly from the bytes of a VCF line,
+ * without decoding the whole line into a String.
+ *
+ * Only simple records are supported, where REF and ALT are made of plain upper case bases. Any other record (symbolic alleles,
+ * breakends, missing alternates, multiple filters, malformed lines...) is not parsed and must be read with htsjdk.
+ * Values are decoded as UTF-8.
+ *
+ * Not thread safe.
+ */
+public class VariantVcfBytesParser {
+
+    private static final int MAX_CACHED_LENGTH = 8;
+    private static final int CACHE_SIZE = 4096;
+    private static final String MISSING = ".";
+    private static final Logger logger = LoggerFactory.getLogger(VariantVcfBytesParser.class);
+
+    private final String studyId;
+    private final String fileId;
+    private final LinkedHashMap<String, Integer> samplesPosition;
+    private final int numSamples;
+
+    // Short values (genotypes, depths, ...) are highly repeated. Reuse the String instances.
+    private final String[] stringCache = new String[CACHE_SIZE];
+    private String lastChromosome;
+    private String lastFilter;
+    private String lastFormat;
+    private String[] lastFormatKeys;
+
+    private byte[] buffer = new byte[0];
+    private int[] tabs = new int[16];
+    private long unsupportedLines;
+
+    public VariantVcfBytesParser(String studyId, String fileId, List<String> sampleNames) {
+        this.studyId = studyId;
+        this.fileId = fileId;
+        this.numSamples = sampleNames.size();
+        this.samplesPosition = new LinkedHashMap<>(numSamples * 2);
+        for (String sampleName : sampleNames) {
+            samplesPosition.put(sampleName, samplesPosition.size());
+        }
+    }
+
+    /**
+     * Parse a VCF line.
+     *
+     * @param line VCF line, without the end of line characters
+     * @return the variant, or null if the line is not supported by this parser
+     */
+    public Variant parse(ByteBuffer line) {
+        int length = line.remaining();
+        byte[] bytes;
+        int offset;
+        if (line.hasArray()) {
+            bytes = line.array();
+            offset = line.arrayOffset() + line.position();
+        } else {
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            line.duplicate().get(buffer, 0, length);
+            bytes = buffer;
+            offset = 0;
+        }
+        return parse(bytes, offset, offset + length);
+    }
+
+    /**
+     * @return number of lines not supported by this parser, to be read with htsjdk
+     */
+    public long getUnsupportedLines() {
+        return unsupportedLines;
+    }
+
+    private Variant unsupported(String reason, byte[] bytes, int offset, int end) {
+        unsupportedLines++;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Unsupported line ({}) will be read with htsjdk: {}", reason, string(bytes, offset, Math.min(end, offset + 200)));
+        }
+        return null;
+    }
+
+    private Variant parse(byte[] bytes, int offset, int end) {
+        int numColumns = split(bytes, offset, end);
+        if (numColumns < 8 || numColumns > 9 + numSamples || numSamples > 0 && numColumns != 9 + numSamples) {
+            return unsupported("number of columns", bytes, offset, end);
+        }
+
+        int pos = parsePosition(bytes, start(1), end(1));
+        int refStart = start(3);
+        int refEnd = end(3);
+        if (pos <= 0) {
+            return unsupported("position", bytes, offset, end);
+        }
+        if (!isBases(bytes, refStart, refEnd)) {
+            return unsupported("reference", bytes, offset, end);
+        }
+        List<String> alternates = new ArrayList<>(1);
+        int altStart = start(4);
+        for (int i = altStart; i <= end(4); i++) {
+            if (i == end(4) || bytes[i] == ',') {
+                if (!isBases(bytes, altStart, i)) {
+                    return unsupported("alternate", bytes, offset, end);
+                }
+                alternates.add(string(bytes, altStart, i));
+                altStart = i + 1;
+            }
+        }
+
+        Double quality = null;
+        if (!isMissing(bytes, start(5), end(5))) {
+            try {
+                // Same arithmetic as htsjdk, which stores the QUAL as log10PError, so the value is exactly the same
+                quality = (Double.parseDouble(string(bytes, start(5), end(5))) / -10.0) * -10.0;
+            } catch (NumberFormatException e) {
+                return unsupported("quality", bytes, offset, end);
+            }
+        }
+        if (indexOf(bytes, start(6), end(6), (byte) ';') >= 0) {
+            // htsjdk may reorder multiple filters
+            return unsupported("multiple filters", bytes, offset, end);
+        }
+
+        lastChromosome = cached(lastChromosome, bytes, start(0), end(0));
+        String chromosome = lastChromosome;
+        String reference = string(bytes, refStart, refEnd);
+        VariantBuilder builder = new VariantBuilder(chromosome, pos, pos + reference.length() - 1, reference, alternates.get(0));
+        for (int i = 1; i < alternates.size(); i++) {
+            builder.addAlternate(alternates.get(i));
+        }
+        builder.setStudyId(studyId).setFileId(fileId);
+
+        if (quality != null) {
+            builder.setQuality(quality);
+        }
+        lastFilter = cached(lastFilter, bytes, start(6), end(6));
+        builder.setFilter(lastFilter);
+        parseInfo(builder, bytes, start(7), end(7));
+        if (numColumns > 8) {
+            if (!parseSamples(builder, bytes, numColumns)) {
+                return unsupported("more sample values than keys", bytes, offset, end);
+            }
+        }
+
+        Variant variant = builder.build();
+        if (!isMissing(bytes, start(2), end(2))) {
+            variant.setNames(Arrays.asList(string(bytes, start(2), end(2)).split(";")));
+        }
+        return variant;
+    }
+
+    private void parseInfo(VariantBuilder builder, byte[] bytes, int start, int end) {
+        if (isMissing(bytes, start, end)) {
+            return;
+        }
+        int keyStart = start;
+        int equals = -1;
+        for (int i = start; i <= end; i++) {
+            if (i == end || bytes[i] == ';') {
+                if (i > keyStart) {
+                    if (equals < 0) {
+                        // Flag
+                        builder.addFileData(cachedString(bytes, keyStart, i), "true");
+                    } else {
+                        builder.addFileData(cachedString(bytes, keyStart, equals), cachedString(bytes, equals + 1, i));
+                    }
+                }
+                keyStart = i + 1;
+                equals = -1;
+            } else if (bytes[i] == '=' && equals < 0) {
+                equals = i;
+            }
+        }
+    }
+
+    private boolean parseSamples(VariantBuilder builder, byte[] bytes, int numColumns) {
+        String format = cached(lastFormat, bytes, start(8), end(8));
+        if (format != lastFormat) {
+            lastFormat = format;
+            lastFormatKeys = format.split(":");
+        }
+        String[] keys = lastFormatKeys;
+        builder.setSampleDataKeys(keys);
+
+        List<SampleEntry> samples = new ArrayList<>(numSamples);
+        for (int column = 9; column < numColumns; column++) {
+            List<String> data = new ArrayList<>(keys.length);
+            int valueStart = start(column);
+            int end = end(column);
+            for (int i = valueStart; i <= end; i++) {
+                if (i == end || bytes[i] == ':') {
+                    if (data.size() == keys.length) {
+                        // More values than keys
+                        return false;
+                    }
+                    data.add(cachedString(bytes, valueStart, i));
+                    valueStart = i + 1;
+                }
+            }
+            // Missing trailing values
+            while (data.size() < keys.length) {
+                data.add(MISSING);
+            }
+            samples.add(new SampleEntry(null, 0, data));
+        }
+        builder.setSamplesPosition(samplesPosition);
+        builder.setSamples(samples);
+        return true;
+    }
+
+    /**
+     * Find the columns of the line. Column i goes from {@code start(i)} to {@code end(i)}.
+     *
+     * @return number of columns
+     */
+    private int split(byte[] bytes, int offset, int end) {
+        int numColumns = 0;
+        tabs[numColumns] = offset - 1;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == '\t') {
+                numColumns++;
+                if (numColumns + 1 >= tabs.length) {
+                    tabs = Arrays.copyOf(tabs, tabs.length * 2);
+                }
+                tabs[numColumns] = i;
+            }
+        }
+        numColumns++;
+        tabs[numColumns] = end;
+        return numColumns;
+    }
+
+    private int start(int column) {
+        return tabs[column] + 1;
+    }
+
+    private int end(int column) {
+        return tabs[column + 1];
+    }
+
+    private static int parsePosition(byte[] bytes, int start, int end) {
+        if (start == end || end - start > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    private static boolean isBases(byte[] bytes, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            switch (bytes[i]) {
+                case 'A':
+                case 'C':
+                case 'G':
+                case 'T':
+                case 'N':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isMissing(byte[] bytes, int start, int end) {
+        return start == end || end - start == 1 && bytes[start] == '.';
+    }
+
+    private static String string(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static String cached(String last, byte[] bytes, int start, int end) {
+        if (last != null && equals(last, bytes, start, end)) {
+            return last;
+        }
+        return string(bytes, start, end);
+    }
+
+    private String cachedString(byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (length > MAX_CACHED_LENGTH) {
+            return string(bytes, start, end);
+        }
+        int hash = length;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                // Non ASCII values are not cached
+                return string(bytes, start, end);
+            }
+            hash = 31 * hash + bytes[i];
+        }
+        int idx = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String value = stringCache[idx];
+        if (value == null || !equals(value, bytes, start, end)) {
+            value = string(bytes, start, end);
+            stringCache[idx] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Compare a String with the UTF-8 bytes of a value. Only ASCII values can be equal, so any byte
+     * out of the ASCII range (multi-byte UTF-8 characters) is considered a mismatch.
+     */
+    private static boolean equals(String value, byte[] bytes, int start, int end) {
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            byte b = bytes[start + i];
+            if (b < 0 || value.charAt(i) != (char) b) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -21,6 +21,7 @@ import org.junit.Test;
 import org.opencb.opencga.core.common.TimeUtils;
 import org.opencb.opencga.storage.core.alignment.AlignmentStorageEngine;
 import org.opencb.opencga.storage.core.alignment.AlignmentStorageOptions;
+import org.opencb.opencga.storage.core.alignment.local.CoveragePyramid;
 import org.opencb.opencga.storage.core.alignment.local.LocalAlignmentStorageEngine;
 import org.opencb.opencga.core.config.storage.StorageConfiguration;
 
@@ -77,6 +78,7 @@ public class DefaultAlignmentDBAdaptorTest {
         assertTrue(Files.exists(tmpRootDir.resolve("HG00096.chrom20.small.bam.bai")));
         assertTrue(Files.exists(tmpRootDir.resolve("HG00096.chrom20.small.bam.stats")));
         assertTrue(Files.exists(tmpRootDir.resolve("HG00096.chrom20.small.bam.bw")));
+        assertTrue(Files.exists(tmpRootDir.resolve("HG00096.chrom20.small.bam" + CoveragePyramid.EXTENSION)));
     }
 
     //    @Test
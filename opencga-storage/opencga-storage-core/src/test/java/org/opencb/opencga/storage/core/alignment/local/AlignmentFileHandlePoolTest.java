@@ -0,0 +1,185 @@
+package org.opencb.opencga.storage.core.alignment.local;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AlignmentFileHandlePoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AtomicInteger opened;
+    private List<String> closed;
+    private AlignmentFileHandlePool<String> pool;
+    private Path file1;
+    private Path file2;
+
+    @Before
+    public void setUp() throws Exception {
+        opened = new AtomicInteger();
+        closed = new ArrayList<>();
+        pool = new AlignmentFileHandlePool<>(path -> path.getFileName() + "_" + opened.incrementAndGet(), closed::add, 2, 100);
+        file1 = temporaryFolder.newFile("file1.bam").toPath();
+        file2 = temporaryFolder.newFile("file2.bam").toPath();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        String handle;
+        try (AlignmentFileHandlePool.Lease<String> lease = pool.lease(file1)) {
+            handle = lease.get();
+            assertEquals(1, pool.getLeased());
+        }
+        assertEquals(0, pool.getLeased());
+        assertEquals(1, pool.getIdle());
+        try (AlignmentFileHandlePool.Lease<String> lease = pool.lease(file1)) {
+            assertEquals(handle, lease.get());
+        }
+        assertEquals(1, opened.get());
+        assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void testExclusive() throws Exception {
+        try (AlignmentFileHandlePool.Lease<String> lease1 = pool.lease(file1);
+             AlignmentFileHandlePool.Lease<String> lease2 = pool.lease(file1)) {
+            assertNotEquals(lease1.get(), lease2.get());
+            assertEquals(2, pool.getLeased());
+        }
+        assertEquals(2, pool.getIdle());
+    }
+
+    @Test
+    public void testMaxHandles() throws Exception {
+        AlignmentFileHandlePool.Lease<String> lease1 = pool.lease(file1);
+        AlignmentFileHandlePool.Lease<String> lease2 = pool.lease(file1);
+        lease1.close();
+        // Only the idle handle is evicted
+        AlignmentFileHandlePool.Lease<String> lease3 = pool.lease(file2);
+        assertEquals(1, closed.size());
+        assertEquals("file1.bam_1", closed.get(0));
+        assertEquals("file1.bam_2", lease2.get());
+        lease2.close();
+        lease3.close();
+        assertEquals(2, pool.getIdle());
+    }
+
+    @Test
+    public void testMaxHandlesInUse() throws Exception {
+        try (AlignmentFileHandlePool.Lease<String> lease1 = pool.lease(file1);
+             AlignmentFileHandlePool.Lease<String> lease2 = pool.lease(file1)) {
+            try {
+                pool.lease(file2);
+                fail("Expected all the handles in use");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("in use"));
+            }
+            assertTrue(closed.isEmpty());
+        }
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        pool = new AlignmentFileHandlePool<>(path -> path.getFileName() + "_" + opened.incrementAndGet(), closed::add, 1, 10000);
+        AlignmentFileHandlePool.Lease<String> lease1 = pool.lease(file1);
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+            lease1.close();
+        });
+        thread.start();
+        try (AlignmentFileHandlePool.Lease<String> lease2 = pool.lease(file1)) {
+            assertEquals("file1.bam_1", lease2.get());
+        }
+        thread.join();
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        pool = new AlignmentFileHandlePool<>(path -> path.getFileName() + "_" + opened.incrementAndGet(), closed::add, 1, 100, true);
+        AlignmentFileHandlePool.Lease<String> lease1 = pool.lease(file1);
+        AlignmentFileHandlePool.Lease<String> lease2 = pool.lease(file1);
+        assertEquals(lease1.get(), lease2.get());
+        assertEquals(1, opened.get());
+        lease1.discard();
+        lease1.close();
+        // Still referenced by lease2
+        assertTrue(closed.isEmpty());
+        assertEquals("file1.bam_1", lease2.get());
+        lease2.close();
+        assertEquals(Collections.singletonList("file1.bam_1"), closed);
+    }
+
+    @Test
+    public void testReleaseTwice() throws Exception {
+        AlignmentFileHandlePool.Lease<String> lease1 = pool.lease(file1);
+        lease1.close();
+        AlignmentFileHandlePool.Lease<String> lease2 = pool.lease(file1);
+        // Closing a released lease again does not release the handle in use by another lease
+        lease1.close();
+        assertEquals(1, pool.getLeased());
+        pool.lease(file2).close();
+        pool.lease(file2).close();
+        assertEquals("file1.bam_1", lease2.get());
+        assertTrue(closed.isEmpty());
+        lease2.close();
+    }
+
+    @Test
+    public void testModifiedFile() throws Exception {
+        String handle;
+        try (AlignmentFileHandlePool.Lease<String> lease = pool.lease(file1)) {
+            handle = lease.get();
+        }
+        Files.setLastModifiedTime(file1, FileTime.fromMillis(Files.getLastModifiedTime(file1).toMillis() + 10000));
+        try (AlignmentFileHandlePool.Lease<String> lease = pool.lease(file1)) {
+            assertNotEquals(handle, lease.get());
+        }
+        assertEquals(1, closed.size());
+        assertEquals(handle, closed.get(0));
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        try (AlignmentFileHandlePool.Lease<String> lease = pool.lease(file1)) {
+            lease.discard();
+        }
+        assertEquals(0, pool.getIdle());
+        assertEquals(1, closed.size());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        AlignmentFileHandlePool.Lease<String> lease1 = pool.lease(file1);
+        pool.lease(file2).close();
+        pool.close();
+        assertEquals(1, closed.size());
+        // Released after closing the pool
+        lease1.close();
+        assertEquals(2, closed.size());
+        assertEquals(0, pool.getLeased());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUseAfterRelease() throws Exception {
+        AlignmentFileHandlePool.Lease<String> lease = pool.lease(file1);
+        lease.close();
+        lease.get();
+    }
+}
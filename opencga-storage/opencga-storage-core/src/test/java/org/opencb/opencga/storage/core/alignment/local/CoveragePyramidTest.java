@@ -0,0 +1,114 @@
+package org.opencb.opencga.storage.core.alignment.local;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.Region;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CoveragePyramidTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Map<String, Integer> chromosomes;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        chromosomes = new LinkedHashMap<>();
+        chromosomes.put("1", 1000000);
+        chromosomes.put("2", 300001);
+        chromosomes.put("MT", 16569);
+        file = temporaryFolder.getRoot().toPath().resolve("file.bam" + CoveragePyramid.EXTENSION);
+        CoveragePyramid.build(file, chromosomes, new int[]{64, 4096, 262144}, CoveragePyramidTest::sourceCoverage);
+    }
+
+    @Test
+    public void testCoverage() throws Exception {
+        try (CoveragePyramid pyramid = CoveragePyramid.open(file)) {
+            assertEquals(chromosomes, pyramid.getChromosomeLengths());
+            // Aligned to the bins
+            checkCoverage(pyramid, new Region("1", 1, 1000000), 4096);
+            checkCoverage(pyramid, new Region("1", 1, 1000000), 262144);
+            checkCoverage(pyramid, new Region("2", 4097, 300001), 64);
+            checkCoverage(pyramid, new Region("MT", 1, 16569), 64 * 10);
+        }
+    }
+
+    @Test
+    public void testCoverageUnaligned() throws Exception {
+        try (CoveragePyramid pyramid = CoveragePyramid.open(file)) {
+            // Windows not aligned to the bins. Bins partially overlapping a window are weighted
+            double[] coverage = pyramid.coverage(new Region("1", 1001, 201000), 10000);
+            double[] expected = sourceCoverage(new Region("1", 1001, 201000), 10000);
+            assertEquals(expected.length, coverage.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], coverage[i], expected[i] * 0.05);
+            }
+        }
+    }
+
+    @Test
+    public void testLevels() throws Exception {
+        try (CoveragePyramid pyramid = CoveragePyramid.open(file)) {
+            assertEquals(-1, pyramid.getLevel(1));
+            assertEquals(-1, pyramid.getLevel(63));
+            assertEquals(0, pyramid.getLevel(64));
+            assertEquals(0, pyramid.getLevel(4095));
+            assertEquals(1, pyramid.getLevel(4096));
+            assertEquals(2, pyramid.getLevel(1000000));
+
+            assertNull(pyramid.coverage(new Region("1", 1, 1000), 10));
+            assertNull(pyramid.coverage(new Region("X", 1, 100000), 4096));
+        }
+    }
+
+    @Test
+    public void testBuildReadsFirstLevelOnly() throws Exception {
+        AtomicInteger bases = new AtomicInteger();
+        Path otherFile = temporaryFolder.getRoot().toPath().resolve("other" + CoveragePyramid.EXTENSION);
+        CoveragePyramid.build(otherFile, chromosomes, new int[]{64, 4096}, (region, windowSize) -> {
+            assertEquals(64, windowSize);
+            bases.addAndGet(region.getEnd() - region.getStart() + 1);
+            return sourceCoverage(region, windowSize);
+        });
+        assertEquals(chromosomes.values().stream().mapToInt(Integer::intValue).sum(), bases.get());
+        assertTrue(Files.size(otherFile) < Files.size(file));
+    }
+
+    private void checkCoverage(CoveragePyramid pyramid, Region region, int windowSize) throws Exception {
+        double[] coverage = pyramid.coverage(region, windowSize);
+        double[] expected = sourceCoverage(region, windowSize);
+        assertEquals(expected.length, coverage.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Window " + i + " of " + region, expected[i], coverage[i], expected[i] * 0.0001);
+        }
+    }
+
+    /**
+     * Mean coverage by window, where the coverage at each position is (position % 1000).
+     */
+    private static double[] sourceCoverage(Region region, int windowSize) {
+        int numWindows = (region.getEnd() - region.getStart() + windowSize) / windowSize;
+        double[] values = new double[numWindows];
+        for (int i = 0; i < numWindows; i++) {
+            int start = region.getStart() + i * windowSize;
+            int end = Math.min(region.getEnd(), start + windowSize - 1);
+            double sum = 0;
+            for (int position = start; position <= end; position++) {
+                sum += position % 1000;
+            }
+            values[i] = sum / (end - start + 1);
+        }
+        return values;
+    }
+}
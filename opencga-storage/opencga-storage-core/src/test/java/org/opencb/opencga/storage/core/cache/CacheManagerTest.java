@@ -0,0 +1,103 @@
+package org.opencb.opencga.storage.core.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.commons.datastore.core.DataResult;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.core.config.storage.CacheConfiguration;
+import org.opencb.opencga.core.config.storage.StorageConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CacheManagerTest {
+
+    private CacheManager cacheManager;
+
+    @Before
+    public void setUp() throws Exception {
+        StorageConfiguration configuration = new StorageConfiguration();
+        configuration.setCache(new CacheConfiguration().setActive(true).setSlowThreshold(0).setMaxResultSize(10));
+        cacheManager = new CacheManager(configuration);
+    }
+
+    @Test
+    public void testCreateKey() {
+        Query query1 = new Query("study", "s1").append("gene", "BRCA2,BRCA1");
+        Query query2 = new Query("gene", "BRCA2,BRCA1").append("study", "s1");
+        Query query3 = new Query("gene", "BRCA1,BRCA2").append("study", "s1");
+        QueryOptions options = new QueryOptions(QueryOptions.LIMIT, 10);
+
+        String key1 = cacheManager.createKey("db", Collections.singletonList(1), "var", "get", query1, options);
+        String key2 = cacheManager.createKey("db", Collections.singletonList(1), "var", "get", query2,
+                new QueryOptions(options).append(CacheManager.CACHE, true));
+        String key3 = cacheManager.createKey("db", Collections.singletonList(1), "var", "get", query3, options);
+        String key4 = cacheManager.createKey("db", Collections.singletonList(1), "var", "count", query1, options);
+
+        assertEquals(key1, key2);
+        assertNotEquals(key1, key3);
+        assertNotEquals(key1, key4);
+    }
+
+    @Test
+    public void testGetSet() {
+        String key = cacheManager.createKey("db", Collections.singletonList(1), "var", "count", new Query(), new QueryOptions());
+        assertNull(cacheManager.get(key));
+        assertEquals(1, cacheManager.getMissCount());
+
+        cacheManager.set(key, result(5));
+        DataResult<Long> cached = cacheManager.get(key);
+        assertNotNull(cached);
+        assertEquals(5, cached.getNumMatches());
+        assertEquals(1, cacheManager.getHitCount());
+    }
+
+    @Test
+    public void testSkipLargeResults() {
+        String key = cacheManager.createKey("db", Collections.singletonList(1), "var", "get", new Query(), new QueryOptions());
+        DataResult<Long> result = result(5);
+        result.setResults(new ArrayList<>(Collections.nCopies(20, 1L)));
+        result.setNumResults(20);
+        cacheManager.set(key, result);
+        assertNull(cacheManager.get(key));
+    }
+
+    @Test
+    public void testInvalidateStudy() {
+        String keyStudy1 = cacheManager.createKey("db", Collections.singletonList(1), "var", "count", new Query(), new QueryOptions());
+        String keyStudy2 = cacheManager.createKey("db", Collections.singletonList(2), "var", "count", new Query(), new QueryOptions());
+        String keyStudy12 = cacheManager.createKey("db", Arrays.asList(2, 1), "var", "count", new Query(), new QueryOptions());
+        String keyAll = cacheManager.createKey("db", null, "var", "count", new Query(), new QueryOptions());
+        cacheManager.set(keyStudy1, result(1));
+        cacheManager.set(keyStudy2, result(2));
+        cacheManager.set(keyStudy12, result(12));
+        cacheManager.set(keyAll, result(100));
+
+        cacheManager.invalidate(1);
+
+        assertNull(cacheManager.get(keyStudy1));
+        assertNotNull(cacheManager.get(keyStudy2));
+        assertNull(cacheManager.get(keyStudy12));
+        assertNull(cacheManager.get(keyAll));
+
+        cacheManager.invalidate(null);
+        assertNull(cacheManager.get(keyStudy2));
+    }
+
+    @Test
+    public void testInactive() {
+        CacheManager inactive = new CacheManager();
+        String key = inactive.createKey("db", null, "var", "count", new Query(), new QueryOptions());
+        inactive.set(key, result(1));
+        assertFalse(inactive.isActive());
+        assertNull(inactive.get(key));
+    }
+
+    private static DataResult<Long> result(long count) {
+        return new DataResult<>(100, new ArrayList<>(), 1, new ArrayList<>(Collections.singletonList(count)), count);
+    }
+}
@@ -0,0 +1,123 @@
+package org.opencb.opencga.storage.core.io.bit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding a column of fixed size values with the previous byte by byte implementation,
+ * with the word based {@link BitBuffer#getIntPartial}, and with the bulk {@link BitBuffer#getInts}.
+ * Also compares counting the values matching a mask value by value or with {@link BitBuffer#countMatches}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitBufferBenchmark {
+
+    @Param({"3", "13", "32"})
+    private int valueBitLength;
+
+    @Param({"100000"})
+    private int numValues;
+
+    private byte[] bytes;
+    private BitBuffer bitBuffer;
+    private int[] values;
+    private int mask;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        bytes = new byte[BitBuffer.bitsToBytes(valueBitLength * numValues + 5)];
+        random.nextBytes(bytes);
+        // Not aligned
+        bitBuffer = new BitBuffer(bytes, 5, valueBitLength * numValues);
+        values = new int[numValues];
+        mask = 0b101;
+    }
+
+    @Benchmark
+    public void getIntPartialByteByByte(Blackhole blackhole) {
+        for (int i = 0; i < numValues; i++) {
+            values[i] = legacyGetIntPartial(bytes, 5 + i * valueBitLength, valueBitLength);
+        }
+        blackhole.consume(values);
+    }
+
+    @Benchmark
+    public void getIntPartial(Blackhole blackhole) {
+        for (int i = 0; i < numValues; i++) {
+            values[i] = bitBuffer.getIntPartial(i * valueBitLength, valueBitLength);
+        }
+        blackhole.consume(values);
+    }
+
+    @Benchmark
+    public void getInts(Blackhole blackhole) {
+        bitBuffer.getInts(values, 0, 0, valueBitLength, numValues);
+        blackhole.consume(values);
+    }
+
+    @Benchmark
+    public int countMatchesByteByByte() {
+        int matches = 0;
+        for (int i = 0; i < numValues; i++) {
+            if ((legacyGetIntPartial(bytes, 5 + i * valueBitLength, valueBitLength) & mask) != 0) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int countMatches() {
+        return bitBuffer.countMatches(0, valueBitLength, numValues, mask);
+    }
+
+    @Benchmark
+    public int popCount() {
+        return bitBuffer.popCount();
+    }
+
+    /**
+     * Previous implementation of {@link BitBuffer#getIntPartial}, reading byte by byte.
+     */
+    private static int legacyGetIntPartial(byte[] buffer, int bitOffset, int bitLength) {
+        int r = 0;
+        int bits = bitLength % Byte.SIZE;
+        int bytes = bitLength / Byte.SIZE;
+        for (int i = 0; i < bitLength - bits; i += Byte.SIZE) {
+            r |= Byte.toUnsignedInt(legacyGetBytePartial(buffer, bitOffset + i, Byte.SIZE)) << i;
+        }
+        if (bits != 0) {
+            r |= Byte.toUnsignedInt(legacyGetBytePartial(buffer, bitOffset + bytes * Byte.SIZE, bits)) << (bytes * Byte.SIZE);
+        }
+        return r;
+    }
+
+    private static byte legacyGetBytePartial(byte[] buffer, int bitOffset, int length) {
+        int byteOffset = bitOffset / Byte.SIZE;
+        int partialBitOffset = bitOffset % Byte.SIZE;
+        int r;
+        if (length > (Byte.SIZE - partialBitOffset)) {
+            r = ((buffer[byteOffset] >>> partialBitOffset) & BitBuffer.mask(Byte.SIZE - partialBitOffset));
+            length -= Byte.SIZE - partialBitOffset;
+            r |= (buffer[byteOffset + 1] & BitBuffer.mask(length)) << (Byte.SIZE - partialBitOffset);
+        } else {
+            r = ((buffer[byteOffset] >>> partialBitOffset) & BitBuffer.mask(length));
+        }
+        return (byte) r;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BitBufferBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -3,7 +3,9 @@ package org.opencb.opencga.storage.core.io.bit;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import java.util.Random;
+
+import static org.junit.Assert.*;
 
 public class BitBufferTest {
 
@@ -63,6 +65,122 @@ public class BitBufferTest {
     }
 
 
+    @Test
+    public void testReadRandom() {
+        Random random = new Random(1);
+        byte[] bytes = new byte[100];
+        random.nextBytes(bytes);
+        // Use an offset to test non aligned buffers
+        BitBuffer bitBuffer = new BitBuffer(bytes, 5, bytes.length * Byte.SIZE - 13);
+        for (int i = 0; i < 10000; i++) {
+            int length = random.nextInt(Integer.SIZE + 1);
+            int offset = random.nextInt(bitBuffer.getBitLength() - length + 1);
+            assertEquals(offset + ":" + length, readBits(bytes, 5 + offset, length), bitBuffer.getIntPartial(offset, length));
+            if (length <= Byte.SIZE) {
+                assertEquals((byte) readBits(bytes, 5 + offset, length), bitBuffer.getBytePartial(offset, length));
+            }
+        }
+
+        int[] values = new int[50];
+        bitBuffer.getInts(values, 0, 11, 13, values.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(readBits(bytes, 5 + 11 + i * 13, 13), values[i]);
+        }
+    }
+
+    @Test
+    public void testWriteRandom() {
+        Random random = new Random(2);
+        byte[] bytes = new byte[100];
+        random.nextBytes(bytes);
+        byte[] expected = bytes.clone();
+        BitBuffer bitBuffer = new BitBuffer(bytes, 3, 700);
+        for (int i = 0; i < 10000; i++) {
+            int length = random.nextInt(Integer.SIZE + 1);
+            int offset = random.nextInt(bitBuffer.getBitLength() - length + 1);
+            int value = random.nextInt();
+            bitBuffer.setIntPartial(value, offset, length);
+            writeBits(expected, 3 + offset, length, value);
+            assertArrayEquals(offset + ":" + length, expected, bytes);
+        }
+    }
+
+    @Test
+    public void testBulkOperations() {
+        Random random = new Random(3);
+        byte[] bytesA = new byte[40];
+        byte[] bytesB = new byte[40];
+        random.nextBytes(bytesA);
+        random.nextBytes(bytesB);
+        BitBuffer a = new BitBuffer(bytesA, 7, 300);
+        BitBuffer b = new BitBuffer(bytesB, 2, 300);
+
+        int popCount = 0;
+        int intersection = 0;
+        for (int i = 0; i < 300; i++) {
+            popCount += readBits(bytesA, 7 + i, 1);
+            intersection += readBits(bytesA, 7 + i, 1) & readBits(bytesB, 2 + i, 1);
+        }
+        assertEquals(popCount, a.popCount());
+        assertEquals(intersection > 0, a.intersects(b));
+
+        int matches = 0;
+        for (int i = 0; i < 30; i++) {
+            if ((readBits(bytesA, 7 + 4 + i * 9, 9) & 0b100100001) != 0) {
+                matches++;
+            }
+        }
+        assertEquals(matches, a.countMatches(4, 9, 30, 0b100100001));
+
+        BitBuffer and = new BitBuffer(a);
+        and.and(b);
+        BitBuffer or = new BitBuffer(a);
+        or.or(b);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(readBits(bytesA, 7 + i, 1) & readBits(bytesB, 2 + i, 1), and.getIntPartial(i, 1));
+            assertEquals(readBits(bytesA, 7 + i, 1) | readBits(bytesB, 2 + i, 1), or.getIntPartial(i, 1));
+        }
+        assertEquals(intersection, and.popCount());
+        // Bits out of the region are not modified
+        assertEquals(bytesA[0] & 0x7F, and.getBuffer()[0] & 0x7F);
+    }
+
+    @Test
+    public void testSetBitBuffer() {
+        Random random = new Random(4);
+        byte[] bytes = new byte[50];
+        random.nextBytes(bytes);
+        BitBuffer value = new BitBuffer(bytes, 3, 250);
+        BitBuffer bitBuffer = new BitBuffer(300);
+        bitBuffer.setBitBuffer(value, 17);
+        assertEquals(value, bitBuffer.getBitBuffer(17, 250));
+        assertEquals(0, bitBuffer.getIntPartial(0, 17));
+        assertEquals(0, bitBuffer.getIntPartial(267, 32));
+    }
+
+    /**
+     * Read bit by bit. Reference implementation.
+     */
+    private static int readBits(byte[] bytes, int bitOffset, int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int bit = bitOffset + i;
+            value |= ((bytes[bit / Byte.SIZE] >>> (bit % Byte.SIZE)) & 1) << i;
+        }
+        return value;
+    }
+
+    private static void writeBits(byte[] bytes, int bitOffset, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            int bit = bitOffset + i;
+            if (((value >>> i) & 1) == 1) {
+                bytes[bit / Byte.SIZE] |= 1 << (bit % Byte.SIZE);
+            } else {
+                bytes[bit / Byte.SIZE] &= ~(1 << (bit % Byte.SIZE));
+            }
+        }
+    }
+
     public static String byteToString(byte b) {
         return binaryToString(b, Byte.SIZE);
     }
@@ -4,6 +4,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MetadataCacheTest {
 
@@ -30,4 +31,53 @@ public class MetadataCacheTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testInvalidateStudy() {
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer, String> cache = new MetadataCache<>((study, id) -> {
+            loads.incrementAndGet();
+            return study + ":" + id;
+        });
+
+        Assert.assertEquals("1:1", cache.get(1, 1));
+        Assert.assertEquals("2:1", cache.get(2, 1));
+        Assert.assertEquals("1:-1", cache.get(1, -1));
+        Assert.assertEquals(3, loads.get());
+        Assert.assertEquals("1:1", cache.get(1, 1));
+        Assert.assertEquals(3, loads.get());
+
+        cache.invalidate(1);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("1:1", cache.get(1, 1));
+        Assert.assertEquals("2:1", cache.get(2, 1));
+        Assert.assertEquals(4, loads.get());
+
+        Assert.assertEquals(2, cache.getStats().hitCount());
+        Assert.assertEquals(4, cache.getStats().missCount());
+    }
+
+    @Test
+    public void testNullValuesNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<String, Integer> cache = new MetadataCache<>((study, id) -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        Assert.assertNull(cache.get(1, "missing"));
+        Assert.assertNull(cache.get(1, "missing"));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMaxWeight() {
+        MetadataCache<Integer, List<Integer>> cache = new MetadataCache<>(
+                (study, id) -> Collections.nCopies(10, id), null, List::size, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.get(1, i);
+        }
+        Assert.assertTrue(cache.size() <= 10);
+        Assert.assertTrue(cache.getStats().evictionCount() >= 90);
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.opencb.opencga.storage.core.metadata.lock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.opencga.storage.core.metadata.models.Lock;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InMemoryLockManagerTest {
+
+    private InMemoryLockManager lockManager;
+
+    @Before
+    public void setUp() throws Exception {
+        lockManager = new InMemoryLockManager();
+    }
+
+    @Test
+    public void testLock() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Lock lock = lockManager.lock("1", 10, 10);
+            lock.unlock();
+        }
+        assertEquals(10, lockManager.getMetrics().getWaitTime().getCount());
+        assertEquals(10, lockManager.getMetrics().getHoldTime().getCount());
+    }
+
+    @Test
+    public void testLockDifferentElements() throws Exception {
+        Lock lock1 = lockManager.lock("1", 1000, 1000);
+        Lock lock2 = lockManager.lock("2", 1000, 1000);
+        lock1.unlock();
+        lock2.unlock();
+    }
+
+    @Test
+    public void testLockAndLock() throws Exception {
+        Lock lock = lockManager.lock("1", 1000, 2000);
+        try {
+            lockManager.lock("1", 1000, 500);
+            fail("Expected timeout");
+        } catch (TimeoutException ignore) {
+            // Expected
+        }
+        assertEquals(1, lockManager.getMetrics().getTimeouts());
+        lock.unlock();
+
+        // The applicant that timed out left the queue
+        lockManager.lock("1", 1000, 100).unlock();
+    }
+
+    @Test
+    public void testLockAfterExpiring() throws Exception {
+        Lock lock = lockManager.lock("1", 200, 1000);
+        lock.keepAliveStop();
+
+        // Wait until the lease expires
+        Lock lock2 = lockManager.lock("1", 1000, 2000);
+        try {
+            lock.unlock();
+            fail("Expected unlock to fail");
+        } catch (IllegalStateException ignore) {
+            // Expected
+        }
+        lock2.unlock();
+    }
+
+    @Test
+    public void testKeepAliveLock() throws Exception {
+        Lock lock = lockManager.lock("1", 200, 1000);
+        try {
+            lockManager.lock("1", 200, 1000);
+            fail("Expected timeout");
+        } catch (TimeoutException ignore) {
+            // Expected
+        }
+        lock.unlock();
+    }
+
+    @Test
+    public void testFifo() throws Exception {
+        Lock lock = lockManager.lock("1", 10000, 1000);
+
+        int nThreads = 5;
+        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            int applicant = t;
+            futures.add(executorService.submit(() -> {
+                lockManager.lock("1", 10000, 10000).unlock();
+                order.add(applicant);
+                return null;
+            }));
+            // Let the applicant take the ticket before the next one
+            Thread.sleep(50);
+        }
+        lock.unlock();
+        executorService.shutdown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+        assertTrue(lockManager.getMetrics().getWaitTime().getMax() >= 50);
+    }
+
+    @Test
+    public void testConcurrentLock() throws Exception {
+        AtomicInteger counter = new AtomicInteger(0);
+        Set<String> threadWithLock = Collections.synchronizedSet(new HashSet<>());
+
+        int nThreads = 10;
+        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            futures.add(executorService.submit(() -> {
+                for (int i = 0; i < 5; i++) {
+                    Lock lock = lockManager.lock("1", 1000, 20000);
+                    assertEquals(threadWithLock.toString(), 0, threadWithLock.size());
+                    threadWithLock.add(Thread.currentThread().getName());
+                    int value = counter.addAndGet(1);
+                    Thread.sleep(5);
+                    assertEquals(value, counter.get());
+                    threadWithLock.remove(Thread.currentThread().getName());
+                    lock.unlock();
+                }
+                return null;
+            }));
+        }
+        executorService.shutdown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(nThreads * 5, counter.get());
+        assertEquals(nThreads * 5, lockManager.getMetrics().getHoldTime().getCount());
+    }
+
+    @Test
+    public void testTimeHistogram() {
+        LockMetrics.TimeHistogram histogram = new LockMetrics.TimeHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.add(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(90));
+        assertEquals(Long.valueOf(5), histogram.getBuckets().get(10L));
+    }
+}
@@ -154,6 +154,46 @@ public abstract class VariantStorageEngineTest extends VariantStorageBaseTest {
                 (fileMetadata));
     }
 
+    @Test
+    public void streamTransformIndex() throws Exception {
+        clearDB(DB_NAME);
+        StudyMetadata studyMetadata = newStudyMetadata();
+        variantStorageEngine.getOptions()
+                .append(VariantStorageOptions.STUDY.key(), studyMetadata.getName())
+                .append(VariantStorageOptions.TRANSFORM_STREAM.key(), true)
+                .append(VariantStorageOptions.ANNOTATE.key(), false)
+                .append(VariantStorageOptions.STATS_CALCULATE.key(), false);
+        StoragePipelineResult etlResult = variantStorageEngine
+                .index(Collections.singletonList(smallInputUri), outputUri, false, true, true).get(0);
+
+        // The transformed variants are not written, but the file metadata is
+        assertFalse(Paths.get(etlResult.getTransformResult()).toFile().exists());
+        assertEquals(0, etlResult.getTransformedFileSize());
+        assertTrue(etlResult.getWallTimeMillis() > 0);
+        // The transform runs within the load step
+        assertTrue(etlResult.getWallTimeMillis() >= etlResult.getLoadTimeMillis());
+        assertTrue(etlResult.getWallTimeMillis() <= etlResult.getTransformTimeMillis() + etlResult.getLoadTimeMillis() + 1000);
+        VariantFileMetadata fileMetadata = variantStorageEngine.getVariantReaderUtils()
+                .readVariantFileMetadata(etlResult.getTransformResult());
+        assertNotEquals(0, fileMetadata.getStats().getVariantCount());
+        assertEquals(1, metadataManager.getIndexedFiles(studyMetadata.getId()).size());
+        checkLoadedVariants(variantStorageEngine.getDBAdaptor(), studyMetadata, true, false, true, getExpectedNumLoadedVariants(fileMetadata));
+    }
+
+    @Test
+    public void streamTransformIndexTee() throws Exception {
+        clearDB(DB_NAME);
+        StudyMetadata studyMetadata = newStudyMetadata();
+        StoragePipelineResult etlResult = runDefaultETL(smallInputUri, variantStorageEngine, studyMetadata,
+                new ObjectMap(VariantStorageOptions.TRANSFORM_STREAM.key(), true)
+                        .append(VariantStorageOptions.TRANSFORM_STREAM_TEE.key(), true));
+
+        assertTrue(etlResult.getTransformedFileSize() > 0);
+        assertEquals(1, metadataManager.getIndexedFiles(studyMetadata.getId()).size());
+        VariantFileMetadata fileMetadata = checkTransformedVariants(etlResult.getTransformResult(), studyMetadata);
+        checkLoadedVariants(variantStorageEngine.getDBAdaptor(), studyMetadata, true, false, true, getExpectedNumLoadedVariants(fileMetadata));
+    }
+
     @Test
     public void loadFromSTDIN() throws Exception {
         clearDB(DB_NAME);
@@ -0,0 +1,103 @@
+package org.opencb.opencga.storage.core.variant.adaptors.iterators;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class MultiVariantDBIteratorTest {
+
+    private List<String> primaryVariants;
+
+    @Before
+    public void setUp() throws Exception {
+        primaryVariants = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            primaryVariants.add("1:" + i + ":A:C");
+        }
+    }
+
+    @Test
+    public void testPipelinedSameOrder() throws Exception {
+        List<String> serial = read(new QueryOptions());
+        List<String> pipelined = read(new QueryOptions(MultiVariantDBIterator.BATCHES_IN_FLIGHT, 4));
+
+        assertEquals(primaryVariants.stream().filter(this::matches).collect(Collectors.toList()), serial);
+        assertEquals(serial, pipelined);
+    }
+
+    @Test
+    public void testPipelinedSmallBuffer() throws Exception {
+        List<String> pipelined = read(new QueryOptions(MultiVariantDBIterator.BATCHES_IN_FLIGHT, 4)
+                .append(MultiVariantDBIterator.BUFFER_SIZE, 1));
+        assertEquals(read(new QueryOptions()), pipelined);
+    }
+
+    @Test
+    public void testPipelinedLimitSkip() throws Exception {
+        QueryOptions options = new QueryOptions(QueryOptions.LIMIT, 50).append(QueryOptions.SKIP, 120);
+        List<String> serial = read(options);
+        List<String> pipelined = read(new QueryOptions(options).append(MultiVariantDBIterator.BATCHES_IN_FLIGHT, 4));
+
+        assertEquals(50, serial.size());
+        assertEquals(serial, pipelined);
+    }
+
+    @Test
+    public void testNumVariantsFromPrimary() throws Exception {
+        QueryOptions options = new QueryOptions(QueryOptions.LIMIT, 130);
+        int expected;
+        try (MultiVariantDBIterator iterator = iterator(options)) {
+            iterator.forEachRemaining(v -> { });
+            expected = iterator.getNumVariantsFromPrimary();
+        }
+        try (MultiVariantDBIterator iterator = iterator(new QueryOptions(options).append(MultiVariantDBIterator.BATCHES_IN_FLIGHT, 4))) {
+            iterator.forEachRemaining(v -> { });
+            assertEquals(expected, iterator.getNumVariantsFromPrimary());
+        }
+    }
+
+    private List<String> read(QueryOptions options) throws Exception {
+        List<String> variants = new ArrayList<>();
+        try (MultiVariantDBIterator iterator = iterator(options)) {
+            iterator.forEachRemaining(v -> variants.add(v.toString()));
+        }
+        return variants;
+    }
+
+    private MultiVariantDBIterator iterator(QueryOptions options) {
+        return new MultiVariantDBIterator(primaryVariants.iterator(), 100, new Query(), options, (query, queryOptions) -> {
+            List<Variant> variants = new ArrayList<>();
+            int limit = queryOptions.getInt(QueryOptions.LIMIT, Integer.MAX_VALUE);
+            for (Object id : query.getAsList(VariantQueryParam.ID.key())) {
+                if (matches(id.toString()) && variants.size() < limit) {
+                    variants.add(new Variant(id.toString()));
+                }
+            }
+            // Random delay, so queries in flight finish out of order
+            sleep(new Random().nextInt(5));
+            return VariantDBIterator.wrapper(variants.iterator());
+        });
+    }
+
+    private boolean matches(String variant) {
+        return variant.hashCode() % 3 == 0;
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
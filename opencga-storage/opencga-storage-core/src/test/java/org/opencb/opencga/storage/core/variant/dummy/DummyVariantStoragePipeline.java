@@ -82,9 +82,10 @@ public class DummyVariantStoragePipeline extends VariantStoragePipeline {
         DuplicatedVariantsResolverFactory factory = new DuplicatedVariantsResolverFactory(getOptions(), ioConnectorProvider);
         AbstractDuplicatedVariantsResolver resolver = factory.getResolver(UriUtils.fileName(input), outdir);
 
-        VariantFileMetadata variantFileMetadata = variantReaderUtils.readVariantFileMetadata(input);
-        ProgressLogger progressLogger = new ProgressLogger("Variants loaded:", variantFileMetadata.getStats().getVariantCount());
-        for (Variant variant : variantReaderUtils.getVariantReader(input, variantFileMetadata.toVariantStudyMetadata(""))
+        VariantFileMetadata variantFileMetadata = readVariantFileMetadata(input);
+        ProgressLogger progressLogger = new ProgressLogger("Variants loaded:",
+                variantFileMetadata.getStats() == null ? 0 : variantFileMetadata.getStats().getVariantCount());
+        for (Variant variant : getVariantReader(input, variantFileMetadata.toVariantStudyMetadata(""))
                 .then(factory.getTask(resolver))) {
             progressLogger.increment(1, () -> "up to variant " + variant);
         }
@@ -100,6 +101,11 @@ public class DummyVariantStoragePipeline extends VariantStoragePipeline {
         return input;
     }
 
+    @Override
+    protected boolean supportsTransformStream() {
+        return true;
+    }
+
     @Override
     public URI postLoad(URI input, URI output) throws StorageEngineException {
         logger.info("Post load file " + input);
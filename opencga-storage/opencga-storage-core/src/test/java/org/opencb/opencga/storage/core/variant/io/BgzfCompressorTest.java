@@ -0,0 +1,81 @@
+package org.opencb.opencga.storage.core.variant.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class BgzfCompressorTest {
+
+    @Test
+    public void testCompressText() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("22\t").append(16050000 + i).append("\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t1/1\n");
+        }
+        checkRoundTrip(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCompressRandom() throws IOException {
+        // Incompressible data must fit in the blocks
+        byte[] data = new byte[BgzfCompressor.MAX_UNCOMPRESSED_BLOCK_SIZE * 3 + 10];
+        new Random(1).nextBytes(data);
+        checkRoundTrip(data);
+    }
+
+    @Test
+    public void testCompressEmpty() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, new BgzfCompressor().compress(new byte[0], 0, 0, out).length);
+        assertEquals(0, out.size());
+    }
+
+    private void checkRoundTrip(byte[] data) throws IOException {
+        BgzfCompressor compressor = new BgzfCompressor();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Compress in two independent parts, as different threads would do
+        int half = data.length / 2;
+        int[] blockSizes1 = compressor.compress(data, 0, half, out);
+        int[] blockSizes2 = compressor.compress(data, half, data.length - half, out);
+        out.write(BgzfCompressor.EOF_BLOCK);
+        compressor.end();
+
+        byte[] compressed = out.toByteArray();
+        int offset = 0;
+        for (int blockSize : concat(blockSizes1, blockSizes2)) {
+            assertTrue(blockSize <= BgzfCompressor.MAX_BLOCK_SIZE);
+            // BSIZE is the total block size minus 1
+            int bsize = (compressed[offset + 16] & 0xff) | (compressed[offset + 17] & 0xff) << 8;
+            assertEquals(blockSize - 1, bsize);
+            offset += blockSize;
+        }
+        assertArrayEquals(BgzfCompressor.EOF_BLOCK, Arrays.copyOfRange(compressed, offset, compressed.length));
+
+        // Any gzip reader must be able to read the concatenated blocks
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int read = is.read(buffer);
+            while (read > 0) {
+                uncompressed.write(buffer, 0, read);
+                read = is.read(buffer);
+            }
+        }
+        assertArrayEquals(data, uncompressed.toByteArray());
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+}
@@ -16,6 +16,10 @@
 
 package org.opencb.opencga.storage.core.variant.io;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixIndex;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -91,6 +95,45 @@ public abstract class VariantExporterTest extends VariantStorageBaseTest {
         }
     }
 
+    @Test
+    public void exportStudyVcfGzParallelTest() throws Exception {
+        URI outputDir = newOutputUri();
+        URI output = outputDir.resolve("variant.vcf.gz");
+        variantStorageEngine.exportData(output, VariantOutputFormat.VCF_GZ, null, new Query(), new QueryOptions()
+                .append(VariantStorageOptions.EXPORT_THREADS.key(), 4)
+                .append(VariantStorageOptions.EXPORT_BATCH_SIZE.key(), 10)
+                .append(VariantStorageOptions.EXPORT_TABIX.key(), true));
+        URI serialOutput = outputDir.resolve("variant.serial.vcf.gz");
+        variantStorageEngine.exportData(serialOutput, VariantOutputFormat.VCF_GZ, null, new Query(), new QueryOptions()
+                .append(QueryOptions.SORT, true)
+                .append(VariantStorageOptions.EXPORT_THREADS.key(), 1));
+
+        assertEquals(readVcfRecords(serialOutput), readVcfRecords(output));
+
+        // Check bgzip format and tabix index
+        assertTrue(BlockCompressedInputStream.isValidFile(new BufferedInputStream(new FileInputStream(output.getPath()))));
+        Index index = IndexFactory.loadIndex(output.getPath() + VariantExporter.TABIX_FILE_EXTENSION);
+        assertTrue(index instanceof TabixIndex);
+        assertThat(index.getSequenceNames(), hasItem("22"));
+    }
+
+    private List<String> readVcfRecords(URI vcf) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(vcf.getPath()))))) {
+            while (true) {
+                String line = br.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (!line.startsWith("#")) {
+                    records.add(line);
+                }
+            }
+        }
+        assertFalse(records.isEmpty());
+        return records;
+    }
+
     @Test
     public void exportJsonGivenVariantsFileTest() throws Exception {
         URI outputDir = newOutputUri();
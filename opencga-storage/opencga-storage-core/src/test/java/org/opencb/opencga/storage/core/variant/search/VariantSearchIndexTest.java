@@ -10,6 +10,7 @@ import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.exceptions.VariantSearchException;
+import org.opencb.opencga.storage.core.metadata.models.ProjectMetadata;
 import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
 import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
@@ -25,7 +26,7 @@ import java.net.URI;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  * Created on 19/04/18.
@@ -112,16 +113,24 @@ public abstract class VariantSearchIndexTest extends VariantStorageBaseTest {
 
                 //////////////////////
                 expected = dbAdaptor.count((Query) null).first();
+                long beforeOverwrite = System.currentTimeMillis();
                 loadResult = searchIndex(true);
                 System.out.println("Load result overwrite: = " + loadResult + " , at study : " + studyId);
                 checkLoadResult(expected, loadResult);
                 checkVariantSearchIndex(dbAdaptor);
+                ProjectMetadata.SecondaryIndexCheckpoint checkpoint = metadataManager.getProjectMetadata().getSecondaryIndexCheckpoint();
+                assertFalse(checkpoint.isIncremental());
+                assertEquals(expected, checkpoint.getNumVariants());
+                assertTrue(checkpoint.getTimestamp() >= beforeOverwrite);
 
                 //////////////////////
                 loadResult = searchIndex();
                 System.out.println("Load result nothing to do: = " + loadResult + " , at study : " + studyId);
                 checkLoadResult(0, loadResult);
                 checkVariantSearchIndex(dbAdaptor);
+                checkpoint = metadataManager.getProjectMetadata().getSecondaryIndexCheckpoint();
+                assertTrue(checkpoint.isIncremental());
+                assertEquals(0, checkpoint.getNumVariants());
 
                 /////////// NEW STUDY ///////////
                 studyCounter++;
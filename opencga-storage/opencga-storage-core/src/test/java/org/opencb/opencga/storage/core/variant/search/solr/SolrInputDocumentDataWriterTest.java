@@ -0,0 +1,181 @@
+package org.opencb.opencga.storage.core.variant.search.solr;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SolrInputDocumentDataWriterTest {
+
+    private MockSolrClient solrClient;
+    private ObjectMap options;
+
+    @Before
+    public void setUp() throws Exception {
+        solrClient = new MockSolrClient();
+        options = new ObjectMap()
+                .append(VariantStorageOptions.SEARCH_LOAD_WRITERS.key(), 4)
+                .append(VariantStorageOptions.SEARCH_LOAD_BATCH_SIZE.key(), 10)
+                .append(VariantStorageOptions.SEARCH_LOAD_MAX_IN_FLIGHT_BATCHES.key(), 2);
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        solrClient.latencyMs = 5;
+        SolrInputDocumentDataWriter writer = load(new SolrInputDocumentDataWriter("collection", solrClient, 100, options), 1000);
+
+        assertEquals(1000, solrClient.documents.size());
+        assertEquals(1000, new HashSet<>(solrClient.documents).size());
+        assertEquals(1000, writer.getInsertedDocuments());
+        assertTrue(solrClient.commits.get() > 1);
+        assertTrue(solrClient.maxConcurrentAdds > 1);
+        // Commits wait for the adds in flight
+        assertFalse(solrClient.commitWithAddsInFlight);
+
+        assertEquals(4, writer.getWriterStats().size());
+        assertEquals(1000, writer.getWriterStats().stream().mapToLong(VariantSearchLoadResult.WriterStats::getNumDocuments).sum());
+        assertTrue(writer.getMaxQueueDepth() <= 8);
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        solrClient.failures.add(new SolrServerException("Timeout"));
+        solrClient.failures.add(new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "Unavailable"));
+        SolrInputDocumentDataWriter writer = load(new SolrInputDocumentDataWriter("collection", solrClient, 100, options), 100);
+
+        assertEquals(2, writer.getNumRetries());
+        assertEquals(100, new HashSet<>(solrClient.documents).size());
+        assertEquals(100, writer.getInsertedDocuments());
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        solrClient.failures.add(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Wrong document"));
+        SolrInputDocumentDataWriter writer = new SolrInputDocumentDataWriter("collection", solrClient, 100, options);
+        try {
+            load(writer, 100);
+            fail("Expected exception");
+        } catch (SolrException e) {
+            assertEquals("Wrong document", e.getMessage());
+        }
+        assertEquals(0, writer.getNumRetries());
+        assertEquals(0, writer.getInsertedDocuments());
+    }
+
+    @Test
+    public void testAdaptiveBatchSize() throws Exception {
+        options.put(VariantStorageOptions.SEARCH_LOAD_WRITERS.key(), 1);
+        options.put(VariantStorageOptions.SEARCH_LOAD_MAX_BATCH_SIZE.key(), 200);
+
+        // Fast responses. Grow up to the max batch size
+        SolrInputDocumentDataWriter writer = load(new SolrInputDocumentDataWriter("collection", solrClient, 100, options), 2000);
+        assertEquals(200, writer.getBatchSize());
+        assertEquals(200, solrClient.maxRequestSize);
+
+        // Slow responses. Shrink down to the min batch size
+        solrClient = new MockSolrClient();
+        solrClient.latencyMs = 20;
+        options.put(VariantStorageOptions.SEARCH_LOAD_TARGET_LATENCY.key(), 1);
+        options.put(VariantStorageOptions.SEARCH_LOAD_BATCH_SIZE.key(), 100);
+        writer = load(new SolrInputDocumentDataWriter("collection", solrClient, 100, options), 1000);
+        assertEquals(10, writer.getBatchSize());
+        assertEquals(1000, new HashSet<>(solrClient.documents).size());
+    }
+
+    private SolrInputDocumentDataWriter load(SolrInputDocumentDataWriter writer, int numDocuments) {
+        writer.open();
+        writer.pre();
+        try {
+            List<SolrInputDocument> batch = new ArrayList<>();
+            for (int i = 0; i < numDocuments; i++) {
+                SolrInputDocument document = new SolrInputDocument();
+                document.addField("id", "1:" + i + ":A:C");
+                batch.add(document);
+                if (batch.size() == 7) {
+                    writer.write(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            writer.write(batch);
+            writer.post();
+        } finally {
+            writer.close();
+        }
+        return writer;
+    }
+
+    private static class MockSolrClient extends SolrClient {
+        private final List<String> documents = Collections.synchronizedList(new ArrayList<>());
+        private final Queue<Exception> failures = new LinkedList<>();
+        private final AtomicInteger addsInFlight = new AtomicInteger();
+        private final AtomicInteger commits = new AtomicInteger();
+        private volatile boolean commitWithAddsInFlight;
+        private volatile int maxConcurrentAdds;
+        private volatile int maxRequestSize;
+        private int latencyMs;
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) throws SolrServerException, IOException {
+            UpdateRequest updateRequest = (UpdateRequest) request;
+            if (updateRequest.getDocuments() != null) {
+                int inFlight = addsInFlight.incrementAndGet();
+                try {
+                    synchronized (this) {
+                        maxConcurrentAdds = Math.max(maxConcurrentAdds, inFlight);
+                        maxRequestSize = Math.max(maxRequestSize, updateRequest.getDocuments().size());
+                    }
+                    sleep();
+                    Exception failure;
+                    synchronized (failures) {
+                        failure = failures.poll();
+                    }
+                    if (failure instanceof SolrServerException) {
+                        throw (SolrServerException) failure;
+                    } else if (failure instanceof RuntimeException) {
+                        throw (RuntimeException) failure;
+                    }
+                    for (SolrInputDocument document : updateRequest.getDocuments()) {
+                        documents.add(document.getFieldValue("id").toString());
+                    }
+                } finally {
+                    addsInFlight.decrementAndGet();
+                }
+            }
+            if (updateRequest.getParams() != null && updateRequest.getParams().getBool(UpdateParams.COMMIT, false)) {
+                if (addsInFlight.get() > 0) {
+                    commitWithAddsInFlight = true;
+                }
+                commits.incrementAndGet();
+            }
+            return new NamedList<>();
+        }
+
+        private void sleep() {
+            if (latencyMs > 0) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
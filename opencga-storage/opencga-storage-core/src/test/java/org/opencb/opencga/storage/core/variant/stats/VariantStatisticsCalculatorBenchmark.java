@@ -0,0 +1,107 @@
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.biodata.tools.variant.stats.VariantStatsCalculator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the stats calculation of synthetic variants with many samples, calculated sample by sample,
+ * with primitive genotype counters, and with primitive genotype counters in a ForkJoinPool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VariantStatisticsCalculatorBenchmark {
+
+    private static final String STUDY = "s1";
+    private static final String[] GENOTYPES = {"0/0", "0/0", "0/0", "0/0", "0/1", "0|1", "1/1", "./."};
+
+    @Param({"10000", "100000"})
+    private int numSamples;
+
+    @Param({"64"})
+    private int numVariants;
+
+    private List<Variant> variants;
+    private Map<String, Set<String>> cohorts;
+    private VariantStatisticsCalculator calculator;
+    private VariantStatisticsCalculator forkJoinCalculator;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        cohorts = new LinkedHashMap<>();
+        cohorts.put("ALL", new LinkedHashSet<>());
+        cohorts.put("HALF", new LinkedHashSet<>());
+        for (int s = 0; s < numSamples; s++) {
+            cohorts.get("ALL").add("S" + s);
+            if (random.nextBoolean()) {
+                cohorts.get("HALF").add("S" + s);
+            }
+        }
+
+        variants = new ArrayList<>(numVariants);
+        LinkedHashMap<String, Integer> samplesPosition = null;
+        for (int v = 0; v < numVariants; v++) {
+            VariantBuilder builder = Variant.newBuilder("1:" + (1000 + v) + ":A:C")
+                    .setStudyId(STUDY)
+                    .setFileId("f1")
+                    .setFilter("PASS")
+                    .setQuality(100.0)
+                    .setSampleDataKeys("GT");
+            for (int s = 0; s < numSamples; s++) {
+                builder.addSample("S" + s, GENOTYPES[random.nextInt(GENOTYPES.length)]);
+            }
+            Variant variant = builder.build();
+            // Variants read from the same source share the samples position
+            if (samplesPosition == null) {
+                samplesPosition = variant.getStudy(STUDY).getSamplesPosition();
+            } else {
+                variant.getStudy(STUDY).setSortedSamplesPosition(samplesPosition);
+            }
+            variants.add(variant);
+        }
+
+        calculator = new VariantStatisticsCalculator(true);
+        forkJoinCalculator = new VariantStatisticsCalculator(true, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public void sampleBySample(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            StudyEntry study = variant.getStudy(STUDY);
+            for (Map.Entry<String, Set<String>> cohort : cohorts.entrySet()) {
+                VariantStats stats = VariantStatsCalculator.calculate(variant, study, cohort.getValue());
+                blackhole.consume(stats);
+            }
+        }
+    }
+
+    @Benchmark
+    public void primitive(Blackhole blackhole) {
+        blackhole.consume(calculator.calculateBatch(variants, STUDY, cohorts));
+    }
+
+    @Benchmark
+    public void primitiveForkJoin(Blackhole blackhole) {
+        blackhole.consume(forkJoinCalculator.calculateBatch(variants, STUDY, cohorts));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(VariantStatisticsCalculatorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
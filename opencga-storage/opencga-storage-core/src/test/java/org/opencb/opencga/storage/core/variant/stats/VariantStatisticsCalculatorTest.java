@@ -0,0 +1,143 @@
+package org.opencb.opencga.storage.core.variant.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.biodata.tools.variant.stats.VariantStatsCalculator;
+import org.opencb.biodata.tools.variant.stats.VariantStatsWrapper;
+import org.opencb.opencga.core.models.common.GenericRecordAvroJsonMixin;
+import org.opencb.opencga.storage.core.variant.io.json.mixin.VariantStatsJsonMixin;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class VariantStatisticsCalculatorTest {
+
+    private static final String STUDY = "s1";
+    private static final String[] GENOTYPES = {"0/0", "0/0", "0/0", "0/1", "0|1", "1|0", "1/1", "./.", "0"};
+
+    private ObjectWriter writer;
+    private Map<String, Set<String>> cohorts;
+
+    @Before
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.addMixIn(VariantStats.class, VariantStatsJsonMixin.class);
+        objectMapper.addMixIn(GenericRecord.class, GenericRecordAvroJsonMixin.class);
+        writer = objectMapper.writerFor(VariantStatsWrapper.class);
+
+        cohorts = new LinkedHashMap<>();
+        cohorts.put("ALL", new LinkedHashSet<>());
+        cohorts.put("EVEN", new LinkedHashSet<>());
+        cohorts.put("FEW", new LinkedHashSet<>(Arrays.asList("S3", "S7", "S1")));
+        for (int i = 0; i < 50; i++) {
+            cohorts.get("ALL").add("S" + i);
+            if (i % 2 == 0) {
+                cohorts.get("EVEN").add("S" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testCalculateBatch() throws Exception {
+        checkCalculateBatch(new VariantStatisticsCalculator(true), 10);
+    }
+
+    @Test
+    public void testCalculateBatchForkJoin() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            checkCalculateBatch(new VariantStatisticsCalculator(true, pool), 200);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSkipVariantsWithoutStudy() throws Exception {
+        VariantStatisticsCalculator calculator = new VariantStatisticsCalculator(true);
+        List<Variant> variants = createVariants(5, new Random(1));
+        variants.get(2).getStudies().get(0).setStudyId("other");
+
+        List<VariantStatsWrapper> wrappers = calculator.calculateBatch(variants, STUDY, cohorts);
+
+        assertEquals(4, wrappers.size());
+        assertEquals(1, calculator.getSkippedFiles());
+    }
+
+    @Test
+    public void testMissingGenotypesAndSamples() throws Exception {
+        VariantStatisticsCalculator calculator = new VariantStatisticsCalculator(true);
+        Variant withGt = Variant.newBuilder("1:1000:A:C")
+                .setStudyId(STUDY)
+                .setFileId("f1")
+                .setSampleDataKeys("GT", "DP")
+                .addSample("S1", "0/1", "10")
+                .addSample("S2", "1/1", "20")
+                .build();
+        Variant withoutGt = Variant.newBuilder("1:2000:A:C")
+                .setStudyId(STUDY)
+                .setFileId("f1")
+                .setSampleDataKeys("DP")
+                .addSample("S1", "10")
+                .addSample("S2", "20")
+                .build();
+        Map<String, Set<String>> cohorts = Collections.singletonMap("C", new LinkedHashSet<>(Arrays.asList("S1", "S2", "S3")));
+
+        List<VariantStatsWrapper> wrappers = calculator.calculateBatch(Arrays.asList(withGt, withoutGt), STUDY, cohorts);
+
+        assertEquals(2, wrappers.size());
+        // S3 is not in the variants
+        assertEquals(1, (int) wrappers.get(0).getCohortStats().get(0).getMissingGenotypeCount());
+        // No GT
+        assertEquals(3, (int) wrappers.get(1).getCohortStats().get(0).getMissingGenotypeCount());
+    }
+
+    private void checkCalculateBatch(VariantStatisticsCalculator calculator, int numVariants) throws Exception {
+        List<Variant> variants = createVariants(numVariants, new Random(0));
+
+        List<String> expected = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            StudyEntry study = variant.getStudy(STUDY);
+            List<VariantStats> stats = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> cohort : cohorts.entrySet()) {
+                VariantStats variantStats = VariantStatsCalculator.calculate(variant, study, cohort.getValue());
+                variantStats.setCohortId(cohort.getKey());
+                stats.add(variantStats);
+            }
+            expected.add(writer.writeValueAsString(new VariantStatsWrapper(variant, stats)));
+        }
+
+        List<String> actual = new ArrayList<>(variants.size());
+        for (VariantStatsWrapper wrapper : calculator.calculateBatch(variants, STUDY, cohorts)) {
+            actual.add(writer.writeValueAsString(wrapper));
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    private static List<Variant> createVariants(int numVariants, Random random) {
+        List<Variant> variants = new ArrayList<>(numVariants);
+        for (int v = 0; v < numVariants; v++) {
+            VariantBuilder builder = Variant.newBuilder("1:" + (1000 + v) + ":A:C")
+                    .setStudyId(STUDY)
+                    .setFileId("f1")
+                    .setFilter(random.nextBoolean() ? "PASS" : "LowQual")
+                    .setQuality(random.nextInt(1000) / 10.0)
+                    .setSampleDataKeys("GT", "DP");
+            for (int s = 0; s < 50; s++) {
+                builder.addSample("S" + s, GENOTYPES[random.nextInt(GENOTYPES.length)], String.valueOf(random.nextInt(60)));
+            }
+            variants.add(builder.build());
+        }
+        return variants;
+    }
+}
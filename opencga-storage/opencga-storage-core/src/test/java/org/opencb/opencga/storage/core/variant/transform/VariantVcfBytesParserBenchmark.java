@@ -0,0 +1,106 @@
+package org.opencb.opencga.storage.core.variant.transform;
+
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantFileMetadata;
+import org.opencb.biodata.tools.variant.stats.VariantSetStatsCalculator;
+import org.opencb.commons.io.DataReader;
+import org.opencb.opencga.storage.core.io.managers.IOConnectorProvider;
+import org.opencb.opencga.storage.core.io.managers.LocalIOConnector;
+import org.opencb.opencga.storage.core.io.plain.StringDataReader;
+import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the transform step reading the test VCFs as String lines parsed with htsjdk,
+ * and as ByteBuffer lines parsed with the {@link VariantVcfBytesParser}.
+ * Files are decompressed first, so the bytes reader memory maps the input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VariantVcfBytesParserBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"variant-test-file.vcf.gz",
+            "1k.chr1.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz",
+            "10k.chr22.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz"})
+    private String file;
+
+    private Path input;
+    private VariantTransformTask task;
+
+    @Setup
+    public void setUp() throws Exception {
+        input = Files.createTempFile("bytes_parser_benchmark", ".vcf");
+        try (InputStream is = VariantVcfBytesParserTest.open(file)) {
+            Files.copy(is, input, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Pair<VCFHeader, VCFHeaderVersion> header = new VariantReaderUtils(new IOConnectorProvider(LocalIOConnector.class))
+                .readHtsHeader(input.toUri(), false);
+        VariantFileMetadata fileMetadata = new VariantFileMetadata("f1", input.toString());
+        fileMetadata.setSampleIds(header.getKey().getGenotypeSamples());
+        task = new VariantTransformTask(header.getKey(), header.getValue(), "s1", fileMetadata,
+                new VariantSetStatsCalculator("s1", fileMetadata), batch -> batch);
+        task.pre();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        task.post();
+        Files.deleteIfExists(input);
+    }
+
+    @Benchmark
+    public void htsjdk(Blackhole blackhole) {
+        DataReader<String> reader = new StringDataReader(input);
+        reader.open();
+        reader.pre();
+        List<String> batch = reader.read(BATCH_SIZE);
+        while (!batch.isEmpty()) {
+            List<Variant> variants = task.apply(batch);
+            blackhole.consume(variants);
+            batch = reader.read(BATCH_SIZE);
+        }
+        reader.post();
+        reader.close();
+    }
+
+    @Benchmark
+    public void bytes(Blackhole blackhole) {
+        DataReader<ByteBuffer> reader = new StringDataReader(input).asByteBufferReader();
+        reader.open();
+        reader.pre();
+        List<ByteBuffer> batch = reader.read(BATCH_SIZE);
+        while (!batch.isEmpty()) {
+            List<Variant> variants = task.applyBytes(batch);
+            blackhole.consume(variants);
+            batch = reader.read(BATCH_SIZE);
+        }
+        reader.post();
+        reader.close();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(VariantVcfBytesParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
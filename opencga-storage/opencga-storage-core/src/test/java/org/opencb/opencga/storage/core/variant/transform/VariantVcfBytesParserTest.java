@@ -0,0 +1,211 @@
+package org.opencb.opencga.storage.core.variant.transform;
+
+import htsjdk.variant.vcf.VCFHeader;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
+import org.opencb.biodata.models.variant.Genotype;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.AlternateCoordinate;
+import org.opencb.biodata.tools.variant.converters.avro.VariantContextToVariantConverter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class VariantVcfBytesParserTest {
+
+    private VariantVcfBytesParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        parser = new VariantVcfBytesParser("s1", "f1", Arrays.asList("S1", "S2"));
+    }
+
+    @Test
+    public void testParseSimple() {
+        Variant variant = parse("1\t100\trs123\tT\tA,C\t50.5\tPASS\tAC=1;DB\tGT:DP\t0/1:10\t1/2");
+
+        assertNotNull(variant);
+        assertEquals("1", variant.getChromosome());
+        assertEquals(100, variant.getStart().intValue());
+        assertEquals("T", variant.getReference());
+        assertEquals("A", variant.getAlternate());
+        assertEquals(Collections.singletonList("rs123"), variant.getNames());
+
+        StudyEntry study = variant.getStudies().get(0);
+        assertEquals("s1", study.getStudyId());
+        assertEquals(1, study.getSecondaryAlternates().size());
+        assertEquals("C", study.getSecondaryAlternates().get(0).getAlternate());
+        assertEquals(Arrays.asList("GT", "DP"), study.getSampleDataKeys());
+        assertEquals("0/1", study.getSampleData("S1", "GT"));
+        assertEquals("10", study.getSampleData("S1", "DP"));
+        assertEquals("1/2", study.getSampleData("S2", "GT"));
+        // Missing trailing values
+        assertEquals(".", study.getSampleData("S2", "DP"));
+
+        assertEquals("f1", study.getFiles().get(0).getFileId());
+        assertEquals("PASS", study.getFiles().get(0).getData().get("FILTER"));
+        assertEquals("1", study.getFiles().get(0).getData().get("AC"));
+        assertEquals("true", study.getFiles().get(0).getData().get("DB"));
+    }
+
+    @Test
+    public void testParseIndel() {
+        Variant variant = parse("2\t1000\t.\tTAC\tT\t.\t.\t.\tGT\t0/1\t0/0");
+
+        assertNotNull(variant);
+        assertEquals(1000, variant.getStart().intValue());
+        assertEquals(1002, variant.getEnd().intValue());
+        assertEquals("TAC", variant.getReference());
+        assertEquals("T", variant.getAlternate());
+    }
+
+    @Test
+    public void testUnsupported() {
+        // Symbolic alleles and breakends
+        assertNull(parse("1\t100\t.\tT\t<DEL>\t.\tPASS\tSVTYPE=DEL;END=200\tGT\t0/1\t0/0"));
+        assertNull(parse("1\t100\t.\tT\tT[2:300[\t.\tPASS\tSVTYPE=BND\tGT\t0/1\t0/0"));
+        // Missing alternate
+        assertNull(parse("1\t100\t.\tT\t.\t.\tPASS\t.\tGT\t0/0\t0/0"));
+        // Wrong number of samples
+        assertNull(parse("1\t100\t.\tT\tA\t.\tPASS\t.\tGT\t0/1"));
+        // More values than keys
+        assertNull(parse("1\t100\t.\tT\tA\t.\tPASS\t.\tGT\t0/1:10\t0/0"));
+        // Wrong position
+        assertNull(parse("1\tX100\t.\tT\tA\t.\tPASS\t.\tGT\t0/1\t0/0"));
+        // Wrong quality
+        assertNull(parse("1\t100\t.\tT\tA\tQ\tPASS\t.\tGT\t0/1\t0/0"));
+        // Multiple filters
+        assertNull(parse("1\t100\t.\tT\tA\t.\tq10;s50\t.\tGT\t0/1\t0/0"));
+        assertEquals(8, parser.getUnsupportedLines());
+    }
+
+    @Test
+    public void testParseDirectBuffer() {
+        byte[] bytes = "#header\n1\t100\t.\tT\tA\t.\tPASS\t.\tGT\t0/1\t0/0".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.position(8);
+
+        Variant variant = parser.parse(buffer);
+        assertNotNull(variant);
+        assertEquals("1:100:T:A", variant.toString());
+        // Do not consume the buffer
+        assertEquals(8, buffer.position());
+    }
+
+    @Test
+    public void testParseUtf8() {
+        Variant variant = parse("1\t100\trs\u00e9\tT\tA\t.\tPASS\tNOTE=caf\u00e9;X=\u00e9\tGT\t0/1\t0/0");
+
+        assertNotNull(variant);
+        assertEquals(Collections.singletonList("rs\u00e9"), variant.getNames());
+        assertEquals("caf\u00e9", variant.getStudies().get(0).getFiles().get(0).getData().get("NOTE"));
+        assertEquals("\u00e9", variant.getStudies().get(0).getFiles().get(0).getData().get("X"));
+        // Short cached values
+        variant = parse("1\t101\t.\tT\tA\t.\tPASS\tX=\u00e8\tGT\t0/1\t0/0");
+        assertEquals("\u00e8", variant.getStudies().get(0).getFiles().get(0).getData().get("X"));
+    }
+
+    @Test
+    public void testEquivalentToHtsjdk() throws Exception {
+        checkEquivalentToHtsjdk("variant-test-file.vcf.gz");
+        checkEquivalentToHtsjdk("1k.chr1.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz");
+        checkEquivalentToHtsjdk("variant-test-phased.vcf");
+        checkEquivalentToHtsjdk("variant-test-somatic.vcf");
+        checkEquivalentToHtsjdk("variant-test-numeric-sample.vcf");
+        checkEquivalentToHtsjdk("variant-test-duplicated.vcf");
+        checkEquivalentToHtsjdk("variant-test-sv.vcf");
+        checkEquivalentToHtsjdk("variant-test-bnd.vcf");
+    }
+
+    private void checkEquivalentToHtsjdk(String fileName) throws Exception {
+        FullVcfCodec codec = new FullVcfCodec();
+        List<String> lines = new ArrayList<>();
+        VCFHeader header;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(fileName), StandardCharsets.UTF_8))) {
+            List<String> headerLines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    headerLines.add(line);
+                } else if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            byte[] headerBytes = String.join("\n", headerLines).concat("\n").getBytes(StandardCharsets.UTF_8);
+            header = (VCFHeader) codec.readActualHeader(codec.makeSourceFromStream(new ByteArrayInputStream(headerBytes)));
+        }
+        List<String> samples = header.getGenotypeSamples();
+        VariantVcfBytesParser bytesParser = new VariantVcfBytesParser("s1", "f1", samples);
+        VariantContextToVariantConverter converter = new VariantContextToVariantConverter("s1", "f1", samples);
+
+        int parsed = 0;
+        for (String line : lines) {
+            Variant actual = bytesParser.parse(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+            if (actual == null) {
+                // Unsupported line. Will be read with htsjdk
+                continue;
+            }
+            parsed++;
+            Variant expected = converter.apply(Collections.singletonList(codec.decode(line))).get(0);
+            assertEquivalent(fileName + " : " + line, expected, actual);
+        }
+        assertTrue(fileName, parsed > 0);
+    }
+
+    private static void assertEquivalent(String message, Variant expected, Variant actual) {
+        assertEquals(message, expected.toString(), actual.toString());
+        assertEquals(message, expected.getEnd(), actual.getEnd());
+        assertEquals(message, nonNull(expected.getNames()), nonNull(actual.getNames()));
+
+        StudyEntry expectedStudy = expected.getStudies().get(0);
+        StudyEntry actualStudy = actual.getStudies().get(0);
+        assertEquals(message, alternates(expectedStudy), alternates(actualStudy));
+        assertEquals(message, expectedStudy.getSampleDataKeys(), actualStudy.getSampleDataKeys());
+        assertEquals(message, expectedStudy.getOrderedSamplesName(), actualStudy.getOrderedSamplesName());
+        for (String sample : expectedStudy.getOrderedSamplesName()) {
+            List<String> expectedData = new ArrayList<>(expectedStudy.getSample(sample).getData());
+            List<String> actualData = new ArrayList<>(actualStudy.getSample(sample).getData());
+            Integer gtIdx = expectedStudy.getSampleDataKeyPosition("GT");
+            if (gtIdx != null) {
+                // Compare genotypes, not its string representation
+                expectedData.set(gtIdx, new Genotype(expectedData.get(gtIdx)).toString());
+                actualData.set(gtIdx, new Genotype(actualData.get(gtIdx)).toString());
+            }
+            assertEquals(message + " : " + sample, expectedData, actualData);
+        }
+
+        assertEquals(message, expectedStudy.getFiles().get(0).getData(), actualStudy.getFiles().get(0).getData());
+    }
+
+    private static List<String> nonNull(List<String> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    private static List<String> alternates(StudyEntry study) {
+        if (study.getSecondaryAlternates() == null) {
+            return Collections.emptyList();
+        }
+        return study.getSecondaryAlternates().stream().map(AlternateCoordinate::toString).collect(Collectors.toList());
+    }
+
+    static InputStream open(String fileName) throws Exception {
+        InputStream is = VariantVcfBytesParserTest.class.getClassLoader().getResourceAsStream(fileName);
+        return fileName.endsWith(".gz") ? new GZIPInputStream(is) : is;
+    }
+
+    private Variant parse(String line) {
+        return parser.parse(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -26,12 +26,16 @@ import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.solr.common.StringUtils;
 import org.opencb.opencga.core.common.TimeUtils;
+import org.opencb.opencga.storage.core.metadata.lock.LockManager;
+import org.opencb.opencga.storage.core.metadata.lock.LockMetrics;
+import org.opencb.opencga.storage.core.metadata.lock.LockWaiterRegistry;
 import org.opencb.opencga.storage.core.metadata.models.Lock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
@@ -66,11 +70,13 @@ import java.util.concurrent.TimeoutException;
  *     value = HBase.get(row, column)
  *     HBase.checkAndPut(row, column, EQ, value, Put(""))
  *
+ * Applicants waiting from the same process are woken up when the lock is released. Otherwise, the cell is polled.
+ *
  * Created on 19/05/16.
  *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
-public class HBaseLockManager {
+public class HBaseLockManager implements LockManager<byte[]> {
 
     private static final byte LOCK_EXPIRING_DATE_SEPARATOR_BYTE = ':';
     private static final String LOCK_EXPIRING_DATE_SEPARATOR_STR = ":";
@@ -83,11 +89,14 @@ public class HBaseLockManager {
             new ThreadFactoryBuilder()
                     .setNameFormat("hbase-lock-%d")
                     .build());
+    private static final LockWaiterRegistry WAITERS = new LockWaiterRegistry();
+    private static final long POLL_INTERVAL = 100;
 
     protected final HBaseManager hbaseManager;
     protected final String tableName;
     protected final byte[] columnFamily;
     protected final byte[] defaultRow;
+    protected final LockMetrics metrics = new LockMetrics();
     protected static Logger logger = LoggerFactory.getLogger(HBaseLockManager.class);
 
     public HBaseLockManager(HBaseManager hbaseManager, String tableName, byte[] columnFamily, byte[] row) {
@@ -110,6 +119,7 @@ public class HBaseLockManager {
      * @throws TimeoutException if the operations takes more than the timeout value.
      * @throws IOException      if there is an error writing or reading from HBase.
      */
+    @Override
     public Lock lock(byte[] column, long lockDuration, long timeout)
             throws InterruptedException, TimeoutException, IOException {
         return lock(defaultRow, column, lockDuration, timeout);
@@ -146,15 +156,17 @@ public class HBaseLockManager {
 
             // If the lock is taken, wait
             while (isLockTaken(lockValue)) {
-                Thread.sleep(100);
+                WAITERS.await(waitersKey(row, column), POLL_INTERVAL);
                 lockValue = readLockValue(row, column);
                 //Check if the lock is still valid
                 if (stopWatch.getTime() > timeout) {
+                    metrics.timeout();
                     throw new TimeoutException("Unable to get the lock");
                 }
             }
             //Check if the lock is still valid
             if (stopWatch.getTime() > timeout) {
+                metrics.timeout();
                 throw new TimeoutException("Unable to get the lock");
             }
 
@@ -185,8 +197,10 @@ public class HBaseLockManager {
 
         long tokenHash = token.hashCode();
         logger.debug("Won the lock with token " + token + " (" + tokenHash + ")");
+        metrics.acquired(stopWatch.getTime());
 
         long finalLockDuration = lockDuration;
+        long acquireTime = System.currentTimeMillis();
         return new Lock(THREAD_POOL, (int) (finalLockDuration / 4), tokenHash) {
             @Override
             public void unlock0() {
@@ -195,6 +209,7 @@ public class HBaseLockManager {
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
                 }
+                metrics.released(System.currentTimeMillis() - acquireTime);
             }
 
             @Override
@@ -279,6 +294,16 @@ public class HBaseLockManager {
         if (!clearLock(row, column, lockValue)) {
             throw IllegalLockStatusException.inconsistentLock(row, column, lockToken, currentToken, lockValue);
         }
+        WAITERS.signalAll(waitersKey(row, column));
+    }
+
+    @Override
+    public LockMetrics getMetrics() {
+        return metrics;
+    }
+
+    private Object waitersKey(byte[] row, byte[] column) {
+        return Arrays.asList(tableName, Bytes.toStringBinary(columnFamily), Bytes.toStringBinary(row), Bytes.toStringBinary(column));
     }
 
     private Boolean tryToPutToken(String token, long lockDuration, byte[] row, byte[] qualifier, byte[] lockValue, String type)
@@ -36,6 +36,7 @@ import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.hadoop.utils.AbstractHBaseDriver;
 import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveDriver;
+import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveRowKeyFactory;
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveTableHelper;
 import org.opencb.opencga.storage.hadoop.variant.gaps.FillMissingFromArchiveTask;
 import org.opencb.opencga.storage.hadoop.variant.metadata.HBaseVariantStorageMetadataDBAdaptorFactory;
@@ -109,6 +110,10 @@ public abstract class AbstractVariantsTableDriver extends AbstractHBaseDriver im
         generator = new HBaseVariantTableNameGenerator(dbName, getConf());
 
         initVariantTableHelper(getStudyId());
+        if (getStudyId() >= 0) {
+            // Read the archive table with the row key format of the study
+            ArchiveRowKeyFactory.setRowKeyFormat(conf, readStudyMetadata());
+        }
 
         /* -------------------------------*/
         // Validate input CHECK
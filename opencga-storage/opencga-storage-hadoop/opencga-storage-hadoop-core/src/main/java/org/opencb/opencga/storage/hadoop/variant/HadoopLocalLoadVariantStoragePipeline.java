@@ -188,6 +188,11 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
         }
     }
 
+    @Override
+    protected boolean supportsTransformStream() {
+        return true;
+    }
+
     @Override
     protected void load(URI inputUri, URI outdir, int studyId, int fileId) throws StorageEngineException {
 
@@ -202,11 +207,12 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
             Runtime.getRuntime().addShutdownHook(hook);
             String fileName = UriUtils.fileName(inputUri);
 
-            VariantFileMetadata fileMetadata = variantReaderUtils.readVariantFileMetadata(inputUri);
+            VariantFileMetadata fileMetadata = readVariantFileMetadata(inputUri);
             fileMetadata.setId(String.valueOf(fileId));
 //            fileMetadata.setStudyId(Integer.toString(studyId));
 
-            ArchiveTableHelper helper = new ArchiveTableHelper(dbAdaptor.getGenomeHelper(), studyId, fileMetadata);
+            ArchiveTableHelper helper = new ArchiveTableHelper(dbAdaptor.getGenomeHelper(),
+                    getMetadataManager().getStudyMetadata(studyId), fileMetadata);
             StopWatch stopWatch = StopWatch.createStarted();
             if (VariantReaderUtils.isProto(fileName)) {
                 ProgressLogger progressLogger = new ProgressLogger("Loaded slices:");
@@ -335,9 +341,8 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
                 .setReadQueuePutTimeout(1000).build();
 
         // Reader
-        boolean stdin = options.getBoolean(STDIN.key(), STDIN.defaultValue());
         int sliceBufferSize = options.getInt(ARCHIVE_SLICE_BUFFER_SIZE.key(), ARCHIVE_SLICE_BUFFER_SIZE.defaultValue());
-        VariantReader variantReader = variantReaderUtils.getVariantReader(input, helper.getStudyMetadata(), stdin);
+        VariantReader variantReader = getVariantReader(input, helper.getStudyMetadata());
         AbstractDuplicatedVariantsResolver resolver = new DuplicatedVariantsResolverFactory(getOptions(), ioConnectorProvider)
                 .getResolver(UriUtils.fileName(input), outdir);
         VariantDeduplicationTask dedupTask = new DuplicatedVariantsResolverFactory(getOptions(), ioConnectorProvider)
@@ -384,8 +389,7 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
 
 
         // Reader
-        boolean stdin = options.getBoolean(STDIN.key(), STDIN.defaultValue());
-        VariantReader variantReader = variantReaderUtils.getVariantReader(input, helper.getStudyMetadata(), stdin);
+        VariantReader variantReader = getVariantReader(input, helper.getStudyMetadata());
         AbstractDuplicatedVariantsResolver resolver = new DuplicatedVariantsResolverFactory(getOptions(), ioConnectorProvider)
                 .getResolver(UriUtils.fileName(input), outdir);
         VariantDeduplicationTask dedupTask = new DuplicatedVariantsResolverFactory(getOptions(), ioConnectorProvider)
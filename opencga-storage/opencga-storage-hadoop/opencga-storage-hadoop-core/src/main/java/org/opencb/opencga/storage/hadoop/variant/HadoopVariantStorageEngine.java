@@ -52,10 +52,8 @@ import org.opencb.opencga.storage.core.utils.CellBaseUtils;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.core.variant.VariantStoragePipeline;
-import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
-import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
 import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnnotator;
 import org.opencb.opencga.storage.core.variant.io.VariantExporter;
@@ -64,6 +62,7 @@ import org.opencb.opencga.storage.core.variant.score.VariantScoreFormatDescripto
 import org.opencb.opencga.storage.core.variant.search.SamplesSearchIndexVariantQueryExecutor;
 import org.opencb.opencga.storage.core.variant.search.SearchIndexVariantAggregationExecutor;
 import org.opencb.opencga.storage.core.variant.search.SearchIndexVariantQueryExecutor;
+import org.opencb.opencga.storage.core.variant.search.SecondaryIndexChangeLog;
 import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchLoadResult;
 import org.opencb.opencga.storage.core.variant.stats.VariantStatisticsManager;
 import org.opencb.opencga.storage.hadoop.auth.HBaseCredentials;
@@ -180,6 +179,7 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine implements
             return super.index(inputFiles, outdirUri, doExtract, doTransform, doLoad);
         }
 
+        checkTransformStream(doTransform, doLoad);
         final int nThreadArchive = getOptions().getInt(HADOOP_LOAD_FILES_IN_PARALLEL.key(), HADOOP_LOAD_FILES_IN_PARALLEL.defaultValue());
         ObjectMap extraOptions = new ObjectMap();
 
@@ -372,31 +372,24 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine implements
     public VariantSearchLoadResult secondaryIndex(Query query, QueryOptions queryOptions, boolean overwrite)
             throws StorageEngineException, IOException, VariantSearchException {
         queryOptions = queryOptions == null ? new QueryOptions() : new QueryOptions(queryOptions);
-
-        if (getOptions().getBoolean("skipDiscoverPendingVariantsToSecondaryIndex", false)) {
-            logger.info("Skip discover pending variants to secondary index");
-        } else {
-            new SecondaryIndexPendingVariantsManager(getDBAdaptor())
-                    .discoverPending(getMRExecutor(), overwrite, getMergedOptions(queryOptions));
+        // The discover pending variants step can be skipped from the engine configuration
+        String skipDiscoverPending = SecondaryIndexPendingVariantsManager.SKIP_DISCOVER_PENDING;
+        if (!queryOptions.containsKey(skipDiscoverPending)) {
+            queryOptions.put(skipDiscoverPending, getOptions().getBoolean(skipDiscoverPending, false));
         }
-
         return super.secondaryIndex(query, queryOptions, overwrite);
     }
 
     @Override
-    protected VariantDBIterator getVariantsToSecondaryIndex(boolean overwrite, Query query, QueryOptions queryOptions,
-                                                            VariantDBAdaptor dbAdaptor) throws StorageEngineException {
-
-        logger.info("Get variants to index from pending variants table");
-        logger.info("Query: " + query.toJson());
-        return new SecondaryIndexPendingVariantsManager(getDBAdaptor()).iterator(query);
+    protected SecondaryIndexChangeLog getSecondaryIndexChangeLog() throws StorageEngineException {
+        return new SecondaryIndexPendingVariantsManager(getDBAdaptor(), getMRExecutor());
     }
 
     @Override
     protected HadoopVariantSearchDataWriter newVariantSearchDataWriter(String collection) throws StorageEngineException {
         return new HadoopVariantSearchDataWriter(
                 collection, getVariantSearchManager().getSolrClient(), getVariantSearchManager().getInsertBatchSize(),
-                getDBAdaptor());
+                getDBAdaptor(), getOptions());
     }
 
     @Override
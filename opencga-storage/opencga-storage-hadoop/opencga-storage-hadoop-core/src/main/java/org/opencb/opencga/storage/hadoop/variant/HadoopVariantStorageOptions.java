@@ -75,6 +75,11 @@ public enum HadoopVariantStorageOptions implements ConfigurationOption {
 
     ARCHIVE_CHUNK_SIZE("storage.hadoop.archive.table.chunkSize", 1000),
     ARCHIVE_FILE_BATCH_SIZE("storage.hadoop.archive.table.fileBatchSize", 1000),
+    /**
+     * Row key format of the archive table for new studies. 1: string, 2: binary.
+     * Existing studies keep the format of their first load.
+     */
+    ARCHIVE_ROW_KEY_FORMAT("storage.hadoop.archive.table.rowKeyFormat", 2),
 
     ARCHIVE_SLICE_BUFFER_SIZE("storage.hadoop.archive.sliceBuffer.size", 5),
 
@@ -89,6 +94,8 @@ public enum HadoopVariantStorageOptions implements ConfigurationOption {
     SAMPLE_INDEX_BUILD_MAX_SAMPLES_PER_MR("storage.hadoop.sampleIndex.build.maxSamplesPerMR", 5000),
     SAMPLE_INDEX_ANNOTATION_MAX_SAMPLES_PER_MR("storage.hadoop.sampleIndex.annotation.maxSamplesPerMR", 5000),
     SAMPLE_INDEX_FAMILY_MAX_TRIOS_PER_MR("storage.hadoop.sampleIndex.family.maxTriosPerMR", 1000),
+    // Count the sample index within the region servers. Requires the opencga-storage-hadoop-core jar at the region servers.
+    SAMPLE_INDEX_QUERY_SERVER_SIDE_COUNT("storage.hadoop.sampleIndex.query.serverSideCount", false),
 
     /////////////////////////
     // Annotation index table  configuration
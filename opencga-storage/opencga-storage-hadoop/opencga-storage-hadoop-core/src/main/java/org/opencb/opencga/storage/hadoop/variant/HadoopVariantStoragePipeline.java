@@ -42,6 +42,7 @@ import org.opencb.opencga.storage.hadoop.auth.HBaseCredentials;
 import org.opencb.opencga.storage.hadoop.exceptions.StorageHadoopException;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHadoopDBAdaptor;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixSchemaManager;
+import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveRowKeyFactory;
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveTableHelper;
 import org.opencb.opencga.storage.hadoop.variant.executors.MRExecutor;
 import org.opencb.opencga.storage.hadoop.variant.mr.VariantTableHelper;
@@ -53,11 +54,13 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.function.Supplier;
 
 import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.*;
 import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine.*;
+import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions.ARCHIVE_ROW_KEY_FORMAT;
 import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions.ARCHIVE_SLICE_BUFFER_SIZE;
 import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions.VARIANT_TABLE_LOAD_REFERENCE;
 
@@ -120,8 +123,8 @@ public abstract class HadoopVariantStoragePipeline extends VariantStoragePipelin
     }
 
     @Override
-    protected ParallelTaskRunner transformProto(VariantFileMetadata fileMetadata, URI outputVariantsFile,
-                                                DataReader<String> stringReader, Supplier<Task<String, Variant>> task)
+    protected <I> ParallelTaskRunner transformProto(VariantFileMetadata fileMetadata, URI outputVariantsFile,
+                                                    DataReader<I> stringReader, Supplier<Task<I, Variant>> task)
             throws StorageEngineException {
 
         int sliceBufferSize = options.getInt(ARCHIVE_SLICE_BUFFER_SIZE.key(), ARCHIVE_SLICE_BUFFER_SIZE.defaultValue());
@@ -136,7 +139,10 @@ public abstract class HadoopVariantStoragePipeline extends VariantStoragePipelin
         final DataReader<Variant> dataReader = stringReader.then(task.get());
 
         // Transformer
-        ArchiveTableHelper helper = new ArchiveTableHelper(conf, getStudyId(), fileMetadata);
+        Configuration transformConf = new Configuration(conf);
+        StudyMetadata studyMetadata = getMetadataManager().getStudyMetadata(getStudyId());
+        transformConf.setInt(ArchiveRowKeyFactory.ROW_KEY_FORMAT, getArchiveRowKeyFormat(studyMetadata));
+        ArchiveTableHelper helper = new ArchiveTableHelper(transformConf, getStudyId(), fileMetadata);
 
         logger.info("Generating output file {}", outputVariantsFile);
 
@@ -211,6 +217,33 @@ public abstract class HadoopVariantStoragePipeline extends VariantStoragePipelin
         } else {
             options.put(MERGE_MODE.key(), MergeMode.from(studyMetadata.getAttributes()));
         }
+
+        if (!studyMetadata.getAttributes().containsKey(ARCHIVE_ROW_KEY_FORMAT.key())) {
+            studyMetadata.getAttributes().put(ARCHIVE_ROW_KEY_FORMAT.key(), getArchiveRowKeyFormat(studyMetadata));
+        }
+        options.put(ArchiveRowKeyFactory.ROW_KEY_FORMAT, ArchiveRowKeyFactory.getRowKeyFormat(studyMetadata));
+        logger.info("Archive row key format : " + options.getInt(ArchiveRowKeyFactory.ROW_KEY_FORMAT));
+    }
+
+    private int getArchiveRowKeyFormat(StudyMetadata studyMetadata) {
+        if (studyMetadata.getAttributes().containsKey(ARCHIVE_ROW_KEY_FORMAT.key())) {
+            return ArchiveRowKeyFactory.getRowKeyFormat(studyMetadata);
+        } else if (hasOtherFiles(studyMetadata.getId())) {
+            // Study loaded before the row key format was configurable. Keep the string format.
+            return ArchiveRowKeyFactory.STRING_ROW_KEY_FORMAT;
+        } else {
+            return options.getInt(ARCHIVE_ROW_KEY_FORMAT.key(), ARCHIVE_ROW_KEY_FORMAT.defaultValue());
+        }
+    }
+
+    private boolean hasOtherFiles(int studyId) {
+        Iterator<FileMetadata> iterator = getMetadataManager().fileMetadataIterator(studyId);
+        while (iterator.hasNext()) {
+            if (iterator.next().getId() != getFileId()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -228,6 +261,7 @@ public abstract class HadoopVariantStoragePipeline extends VariantStoragePipelin
                 HadoopVariantStorageOptions.ARCHIVE_CHUNK_SIZE.defaultValue());
         ArchiveTableHelper.setChunkSize(conf, chunkSize);
         ArchiveTableHelper.setStudyId(conf, studyId);
+        ArchiveRowKeyFactory.setRowKeyFormat(conf, getMetadataManager().getStudyMetadata(studyId));
 
         FileMetadata fileMetadata = getMetadataManager().getFileMetadata(studyId, fileId);
         if (!fileMetadata.isIndexed()) {
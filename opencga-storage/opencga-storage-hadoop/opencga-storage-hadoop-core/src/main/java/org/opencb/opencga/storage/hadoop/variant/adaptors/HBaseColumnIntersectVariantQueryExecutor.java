@@ -146,6 +146,7 @@ public class HBaseColumnIntersectVariantQueryExecutor extends VariantQueryExecut
         Iterator<String> variants = Iterators.transform(dbAdaptor.iterator(scanQuery, scanOptions), Variant::toString);
 
         int batchSize = options.getInt("multiIteratorBatchSize", 100);
+        options = multiIteratorOptions(options);
         if (iterator) {
             return dbAdaptor.iterator(variants, query, options, batchSize);
         } else {
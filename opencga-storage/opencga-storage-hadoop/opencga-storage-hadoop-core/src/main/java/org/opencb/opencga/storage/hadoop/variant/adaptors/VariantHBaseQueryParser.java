@@ -661,8 +661,7 @@ public class VariantHBaseQueryParser {
             scan.setStartRow(keyFactory.generateBlockIdAsBytes(fileId, region.getChromosome(), region.getStart()));
             long endSlice = keyFactory.getSliceId((long) region.getEnd()) + 1;
             // +1 because the stop row is exclusive
-            scan.setStopRow(Bytes.toBytes(keyFactory.generateBlockIdFromSlice(
-                    fileId, region.getChromosome(), endSlice)));
+            scan.setStopRow(keyFactory.generateBlockIdFromSliceAsBytes(fileId, region.getChromosome(), endSlice));
         }
     }
 
@@ -81,7 +81,6 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.SEARCH_INDEX_LAST_TIMESTAMP;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.*;
 import static org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.*;
 
@@ -202,7 +201,7 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         if (fileMetadata == null) {
             throw VariantQueryException.fileNotFound(fileId, studyId);
         }
-        return new ArchiveTableHelper(genomeHelper, studyId, fileMetadata);
+        return new ArchiveTableHelper(genomeHelper, getMetadataManager().getStudyMetadata(studyId), fileMetadata);
 
     }
 
@@ -316,8 +315,7 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
                 throw VariantQueryException.internalException(e);
             }
         }).iterator();
-        long ts = getMetadataManager().getProjectMetadata().getAttributes()
-                .getLong(SEARCH_INDEX_LAST_TIMESTAMP.key());
+        long ts = getMetadataManager().getProjectMetadata().getSecondaryIndexCheckpoint().getTimestamp();
         HBaseToVariantAnnotationConverter converter = new HBaseToVariantAnnotationConverter(ts)
                 .setAnnotationIds(getMetadataManager().getProjectMetadata().getAnnotation())
                 .setIncludeFields(selectElements.getFields());
@@ -22,21 +22,60 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
 
-import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions.ARCHIVE_CHUNK_SIZE;
-import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions.ARCHIVE_FILE_BATCH_SIZE;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions.*;
 
 
 /**
  * Created on 25/04/17.
  *
+ * Two row key formats are supported:
+ * <ul>
+ * <li>{@link #STRING_ROW_KEY_FORMAT}: {@code <fileBatch>_<chromosome>_<slice>}, with zero padded numbers.
+ * <li>{@link #BINARY_ROW_KEY_FORMAT}: {@code <fileBatch:int><chromosomeCode:short><slice:long>}. Chromosomes without code
+ *     are written after the code 0xFFFF, followed by a 0 byte.
+ * </ul>
+ * The format is defined for each study, and stored in the {@link StudyMetadata}. See {@link #getRowKeyFormat(StudyMetadata)}.
+ * Row keys are decoded with the row key format of the factory, so it must match the format of the study.
+ *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
 public class ArchiveRowKeyFactory {
 
     public static final char SEPARATOR = '_';
+    public static final int STRING_ROW_KEY_FORMAT = 1;
+    public static final int BINARY_ROW_KEY_FORMAT = 2;
+    /** Configuration key with the row key format of the study being processed. Required to build the factory from a configuration. **/
+    public static final String ROW_KEY_FORMAT = "opencga.archive.table.rowKeyFormat";
+
+    // Chromosomes with a code in the binary row key format. Do not modify the order!
+    private static final String[] CHROMOSOMES = {"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15",
+            "16", "17", "18", "19", "20", "21", "22", "X", "Y", "MT", "M", };
+    private static final byte[][] CHROMOSOMES_BYTES;
+    private static final Map<String, Short> CHROMOSOME_CODES;
+    private static final short OTHER_CHROMOSOME_CODE = (short) 0xFFFF;
+
+    private static final int FILE_BATCH_LENGTH = Bytes.SIZEOF_INT;
+    private static final int CHROMOSOME_CODE_LENGTH = Bytes.SIZEOF_SHORT;
+    private static final int SLICE_LENGTH = Bytes.SIZEOF_LONG;
+    private static final int BINARY_ROW_KEY_LENGTH = FILE_BATCH_LENGTH + CHROMOSOME_CODE_LENGTH + SLICE_LENGTH;
+
+    static {
+        CHROMOSOMES_BYTES = new byte[CHROMOSOMES.length][];
+        CHROMOSOME_CODES = new HashMap<>();
+        for (int i = 0; i < CHROMOSOMES.length; i++) {
+            CHROMOSOMES_BYTES[i] = Bytes.toBytes(CHROMOSOMES[i]);
+            CHROMOSOME_CODES.put(CHROMOSOMES[i], (short) (i + 1));
+        }
+    }
+
     private final long chunkSize;
     private final int fileBatchSize;
+    private final int rowKeyFormat;
 
     private static final int FILE_BATCH_IDX = 0;
     private static final int CHROMOSOME_IDX = 1;
@@ -46,30 +85,81 @@ public class ArchiveRowKeyFactory {
     private static final int FILE_BATCH_PAD = 5;
     private static final int POSITION_PAD = 12;
 
+    /**
+     * Create a row key factory from the configuration of a job.
+     *
+     * @param conf Configuration with the row key format of the study. See {@link #setRowKeyFormat(Configuration, StudyMetadata)}
+     * @throws IllegalArgumentException if the row key format is missing
+     */
     public ArchiveRowKeyFactory(Configuration conf) {
         this(conf.getInt(ARCHIVE_CHUNK_SIZE.key(), ARCHIVE_CHUNK_SIZE.defaultValue()),
-                conf.getInt(ARCHIVE_FILE_BATCH_SIZE.key(), ARCHIVE_FILE_BATCH_SIZE.defaultValue()));
+                conf.getInt(ARCHIVE_FILE_BATCH_SIZE.key(), ARCHIVE_FILE_BATCH_SIZE.defaultValue()),
+                checkRowKeyFormat(conf.get(ROW_KEY_FORMAT)));
+    }
+
+    public ArchiveRowKeyFactory(Configuration conf, StudyMetadata studyMetadata) {
+        this(conf.getInt(ARCHIVE_CHUNK_SIZE.key(), ARCHIVE_CHUNK_SIZE.defaultValue()),
+                conf.getInt(ARCHIVE_FILE_BATCH_SIZE.key(), ARCHIVE_FILE_BATCH_SIZE.defaultValue()),
+                getRowKeyFormat(studyMetadata));
     }
 
+    /**
+     * Create a row key factory from the options of a pipeline.
+     *
+     * @param conf Options with the row key format of the study
+     * @throws IllegalArgumentException if the row key format is missing
+     */
     public ArchiveRowKeyFactory(ObjectMap conf) {
         this(conf.getInt(ARCHIVE_CHUNK_SIZE.key(), ARCHIVE_CHUNK_SIZE.defaultValue()),
-                conf.getInt(ARCHIVE_FILE_BATCH_SIZE.key(), ARCHIVE_FILE_BATCH_SIZE.defaultValue()));
+                conf.getInt(ARCHIVE_FILE_BATCH_SIZE.key(), ARCHIVE_FILE_BATCH_SIZE.defaultValue()),
+                checkRowKeyFormat(conf.getString(ROW_KEY_FORMAT)));
+    }
+
+    public ArchiveRowKeyFactory(int chunkSize, int fileBatchSize) {
+        this(chunkSize, fileBatchSize, STRING_ROW_KEY_FORMAT);
     }
 
-    private ArchiveRowKeyFactory(long chunkSize, int fileBatchSize) {
+    public ArchiveRowKeyFactory(int chunkSize, int fileBatchSize, int rowKeyFormat) {
         this.chunkSize = chunkSize;
         this.fileBatchSize = fileBatchSize;
+        this.rowKeyFormat = rowKeyFormat;
         if (chunkSize <= 0) {
             throw new IllegalArgumentException("Invalid " + ARCHIVE_CHUNK_SIZE.key() + " = " + chunkSize);
         }
         if (fileBatchSize <= 0) {
             throw new IllegalArgumentException("Invalid " + ARCHIVE_FILE_BATCH_SIZE.key() + " = " + fileBatchSize);
         }
+        if (rowKeyFormat != STRING_ROW_KEY_FORMAT && rowKeyFormat != BINARY_ROW_KEY_FORMAT) {
+            throw new IllegalArgumentException("Unknown archive row key format " + rowKeyFormat);
+        }
     }
 
-    public ArchiveRowKeyFactory(int chunkSize, int fileBatchSize) {
-        this.chunkSize = chunkSize;
-        this.fileBatchSize = fileBatchSize;
+    /**
+     * Get the archive row key format of a study.
+     * Studies without this attribute were loaded before the binary format, and use the string format.
+     *
+     * @param studyMetadata StudyMetadata
+     * @return Row key format
+     */
+    public static int getRowKeyFormat(StudyMetadata studyMetadata) {
+        return studyMetadata.getAttributes().getInt(ARCHIVE_ROW_KEY_FORMAT.key(), STRING_ROW_KEY_FORMAT);
+    }
+
+    private static int checkRowKeyFormat(String rowKeyFormat) {
+        if (StringUtils.isEmpty(rowKeyFormat)) {
+            // Never assume a default format. Reading a binary table with string row keys would return wrong results.
+            throw new IllegalArgumentException("Missing archive row key format '" + ROW_KEY_FORMAT + "'. "
+                    + "Read the row key format from the StudyMetadata");
+        }
+        return Integer.parseInt(rowKeyFormat);
+    }
+
+    public static void setRowKeyFormat(Configuration conf, StudyMetadata studyMetadata) {
+        conf.setInt(ROW_KEY_FORMAT, getRowKeyFormat(studyMetadata));
+    }
+
+    public int getRowKeyFormat() {
+        return rowKeyFormat;
     }
 
     public long getChunkSize() {
@@ -100,6 +190,10 @@ public class ArchiveRowKeyFactory {
         return generateBlockIdFromSlice(fileId, variant.getChromosome(), getSliceId(variant.getStart()));
     }
 
+    public byte[] generateBlockIdAsBytes(Variant variant, int fileId) {
+        return generateBlockIdFromSliceAsBytes(fileId, variant.getChromosome(), getSliceId(variant.getStart()));
+    }
+
     /**
      * Generates a Row key based on Chromosome and position adjusted for the
      * Chunk size. <br>
@@ -136,7 +230,7 @@ public class ArchiveRowKeyFactory {
     }
 
     /**
-     * Changes the String from {@link #generateBlockId(int, String, long)} to bytes.
+     * Generates the row key of the given position, using the row key format of this factory.
      *
      * @param fileId File id
      * @param chrom  Chromosome
@@ -144,7 +238,134 @@ public class ArchiveRowKeyFactory {
      * @return {@link Byte} array
      */
     public byte[] generateBlockIdAsBytes(int fileId, String chrom, int start) {
-        return Bytes.toBytes(generateBlockId(fileId, chrom, start));
+        return generateBlockIdFromSliceAndBatchAsBytes(getFileBatch(fileId), chrom, getSliceId(start));
+    }
+
+    public byte[] generateBlockIdFromSliceAsBytes(int fileId, String chrom, long slice) {
+        return generateBlockIdFromSliceAndBatchAsBytes(getFileBatch(fileId), chrom, slice);
+    }
+
+    public byte[] generateBlockIdFromSliceAndBatchAsBytes(int fileBatch, String chrom, long slice) {
+        if (rowKeyFormat == STRING_ROW_KEY_FORMAT) {
+            return Bytes.toBytes(generateBlockIdFromSliceAndBatch(fileBatch, chrom, slice));
+        }
+        String chromosome = Region.normalizeChromosome(chrom);
+        Short chromosomeCode = CHROMOSOME_CODES.get(chromosome);
+        byte[] rowKey;
+        if (chromosomeCode != null) {
+            rowKey = new byte[BINARY_ROW_KEY_LENGTH];
+            Bytes.putShort(rowKey, FILE_BATCH_LENGTH, chromosomeCode);
+        } else {
+            // Chromosome name followed by a 0 byte, so the row keys of one chromosome are never mixed with others
+            byte[] chromosomeBytes = Bytes.toBytes(chromosome);
+            rowKey = new byte[BINARY_ROW_KEY_LENGTH + chromosomeBytes.length + 1];
+            Bytes.putShort(rowKey, FILE_BATCH_LENGTH, OTHER_CHROMOSOME_CODE);
+            Bytes.putBytes(rowKey, FILE_BATCH_LENGTH + CHROMOSOME_CODE_LENGTH, chromosomeBytes, 0, chromosomeBytes.length);
+        }
+        Bytes.putInt(rowKey, 0, fileBatch);
+        Bytes.putLong(rowKey, rowKey.length - SLICE_LENGTH, slice);
+        return rowKey;
+    }
+
+    /**
+     * Extract the file batch from a row key. Does not allocate any object.
+     *
+     * @param rowKey Row key in the format of this factory
+     * @return File batch
+     */
+    public int extractFileBatchFromBlockId(byte[] rowKey) {
+        if (isBinaryRowKey()) {
+            return Bytes.toInt(rowKey, 0);
+        } else {
+            return (int) parsePositiveLong(rowKey, 0, indexOfSeparator(rowKey));
+        }
+    }
+
+    /**
+     * Extract the chromosome from a row key. Does not allocate any object for chromosomes with a code.
+     *
+     * @param rowKey Row key in the format of this factory
+     * @return Chromosome
+     */
+    public String extractChromosomeFromBlockId(byte[] rowKey) {
+        if (isBinaryRowKey()) {
+            int code = Bytes.toShort(rowKey, FILE_BATCH_LENGTH) & 0xFFFF;
+            if (code > 0 && code <= CHROMOSOMES.length) {
+                return CHROMOSOMES[code - 1];
+            } else {
+                int offset = FILE_BATCH_LENGTH + CHROMOSOME_CODE_LENGTH;
+                return Bytes.toString(rowKey, offset, rowKey.length - offset - 1 - SLICE_LENGTH);
+            }
+        } else {
+            int offset = indexOfSeparator(rowKey) + 1;
+            int length = lastIndexOfSeparator(rowKey) - offset;
+            for (int i = 0; i < CHROMOSOMES_BYTES.length; i++) {
+                byte[] chromosome = CHROMOSOMES_BYTES[i];
+                if (Bytes.equals(rowKey, offset, length, chromosome, 0, chromosome.length)) {
+                    return CHROMOSOMES[i];
+                }
+            }
+            return Bytes.toString(rowKey, offset, length);
+        }
+    }
+
+    /**
+     * Extract the slice from a row key. Does not allocate any object.
+     *
+     * @param rowKey Row key in the format of this factory
+     * @return Slice
+     */
+    public long extractSliceFromBlockId(byte[] rowKey) {
+        if (isBinaryRowKey()) {
+            return Bytes.toLong(rowKey, rowKey.length - SLICE_LENGTH);
+        } else {
+            return parsePositiveLong(rowKey, lastIndexOfSeparator(rowKey) + 1, rowKey.length);
+        }
+    }
+
+    public long extractPositionFromBlockId(byte[] rowKey) {
+        return extractSliceFromBlockId(rowKey) * getChunkSize();
+    }
+
+    public Region extractRegionFromBlockId(byte[] rowKey) {
+        long position = extractPositionFromBlockId(rowKey);
+        return new Region(extractChromosomeFromBlockId(rowKey), (int) position, (int) (position + getChunkSize()));
+    }
+
+    private boolean isBinaryRowKey() {
+        return rowKeyFormat == BINARY_ROW_KEY_FORMAT;
+    }
+
+    private static int indexOfSeparator(byte[] rowKey) {
+        for (int i = 0; i < rowKey.length; i++) {
+            if (rowKey[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Block ID is not valid - separator `" + SEPARATOR + "` not found; value `"
+                + Bytes.toStringBinary(rowKey) + "`");
+    }
+
+    private static int lastIndexOfSeparator(byte[] rowKey) {
+        for (int i = rowKey.length - 1; i >= 0; i--) {
+            if (rowKey[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Block ID is not valid - separator `" + SEPARATOR + "` not found; value `"
+                + Bytes.toStringBinary(rowKey) + "`");
+    }
+
+    private static long parsePositiveLong(byte[] bytes, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number '" + Bytes.toString(bytes, from, to - from) + "'");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
     }
 
     public int extractFileBatchFromBlockId(String blockId) {
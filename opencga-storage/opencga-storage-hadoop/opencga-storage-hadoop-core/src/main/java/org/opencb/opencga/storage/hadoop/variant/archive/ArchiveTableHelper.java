@@ -30,6 +30,7 @@ import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.biodata.models.variant.protobuf.VcfSliceProtos.VcfSlice;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
 import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
 import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
 import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine;
@@ -93,6 +94,15 @@ public class ArchiveTableHelper extends GenomeHelper {
         keyFactory = new ArchiveRowKeyFactory(helper.getConf());
     }
 
+    public ArchiveTableHelper(GenomeHelper helper, StudyMetadata studyMetadata, VariantFileMetadata meta) {
+        super(helper, studyMetadata.getId());
+        this.meta.set(meta);
+        fileId = Integer.valueOf(meta.getId());
+        nonRefColumn = Bytes.toBytes(getNonRefColumnName(meta));
+        refColumn = Bytes.toBytes(getRefColumnName(meta));
+        keyFactory = new ArchiveRowKeyFactory(helper.getConf(), studyMetadata);
+    }
+
     public ArchiveTableHelper(Configuration conf, int studyId, VariantFileMetadata meta) {
         super(conf, studyId);
         this.meta.set(meta);
@@ -228,7 +238,7 @@ public class ArchiveTableHelper extends GenomeHelper {
             int finalBatch = batch;
             preSplits.addAll(generateBootPreSplitsHuman(nSplits, (chr, position) -> {
                 long slice = rowKeyFactory.getSliceId(position);
-                return Bytes.toBytes(rowKeyFactory.generateBlockIdFromSliceAndBatch(finalBatch, chr, slice));
+                return rowKeyFactory.generateBlockIdFromSliceAndBatchAsBytes(finalBatch, chr, slice);
             }));
         }
         return preSplits;
@@ -50,7 +50,6 @@ import java.sql.SQLException;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.SEARCH_INDEX_LAST_TIMESTAMP;
 import static org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixKeyFactory.extractVariantFromResultSet;
 import static org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixKeyFactory.extractVariantFromVariantRowKey;
 
@@ -73,7 +72,7 @@ public abstract class HBaseToVariantConverter<T> implements Converter<T, Variant
     }
 
     public HBaseToVariantConverter(VariantStorageMetadataManager scm) {
-        long ts = scm.getProjectMetadata().getAttributes().getLong(SEARCH_INDEX_LAST_TIMESTAMP.key());
+        long ts = scm.getProjectMetadata().getSecondaryIndexCheckpoint().getTimestamp();
         this.annotationConverter = new HBaseToVariantAnnotationConverter(ts)
                 .setAnnotationIds(scm.getProjectMetadata().getAnnotation());
         HBaseToVariantStatsConverter statsConverter = new HBaseToVariantStatsConverter();
@@ -75,6 +75,9 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
 
     // Cached ids and stuff
     private final Map<Integer, LinkedHashMap<String, Integer>> returnedSamplesPositionMap = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<Integer, Integer>> returnedSampleIdPositionMap = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> returnedSampleIdsByPositionMap = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> returnedFileIds = new ConcurrentHashMap<>();
     private final Map<Pair<Integer, Integer>, List<Boolean>> missingUpdatedSamplesMap = new ConcurrentHashMap<>();
     private final Map<Integer, Set<Integer>> returnedSampleIds = new ConcurrentHashMap<>();
     private final Map<String, List<String>> samplesFromFileMap = new ConcurrentHashMap<>();
@@ -83,6 +86,8 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
     private final Map<Integer, Set<Integer>> filesFromReturnedSamples = new ConcurrentHashMap<>();
     private final Map<Integer, List<String>> fixedFormatsMap = new ConcurrentHashMap<>();
     private Map<Integer, List<String>> expectedFormatPerStudy = new ConcurrentHashMap<>();
+    // Buffers reused by all the rows converted from the same thread.
+    private final ThreadLocal<RowBuffer> rowBuffer = ThreadLocal.withInitial(RowBuffer::new);
 
     private final Logger logger = LoggerFactory.getLogger(HBaseToStudyEntryConverter.class);
     private HBaseVariantConverterConfiguration configuration;
@@ -125,19 +130,42 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
         return convert(new VariantRow(resultSet));
     }
 
+    /**
+     * Convert a variant row into one StudyEntry per study.
+     *
+     * Sample and file columns are not decoded while walking the row. Columns from samples out of the projection are skipped,
+     * and file columns out of the projection only read the secondary alternates.
+     *
+     * @param row   Variant row
+     * @return      StudyEntry for each study
+     */
     public Map<Integer, StudyEntry> convert(VariantRow row) {
-        Set<Integer> studies = new HashSet<>();
-        Map<Integer, Integer> fillMissing = new HashMap<>();
-        Map<Integer, List<VariantRow.SampleColumn>> sampleDataMap = new HashMap<>();
-        Map<Integer, List<Pair<String, PhoenixArray>>> filesMap = new HashMap<>();
-        Map<Integer, List<VariantStats>> stats = new HashMap<>();
-        Map<Integer, List<VariantScore>> scores = new HashMap<>();
+        RowBuffer buffer = rowBuffer.get();
+        try {
+            return convert(row, buffer);
+        } finally {
+            // Do not retain the cells from this row
+            buffer.clear();
+        }
+    }
+
+    private Map<Integer, StudyEntry> convert(VariantRow row, RowBuffer buffer) {
+        Set<Integer> studies = buffer.studies;
+        Map<Integer, Integer> fillMissing = buffer.fillMissing;
+        Map<Integer, List<VariantRow.SampleColumn>> sampleDataMap = buffer.samples;
+        Map<Integer, List<VariantRow.FileColumn>> filesMap = buffer.files;
+        Map<Integer, List<VariantStats>> stats = buffer.stats;
+        Map<Integer, List<VariantScore>> scores = buffer.scores;
 
         Variant variant = row.walker()
                 .onStudy(studies::add)
                 .onFillMissing(fillMissing::put)
                 .onSample(sampleColumn -> {
                     studies.add(sampleColumn.getStudyId());
+                    if (!getReturnedSamplePositions(sampleColumn.getStudyId()).containsKey(sampleColumn.getSampleId())) {
+                        // Skip samples not in the projection
+                        return;
+                    }
                     List<Integer> multiFiles = getMultiFiles(sampleColumn);
                     if (!multiFiles.isEmpty()) {
                         if (sampleColumn.getFileId() == null) {
@@ -157,7 +185,7 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
                 .onFile(fileColumn -> {
                     studies.add(fileColumn.getStudyId());
                     filesMap.computeIfAbsent(fileColumn.getStudyId(), s -> new ArrayList<>())
-                            .add(Pair.of(String.valueOf(fileColumn.getFileId()), fileColumn.raw()));
+                            .add(fileColumn);
                 })
                 .onCohortStats(statsColumn -> {
                     studies.add(statsColumn.getStudyId());
@@ -194,7 +222,7 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
             int fillMissingColumnValue = fillMissing.getOrDefault(studyId, -1);
             StudyMetadata studyMetadata = getStudyMetadata(studyId);
             List<VariantRow.SampleColumn> samplesData = sampleDataMap.getOrDefault(studyId, Collections.emptyList());
-            List<Pair<String, PhoenixArray>> files = filesMap.getOrDefault(studyId, Collections.emptyList());
+            List<VariantRow.FileColumn> files = filesMap.getOrDefault(studyId, Collections.emptyList());
 
             StudyEntry studyEntry = convert(samplesData, files, variant, studyMetadata, fillMissingColumnValue);
             studyEntry.setScores(scores.getOrDefault(studyId, Collections.emptyList()));
@@ -224,11 +252,15 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
     public StudyEntry convert(List<VariantRow.SampleColumn> sampleDataMap,
                                  List<Pair<String, PhoenixArray>> filesMap,
                                  Variant variant, Integer studyId) {
-        return convert(sampleDataMap, filesMap, variant, getStudyMetadata(studyId), -1);
+        List<VariantRow.FileColumn> fileColumns = new ArrayList<>(filesMap.size());
+        for (Pair<String, PhoenixArray> pair : filesMap) {
+            fileColumns.add(new PhoenixArrayFileColumn(studyId, Integer.parseInt(pair.getKey()), pair.getValue()));
+        }
+        return convert(sampleDataMap, fileColumns, variant, getStudyMetadata(studyId), -1);
     }
 
     protected StudyEntry convert(List<VariantRow.SampleColumn> sampleDataMap,
-                                 List<Pair<String, PhoenixArray>> filesMap,
+                                 List<VariantRow.FileColumn> filesMap,
                                  Variant variant, StudyMetadata studyMetadata, int fillMissingColumnValue) {
         List<String> fixedSampleDataKeys = getFixedSampleDataKeys(studyMetadata);
         StudyEntry studyEntry = newStudyEntry(studyMetadata, fixedSampleDataKeys);
@@ -240,10 +272,8 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
         }
 
         Map<String, List<String>> alternateFileMap = new HashMap<>();
-        for (Pair<String, PhoenixArray> pair : filesMap) {
-            String fileId = pair.getKey();
-            PhoenixArray fileColumn = pair.getValue();
-            addFileEntry(studyMetadata, variant, studyEntry, fileId, fileColumn, alternateFileMap);
+        for (VariantRow.FileColumn fileColumn : filesMap) {
+            addFileEntry(studyMetadata, variant, studyEntry, fileColumn, alternateFileMap);
         }
         addSecondaryAlternates(variant, studyEntry, studyMetadata, alternateFileMap);
 
@@ -301,6 +331,12 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
     protected void addMainSampleDataColumn(StudyMetadata studyMetadata, StudyEntry studyEntry,
                                            int[] sampleDataKeysMap, VariantRow.SampleColumn sampleColumn) {
         int sampleId = sampleColumn.getSampleId();
+        Integer samplePosition = getReturnedSamplePositions(studyMetadata.getId()).get(sampleId);
+        if (samplePosition == null) {
+            logger.warn("Sample {} ({}) not found in sample positions map : {}", getSampleName(studyMetadata.getId(), sampleId),
+                    sampleId, studyEntry.getSamplesPosition());
+            return;
+        }
         List<String> sampleData = remapSamplesData(sampleColumn.getMutableSampleData(), sampleDataKeysMap);
         Integer gtIdx = studyEntry.getSampleDataKeyPosition("GT");
         // Replace UNKNOWN_GENOTYPE, if any
@@ -313,12 +349,6 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
             }
         }
 
-        String sampleName = getSampleName(studyMetadata.getId(), sampleId);
-        Integer samplePosition = studyEntry.getSamplesPosition().get(sampleName);
-        if (samplePosition == null) {
-            logger.warn("Sample {} ({}) not found in sample positions map : {}", sampleName, sampleId, studyEntry.getSamplesPosition());
-            return;
-        }
         SampleEntry sampleEntry = new SampleEntry(null, sampleColumn.getFileId(), sampleData);
         SampleEntry oldSampleEntry = studyEntry.getSamples().set(samplePosition, sampleEntry);
         if (oldSampleEntry != null) {
@@ -337,7 +367,7 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
                 Integer fileId = getFileIdFromMultiFileSample(sampleColumn.getStudyId(), sampleColumn.getSampleId());
                 oldSampleEntry.setFileIndex(fileId);
             }
-            oldSampleEntry.setSampleId(sampleName);
+            oldSampleEntry.setSampleId(getSampleName(studyMetadata.getId(), sampleId));
             studyEntry.getIssues().add(new IssueEntry(IssueType.DISCREPANCY, oldSampleEntry, Collections.emptyMap()));
         }
     }
@@ -386,19 +416,17 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
         }
     }
 
-    private void addFileEntry(StudyMetadata studyMetadata, Variant variant, StudyEntry studyEntry, String fileIdStr,
-                              PhoenixArray fileColumn, Map<String, List<String>> alternateFileMap) {
-        int fileId = Integer.parseInt(fileIdStr);
-        String alternateRaw = (String) (fileColumn.getElement(FILE_SEC_ALTS_IDX));
+    private void addFileEntry(StudyMetadata studyMetadata, Variant variant, StudyEntry studyEntry,
+                              VariantRow.FileColumn file, Map<String, List<String>> alternateFileMap) {
+        int fileId = file.getFileId();
+        String alternateRaw = file.getString(FILE_SEC_ALTS_IDX);
         String alternate = normalizeNonRefAlternateCoordinate(variant, alternateRaw);
         String fileName = getFileName(studyMetadata.getId(), fileId);
 
         // Add all combinations of secondary alternates, even the combination of "none secondary alternates", i.e. empty string
         alternateFileMap.computeIfAbsent(alternate, (key) -> new ArrayList<>()).add(fileName);
-        String call = (String) (fileColumn.getElement(FILE_CALL_IDX));
 
-        if (configuration.getProjection() != null
-                && !configuration.getProjection().getStudy(studyMetadata.getId()).getFiles().contains(fileId)) {
+        if (configuration.getProjection() != null && !getReturnedFileIds(studyMetadata.getId()).contains(fileId)) {
             // TODO: Should we return the original CALL?
 //            if (call != null && !call.isEmpty()) {
 //                studyEntry.getFiles().add(new FileEntry(fileName, call, Collections.emptyMap()));
@@ -406,6 +434,9 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
             return;
         }
 
+        // Decode the whole column only for the returned files
+        PhoenixArray fileColumn = file.raw();
+        String call = (String) (fileColumn.getElement(FILE_CALL_IDX));
         List<String> fixedAttributes = HBaseToVariantConverter.getFixedAttributes(studyMetadata);
         HashMap<String, String> attributes = convertFileAttributes(fileColumn, fixedAttributes);
         OriginalCall originalCall = null;
@@ -428,7 +459,9 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
     }
 
     public static HashMap<String, String> convertFileAttributes(PhoenixArray fileColumn, List<String> fixedAttributes) {
-        HashMap<String, String> attributes = new HashMap<>(fileColumn.getDimensions() - 1);
+        // Size the map to hold QUAL, FILTER and all the INFO fields without rehashing
+        int maxAttributes = fileColumn.getDimensions() - FILE_QUAL_IDX;
+        HashMap<String, String> attributes = new HashMap<>((int) (maxAttributes / 0.75f) + 1);
         String qual = (String) (fileColumn.getElement(FILE_QUAL_IDX));
         if (qual != null) {
             attributes.put(StudyEntry.QUAL, qual);
@@ -503,6 +536,7 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
             fileIdToFileIdxMap = Collections.emptyMap();
             multiFileSample = Collections.emptySet();
         }
+        int[] sampleIdsByPosition = getReturnedSampleIdsByPosition(studyMetadata.getId());
         int sampleIdx = 0;
         List<SampleEntry> samplesData = studyEntry.getSamples();
         for (Iterator<String> iterator = studyEntry.getSamplesPosition().keySet().iterator(); iterator.hasNext(); sampleIdx++) {
@@ -537,7 +571,7 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
                     // If fileIndex is preset at this point, it is actually the fileId
                     sampleEntry.setFileIndex(fileIdToFileIdxMap.get(sampleEntry.getFileIndex()));
                 } else if (!sampleIdTofileIdxMap.isEmpty()) {
-                    Integer sampleId = metadataManager.getSampleId(studyMetadata.getId(), sampleName);
+                    Integer sampleId = sampleIdsByPosition[sampleIdx];
                     if (multiFileSample.contains(sampleId)) {
                         // If is a multiFileSample, and the fileIndex is not defined, it was the first file from that sample
                         // Then, read the first file from this sample
@@ -974,6 +1008,50 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
         });
     }
 
+    /**
+     * Index the position of each returned sample by sample id. Computed once per study.
+     *
+     * @param studyId Study id
+     * @return Map from sample id to sample position
+     */
+    private Map<Integer, Integer> getReturnedSamplePositions(int studyId) {
+        Map<Integer, Integer> map = returnedSampleIdPositionMap.get(studyId);
+        if (map != null) {
+            return map;
+        }
+        return returnedSampleIdPositionMap.computeIfAbsent(studyId, id -> {
+            LinkedHashMap<String, Integer> samplesPosition = getReturnedSamplesPosition(getStudyMetadata(id));
+            Map<Integer, Integer> positions = new HashMap<>((int) (samplesPosition.size() / 0.75f) + 1);
+            for (Map.Entry<String, Integer> entry : samplesPosition.entrySet()) {
+                positions.put(metadataManager.getSampleId(id, entry.getKey()), entry.getValue());
+            }
+            return positions;
+        });
+    }
+
+    private int[] getReturnedSampleIdsByPosition(int studyId) {
+        int[] sampleIds = returnedSampleIdsByPositionMap.get(studyId);
+        if (sampleIds != null) {
+            return sampleIds;
+        }
+        return returnedSampleIdsByPositionMap.computeIfAbsent(studyId, id -> {
+            Map<Integer, Integer> positions = getReturnedSamplePositions(id);
+            int[] array = new int[positions.size()];
+            for (Map.Entry<Integer, Integer> entry : positions.entrySet()) {
+                array[entry.getValue()] = entry.getKey();
+            }
+            return array;
+        });
+    }
+
+    private Set<Integer> getReturnedFileIds(int studyId) {
+        Set<Integer> set = returnedFileIds.get(studyId);
+        if (set != null) {
+            return set;
+        }
+        return returnedFileIds.computeIfAbsent(studyId, id -> new HashSet<>(configuration.getProjection().getStudy(id).getFiles()));
+    }
+
     private Set<Integer> getReturnedSampleIds(int studyId) {
         Set<Integer> set = returnedSampleIds.get(studyId);
         if (set != null) {
@@ -1090,4 +1168,57 @@ public class HBaseToStudyEntryConverter extends AbstractPhoenixConverter {
             return sampleColumnWithoutFile.getSampleData(idx);
         }
     }
+
+    private static class PhoenixArrayFileColumn implements VariantRow.FileColumn {
+        private final int studyId;
+        private final int fileId;
+        private final PhoenixArray array;
+
+        PhoenixArrayFileColumn(int studyId, int fileId, PhoenixArray array) {
+            this.studyId = studyId;
+            this.fileId = fileId;
+            this.array = array;
+        }
+
+        @Override
+        public int getStudyId() {
+            return studyId;
+        }
+
+        @Override
+        public int getFileId() {
+            return fileId;
+        }
+
+        @Override
+        public PhoenixArray raw() {
+            return array;
+        }
+
+        @Override
+        public String getString(int idx) {
+            return (String) array.getElement(idx);
+        }
+    }
+
+    /**
+     * Per-row buffers. Only the maps are reused. Lists that end up in the StudyEntry are created for each row.
+     */
+    private static final class RowBuffer {
+        private final Set<Integer> studies = new HashSet<>();
+        private final Map<Integer, Integer> fillMissing = new HashMap<>();
+        private final Map<Integer, List<VariantRow.SampleColumn>> samples = new HashMap<>();
+        private final Map<Integer, List<VariantRow.FileColumn>> files = new HashMap<>();
+        private final Map<Integer, List<VariantStats>> stats = new HashMap<>();
+        private final Map<Integer, List<VariantScore>> scores = new HashMap<>();
+
+        private void clear() {
+            studies.clear();
+            fillMissing.clear();
+            samples.values().forEach(List::clear);
+            files.values().forEach(List::clear);
+            stats.clear();
+            scores.clear();
+        }
+    }
 }
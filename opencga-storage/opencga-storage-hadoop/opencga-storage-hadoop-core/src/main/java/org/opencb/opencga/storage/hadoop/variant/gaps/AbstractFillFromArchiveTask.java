@@ -113,7 +113,7 @@ public abstract class AbstractFillFromArchiveTask implements Task<Result, Abstra
         }
 
         fillGapsTask = new FillGapsTask(studyMetadata, helper, skipReferenceVariants, simplifiedNewMultiAllelicVariants, metadataManager);
-        rowKeyFactory = new ArchiveRowKeyFactory(helper.getConf());
+        rowKeyFactory = new ArchiveRowKeyFactory(helper.getConf(), studyMetadata);
     }
 
     public void setQuiet(boolean quiet) {
@@ -234,10 +234,9 @@ public abstract class AbstractFillFromArchiveTask implements Task<Result, Abstra
         protected Context(Result result) throws IOException {
             this.rowKey = result.getRow();
             this.result = result;
-            String blockId = Bytes.toString(rowKey);
-            region = rowKeyFactory.extractRegionFromBlockId(blockId);
+            region = rowKeyFactory.extractRegionFromBlockId(rowKey);
 
-            fileBatch = rowKeyFactory.extractFileBatchFromBlockId(blockId);
+            fileBatch = rowKeyFactory.extractFileBatchFromBlockId(rowKey);
             this.fileIdsInBatch = new TreeSet<>();
             for (Integer fileId : AbstractFillFromArchiveTask.this.fileIds) {
                 if (rowKeyFactory.getFileBatch(fileId) == fileBatch) {
@@ -245,7 +244,7 @@ public abstract class AbstractFillFromArchiveTask implements Task<Result, Abstra
                 }
             }
             if (fileIdsInBatch.isEmpty()) {
-                throw new IllegalStateException("Read data from RK " + blockId + " from file batch " + fileBatch
+                throw new IllegalStateException("Read data from RK " + Bytes.toStringBinary(rowKey) + " from file batch " + fileBatch
                         + " without any file from " + AbstractFillFromArchiveTask.this.fileIds);
             }
 
@@ -267,7 +266,7 @@ public abstract class AbstractFillFromArchiveTask implements Task<Result, Abstra
                 if (pair == null) {
                     if (fileBatch != rowKeyFactory.getFileBatch(fileId)) {
                         // This should never happen
-                        logger.warn("Skip VcfSlice for file " + fileId + " in RK " + Bytes.toString(rowKey));
+                        logger.warn("Skip VcfSlice for file " + fileId + " in RK " + Bytes.toStringBinary(rowKey));
                     }
                     vcfSliceNotFound(fileId);
                 }
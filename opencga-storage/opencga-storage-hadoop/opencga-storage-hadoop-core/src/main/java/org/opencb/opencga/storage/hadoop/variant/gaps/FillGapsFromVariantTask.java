@@ -60,7 +60,7 @@ public class FillGapsFromVariantTask implements Task<Variant, Put> {
         this.archiveTableName = archiveTableName;
         this.studyMetadata = studyMetadata;
         this.helper = helper;
-        archiveRowKeyFactory = new ArchiveRowKeyFactory(helper.getConf());
+        archiveRowKeyFactory = new ArchiveRowKeyFactory(helper.getConf(), studyMetadata);
         this.samples = samples;
         samplesFileMap = new HashMap<>();
         for (Integer sample : samples) {
@@ -143,7 +143,7 @@ public class FillGapsFromVariantTask implements Task<Variant, Put> {
         for (Integer missingSample : missingSamples) {
             fileIds.add(samplesFileMap.get(missingSample));
         }
-        Get get = new Get(Bytes.toBytes(archiveRowKeyFactory.generateBlockId(variant, anyFileId)));
+        Get get = new Get(archiveRowKeyFactory.generateBlockIdAsBytes(variant, anyFileId));
         for (Integer fileId : fileIds) {
             get.addColumn(GenomeHelper.COLUMN_FAMILY_BYTES, fileToNonRefColumnMap.get(fileId));
         }
@@ -4,6 +4,7 @@ import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.StopWatch;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.DataResult;
+import org.opencb.commons.datastore.core.Event;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
@@ -25,6 +26,8 @@ import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexQueryPa
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -75,7 +78,7 @@ public class SampleIndexVariantQueryExecutor extends AbstractTwoPhasedVariantQue
     @Override
     protected long primaryCount(Query query, QueryOptions options) {
         SampleIndexQuery sampleIndexQuery = sampleIndexDBAdaptor.parseSampleIndexQuery(query);
-        return sampleIndexDBAdaptor.count(sampleIndexQuery);
+        return sampleIndexDBAdaptor.count(sampleIndexQuery, options).first();
     }
 
     /**
@@ -122,13 +125,13 @@ public class SampleIndexVariantQueryExecutor extends AbstractTwoPhasedVariantQue
     }
 
     private Object getOrIteratorIntersect(SampleIndexQuery sampleIndexQuery, Query query, QueryOptions inputOptions, boolean iterator) {
-        Future<Long> asyncCountFuture;
+        Future<DataResult<Long>> asyncCountFuture;
         boolean asyncCount;
         if (shouldGetApproximateCount(inputOptions, iterator) && queryFiltersCovered(query)) {
             asyncCount = true;
             asyncCountFuture = THREAD_POOL.submit(() -> {
                 StopWatch stopWatch = StopWatch.createStarted();
-                long count = sampleIndexDBAdaptor.count(sampleIndexQuery);
+                DataResult<Long> count = sampleIndexDBAdaptor.count(sampleIndexQuery, inputOptions);
                 logger.info("Async count took " + TimeUtils.durationToString(stopWatch));
                 return count;
             });
@@ -146,14 +149,14 @@ public class SampleIndexVariantQueryExecutor extends AbstractTwoPhasedVariantQue
         int batchSize = inputOptions.getInt("multiIteratorBatchSize", 200);
         if (iterator) {
             // SampleIndex iterator will be closed when closing the variants iterator
-            return dbAdaptor.iterator(variants, query, inputOptions, batchSize);
+            return dbAdaptor.iterator(variants, query, multiIteratorOptions(inputOptions), batchSize);
         } else {
             int skip = getSkip(inputOptions);
             int limit = getLimit(inputOptions);
             int samplingSize = asyncCount ? 0 : getSamplingSize(inputOptions, DEFAULT_SAMPLING_SIZE, iterator);
             int tmpLimit = Math.max(limit, samplingSize);
 
-            QueryOptions options = new QueryOptions(inputOptions);
+            QueryOptions options = multiIteratorOptions(inputOptions);
             // Ensure results are sorted and it's not counting from variants dbAdaptor
             options.put(QueryOptions.SORT, true);
             options.put(QueryOptions.COUNT, false);
@@ -176,7 +179,14 @@ public class SampleIndexVariantQueryExecutor extends AbstractTwoPhasedVariantQue
             } else if (asyncCount) {
                 result.setApproximateCount(false);
                 try {
-                    result.setNumMatches(asyncCountFuture.get());
+                    DataResult<Long> countResult = asyncCountFuture.get();
+                    result.setNumMatches(countResult.first());
+                    List<Event> events = new ArrayList<>();
+                    if (result.getEvents() != null) {
+                        events.addAll(result.getEvents());
+                    }
+                    events.addAll(countResult.getEvents());
+                    result.setEvents(events);
                 } catch (InterruptedException | ExecutionException e) {
                     throw VariantQueryException.internalException(e);
                 }
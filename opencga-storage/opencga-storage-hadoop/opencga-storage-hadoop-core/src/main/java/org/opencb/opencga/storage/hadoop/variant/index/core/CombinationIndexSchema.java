@@ -77,9 +77,7 @@ public class CombinationIndexSchema /*extends DynamicIndexSchema*/ {
             int numA = Integer.bitCount(indexFieldValueA);
             int numB = Integer.bitCount(indexFieldValueB);
             int[] matrix = new int[numA];
-            for (int i = 0; i < numA; i++) {
-                matrix[i] = combinationIndex.readIntPartial(numB);
-            }
+            combinationIndex.readInts(matrix, 0, numA, numB);
             combination
                     .setNumA(numA)
                     .setNumB(numB)
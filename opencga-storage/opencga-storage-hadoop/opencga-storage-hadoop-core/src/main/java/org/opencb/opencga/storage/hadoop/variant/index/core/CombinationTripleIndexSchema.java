@@ -89,9 +89,7 @@ public class CombinationTripleIndexSchema /*extends DynamicIndexSchema*/ {
             int numZ = Integer.bitCount(indexFieldValueZ);
             int[][] matrix = new int[numX][numY];
             for (int x = 0; x < numX; x++) {
-                for (int y = 0; y < numY; y++) {
-                    matrix[x][y] = combinationIndex.readIntPartial(numZ);
-                }
+                combinationIndex.readInts(matrix[x], 0, numY, numZ);
             }
             combination
                     .setNumX(numX)
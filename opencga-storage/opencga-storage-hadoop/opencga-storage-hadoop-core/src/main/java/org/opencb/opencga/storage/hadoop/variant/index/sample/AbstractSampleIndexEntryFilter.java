@@ -377,6 +377,10 @@ public abstract class AbstractSampleIndexEntryFilter<T> {
     }
 
     private T filter(T v) {
+        if (regionsFilter == null && CollectionUtils.isEmpty(query.getVariantTypes())) {
+            // Nothing else to test. Do not convert to variant.
+            return v;
+        }
         Variant variant = toVariant(v);
         //Test region filter (if any)
         if (filterRegion(variant)) {
@@ -0,0 +1,42 @@
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SingleSampleIndexQuery;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Filters a SampleIndexEntry without decoding the variants, unless required to filter by region or type.
+ */
+public class EncodedSampleIndexEntryFilter extends AbstractSampleIndexEntryFilter<SampleIndexEncodedVariant> {
+
+    public EncodedSampleIndexEntryFilter(SingleSampleIndexQuery query) {
+        super(query);
+    }
+
+    public EncodedSampleIndexEntryFilter(SingleSampleIndexQuery query, List<Region> regions) {
+        super(query, regions);
+    }
+
+    @Override
+    protected SampleIndexEncodedVariant getNext(SampleIndexEntryIterator variants) {
+        return variants.nextEncodedVariant();
+    }
+
+    @Override
+    protected Variant toVariant(SampleIndexEncodedVariant v) {
+        return v.toVariant();
+    }
+
+    @Override
+    protected boolean sameGenomicVariant(SampleIndexEncodedVariant v1, SampleIndexEncodedVariant v2) {
+        return v1.equals(v2);
+    }
+
+    @Override
+    protected Comparator<SampleIndexEncodedVariant> getComparator() {
+        return Comparator.naturalOrder();
+    }
+}
@@ -0,0 +1,285 @@
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.QueryOperation;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SingleSampleIndexQuery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+
+/**
+ * Counts the variants of a multi-sample query without building the variants.
+ *
+ * Scans the sample index of all the samples at the same time. The rows of each sample are sorted by chromosome and batch,
+ * so the rows of the same batch can be aligned. The variants of each aligned row are filtered, still encoded, and
+ * combined with merge-joins. Intersection, and difference with the negated samples, for AND queries, or union for OR
+ * queries.
+ *
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class MultiSampleIndexCounter {
+
+    private static final int SAMPLE_ID_LENGTH = SampleIndexSchema.toRowKey(0).length;
+
+    private final SampleIndexDBAdaptor dbAdaptor;
+    private final SampleIndexSchema schema;
+    private final QueryOperation operation;
+
+    public MultiSampleIndexCounter(SampleIndexDBAdaptor dbAdaptor, SampleIndexSchema schema, QueryOperation operation) {
+        this.dbAdaptor = dbAdaptor;
+        this.schema = schema;
+        this.operation = operation;
+    }
+
+    /**
+     * Count the variants within a group of regions.
+     *
+     * @param table             Sample index table
+     * @param queries           Query for each sample
+     * @param negatedQueries    Query for each negated sample. Ignored for OR queries
+     * @param regions           Group of regions to count, or empty
+     * @return                  Number of variants
+     * @throws IOException      if there is an error reading from HBase
+     */
+    public long count(Table table, List<SingleSampleIndexQuery> queries, List<SingleSampleIndexQuery> negatedQueries,
+                      List<Region> regions) throws IOException {
+        List<BatchCursor> cursors = new ArrayList<>(queries.size());
+        List<BatchCursor> negatedCursors = new ArrayList<>(negatedQueries.size());
+        try {
+            for (SingleSampleIndexQuery query : queries) {
+                cursors.add(new BatchCursor(table, query, regions));
+            }
+            if (operation == QueryOperation.OR) {
+                return countUnion(cursors);
+            } else {
+                for (SingleSampleIndexQuery query : negatedQueries) {
+                    negatedCursors.add(new BatchCursor(table, query, regions));
+                }
+                return countIntersection(cursors, negatedCursors);
+            }
+        } finally {
+            for (BatchCursor cursor : cursors) {
+                cursor.close();
+            }
+            for (BatchCursor cursor : negatedCursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private long countIntersection(List<BatchCursor> cursors, List<BatchCursor> negatedCursors) throws IOException {
+        long count = 0;
+        while (true) {
+            // Align all the cursors to the last batch of any of them
+            byte[] row = null;
+            for (BatchCursor cursor : cursors) {
+                if (!cursor.hasNext()) {
+                    return count;
+                }
+                if (row == null || compareBatch(cursor.getRow(), row) > 0) {
+                    row = cursor.getRow();
+                }
+            }
+            boolean aligned = true;
+            for (BatchCursor cursor : cursors) {
+                cursor.skipTo(row);
+                if (!cursor.hasNext()) {
+                    return count;
+                }
+                aligned &= compareBatch(cursor.getRow(), row) == 0;
+            }
+            if (!aligned) {
+                continue;
+            }
+
+            List<SampleIndexEncodedVariant> variants = cursors.get(0).getVariants();
+            for (int i = 1; i < cursors.size() && !variants.isEmpty(); i++) {
+                variants = intersect(variants, cursors.get(i).getVariants());
+            }
+            for (BatchCursor negatedCursor : negatedCursors) {
+                if (variants.isEmpty()) {
+                    break;
+                }
+                negatedCursor.skipTo(row);
+                if (negatedCursor.hasNext() && compareBatch(negatedCursor.getRow(), row) == 0) {
+                    variants = subtract(variants, negatedCursor.getVariants());
+                }
+            }
+            count += variants.size();
+
+            for (BatchCursor cursor : cursors) {
+                cursor.next();
+            }
+        }
+    }
+
+    private long countUnion(List<BatchCursor> cursors) throws IOException {
+        long count = 0;
+        while (true) {
+            // Take the first batch of any of the cursors
+            byte[] row = null;
+            for (BatchCursor cursor : cursors) {
+                if (cursor.hasNext() && (row == null || compareBatch(cursor.getRow(), row) < 0)) {
+                    row = cursor.getRow();
+                }
+            }
+            if (row == null) {
+                return count;
+            }
+
+            List<SampleIndexEncodedVariant> variants = null;
+            for (BatchCursor cursor : cursors) {
+                if (cursor.hasNext() && compareBatch(cursor.getRow(), row) == 0) {
+                    variants = variants == null ? cursor.getVariants() : union(variants, cursor.getVariants());
+                    cursor.next();
+                }
+            }
+            count += variants.size();
+        }
+    }
+
+    /**
+     * Compare the chromosome and batch of two sample index row keys, ignoring the sample.
+     */
+    private static int compareBatch(byte[] row1, byte[] row2) {
+        return Bytes.compareTo(row1, SAMPLE_ID_LENGTH, row1.length - SAMPLE_ID_LENGTH,
+                row2, SAMPLE_ID_LENGTH, row2.length - SAMPLE_ID_LENGTH);
+    }
+
+    private static List<SampleIndexEncodedVariant> intersect(List<SampleIndexEncodedVariant> a, List<SampleIndexEncodedVariant> b) {
+        List<SampleIndexEncodedVariant> result = new ArrayList<>(Math.min(a.size(), b.size()));
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int c = a.get(i).compareTo(b.get(j));
+            if (c == 0) {
+                result.add(a.get(i));
+                i++;
+                j++;
+            } else if (c < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private static List<SampleIndexEncodedVariant> subtract(List<SampleIndexEncodedVariant> a, List<SampleIndexEncodedVariant> b) {
+        List<SampleIndexEncodedVariant> result = new ArrayList<>(a.size());
+        int j = 0;
+        for (SampleIndexEncodedVariant variant : a) {
+            while (j < b.size() && b.get(j).compareTo(variant) < 0) {
+                j++;
+            }
+            if (j == b.size() || b.get(j).compareTo(variant) != 0) {
+                result.add(variant);
+            }
+        }
+        return result;
+    }
+
+    private static List<SampleIndexEncodedVariant> union(List<SampleIndexEncodedVariant> a, List<SampleIndexEncodedVariant> b) {
+        List<SampleIndexEncodedVariant> result = new ArrayList<>(a.size() + b.size());
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            int c;
+            if (i == a.size()) {
+                c = 1;
+            } else if (j == b.size()) {
+                c = -1;
+            } else {
+                c = a.get(i).compareTo(b.get(j));
+            }
+            if (c <= 0) {
+                result.add(a.get(i));
+                i++;
+                if (c == 0) {
+                    j++;
+                }
+            } else {
+                result.add(b.get(j));
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the sample index rows of one sample.
+     */
+    private final class BatchCursor implements Closeable {
+        private final ResultScanner scanner;
+        private final HBaseToSampleIndexConverter converter;
+        private final EncodedSampleIndexEntryFilter filter;
+        private Result result;
+
+        BatchCursor(Table table, SingleSampleIndexQuery query, List<Region> regions) throws IOException {
+            converter = dbAdaptor.newConverter(schema);
+            if (regions == null || regions.size() == 1 && SampleIndexDBAdaptor.matchesWithBatch(regions.get(0))) {
+                filter = new EncodedSampleIndexEntryFilter(query, null);
+            } else {
+                filter = new EncodedSampleIndexEntryFilter(query, regions);
+            }
+            scanner = table.getScanner(dbAdaptor.parse(query, regions));
+            next();
+        }
+
+        boolean hasNext() {
+            return result != null;
+        }
+
+        byte[] getRow() {
+            return result.getRow();
+        }
+
+        void next() throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Sample index count interrupted");
+            }
+            result = scanner.next();
+        }
+
+        void skipTo(byte[] row) throws IOException {
+            while (result != null && compareBatch(result.getRow(), row) < 0) {
+                next();
+            }
+        }
+
+        /**
+         * @return Sorted list of the variants from the current row that pass the filter. Without duplicates.
+         */
+        List<SampleIndexEncodedVariant> getVariants() {
+            List<SampleIndexEncodedVariant> variants = new ArrayList<>(filter.filter(converter.convert(result)));
+            if (variants.size() > 1) {
+                // Variants from different genotypes are not sorted
+                variants.sort(null);
+                Iterator<SampleIndexEncodedVariant> iterator = variants.iterator();
+                SampleIndexEncodedVariant variant = iterator.next();
+                while (iterator.hasNext()) {
+                    SampleIndexEncodedVariant next = iterator.next();
+                    if (variant.compareTo(next) == 0) {
+                        iterator.remove();
+                    } else {
+                        variant = next;
+                    }
+                }
+            }
+            return variants;
+        }
+
+        @Override
+        public void close() {
+            scanner.close();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.exceptions.DeserializationException;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.core.common.JacksonUtils;
+import org.opencb.opencga.core.config.storage.SampleIndexConfiguration;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SampleAnnotationIndexQuery;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SampleIndexQuery;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SingleSampleIndexQuery;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * HBase filter that counts the variants of each sample index row within the region server.
+ *
+ * Each row is decoded and filtered with the {@link SampleIndexEntryFilter}, and all its cells are replaced by one
+ * single cell with the number of variants that passed the filter. Rows without variants are skipped.
+ * Only partial counts are sent back to the client, one per sample index row (i.e. per sample, chromosome and batch),
+ * and added up at the client.
+ *
+ * The filter is serialized with the scan, so only the filters that can be rebuilt from the {@link SampleIndexSchema} are
+ * supported. See {@link #getUnsupportedFilters}. Requires this class to be available at the region servers.
+ * Only counts are computed. Facet aggregations still read the sample index entries at the client.
+ *
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class SampleIndexCountFilter extends FilterBase {
+
+    static final byte[] COUNT_COLUMN = Bytes.toBytes(SampleIndexSchema.META_PREFIX + "FC");
+
+    private static final String CONFIGURATION = "configuration";
+    private static final String SAMPLE = "sample";
+    private static final String GENOTYPES = "genotypes";
+    private static final String REGIONS = "regions";
+    private static final String VARIANT_TYPES = "variantTypes";
+    private static final String MULTI_FILE_SAMPLE = "multiFileSample";
+    private static final String ANNOTATION_INDEX_MASK = "annotationIndexMask";
+    private static final String ANNOTATION_INDEX = "annotationIndex";
+    private static final String FATHER_FILTER = "fatherFilter";
+    private static final String MOTHER_FILTER = "motherFilter";
+
+    private final ObjectMap params;
+    private final HBaseToSampleIndexConverter converter;
+    private final SampleIndexEntryFilter filter;
+
+    public SampleIndexCountFilter(SingleSampleIndexQuery query, List<Region> regions) {
+        this(toParams(query, regions));
+    }
+
+    private SampleIndexCountFilter(ObjectMap params) {
+        this.params = params;
+        ObjectMapper objectMapper = JacksonUtils.getDefaultNonNullObjectMapper();
+        SampleIndexSchema schema = new SampleIndexSchema(
+                objectMapper.convertValue(params.get(CONFIGURATION), SampleIndexConfiguration.class));
+        String sample = params.getString(SAMPLE);
+
+        Set<VariantType> variantTypes = null;
+        if (params.containsKey(VARIANT_TYPES)) {
+            variantTypes = params.getAsStringList(VARIANT_TYPES).stream().map(VariantType::valueOf).collect(Collectors.toSet());
+        }
+        Map<String, boolean[]> fatherFilter = new HashMap<>();
+        if (params.containsKey(FATHER_FILTER)) {
+            fatherFilter.put(sample, objectMapper.convertValue(params.get(FATHER_FILTER), boolean[].class));
+        }
+        Map<String, boolean[]> motherFilter = new HashMap<>();
+        if (params.containsKey(MOTHER_FILTER)) {
+            motherFilter.put(sample, objectMapper.convertValue(params.get(MOTHER_FILTER), boolean[].class));
+        }
+        SampleAnnotationIndexQuery annotationIndexQuery = new SampleAnnotationIndexQuery(
+                new byte[]{(byte) params.getInt(ANNOTATION_INDEX_MASK), (byte) params.getInt(ANNOTATION_INDEX)},
+                schema.getCtIndex().getField().noOpFilter(),
+                schema.getBiotypeIndex().getField().noOpFilter(),
+                schema.getTranscriptFlagIndexSchema().getField().noOpFilter(),
+                schema.getCtBtTfIndex().getField().noOpFilter(),
+                schema.getClinicalIndexSchema().noOpFilter(),
+                schema.getPopFreqIndex().noOpFilter());
+        List<String> genotypes = params.getAsStringList(GENOTYPES);
+        SingleSampleIndexQuery query = new SampleIndexQuery(schema, null, variantTypes, null,
+                Collections.singletonMap(sample, genotypes),
+                params.getBoolean(MULTI_FILE_SAMPLE) ? Collections.singleton(sample) : Collections.emptySet(),
+                Collections.emptySet(), fatherFilter, motherFilter, Collections.emptyMap(), annotationIndexQuery,
+                Collections.emptySet(), false, null).forSample(sample, genotypes);
+
+        List<Region> regions = null;
+        if (params.containsKey(REGIONS)) {
+            regions = params.getAsStringList(REGIONS).stream().map(Region::new).collect(Collectors.toList());
+        }
+        converter = new HBaseToSampleIndexConverter(schema);
+        filter = new SampleIndexEntryFilter(query, regions);
+    }
+
+    /**
+     * Check if the query can be counted with this filter.
+     *
+     * Only genotype, region, variant type, annotation summary mask and parent filters are counted at the region servers.
+     * Consequence type, biotype, transcript flag, clinical, population frequency and file filters are built from the
+     * query and the study metadata, and can not be rebuilt from the {@link SampleIndexSchema} alone.
+     * Mendelian error filters require the parents' index. These queries are counted at the client.
+     *
+     * @param query Query
+     * @return      if the query is supported
+     */
+    public static boolean isSupported(SingleSampleIndexQuery query) {
+        return getUnsupportedFilters(query).isEmpty();
+    }
+
+    /**
+     * Get the filters from the query that can not be counted with this filter. See {@link #isSupported}.
+     *
+     * @param query Query
+     * @return      Names of the unsupported filters. Empty if the query is supported
+     */
+    public static List<String> getUnsupportedFilters(SingleSampleIndexQuery query) {
+        SampleAnnotationIndexQuery annotationIndexQuery = query.getAnnotationIndexQuery();
+        List<String> unsupportedFilters = new ArrayList<>();
+        if (query.getMendelianError()) {
+            unsupportedFilters.add("mendelianError");
+        }
+        if (!query.emptyFileIndex()) {
+            unsupportedFilters.add("file");
+        }
+        if (!annotationIndexQuery.getConsequenceTypeFilter().isNoOp()) {
+            unsupportedFilters.add("consequenceType");
+        }
+        if (!annotationIndexQuery.getBiotypeFilter().isNoOp()) {
+            unsupportedFilters.add("biotype");
+        }
+        if (!annotationIndexQuery.getTranscriptFlagFilter().isNoOp()) {
+            unsupportedFilters.add("transcriptFlag");
+        }
+        if (!annotationIndexQuery.getCtBtTfFilter().isNoOp()) {
+            unsupportedFilters.add("consequenceType+biotype+transcriptFlag");
+        }
+        if (!annotationIndexQuery.getClinicalFilter().isNoOp()) {
+            unsupportedFilters.add("clinical");
+        }
+        if (!annotationIndexQuery.getPopulationFrequencyFilter().isNoOp()) {
+            unsupportedFilters.add("populationFrequency");
+        }
+        return unsupportedFilters;
+    }
+
+    /**
+     * Read the count from a row returned by a scan using this filter.
+     *
+     * @param result    Row
+     * @return          Number of variants
+     */
+    public static int getCount(Result result) {
+        Cell cell = result.rawCells()[0];
+        return Bytes.toInt(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+    }
+
+    private static ObjectMap toParams(SingleSampleIndexQuery query, List<Region> regions) {
+        if (!isSupported(query)) {
+            throw new IllegalArgumentException("Unsupported query for " + SampleIndexCountFilter.class.getSimpleName());
+        }
+        ObjectMap params = new ObjectMap();
+        params.put(CONFIGURATION, query.getSchema().getConfiguration());
+        params.put(SAMPLE, query.getSample());
+        params.put(GENOTYPES, query.getGenotypes());
+        if (regions != null) {
+            params.put(REGIONS, regions.stream().map(Region::toString).collect(Collectors.toList()));
+        }
+        if (query.getVariantTypes() != null) {
+            params.put(VARIANT_TYPES, query.getVariantTypes().stream().map(VariantType::name).collect(Collectors.toList()));
+        }
+        params.put(MULTI_FILE_SAMPLE, query.isMultiFileSample());
+        params.put(ANNOTATION_INDEX_MASK, query.getAnnotationIndexMask());
+        params.put(ANNOTATION_INDEX, query.getAnnotationIndex());
+        if (query.hasFatherFilter()) {
+            params.put(FATHER_FILTER, query.getFatherFilter());
+        }
+        if (query.hasMotherFilter()) {
+            params.put(MOTHER_FILTER, query.getMotherFilter());
+        }
+        // Make sure that the parameters can be serialized
+        return JacksonUtils.getDefaultNonNullObjectMapper().convertValue(params, ObjectMap.class);
+    }
+
+    @Override
+    public ReturnCode filterKeyValue(Cell cell) {
+        return ReturnCode.INCLUDE;
+    }
+
+    @Override
+    public boolean hasFilterRow() {
+        return true;
+    }
+
+    @Override
+    public void filterRowCells(List<Cell> cells) throws IOException {
+        if (cells.isEmpty()) {
+            return;
+        }
+        Cell firstCell = cells.get(0);
+        int count = filter.filterAndCount(converter.convert(Result.create(cells)));
+        byte[] row = CellUtil.cloneRow(firstCell);
+        byte[] family = CellUtil.cloneFamily(firstCell);
+        cells.clear();
+        if (count > 0) {
+            cells.add(new KeyValue(row, family, COUNT_COLUMN, Bytes.toBytes(count)));
+        }
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        try {
+            return JacksonUtils.getDefaultNonNullObjectMapper().writeValueAsBytes(params);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deserialize the filter. Used by HBase to build the filter at the region servers.
+     *
+     * @param bytes Serialized filter, from {@link #toByteArray()}
+     * @return      Filter
+     * @throws DeserializationException if the filter can not be deserialized
+     */
+    public static SampleIndexCountFilter parseFrom(byte[] bytes) throws DeserializationException {
+        try {
+            return new SampleIndexCountFilter(JacksonUtils.getDefaultNonNullObjectMapper().readValue(bytes, ObjectMap.class));
+        } catch (IOException | RuntimeException e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + params.toJson();
+    }
+}
@@ -3,6 +3,9 @@ package org.opencb.opencga.storage.hadoop.variant.index.sample;
 import com.google.common.collect.Iterators;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -10,8 +13,11 @@ import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.DataResult;
+import org.opencb.commons.datastore.core.Event;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.core.common.TimeUtils;
 import org.opencb.opencga.core.config.storage.SampleIndexConfiguration;
 import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
 import org.opencb.opencga.storage.core.metadata.models.SampleMetadata;
@@ -43,9 +49,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
+import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions.SAMPLE_INDEX_QUERY_SERVER_SIDE_COUNT;
 import static org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantSqlQueryParser.DEFAULT_LOADED_GENOTYPES;
 import static org.opencb.opencga.storage.hadoop.variant.index.IndexUtils.EMPTY_MASK;
 
@@ -70,6 +79,29 @@ public class SampleIndexDBAdaptor implements VariantIterable {
     private final byte[] family;
     private static Logger logger = LoggerFactory.getLogger(SampleIndexDBAdaptor.class);
 
+    // Max number of shards counted concurrently, shared by all the queries
+    private static final int COUNT_THREADS = 8;
+    private static final int COUNT_SHARD_BATCHES = 10;
+    private static final int COUNT_SHARD_MAX_POSITION = 250_000_000;
+    private static final int COUNT_MAX_SHARDS = 100;
+    private static final List<String> DEFAULT_COUNT_CHROMOSOMES = Arrays.asList("1", "10", "11", "12", "13", "14", "15", "16", "17",
+            "18", "19", "2", "20", "21", "22", "3", "4", "5", "6", "7", "8", "9", "M", "MT", "X", "Y");
+    private static final ExecutorService COUNT_THREAD_POOL;
+    // Tables where the SampleIndexCountFilter was not available at the region servers, with the time to retry.
+    // Region servers might be restarted with the filter in their classpath, so the server side count is retried periodically.
+    private static final Map<String, Long> SERVER_SIDE_COUNT_UNAVAILABLE = new ConcurrentHashMap<>();
+    private static final long SERVER_SIDE_COUNT_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    static {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(COUNT_THREADS, COUNT_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new BasicThreadFactory.Builder()
+                .namingPattern("sample-index-count-%s")
+                .daemon(true)
+                .build());
+        threadPool.allowCoreThreadTimeOut(true);
+        COUNT_THREAD_POOL = threadPool;
+    }
+
     public SampleIndexDBAdaptor(HBaseManager hBaseManager, HBaseVariantTableNameGenerator tableNameGenerator,
                                 VariantStorageMetadataManager metadataManager) {
         this.hBaseManager = hBaseManager;
@@ -396,15 +428,91 @@ public class SampleIndexDBAdaptor implements VariantIterable {
     }
 
     public long count(SampleIndexQuery query) {
+        return count(query, QueryOptions.empty()).first();
+    }
+
+    /**
+     * Count the variants matching the query.
+     *
+     * Single sample queries are split in shards by chromosome, or by groups of batches for regions within one chromosome,
+     * that are counted concurrently. Multi sample queries are counted with the {@link MultiSampleIndexCounter}, with one
+     * shard per group of regions. The time taken by each shard is reported as an event of the result.
+     *
+     * @param query     SampleIndexQuery
+     * @param options   Options. Accepts {@link QueryOptions#TIMEOUT} as the deadline for the count.
+     * @return          Number of variants
+     */
+    public DataResult<Long> count(SampleIndexQuery query, QueryOptions options) {
         if (query.getSamplesMap().size() == 1 && query.getMendelianErrorSet().isEmpty()) {
             String sample = query.getSamplesMap().keySet().iterator().next();
-            return count(query.forSample(sample));
+            return count(query.forSample(sample), options);
+        } else {
+            return countMultiSample(query, options);
+        }
+    }
+
+    private DataResult<Long> countMultiSample(SampleIndexQuery query, QueryOptions options) {
+        StopWatch stopWatch = StopWatch.createStarted();
+        QueryOperation operation = query.getQueryOperation();
+        List<SingleSampleIndexQuery> queries = new ArrayList<>(query.getSamplesMap().size());
+        List<SingleSampleIndexQuery> negatedQueries = new ArrayList<>(query.getSamplesMap().size());
+        boolean emptySample = false;
+        for (Map.Entry<String, List<String>> entry : query.getSamplesMap().entrySet()) {
+            String sample = entry.getKey();
+            List<String> gts = entry.getValue();
+            if (query.isNegated(sample)) {
+                // Skip if GTs to query is empty!
+                // Otherwise, it will exclude ALL genotypes instead of none
+                if (!gts.isEmpty()) {
+                    negatedQueries.add(query.forSample(sample, gts));
+                }
+            } else if (gts.isEmpty()) {
+                // Should find none for this sample
+                emptySample = true;
+            } else {
+                queries.add(query.forSample(sample, gts));
+            }
+        }
+
+        long count;
+        List<Event> events = Collections.synchronizedList(new ArrayList<>());
+        if (emptySample && operation != QueryOperation.OR) {
+            count = 0;
+        } else if (queries.isEmpty()) {
+            count = Iterators.size(iterator(query));
         } else {
-            return Iterators.size(iterator(query));
+            String tableName = getSampleIndexTableName(toStudyId(query.getStudy()));
+            MultiSampleIndexCounter counter = new MultiSampleIndexCounter(this, getSchema(query.getStudy()), operation);
+            Collection<List<Region>> regionGroups;
+            if (CollectionUtils.isEmpty(query.getRegionGroups())) {
+                regionGroups = Collections.singletonList(Collections.emptyList());
+            } else {
+                regionGroups = query.getRegionGroups();
+            }
+
+            List<Callable<Long>> shards = new ArrayList<>(regionGroups.size());
+            for (List<Region> regions : regionGroups) {
+                shards.add(() -> {
+                    StopWatch shardStopWatch = StopWatch.createStarted();
+                    long shardCount = hBaseManager.act(tableName, table -> {
+                        return counter.count(table, queries, negatedQueries, regions);
+                    });
+                    events.add(new Event(Event.Type.INFO, "Count shard " + (regions.isEmpty() ? "genome wide" : regions) + " : "
+                            + shardCount + " variants in " + shardStopWatch.getTime(TimeUnit.MILLISECONDS) + "ms"));
+                    return shardCount;
+                });
+            }
+            count = runCountShards(shards, options.getLong(QueryOptions.TIMEOUT, 0));
         }
+        logger.info("Count {} of {} sample indexes plus {} negated indexes : {} variants in {}",
+                operation == QueryOperation.OR ? "union" : "intersection", queries.size(), negatedQueries.size(),
+                count, TimeUtils.durationToString(stopWatch));
+        return new DataResult<>((int) stopWatch.getTime(TimeUnit.MILLISECONDS), new ArrayList<>(events), 1,
+                Collections.singletonList(count), 1);
     }
 
-    private long count(SingleSampleIndexQuery query) {
+    private DataResult<Long> count(SingleSampleIndexQuery query, QueryOptions options) {
+        StopWatch stopWatch = StopWatch.createStarted();
         Collection<List<Region>> regionGroups;
         if (CollectionUtils.isEmpty(query.getRegionGroups())) {
             // If no regions are defined, get a list of one null element to initialize the stream.
@@ -414,64 +522,295 @@ public class SampleIndexDBAdaptor implements VariantIterable {
         }
 
         String tableName = getSampleIndexTableName(toStudyId(query.getStudy()));
+        SampleIndexSchema schema = getSchema(query.getStudy());
+        boolean useServerSideCount = useServerSideCount(tableName, query);
+
+        List<Callable<Long>> shards = new ArrayList<>();
+        List<Event> events = Collections.synchronizedList(new ArrayList<>());
+        for (List<Region> regions : regionGroups) {
+            // Split region in countable regions
+            List<List<Region>> subRegionsGroups;
+            if (regions.size() == 1) {
+                subRegionsGroups = Collections.singletonList(splitRegion(regions.get(0)));
+            } else {
+                // Do not split
+                subRegionsGroups = Collections.singletonList(regions);
+            }
+            for (List<Region> subRegions : subRegionsGroups) {
+                boolean noRegionFilter = subRegions.size() == 1 && matchesWithBatch(subRegions.get(0));
+                // Don't need to parse the variant to filter
+                boolean simpleCount = !query.isMultiFileSample()
+                        && CollectionUtils.isEmpty(query.getVariantTypes())
+                        && noRegionFilter;
+                boolean sumCounters = query.emptyOrRegionFilter() && simpleCount;
+                boolean serverSideCount = !sumCounters && useServerSideCount;
+                Scan scan;
+                if (sumCounters) {
+                    // Directly sum counters
+                    scan = parseCount(query, subRegions);
+                } else if (simpleCount) {
+                    // Fast filter and count. Don't need to parse the variant to filter
+                    scan = parseCountAndFilter(query, subRegions);
+                } else {
+                    // Need to parse the variant to finish filtering. Create a normal scan query.
+                    scan = parse(query, subRegions);
+                }
+                List<Scan> shardScans;
+                try {
+                    shardScans = splitCountScan(query, subRegions, scan);
+                } catch (IOException e) {
+                    throw VariantQueryException.internalException(e);
+                }
+                for (Scan shardScan : shardScans) {
+                    shards.add(() -> {
+                        StopWatch shardStopWatch = StopWatch.createStarted();
+                        long count;
+                        if (serverSideCount) {
+                            count = countShardServerSide(tableName, shardScan, query, subRegions, schema);
+                        } else {
+                            // Converters and filters are not thread safe. Create new instances for each shard.
+                            SampleIndexEntryFilter filter = sumCounters ? null : buildSampleIndexEntryFilter(query, subRegions);
+                            count = countShard(tableName, shardScan, newConverter(schema), filter);
+                        }
+                        events.add(new Event(Event.Type.INFO, "Count shard ["
+                                + SampleIndexSchema.rowKeyToString(shardScan.getStartRow()) + ", "
+                                + SampleIndexSchema.rowKeyToString(shardScan.getStopRow()) + ") : "
+                                + count + " variants in " + shardStopWatch.getTime(TimeUnit.MILLISECONDS) + "ms"));
+                        return count;
+                    });
+                }
+            }
+        }
 
-        HBaseToSampleIndexConverter converter = newConverter(getSchema(query.getStudy()));
-        try {
-            return hBaseManager.act(tableName, table -> {
-                long count = 0;
-                for (List<Region> regions : regionGroups) {
-                    // Split region in countable regions
-                    List<List<Region>> subRegionsGroups;
-                    if (regions.size() == 1) {
-                        subRegionsGroups = Collections.singletonList(splitRegion(regions.get(0)));
+        long count = runCountShards(shards, options.getLong(QueryOptions.TIMEOUT, 0));
+        logger.info("Count sample {} : {} variants from {} shards in {}",
+                query.getSample(), count, shards.size(), TimeUtils.durationToString(stopWatch));
+        return new DataResult<>((int) stopWatch.getTime(TimeUnit.MILLISECONDS), new ArrayList<>(events), 1,
+                Collections.singletonList(count), 1);
+    }
+
+    /**
+     * Split a count scan in disjoint scans over the same rows.
+     *
+     * Genome wide scans are split by chromosome. Scans within one chromosome are split in groups of batches.
+     *
+     * @param query         Query
+     * @param subRegions    Regions of the scan
+     * @param scan          Scan to split
+     * @return  List of scans
+     * @throws IOException  if there is an error copying the scan
+     */
+    private List<Scan> splitCountScan(SingleSampleIndexQuery query, List<Region> subRegions, Scan scan) throws IOException {
+        int sampleId = toSampleId(toStudyId(query.getStudy()), query.getSample());
+        List<byte[]> splitPoints = new ArrayList<>();
+        if (subRegions.isEmpty()) {
+            for (String chromosome : getCountChromosomes(toStudyId(query.getStudy()))) {
+                splitPoints.add(SampleIndexSchema.toRowKey(sampleId, chromosome, 0));
+            }
+            splitPoints.sort(Bytes.BYTES_COMPARATOR);
+        } else if (subRegions.stream().map(Region::getChromosome).distinct().count() == 1) {
+            Region first = subRegions.get(0);
+            int end = Math.min(subRegions.get(subRegions.size() - 1).getEnd(), COUNT_SHARD_MAX_POSITION);
+            int shardSize = COUNT_SHARD_BATCHES * SampleIndexSchema.BATCH_SIZE;
+            for (int start = first.getStart() - first.getStart() % shardSize + shardSize; start < end; start += shardSize) {
+                splitPoints.add(SampleIndexSchema.toRowKey(sampleId, first.getChromosome(), start));
+            }
+        }
+
+        List<Scan> scans = new ArrayList<>(splitPoints.size() + 1);
+        byte[] startRow = scan.getStartRow();
+        for (byte[] splitPoint : splitPoints) {
+            if (Bytes.compareTo(splitPoint, startRow) > 0 && Bytes.compareTo(splitPoint, scan.getStopRow()) < 0) {
+                Scan shardScan = new Scan(scan);
+                shardScan.setStartRow(startRow);
+                shardScan.setStopRow(splitPoint);
+                scans.add(shardScan);
+                startRow = splitPoint;
+            }
+        }
+        if (scans.isEmpty()) {
+            scans.add(scan);
+        } else {
+            Scan shardScan = new Scan(scan);
+            shardScan.setStartRow(startRow);
+            scans.add(shardScan);
+        }
+        return scans;
+    }
+
+    private Collection<String> getCountChromosomes(int studyId) {
+        Set<String> chromosomes = new HashSet<>();
+        for (String contig : metadataManager.getStudyMetadata(studyId).getVariantHeaderLines("contig").keySet()) {
+            chromosomes.add(Region.normalizeChromosome(contig));
+        }
+        if (chromosomes.isEmpty() || chromosomes.size() > COUNT_MAX_SHARDS) {
+            // Contigs not found, or too many small contigs
+            return DEFAULT_COUNT_CHROMOSOMES;
+        }
+        return chromosomes;
+    }
+
+    private long countShard(String tableName, Scan scan, HBaseToSampleIndexConverter converter, SampleIndexEntryFilter filter)
+            throws IOException {
+        return hBaseManager.act(tableName, table -> {
+            long count = 0;
+            try (ResultScanner scanner = table.getScanner(scan)) {
+                Result result = scanner.next();
+                while (result != null) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Sample index count interrupted");
+                    }
+                    if (filter == null) {
+                        count += converter.convertToCount(result);
                     } else {
-                        // Do not split
-                        subRegionsGroups = Collections.singletonList(regions);
+                        SampleIndexEntry sampleIndexEntry = converter.convert(result);
+                        count += filter.filterAndCount(sampleIndexEntry);
                     }
-                    for (List<Region> subRegions : subRegionsGroups) {
-                        boolean noRegionFilter = subRegions.size() == 1 && matchesWithBatch(subRegions.get(0));
-                        // Don't need to parse the variant to filter
-                        boolean simpleCount = !query.isMultiFileSample()
-                                && CollectionUtils.isEmpty(query.getVariantTypes())
-                                && noRegionFilter;
-                        try {
-                            if (query.emptyOrRegionFilter() && simpleCount) {
-                                // Directly sum counters
-                                Scan scan = parseCount(query, subRegions);
-                                ResultScanner scanner = table.getScanner(scan);
-                                Result result = scanner.next();
-                                while (result != null) {
-                                    count += converter.convertToCount(result);
-                                    result = scanner.next();
-                                }
-                            } else {
-                                SampleIndexEntryFilter filter = buildSampleIndexEntryFilter(query, subRegions);
-                                Scan scan;
-                                if (simpleCount) {
-                                    // Fast filter and count. Don't need to parse the variant to filter
-                                    scan = parseCountAndFilter(query, subRegions);
-                                } else {
-                                    // Need to parse the variant to finish filtering. Create a normal scan query.
-                                    scan = parse(query, subRegions);
-                                }
-                                ResultScanner scanner = table.getScanner(scan);
-                                Result result = scanner.next();
-                                while (result != null) {
-                                    SampleIndexEntry sampleIndexEntry = converter.convert(result);
-                                    count += filter.filterAndCount(sampleIndexEntry);
-                                    result = scanner.next();
-                                }
+                    result = scanner.next();
+                }
+            }
+            return count;
+        });
+    }
+
+    private boolean useServerSideCount(String tableName, SingleSampleIndexQuery query) {
+        if (!hBaseManager.getConf().getBoolean(SAMPLE_INDEX_QUERY_SERVER_SIDE_COUNT.key(),
+                SAMPLE_INDEX_QUERY_SERVER_SIDE_COUNT.defaultValue())
+                || !isServerSideCountAvailable(tableName)) {
+            return false;
+        }
+        List<String> unsupportedFilters = SampleIndexCountFilter.getUnsupportedFilters(query);
+        if (unsupportedFilters.isEmpty()) {
+            return true;
+        } else {
+            logger.info("Count sample index of sample '{}' at the client. Filters not supported at the region servers: {}",
+                    query.getSample(), unsupportedFilters);
+            return false;
+        }
+    }
+
+    /**
+     * Count a shard within the region servers using the {@link SampleIndexCountFilter}.
+     *
+     * Falls back to counting at the client if the filter is not available at the region servers.
+     */
+    private long countShardServerSide(String tableName, Scan scan, SingleSampleIndexQuery query, List<Region> regions,
+                                      SampleIndexSchema schema) throws IOException {
+        if (isServerSideCountAvailable(tableName)) {
+            Scan serverSideScan = new Scan(scan);
+            if (regions == null || regions.size() == 1 && matchesWithBatch(regions.get(0))) {
+                serverSideScan.setFilter(new SampleIndexCountFilter(query, null));
+            } else {
+                serverSideScan.setFilter(new SampleIndexCountFilter(query, regions));
+            }
+            try {
+                return hBaseManager.act(tableName, table -> {
+                    long count = 0;
+                    try (ResultScanner scanner = table.getScanner(serverSideScan)) {
+                        Result result = scanner.next();
+                        while (result != null) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                throw new InterruptedIOException("Sample index count interrupted");
                             }
-                        } catch (IOException e) {
-                            throw VariantQueryException.internalException(e);
+                            count += SampleIndexCountFilter.getCount(result);
+                            result = scanner.next();
                         }
                     }
+                    return count;
+                });
+            } catch (IOException e) {
+                if (!isMissingServerSideCountFilter(e)) {
+                    throw e;
                 }
-                return count;
-            });
-        } catch (IOException e) {
+                long retryTime = System.currentTimeMillis() + SERVER_SIDE_COUNT_RETRY_MILLIS;
+                if (SERVER_SIDE_COUNT_UNAVAILABLE.put(tableName, retryTime) == null) {
+                    logger.warn("Filter " + SampleIndexCountFilter.class.getName() + " not available at the region servers of table '"
+                            + tableName + "'. Count sample index at the client for the next "
+                            + TimeUnit.MILLISECONDS.toMinutes(SERVER_SIDE_COUNT_RETRY_MILLIS) + " minutes. Disable "
+                            + SAMPLE_INDEX_QUERY_SERVER_SIDE_COUNT.key()
+                            + " or add the opencga-storage-hadoop-core jar to the region servers classpath", e);
+                }
+            }
+        }
+        return countShard(tableName, scan, newConverter(schema), buildSampleIndexEntryFilter(query, regions));
+    }
+
+    private static boolean isServerSideCountAvailable(String tableName) {
+        Long retryTime = SERVER_SIDE_COUNT_UNAVAILABLE.get(tableName);
+        if (retryTime == null) {
+            return true;
+        } else if (retryTime <= System.currentTimeMillis()) {
+            // Retry time reached. Try again the server side count.
+            SERVER_SIDE_COUNT_UNAVAILABLE.remove(tableName, retryTime);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Check if the scan failed because the {@link SampleIndexCountFilter}, or any of its dependencies, is not in the classpath of the
+     * region servers. Remote exceptions only carry the class and message of the original exception.
+     * Any other error (e.g. filter deserialization or version mismatch) must not be hidden by the client side fallback.
+     *
+     * @param e Exception thrown by the scan
+     * @return  if the filter class was not found
+     */
+    static boolean isMissingServerSideCountFilter(Throwable e) {
+        String filterNotFound = ClassNotFoundException.class.getName() + ": " + SampleIndexCountFilter.class.getName();
+        String dependencyNotFound = NoClassDefFoundError.class.getName() + ": org/opencb/";
+        for (Throwable throwable : ExceptionUtils.getThrowableList(e)) {
+            String message = throwable.getMessage();
+            if (throwable instanceof ClassNotFoundException && SampleIndexCountFilter.class.getName().equals(message)) {
+                return true;
+            }
+            if (message != null && (message.contains(filterNotFound) || message.contains(dependencyNotFound))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long runCountShards(List<Callable<Long>> shards, long timeout) {
+        if (shards.size() == 1 && timeout <= 0) {
+            try {
+                return shards.get(0).call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw VariantQueryException.internalException(e);
+            }
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        List<Future<Long>> futures = new ArrayList<>(shards.size());
+        for (Callable<Long> shard : shards) {
+            futures.add(COUNT_THREAD_POOL.submit(shard));
+        }
+        long count = 0;
+        try {
+            for (Future<Long> future : futures) {
+                if (timeout > 0) {
+                    count += future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                } else {
+                    count += future.get();
+                }
+            }
+        } catch (TimeoutException e) {
+            throw new VariantQueryException("Sample index count exceeded the timeout of " + timeout + "ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw VariantQueryException.internalException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw VariantQueryException.internalException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } finally {
+            for (Future<Long> future : futures) {
+                future.cancel(true);
+            }
         }
+        return count;
     }
 
     protected HBaseToSampleIndexConverter newConverter(SampleIndexSchema schema) {
@@ -0,0 +1,81 @@
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.opencb.biodata.models.variant.Variant;
+
+/**
+ * Variant from a SampleIndexEntry, still encoded as in the sample index.
+ *
+ * The encoding is canonical, so two encoded variants from the same batch are equal if and only if they represent the
+ * same variant. Encoded variants are only comparable within the same batch, and sort by their bytes, not by position.
+ * The variant is only decoded if required.
+ *
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public final class SampleIndexEncodedVariant implements Comparable<SampleIndexEncodedVariant> {
+
+    // The schema is not required to encode or decode the variants
+    private static final SampleIndexVariantBiConverter CONVERTER = new SampleIndexVariantBiConverter(null);
+
+    private final String chromosome;
+    private final int batchStart;
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private Variant variant;
+
+    public SampleIndexEncodedVariant(String chromosome, int batchStart, byte[] bytes, int offset, int length) {
+        this.chromosome = chromosome;
+        this.batchStart = batchStart;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public SampleIndexEncodedVariant(Variant variant) {
+        this.chromosome = variant.getChromosome();
+        this.batchStart = variant.getStart() - variant.getStart() % SampleIndexSchema.BATCH_SIZE;
+        this.bytes = CONVERTER.toBytes(variant);
+        this.offset = 0;
+        this.length = bytes.length;
+        this.variant = variant;
+    }
+
+    public Variant toVariant() {
+        if (variant == null) {
+            variant = CONVERTER.toVariant(chromosome, batchStart, bytes, offset);
+        }
+        return variant;
+    }
+
+    @Override
+    public int compareTo(SampleIndexEncodedVariant o) {
+        return Bytes.compareTo(bytes, offset, length, o.bytes, o.offset, o.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SampleIndexEncodedVariant that = (SampleIndexEncodedVariant) o;
+        return batchStart == that.batchStart
+                && Bytes.equals(bytes, offset, length, that.bytes, that.offset, that.length)
+                && chromosome.equals(that.chromosome);
+    }
+
+    @Override
+    public int hashCode() {
+        return Bytes.hashCode(bytes, offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return toVariant().toString();
+    }
+}
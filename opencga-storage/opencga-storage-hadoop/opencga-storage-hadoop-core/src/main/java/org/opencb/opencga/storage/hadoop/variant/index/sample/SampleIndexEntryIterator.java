@@ -29,6 +29,14 @@ public interface SampleIndexEntryIterator extends Iterator<Variant> {
      */
     Variant next();
 
+    /**
+     * Move cursor to next variant, without decoding it if possible.
+     * @return next variant, encoded
+     */
+    default SampleIndexEncodedVariant nextEncodedVariant() {
+        return new SampleIndexEncodedVariant(next());
+    }
+
     default SampleVariantIndexEntry nextSampleVariantIndexEntry() {
         AnnotationIndexEntry annotationIndexEntry = nextAnnotationIndexEntry();
         if (annotationIndexEntry != null) {
@@ -581,6 +581,17 @@ public class SampleIndexVariantBiConverter {
             return variant;
         }
 
+        @Override
+        public SampleIndexEncodedVariant nextEncodedVariant() {
+            nextAnnotationIndexEntry(); // ensure read annotation
+            increaseCounters();
+            // Exclude the inter variant separator
+            int encodedLength = encodedRefAlt ? INT24_LENGTH : INT24_LENGTH + referenceLength + SEPARATOR_LENGTH + alternateLength;
+            SampleIndexEncodedVariant variant = new SampleIndexEncodedVariant(chromosome, batchStart, bytes, currentOffset, encodedLength);
+            movePointer();
+            return variant;
+        }
+
         @Override
         public void skip() {
             nextAnnotationIndexEntry(); // ensure read annotation
@@ -92,7 +92,7 @@ public abstract class AbstractArchiveTableMapper extends AbstractHBaseVariantMap
 
     @Override
     public final void map(ImmutableBytesWritable key, Result value, Context context) throws IOException, InterruptedException {
-        logger.info("Start mapping key: " + Bytes.toString(key.get()));
+        logger.info("Start mapping key: " + Bytes.toStringBinary(key.get()));
         startStep();
         if (value.isEmpty()) {
             context.getCounter(VariantsTableMapReduceHelper.COUNTER_GROUP_NAME, "VCF_RESULT_EMPTY").increment(1);
@@ -104,9 +104,8 @@ public abstract class AbstractArchiveTableMapper extends AbstractHBaseVariantMap
 
         // Calculate various positions
         byte[] currRowKey = key.get();
-        String sliceKey = Bytes.toString(currRowKey);
-        String chr = rowKeyFactory.extractChromosomeFromBlockId(sliceKey);
-        Long sliceReg = rowKeyFactory.extractSliceFromBlockId(sliceKey);
+        String chr = rowKeyFactory.extractChromosomeFromBlockId(currRowKey);
+        long sliceReg = rowKeyFactory.extractSliceFromBlockId(currRowKey);
         long startPos = rowKeyFactory.getStartPositionFromSlice(sliceReg);
         long nextStartPos = rowKeyFactory.getStartPositionFromSlice(sliceReg + 1);
 
@@ -115,7 +114,9 @@ public abstract class AbstractArchiveTableMapper extends AbstractHBaseVariantMap
             logger.debug("Results contain file IDs : " + StringUtils.join(fileIds, ','));
         }
 
-        logger.debug("Processing slice {}", sliceKey);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Processing slice {}", Bytes.toStringBinary(currRowKey));
+        }
 
 
         VariantMapReduceContext ctx = new VariantMapReduceContext(currRowKey, context, value, fileIds,
@@ -7,6 +7,7 @@ import org.apache.phoenix.schema.types.PIntegerArray;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.common.SolrInputDocument;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.opencga.storage.core.variant.search.VariantSearchToVariantConverter;
 import org.opencb.opencga.storage.core.variant.search.solr.SolrInputDocumentDataWriter;
 import org.opencb.opencga.storage.hadoop.utils.HBaseDataWriter;
@@ -34,8 +35,8 @@ public class HadoopVariantSearchDataWriter extends SolrInputDocumentDataWriter {
     protected final Map<String, Integer> studiesMap;
 
     public HadoopVariantSearchDataWriter(String collection, SolrClient solrClient, int insertBatchSize,
-                                         VariantHadoopDBAdaptor dbAdaptor) {
-        super(collection, solrClient, insertBatchSize);
+                                         VariantHadoopDBAdaptor dbAdaptor, ObjectMap options) {
+        super(collection, solrClient, insertBatchSize, options);
         this.writer = new HBaseDataWriter<Mutation>(dbAdaptor.getHBaseManager(), dbAdaptor.getVariantTable()) {
             @Override
             protected BufferedMutatorParams buildBufferedMutatorParams() {
@@ -74,8 +75,11 @@ public class HadoopVariantSearchDataWriter extends SolrInputDocumentDataWriter {
                         .addColumn(family, VariantPhoenixSchema.VariantColumn.INDEX_STUDIES.bytes(), bytes));
             }
 
-            writer.write(mutations);
-            cleaner.write(variantRows);
+            // Called from concurrent Solr writers
+            synchronized (writer) {
+                writer.write(mutations);
+                cleaner.write(variantRows);
+            }
         }
     }
 
@@ -2,19 +2,39 @@ package org.opencb.opencga.storage.hadoop.variant.search;
 
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.metadata.models.ProjectMetadata.SecondaryIndexCheckpoint;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.core.variant.adaptors.iterators.VariantDBIterator;
+import org.opencb.opencga.storage.core.variant.search.SecondaryIndexChangeLog;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHadoopDBAdaptor;
 import org.opencb.opencga.storage.hadoop.variant.executors.MRExecutor;
 import org.opencb.opencga.storage.hadoop.variant.pending.PendingVariantsManager;
 import org.opencb.opencga.storage.hadoop.variant.pending.PendingVariantsReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Variants pending to be updated in the secondary index. The pending variants are discovered with a MapReduce job comparing the
+ * timestamp of the cells with the secondary index checkpoint, and removed from the pending table once loaded.
+ */
+public class SecondaryIndexPendingVariantsManager extends PendingVariantsManager implements SecondaryIndexChangeLog {
+    public static final String SKIP_DISCOVER_PENDING = "skipDiscoverPendingVariantsToSecondaryIndex";
 
-public class SecondaryIndexPendingVariantsManager extends PendingVariantsManager {
     private final VariantHadoopDBAdaptor dbAdaptor;
+    private final MRExecutor mrExecutor;
+
+    private static Logger logger = LoggerFactory.getLogger(SecondaryIndexPendingVariantsManager.class);
 
     public SecondaryIndexPendingVariantsManager(VariantHadoopDBAdaptor dbAdaptor) {
+        this(dbAdaptor, null);
+    }
+
+    public SecondaryIndexPendingVariantsManager(VariantHadoopDBAdaptor dbAdaptor, MRExecutor mrExecutor) {
         super(dbAdaptor, new SecondaryIndexPendingVariantsDescriptor());
         this.dbAdaptor = dbAdaptor;
+        this.mrExecutor = mrExecutor;
     }
 
     @Override
@@ -29,4 +49,21 @@ public class SecondaryIndexPendingVariantsManager extends PendingVariantsManager
         options.remove(VariantQueryParam.STUDY.key());
         super.discoverPending(mrExecutor, options);
     }
+
+    @Override
+    public void prepare(SecondaryIndexCheckpoint since, ObjectMap options) throws StorageEngineException {
+        if (options.getBoolean(SKIP_DISCOVER_PENDING, false)) {
+            logger.info("Skip discover pending variants to secondary index");
+        } else {
+            // Without checkpoint, mark all variants as pending
+            discoverPending(mrExecutor, since == null, options);
+        }
+    }
+
+    @Override
+    public VariantDBIterator iterator(SecondaryIndexCheckpoint since, Query query, QueryOptions options) {
+        logger.info("Get variants to index from pending variants table");
+        logger.info("Query: " + query.toJson());
+        return iterator(query);
+    }
 }
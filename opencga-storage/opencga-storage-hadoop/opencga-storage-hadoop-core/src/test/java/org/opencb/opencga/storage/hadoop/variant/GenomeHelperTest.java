@@ -26,6 +26,7 @@ import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveRowKeyFactory;
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveTableHelper;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixKeyFactory;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -65,11 +66,36 @@ public class GenomeHelperTest {
         Assert.assertEquals(1, keyFactory.getFileBatch(101));
     }
 
+    @Test
+    public void testBlockRowKeyAsBytes() throws Exception {
+        ArchiveRowKeyFactory binaryKeyFactory = new ArchiveRowKeyFactory(CHUNK_SIZE, 100, ArchiveRowKeyFactory.BINARY_ROW_KEY_FORMAT);
+        for (ArchiveRowKeyFactory factory : Arrays.asList(keyFactory, binaryKeyFactory)) {
+            for (String chromosome : Arrays.asList("2", "X", "MT", "NC_007605")) {
+                byte[] rowKey = factory.generateBlockIdFromSliceAndBatchAsBytes(1, chromosome, 222);
+                Assert.assertEquals(chromosome, factory.extractChromosomeFromBlockId(rowKey));
+                Assert.assertEquals(1, factory.extractFileBatchFromBlockId(rowKey));
+                Assert.assertEquals(222, factory.extractSliceFromBlockId(rowKey));
+                Assert.assertEquals(222 * CHUNK_SIZE, factory.extractPositionFromBlockId(rowKey));
+            }
+            // Known chromosomes are not allocated
+            Assert.assertSame("X", factory.extractChromosomeFromBlockId(factory.generateBlockIdFromSliceAndBatchAsBytes(1, "X", 222)));
+        }
+        Assert.assertEquals(ArchiveRowKeyFactory.BINARY_ROW_KEY_FORMAT, binaryKeyFactory.getRowKeyFormat());
+        Assert.assertEquals(14, binaryKeyFactory.generateBlockIdAsBytes(1, "chr1", 1000).length);
+        Assert.assertArrayEquals(Bytes.toBytes(keyFactory.generateBlockId(1, "1", 1000)), keyFactory.generateBlockIdAsBytes(1, "1", 1000));
+    }
+
     @Test
     public void testGenerateSplitArchive() throws Exception {
         assertOrder(GenomeHelper.generateBootPreSplitsHuman(30, (chr, pos) -> keyFactory.generateBlockIdAsBytes(1, chr, pos)), 30);
     }
 
+    @Test
+    public void testGenerateSplitArchiveBinary() throws Exception {
+        ArchiveRowKeyFactory binaryKeyFactory = new ArchiveRowKeyFactory(CHUNK_SIZE, 100, ArchiveRowKeyFactory.BINARY_ROW_KEY_FORMAT);
+        assertOrder(GenomeHelper.generateBootPreSplitsHuman(30, (chr, pos) -> binaryKeyFactory.generateBlockIdAsBytes(1, chr, pos)), 30);
+    }
+
     @Test
     public void testGenerateSplitVariant() throws Exception {
         int expectedSize = 10;
@@ -86,6 +112,7 @@ public class GenomeHelperTest {
         conf.setInt(HadoopVariantStorageOptions.ARCHIVE_TABLE_PRESPLIT_SIZE.key(), 10);
         conf.setInt(HadoopVariantStorageOptions.EXPECTED_FILES_NUMBER.key(), 4500);
         conf.setInt(HadoopVariantStorageOptions.ARCHIVE_FILE_BATCH_SIZE.key(), 1000);
+        conf.setInt(ArchiveRowKeyFactory.ROW_KEY_FORMAT, ArchiveRowKeyFactory.STRING_ROW_KEY_FORMAT);
         assertOrder(ArchiveTableHelper.generateArchiveTableBootPreSplitHuman(conf), 50);
     }
 
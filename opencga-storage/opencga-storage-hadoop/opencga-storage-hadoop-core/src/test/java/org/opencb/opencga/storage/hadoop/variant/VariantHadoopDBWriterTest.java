@@ -18,6 +18,7 @@ package org.opencb.opencga.storage.hadoop.variant;
 
 import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
@@ -59,6 +60,7 @@ import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHadoopDBAdaptor;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixSchemaManager;
+import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveRowKeyFactory;
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveTableHelper;
 import org.opencb.opencga.storage.hadoop.variant.archive.VariantHBaseArchiveDataWriter;
 import org.opencb.opencga.storage.hadoop.variant.converters.HBaseToVariantConverter;
@@ -226,7 +228,7 @@ public class VariantHadoopDBWriterTest extends VariantStorageBaseTest implements
         sc.getAttributes().append(VariantStorageOptions.MERGE_MODE.key(), VariantStorageEngine.MergeMode.BASIC);
         VariantStorageMetadataManager metadataManager = this.metadataManager;
         metadataManager.unsecureUpdateStudyMetadata(sc);
-        ArchiveTableHelper.createArchiveTableIfNeeded(dbAdaptor.getGenomeHelper().getConf(), archiveTableName);
+        createArchiveTable(sc, archiveTableName);
         VariantTableHelper.createVariantTableIfNeeded(dbAdaptor.getGenomeHelper(), dbAdaptor.getVariantTable());
         metadataManager.updateProjectMetadata(projectMetadata -> {
             if (projectMetadata == null) {
@@ -241,7 +243,7 @@ public class VariantHadoopDBWriterTest extends VariantStorageBaseTest implements
         fileMetadata.setSampleIds(variants.get(0).getStudies().get(0).getOrderedSamplesName());
         metadataManager.updateVariantFileMetadata(String.valueOf(sc.getId()), fileMetadata);
 
-        ArchiveTableHelper helper = new ArchiveTableHelper(dbAdaptor.getGenomeHelper(), sc.getId(), fileMetadata);
+        ArchiveTableHelper helper = new ArchiveTableHelper(dbAdaptor.getGenomeHelper(), sc, fileMetadata);
 
 
         // Create dummy reader
@@ -268,9 +270,15 @@ public class VariantHadoopDBWriterTest extends VariantStorageBaseTest implements
         schemaManager.registerNewFiles(sc.getId(), Collections.singletonList(fileId));
     }
 
+    private void createArchiveTable(StudyMetadata study, String archiveTableName) throws IOException {
+        Configuration conf = new Configuration(dbAdaptor.getGenomeHelper().getConf());
+        ArchiveRowKeyFactory.setRowKeyFormat(conf, study);
+        ArchiveTableHelper.createArchiveTableIfNeeded(conf, archiveTableName);
+    }
+
     private void stageVariants(StudyMetadata study, int fileId, List<Variant> variants) throws Exception {
         String archiveTableName = engine.getArchiveTableName(study.getId());
-        ArchiveTableHelper.createArchiveTableIfNeeded(dbAdaptor.getGenomeHelper().getConf(), archiveTableName);
+        createArchiveTable(study, archiveTableName);
 
         // Create empty VariantFileMetadata
         VariantFileMetadata fileMetadata = new VariantFileMetadata(String.valueOf(fileId), String.valueOf(fileId));
@@ -325,15 +325,16 @@ public class VariantHadoopMultiSampleTest extends VariantStorageBaseTest impleme
                 .append(HadoopVariantStorageOptions.HADOOP_LOAD_FILES_IN_PARALLEL.key(), 5)
                 .append(HadoopVariantStorageOptions.ARCHIVE_FILE_BATCH_SIZE.key(), 5));
 
-        ArchiveRowKeyFactory rowKeyFactory = new ArchiveRowKeyFactory(1000, 5);
-
         HadoopVariantStorageEngine engine = getVariantStorageEngine();
         VariantHadoopDBAdaptor dbAdaptor = engine.getDBAdaptor();
+        // Decode the archive row keys with the row key format of the study
+        StudyMetadata studyMetadata = engine.getMetadataManager().getStudyMetadata(STUDY_ID);
+        ArchiveRowKeyFactory rowKeyFactory = new ArchiveRowKeyFactory(1000, 5, ArchiveRowKeyFactory.getRowKeyFormat(studyMetadata));
         Integer count = dbAdaptor.getHBaseManager().act(engine.getArchiveTableName(STUDY_ID), table -> {
             int numBlocks = 0;
             for (Result result : table.getScanner(GenomeHelper.COLUMN_FAMILY_BYTES)) {
                 numBlocks++;
-                int batch = rowKeyFactory.extractFileBatchFromBlockId(Bytes.toString(result.getRow()));
+                int batch = rowKeyFactory.extractFileBatchFromBlockId(result.getRow());
                 for (byte[] column : result.getFamilyMap(GenomeHelper.COLUMN_FAMILY_BYTES).keySet()) {
                     if (!Bytes.startsWith(column, VARIANT_COLUMN_B_PREFIX)) {
                         int fileId = ArchiveTableHelper.getFileIdFromNonRefColumnName(column);
@@ -46,6 +46,7 @@ public class VariantHbaseTransformTaskTest {
     public ParallelTaskRunner<Variant, VcfSliceProtos.VcfSlice> createParallelRunner(int size, DataWriter<VcfSliceProtos.VcfSlice> collector) throws Exception {
         VcfVariantReader reader = VcfVariantReaderTest.createReader(size);
         Configuration conf = new Configuration();
+        conf.setInt(ArchiveRowKeyFactory.ROW_KEY_FORMAT, ArchiveRowKeyFactory.STRING_ROW_KEY_FORMAT);
         ArchiveTableHelper helper = new ArchiveTableHelper(conf, 1, new VariantFileMetadata("1", "1"));
         ParallelTaskRunner.Task<Variant, VcfSliceProtos.VcfSlice> task = new VariantHbaseTransformTask(helper);
         ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
@@ -64,6 +65,7 @@ public class VariantHbaseTransformTaskTest {
     public Runnable createSerialRunner(int size, DataWriter<VcfSliceProtos.VcfSlice> collector) throws Exception {
         VcfVariantReader reader = VcfVariantReaderTest.createReader(size);
         Configuration conf = new Configuration();
+        conf.setInt(ArchiveRowKeyFactory.ROW_KEY_FORMAT, ArchiveRowKeyFactory.STRING_ROW_KEY_FORMAT);
         ArchiveTableHelper helper = new ArchiveTableHelper(conf, 1, new VariantFileMetadata("1", ""));
         ParallelTaskRunner.Task<Variant, VcfSliceProtos.VcfSlice> task = new VariantHbaseTransformTask(helper);
 
@@ -0,0 +1,124 @@
+package org.opencb.opencga.storage.hadoop.variant.converters.study;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.phoenix.schema.types.PVarchar;
+import org.apache.phoenix.schema.types.PVarcharArray;
+import org.apache.phoenix.schema.types.PhoenixArray;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
+import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageMetadataDBAdaptorFactory;
+import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjection;
+import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
+import org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixKeyFactory;
+import org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixSchema;
+import org.opencb.opencga.storage.hadoop.variant.converters.HBaseVariantConverterConfiguration;
+import org.opencb.opencga.storage.hadoop.variant.gaps.VariantOverlappingStatus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of synthetic wide variant rows, with one column per sample and per file,
+ * returning all the samples or only a few of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HBaseToStudyEntryConverterBenchmark {
+
+    private static final String[] GENOTYPES = {"0/0", "0/0", "0/0", "0/0", "0/0", "0/1", "0|1", "1/1", "./."};
+    private static final int SAMPLES_PER_FILE = 10;
+
+    @Param({"10000"})
+    private int numSamples;
+
+    @Param({"10", "1000", "10000"})
+    private int numIncludedSamples;
+
+    @Param({"64"})
+    private int numVariants;
+
+    private List<Result> rows;
+    private HBaseToStudyEntryConverter converter;
+
+    @Setup
+    public void setUp() throws StorageEngineException {
+        DummyVariantStorageMetadataDBAdaptorFactory.clear();
+        VariantStorageMetadataManager metadataManager =
+                new VariantStorageMetadataManager(new DummyVariantStorageMetadataDBAdaptorFactory());
+        int studyId = metadataManager.createStudy("s1").getId();
+        metadataManager.updateStudyMetadata(studyId, studyMetadata -> {
+            studyMetadata.getAttributes().put(VariantStorageOptions.EXTRA_FORMAT_FIELDS.key(), "AD,DP");
+            studyMetadata.getAttributes().put(VariantStorageOptions.MERGE_MODE.key(), VariantStorageEngine.MergeMode.BASIC);
+            return studyMetadata;
+        });
+        List<Integer> fileIds = new ArrayList<>();
+        for (int f = 0; f < numSamples / SAMPLES_PER_FILE; f++) {
+            List<String> samples = new ArrayList<>(SAMPLES_PER_FILE);
+            for (int s = 0; s < SAMPLES_PER_FILE; s++) {
+                samples.add("S" + (f * SAMPLES_PER_FILE + s));
+            }
+            fileIds.add(metadataManager.registerFile(studyId, "f" + f, samples));
+        }
+        metadataManager.addIndexedFiles(studyId, fileIds);
+        StudyMetadata studyMetadata = metadataManager.getStudyMetadata(studyId);
+
+        Random random = new Random(0);
+        rows = new ArrayList<>(numVariants);
+        for (int v = 0; v < numVariants; v++) {
+            byte[] row = VariantPhoenixKeyFactory.generateVariantRowKey(new Variant("1:" + (1000 + v * 10) + ":A:C"));
+            List<Cell> cells = new ArrayList<>(numSamples + fileIds.size());
+            for (int s = 0; s < numSamples; s++) {
+                int sampleId = metadataManager.getSampleId(studyId, "S" + s);
+                int dp = random.nextInt(60);
+                String[] sampleData = {GENOTYPES[random.nextInt(GENOTYPES.length)], (dp / 2) + "," + (dp - dp / 2), String.valueOf(dp)};
+                cells.add(new KeyValue(row, GenomeHelper.COLUMN_FAMILY_BYTES, VariantPhoenixSchema.buildSampleColumnKey(studyId, sampleId),
+                        PVarcharArray.INSTANCE.toBytes(new PhoenixArray(PVarchar.INSTANCE, sampleData))));
+            }
+            for (Integer fileId : fileIds) {
+                String[] fileData = {(1000 + v * 10) + ":A:C:0", null, VariantOverlappingStatus.NONE.toString(),
+                        String.valueOf(random.nextInt(990) / 10.0), "PASS"};
+                cells.add(new KeyValue(row, GenomeHelper.COLUMN_FAMILY_BYTES, VariantPhoenixSchema.buildFileColumnKey(studyId, fileId),
+                        PVarcharArray.INSTANCE.toBytes(new PhoenixArray(PVarchar.INSTANCE, fileData))));
+            }
+            rows.add(Result.create(cells));
+        }
+
+        List<Integer> includeSamples = new ArrayList<>(numIncludedSamples);
+        Set<Integer> includeFiles = new LinkedHashSet<>();
+        for (int s = 0; s < numIncludedSamples; s++) {
+            int sampleId = metadataManager.getSampleId(studyId, "S" + s * (numSamples / numIncludedSamples));
+            includeSamples.add(sampleId);
+            includeFiles.addAll(metadataManager.getFileIdsFromSampleId(studyId, sampleId));
+        }
+        converter = new HBaseToStudyEntryConverter(metadataManager, null)
+                .configure(HBaseVariantConverterConfiguration.builder()
+                        .setProjection(new VariantQueryProjection(studyMetadata, includeSamples, new ArrayList<>(includeFiles)))
+                        .build());
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        for (Result row : rows) {
+            blackhole.consume(converter.convert(row));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HBaseToStudyEntryConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
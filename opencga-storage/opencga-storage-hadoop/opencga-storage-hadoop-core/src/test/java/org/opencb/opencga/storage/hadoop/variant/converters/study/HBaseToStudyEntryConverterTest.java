@@ -1,7 +1,11 @@
 package org.opencb.opencga.storage.hadoop.variant.converters.study;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.phoenix.schema.types.PVarchar;
+import org.apache.phoenix.schema.types.PVarcharArray;
 import org.apache.phoenix.schema.types.PhoenixArray;
 import org.junit.Assert;
 import org.junit.Before;
@@ -15,6 +19,10 @@ import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
 import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageMetadataDBAdaptorFactory;
+import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjection;
+import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
+import org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixKeyFactory;
+import org.opencb.opencga.storage.hadoop.variant.adaptors.phoenix.VariantPhoenixSchema;
 import org.opencb.opencga.storage.hadoop.variant.converters.HBaseVariantConverterConfiguration;
 import org.opencb.opencga.storage.hadoop.variant.converters.VariantRow;
 
@@ -158,6 +166,41 @@ public class HBaseToStudyEntryConverterTest {
         Assert.assertEquals(s.toString(), expected, s);
     }
 
+    @Test
+    public void testConvertRowWithProjection() throws Exception {
+        int studyId = sm.getId();
+        List<Integer> samples = Arrays.asList(mm.getSampleId(studyId, "S1"), mm.getSampleId(studyId, "S5"));
+        converter.configure(HBaseVariantConverterConfiguration.builder()
+                .setProjection(new VariantQueryProjection(mm.getStudyMetadata(studyId), samples, Collections.singletonList(1)))
+                .build());
+
+        byte[] row = VariantPhoenixKeyFactory.generateVariantRowKey(new Variant("1:1000:A:C"));
+        List<Cell> cells = new ArrayList<>();
+        cells.add(sampleCell(row, studyId, "S1", arrayOf("0/1", "PASS")));
+        cells.add(sampleCell(row, studyId, "S2", arrayOf("1/1", "PASS")));
+        cells.add(sampleCell(row, studyId, "S5", arrayOf("1/1", "PASS")));
+        cells.add(fileCell(row, studyId, 1, arrayOf("1000:A:C:0", null, "N", "50", "PASS")));
+        cells.add(fileCell(row, studyId, 2, arrayOf("1000:A:C:0", null, "N", "30", "PASS")));
+
+        StudyEntry s = converter.convert(Result.create(cells)).get(studyId);
+        Assert.assertEquals(Arrays.asList("S1", "S5"), s.getOrderedSamplesName());
+        Assert.assertEquals("0/1", s.getSampleData("S1", "GT"));
+        Assert.assertEquals("1/1", s.getSampleData("S5", "GT"));
+        Assert.assertEquals(1, s.getFiles().size());
+        Assert.assertEquals("f1", s.getFiles().get(0).getFileId());
+        Assert.assertEquals("50", s.getFiles().get(0).getData().get(StudyEntry.QUAL));
+    }
+
+    private Cell sampleCell(byte[] row, int studyId, String sample, PhoenixArray value) {
+        return new KeyValue(row, GenomeHelper.COLUMN_FAMILY_BYTES,
+                VariantPhoenixSchema.buildSampleColumnKey(studyId, mm.getSampleId(studyId, sample)), PVarcharArray.INSTANCE.toBytes(value));
+    }
+
+    private Cell fileCell(byte[] row, int studyId, int fileId, PhoenixArray value) {
+        return new KeyValue(row, GenomeHelper.COLUMN_FAMILY_BYTES,
+                VariantPhoenixSchema.buildFileColumnKey(studyId, fileId), PVarcharArray.INSTANCE.toBytes(value));
+    }
+
     private VariantRow.SampleColumn getSampleColumn(int sampleId, List<String> sampleData) {
         return new VariantRow.SampleColumn() {
             @Override
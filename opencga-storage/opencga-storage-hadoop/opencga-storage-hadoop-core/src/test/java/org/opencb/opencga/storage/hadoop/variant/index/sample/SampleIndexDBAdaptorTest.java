@@ -12,6 +12,7 @@ import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageMetadata
 import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
 import org.opencb.opencga.storage.hadoop.variant.index.query.SampleIndexQuery;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -42,6 +43,25 @@ public class SampleIndexDBAdaptorTest {
         new SampleIndexDBAdaptor(new HBaseManager(new Configuration()), null, metadataManager).parse(query.forSample(sampleName), null);
     }
 
+    @Test
+    public void testIsMissingServerSideCountFilter() {
+        String filterClass = SampleIndexCountFilter.class.getName();
+        // Remote exceptions only contain the message of the original exception
+        Assert.assertTrue(SampleIndexDBAdaptor.isMissingServerSideCountFilter(
+                new IOException("java.lang.ClassNotFoundException: " + filterClass)));
+        Assert.assertTrue(SampleIndexDBAdaptor.isMissingServerSideCountFilter(
+                new IOException(new ClassNotFoundException(filterClass))));
+        Assert.assertTrue(SampleIndexDBAdaptor.isMissingServerSideCountFilter(
+                new IOException("java.lang.NoClassDefFoundError: org/opencb/opencga/core/common/JacksonUtils")));
+
+        // Other errors from the filter must not fall back to the client side count
+        Assert.assertFalse(SampleIndexDBAdaptor.isMissingServerSideCountFilter(
+                new IOException("org.apache.hadoop.hbase.exceptions.DeserializationException: " + filterClass)));
+        Assert.assertFalse(SampleIndexDBAdaptor.isMissingServerSideCountFilter(
+                new IOException(new ClassNotFoundException("org.apache.other.Class"))));
+        Assert.assertFalse(SampleIndexDBAdaptor.isMissingServerSideCountFilter(new IOException("Connection refused")));
+    }
+
     @Test
     public void testSplitRegion() {
         Region region = new Region("1", 1000, 16400000);
@@ -4,11 +4,13 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.time.StopWatch;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Assert;
@@ -36,8 +38,10 @@ import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.core.variant.annotation.DefaultVariantAnnotationManager;
 import org.opencb.opencga.storage.core.variant.query.Values;
 import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
+import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
 import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
 import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine;
+import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageOptions;
 import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageTest;
 import org.opencb.opencga.storage.hadoop.variant.VariantHbaseTestUtils;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHBaseQueryParser;
@@ -49,6 +53,7 @@ import org.opencb.opencga.storage.hadoop.variant.index.core.CategoricalMultiValu
 import org.opencb.opencga.storage.hadoop.variant.index.family.FamilyIndexDriver;
 import org.opencb.opencga.storage.hadoop.variant.index.query.SampleFileIndexQuery;
 import org.opencb.opencga.storage.hadoop.variant.index.query.SampleIndexQuery;
+import org.opencb.opencga.storage.hadoop.variant.index.query.SingleSampleIndexQuery;
 
 import java.nio.file.Paths;
 import java.util.*;
@@ -701,6 +706,96 @@ public class SampleIndexTest extends VariantStorageBaseTest implements HadoopVar
     }
 
 
+    @Test
+    public void testCountShards() throws StorageEngineException {
+        SampleIndexDBAdaptor sampleIndexDBAdaptor = ((HadoopVariantStorageEngine) variantStorageEngine).getSampleIndexDBAdaptor();
+        for (String study : studies) {
+            String sampleName = sampleNames.get(study).get(0);
+            for (Query baseQuery : Arrays.asList(new Query(), new Query(REGION.key(), "6"))) {
+                Query query = new Query(baseQuery)
+                        .append(VariantQueryParam.STUDY.key(), study)
+                        .append(GENOTYPE.key(), sampleName + ":1|0,0|1,1|1");
+                SampleIndexQuery sampleIndexQuery = sampleIndexDBAdaptor.parseSampleIndexQuery(new Query(query));
+
+                DataResult<Long> result = sampleIndexDBAdaptor.count(sampleIndexQuery, new QueryOptions(QueryOptions.TIMEOUT, 60000));
+                System.out.println("query = " + query.toJson());
+                result.getEvents().forEach(System.out::println);
+
+                // One event per shard
+                assertTrue(result.getEvents().size() > 1);
+                assertEquals(dbAdaptor.count(query).first(), result.first());
+            }
+        }
+    }
+
+    @Test
+    public void testCountMultiSample() throws StorageEngineException {
+        SampleIndexDBAdaptor sampleIndexDBAdaptor = ((HadoopVariantStorageEngine) variantStorageEngine).getSampleIndexDBAdaptor();
+        List<Query> queries = Arrays.asList(
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19600;NA19660;NA19661"),
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19600,NA19660,NA19661"),
+                new Query(STUDY.key(), STUDY_NAME).append(GENOTYPE.key(), "NA19600:0/1;NA19661:0/0,0|0"),
+                new Query(STUDY.key(), STUDY_NAME).append(GENOTYPE.key(), "NA19600:0/1,1/1;NA19660:0/1,1/1;NA19661:!0/1"),
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19600;NA19661").append(REGION.key(), "1:1000-16400000,22"),
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19600,NA19661").append(ANNOT_BIOTYPE.key(), "protein_coding"),
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19685:MendelianError"),
+                new Query(STUDY.key(), STUDY_NAME_3).append(SAMPLE.key(), "NA12877;NA12878"),
+                new Query(STUDY.key(), STUDY_NAME_3).append(SAMPLE.key(), "NA12877,NA12878").append(REGION.key(), "chr1")
+        );
+        for (Query query : queries) {
+            SampleIndexQuery sampleIndexQuery = sampleIndexDBAdaptor.parseSampleIndexQuery(new Query(query));
+            DataResult<Long> result = sampleIndexDBAdaptor.count(sampleIndexQuery, new QueryOptions());
+            long expectedCount = sampleIndexDBAdaptor.iterator(sampleIndexDBAdaptor.parseSampleIndexQuery(new Query(query)))
+                    .toDataResult().getNumResults();
+            System.out.println("query = " + query.toJson());
+            System.out.println("Count = " + result.first() + " in " + result.getTime() + "ms");
+            assertEquals(expectedCount, result.first().longValue());
+        }
+    }
+
+    @Test
+    public void testServerSideCount() throws Exception {
+        SampleIndexDBAdaptor sampleIndexDBAdaptor = ((HadoopVariantStorageEngine) variantStorageEngine).getSampleIndexDBAdaptor();
+        Configuration conf = new Configuration(dbAdaptor.getHBaseManager().getConf());
+        conf.setBoolean(HadoopVariantStorageOptions.SAMPLE_INDEX_QUERY_SERVER_SIDE_COUNT.key(), true);
+        SampleIndexDBAdaptor serverSideDBAdaptor = new SampleIndexDBAdaptor(
+                new HBaseManager(conf, dbAdaptor.getHBaseManager().getConnection()),
+                dbAdaptor.getTableNameGenerator(), dbAdaptor.getMetadataManager());
+        List<Query> queries = Arrays.asList(
+                new Query(STUDY.key(), STUDY_NAME).append(GENOTYPE.key(), "NA19600:0/1,1/1"),
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19600").append(REGION.key(), "1:1000-16400000,22"),
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19660").append(TYPE.key(), "INDEL"),
+                new Query(STUDY.key(), STUDY_NAME).append(SAMPLE.key(), "NA19661").append(ANNOT_BIOTYPE.key(), "protein_coding"),
+                new Query(STUDY.key(), STUDY_NAME_3).append(SAMPLE.key(), "NA12877"),
+                new Query(STUDY.key(), STUDY_NAME_3).append(SAMPLE.key(), "NA12878").append(REGION.key(), "chr1:1-2000000")
+        );
+        for (Query query : queries) {
+            SampleIndexQuery sampleIndexQuery = sampleIndexDBAdaptor.parseSampleIndexQuery(new Query(query));
+            long expectedCount = sampleIndexDBAdaptor.iterator(sampleIndexDBAdaptor.parseSampleIndexQuery(new Query(query)))
+                    .toDataResult().getNumResults();
+            DataResult<Long> result = serverSideDBAdaptor.count(sampleIndexQuery, new QueryOptions());
+            System.out.println("query = " + query.toJson());
+            System.out.println("Count = " + result.first() + " in " + result.getTime() + "ms");
+            assertEquals(expectedCount, result.first().longValue());
+        }
+
+        // Scan with the filter directly. Fails if the filter can not be deserialized at the region servers
+        Query query = new Query(STUDY.key(), STUDY_NAME).append(GENOTYPE.key(), "NA19600:0/1,1/1").append(REGION.key(), "1:1000-16400000");
+        SingleSampleIndexQuery sampleIndexQuery = sampleIndexDBAdaptor.parseSampleIndexQuery(new Query(query)).forSample("NA19600");
+        assertTrue(SampleIndexCountFilter.isSupported(sampleIndexQuery));
+        Scan scan = sampleIndexDBAdaptor.parse(sampleIndexQuery, sampleIndexQuery.getRegions());
+        scan.setFilter(new SampleIndexCountFilter(sampleIndexQuery, sampleIndexQuery.getRegions()));
+        long count = 0;
+        try (Table table = dbAdaptor.getHBaseManager().getConnection().getTable(
+                TableName.valueOf(sampleIndexDBAdaptor.getSampleIndexTableName(metadataManager.getStudyId(STUDY_NAME))))) {
+            for (Result result : table.getScanner(scan)) {
+                assertEquals(1, result.rawCells().length);
+                count += SampleIndexCountFilter.getCount(result);
+            }
+        }
+        assertEquals(sampleIndexDBAdaptor.count(sampleIndexQuery), count);
+    }
+
     @Test
     public void testAggregationCorrectnessFilterTranscript() throws Exception {
         SampleIndexDBAdaptor sampleIndexDBAdaptor = ((HadoopVariantStorageEngine) variantStorageEngine).getSampleIndexDBAdaptor();
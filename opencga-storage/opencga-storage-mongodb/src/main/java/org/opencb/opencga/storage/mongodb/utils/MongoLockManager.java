@@ -21,43 +21,67 @@ import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoWriteException;
 import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
+import com.mongodb.client.model.PushOptions;
 import org.apache.commons.lang3.time.StopWatch;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
+import org.opencb.opencga.storage.core.metadata.lock.LockManager;
+import org.opencb.opencga.storage.core.metadata.lock.LockMetrics;
+import org.opencb.opencga.storage.core.metadata.lock.LockWaiterRegistry;
 import org.opencb.opencga.storage.core.metadata.models.Lock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Calendar;
-import java.util.Date;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import static com.mongodb.client.model.Filters.*;
-import static com.mongodb.client.model.Updates.combine;
-import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.*;
 
 /**
  * Concurrent lock using a MongoDB document.
  *
+ * Applicants take a ticket from a counter in the document, and wait in a queue sorted by ticket.
+ * Only the first applicant of the queue tries to take the lock, so the lock is given in FIFO order.
+ * Applicants must refresh their position in the queue periodically, or they will be skipped.
+ * Releasing the lock wakes up the applicants waiting from the same process. Other applicants poll the document,
+ * less often the further they are in the queue.
+ *
  * Created on 13/06/16
  *
  * see http://stackoverflow.com/questions/31064750/mongodb-implement-a-read-write-lock-mutex
  *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
-public class MongoLockManager {
+public class MongoLockManager implements LockManager<Object> {
 
     private static final String LOCK_FIELD = "lock";
     private static final String WRITE_FIELD = "write";
+    private static final String TICKET_FIELD = "ticket";
+    private static final String QUEUE_FIELD = "queue";
+    private static final String QUEUE_TICKET_FIELD = "t";
+    private static final String QUEUE_EXPIRE_FIELD = "e";
+    private static final long QUEUE_LEASE = TimeUnit.SECONDS.toMillis(10);
+    private static final long POLL_INTERVAL = 100;
+    private static final long MAX_POLL_INTERVAL = 1000;
+    private static final LockWaiterRegistry WAITERS = new LockWaiterRegistry();
     private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool(
             new ThreadFactoryBuilder()
                     .setNameFormat("mongodb-lock-%d")
                     .build());
+    private final String lockField;
     private final String lockWriteField;
+    private final String lockTicketField;
+    private final String lockQueueField;
 
     private final MongoDBCollection collection;
+    private final LockMetrics metrics = new LockMetrics();
+    private final Logger logger = LoggerFactory.getLogger(MongoLockManager.class);
 
     public MongoLockManager(MongoDBCollection collection) {
         this(collection, LOCK_FIELD);
@@ -67,7 +91,10 @@ public class MongoLockManager {
         this.collection = collection;
         this.collection.withReadPreference(ReadPreference.primary())
                 .withWriteConcern(WriteConcern.ACKNOWLEDGED);
+        this.lockField = lockField;
         lockWriteField = lockField + '.' + WRITE_FIELD;
+        lockTicketField = lockField + '.' + TICKET_FIELD;
+        lockQueueField = lockField + '.' + QUEUE_FIELD;
     }
 
     /**
@@ -82,6 +109,7 @@ public class MongoLockManager {
      * @throws InterruptedException if any thread has interrupted the current thread.
      * @throws TimeoutException if the operations takes more than the timeout value.
      */
+    @Override
     public Lock lock(Object id, long lockDuration, long timeout)
             throws InterruptedException, TimeoutException {
 
@@ -101,31 +129,54 @@ public class MongoLockManager {
 
         StopWatch watch = new StopWatch();
         watch.start();
-        long modifiedCount;
-        Date date;
-        do {
-            date = new Date(Calendar.getInstance().getTimeInMillis() + lockDuration);
-            Date now = Calendar.getInstance().getTime();
-
-            Bson query = and(eq("_id", id), or(eq(lockWriteField, null), lt(lockWriteField, now)));
-            Bson update = combine(set(lockWriteField, date));
-
-            modifiedCount = collection.update(query, update, null).getNumUpdated();
-
-            if (modifiedCount != 1) {
-                Thread.sleep(100);
-                //Check if the lock is still valid
-                if (watch.getTime() > timeout) {
-                    throw new TimeoutException("Unable to get the lock");
+        Object waitersKey = Arrays.asList(lockField, id);
+        long ticket = takeTicket(id);
+        long queueExpire = enqueue(id, ticket);
+        boolean acquired = false;
+        Date date = null;
+        try {
+            while (!acquired) {
+                Date now = new Date();
+                int position = getQueuePosition(id, ticket, now);
+                if (position < 0) {
+                    // Skipped for not refreshing the position in time. Enqueue again with the same ticket.
+                    queueExpire = enqueue(id, ticket);
+                } else if (position == 0) {
+                    date = new Date(now.getTime() + lockDuration);
+                    Bson query = and(eq("_id", id), or(eq(lockWriteField, null), lt(lockWriteField, now)));
+                    // Take the lock and leave the queue, removing any expired applicant
+                    Bson update = combine(set(lockWriteField, date),
+                            pull(lockQueueField, or(eq(QUEUE_TICKET_FIELD, ticket), lt(QUEUE_EXPIRE_FIELD, now))));
+
+                    acquired = collection.update(query, update, null).getNumUpdated() == 1;
                 }
+
+                if (!acquired) {
+                    //Check if the lock is still valid
+                    if (watch.getTime() > timeout) {
+                        metrics.timeout();
+                        throw new TimeoutException("Unable to get the lock");
+                    }
+                    if (queueExpire - now.getTime() < QUEUE_LEASE / 2) {
+                        queueExpire = refreshQueue(id, ticket);
+                    }
+                    WAITERS.await(waitersKey, Math.min(POLL_INTERVAL * (Math.max(position, 0) + 1), MAX_POLL_INTERVAL));
+                }
+            }
+        } finally {
+            if (!acquired) {
+                leaveQueue(id, ticket);
             }
-        } while (modifiedCount == 0);
+        }
+        metrics.acquired(watch.getTime());
 
         long lockToken = date.getTime();
+        long acquireTime = System.currentTimeMillis();
         return new Lock(THREAD_POOL, ((int) (lockDuration / 4)), lockToken) {
             @Override
             public void unlock0() {
                 MongoLockManager.this.unlock(id, getToken());
+                metrics.released(System.currentTimeMillis() - acquireTime);
             }
 
             @Override
@@ -172,6 +223,74 @@ public class MongoLockManager {
         if (matchedCount == 0) {
             throw new IllegalStateException("Lock token " + lockToken + " not found!");
         }
+        WAITERS.signalAll(Arrays.asList(lockField, id));
+    }
+
+    @Override
+    public LockMetrics getMetrics() {
+        return metrics;
+    }
+
+    private long takeTicket(Object id) {
+        Document document = collection.findAndUpdate(eq("_id", id), new Document(lockTicketField, true), null,
+                inc(lockTicketField, 1L), new QueryOptions("returnNew", true)).first();
+        return document.get(lockField, Document.class).get(TICKET_FIELD, Number.class).longValue();
+    }
+
+    private long enqueue(Object id, long ticket) {
+        long expire = System.currentTimeMillis() + QUEUE_LEASE;
+        Document entry = new Document(QUEUE_TICKET_FIELD, ticket).append(QUEUE_EXPIRE_FIELD, new Date(expire));
+        collection.update(eq("_id", id),
+                pushEach(lockQueueField, Collections.singletonList(entry),
+                        new PushOptions().sortDocument(new Document(QUEUE_TICKET_FIELD, 1))), null);
+        return expire;
+    }
+
+    private long refreshQueue(Object id, long ticket) {
+        long expire = System.currentTimeMillis() + QUEUE_LEASE;
+        Bson query = and(eq("_id", id), eq(lockQueueField + '.' + QUEUE_TICKET_FIELD, ticket));
+        Bson update = set(lockQueueField + ".$." + QUEUE_EXPIRE_FIELD, new Date(expire));
+        if (collection.update(query, update, null).getNumMatches() == 0) {
+            return enqueue(id, ticket);
+        }
+        return expire;
+    }
+
+    private void leaveQueue(Object id, long ticket) {
+        try {
+            collection.update(eq("_id", id), pull(lockQueueField, eq(QUEUE_TICKET_FIELD, ticket)), null);
+        } catch (RuntimeException e) {
+            // The entry will expire
+            logger.warn("Unable to remove ticket " + ticket + " from the lock queue of '" + id + "'", e);
+        }
+        // The next applicant might be the first in the queue now
+        WAITERS.signalAll(Arrays.asList(lockField, id));
+    }
+
+    /**
+     * Position of the ticket in the queue of applicants, skipping expired applicants.
+     *
+     * @param id        _id the document to lock
+     * @param ticket    Ticket
+     * @param now       Current date
+     * @return          Position in the queue, or -1 if the ticket is not in the queue
+     */
+    private int getQueuePosition(Object id, long ticket, Date now) {
+        Document document = collection.find(eq("_id", id), new QueryOptions(QueryOptions.INCLUDE, lockQueueField)).first();
+        Document lock = document == null ? null : document.get(lockField, Document.class);
+        List<Document> queue = lock == null ? null : (List<Document>) lock.get(QUEUE_FIELD);
+        if (queue == null) {
+            return -1;
+        }
+        int position = 0;
+        for (Document entry : queue) {
+            if (entry.get(QUEUE_TICKET_FIELD, Number.class).longValue() == ticket) {
+                return position;
+            } else if (!entry.getDate(QUEUE_EXPIRE_FIELD).before(now)) {
+                position++;
+            }
+        }
+        return -1;
     }
 
 }
@@ -178,11 +178,17 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
             getDBAdaptor().cleanTrash(timeStamp);
         }
 
-        return new VariantSearchLoadResult(searchIndex.getNumProcessedVariants(), searchIndex.getNumLoadedVariants(), deletedVariants);
+        return new VariantSearchLoadResult(searchIndex.getNumProcessedVariants(), searchIndex.getNumLoadedVariants(), deletedVariants,
+                searchIndex.getLoadTimeMs(), searchIndex.getMaxQueueDepth(), searchIndex.getNumRetries(), searchIndex.getWriters());
     }
 
     @Override
     public void removeFiles(String study, List<String> files) throws StorageEngineException {
+        if (getMetadataManager().getStudyMetadata(study).getAttributes()
+                .getBoolean(GENOTYPES_BITMAP.key(), GENOTYPES_BITMAP.defaultValue())) {
+            throw new StorageEngineException("Unable to remove files from study '" + study + "'. "
+                    + "Genotypes are stored as bitmaps. Migrate them back to lists with migrateGenotypesBitmap before removing files.");
+        }
 
         TaskMetadata task = preRemove(study, files, Collections.emptyList());
         List<Integer> fileIds = task.getFileIds();
@@ -244,6 +250,64 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         }
     }
 
+    /**
+     * Build again the sample index of the given samples, reading the variants of their loaded files.
+     *
+     * @param study   Study
+     * @param samples List of samples. Use {@link VariantQueryUtils#ALL} to rebuild the index of all the samples.
+     * @param options Other options
+     * @throws StorageEngineException in an error occurs
+     */
+    @Override
+    public void sampleIndex(String study, List<String> samples, ObjectMap options) throws StorageEngineException {
+        VariantStorageMetadataManager metadataManager = getMetadataManager();
+        int studyId = metadataManager.getStudyId(study);
+        List<Integer> sampleIds;
+        if (samples.size() == 1 && samples.get(0).equals(ALL)) {
+            sampleIds = null;
+        } else {
+            sampleIds = new ArrayList<>(samples.size());
+            for (String sample : samples) {
+                sampleIds.add(metadataManager.getSampleIdOrFail(studyId, sample));
+            }
+        }
+        StopWatch stopWatch = StopWatch.createStarted();
+        VariantMongoDBAdaptor dbAdaptor = getDBAdaptor();
+        long numVariants = dbAdaptor.getSampleIndex().rebuild(studyId, sampleIds, dbAdaptor.getVariantsCollection());
+        logger.info("Sample index built from " + numVariants + " variants in " + stopWatch.getTime(TimeUnit.MILLISECONDS) / 1000.0 + "s");
+    }
+
+    /**
+     * Store the samples of each genotype of all the variants of the study as bitmaps, or back as lists of sampleIds.
+     * Bitmaps are smaller and faster to decode for large studies, but new files can not be loaded or removed while they are in use.
+     *
+     * @param study   Study
+     * @param bitmap  Store as bitmaps, or as lists of sampleIds
+     * @throws StorageEngineException in an error occurs
+     * @see MongoDBVariantStorageOptions#GENOTYPES_BITMAP
+     */
+    public void migrateGenotypesBitmap(String study, boolean bitmap) throws StorageEngineException {
+        VariantStorageMetadataManager metadataManager = getMetadataManager();
+        int studyId = metadataManager.getStudyId(study);
+        if (bitmap) {
+            // Set first, so queries accept both formats and new files are not loaded while migrating
+            metadataManager.updateStudyMetadata(studyId, sm -> {
+                sm.getAttributes().put(GENOTYPES_BITMAP.key(), true);
+                return sm;
+            });
+        }
+        StopWatch stopWatch = StopWatch.createStarted();
+        long numVariants = getDBAdaptor().migrateGenotypesBitmap(studyId, bitmap);
+        logger.info("Migrated genotypes of " + numVariants + " variants to " + (bitmap ? "bitmaps" : "lists") + " in "
+                + stopWatch.getTime(TimeUnit.MILLISECONDS) / 1000.0 + "s");
+        if (!bitmap) {
+            metadataManager.updateStudyMetadata(studyId, sm -> {
+                sm.getAttributes().put(GENOTYPES_BITMAP.key(), false);
+                return sm;
+            });
+        }
+    }
+
     @Override
     public void loadVariantScore(URI scoreFile, String study, String scoreName, String cohort1, String cohort2,
                                  VariantScoreFormatDescriptor descriptor, ObjectMap options) {
@@ -258,6 +322,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
     @Override
     public List<StoragePipelineResult> index(List<URI> inputFiles, URI outdirUri, boolean doExtract, boolean doTransform, boolean doLoad)
             throws StorageEngineException {
+        checkTransformStream(doTransform, doLoad);
 
         Map<URI, MongoDBVariantStoragePipeline> storageResultMap = new LinkedHashMap<>();
         Map<URI, StoragePipelineResult> resultsMap = new LinkedHashMap<>();
@@ -314,6 +379,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                     MongoDBVariantStoragePipeline storagePipeline = entry.getValue();
 
                     StopWatch loadWatch = StopWatch.createStarted();
+                    updateStartTime(result, System.currentTimeMillis());
                     try {
                         boolean doDirectLoad;
                         // Decide if use direct load or not.
@@ -323,6 +389,11 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                             doDirectLoad = false;
                         }
 
+                        // Stage the last file of the batch while merging the chromosomes already staged
+                        boolean lastFileToMerge = filesToMerge.size() + 1 == batchLoad || !iterator.hasNext();
+                        boolean stageAndMerge = doStage && doMerge && lastFileToMerge
+                                && isMergePipeline(storagePipeline.getOptions());
+
                         storagePipeline.getOptions().put(STAGE.key(), doStage);
                         storagePipeline.getOptions().put(MERGE.key(), doMerge);
                         storagePipeline.getOptions().put(DIRECT_LOAD.key(), doDirectLoad);
@@ -341,7 +412,9 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                         } else {
                             if (doStage) {
                                 logger.info("Load - Stage '{}'", input);
-                                storagePipeline.stage(input, outdirUri);
+                                if (!stageAndMerge) {
+                                    storagePipeline.stage(input, outdirUri);
+                                }
                                 result.setLoadResult(input);
                                 result.setLoadStats(storagePipeline.getLoadStats());
                                 result.getLoadStats().put(STAGE.key(), true);
@@ -356,7 +429,12 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                                 if (filesToMerge.size() == batchLoad || !iterator.hasNext()) {
                                     StopWatch mergeWatch = StopWatch.createStarted();
                                     try {
-                                        storagePipeline.merge(new ArrayList<>(filesToMerge));
+                                        if (stageAndMerge) {
+                                            logger.info("Load - Stage '{}' and merge by chromosome", input);
+                                            storagePipeline.stageAndMerge(input, outdirUri, new ArrayList<>(filesToMerge));
+                                        } else {
+                                            storagePipeline.merge(new ArrayList<>(filesToMerge));
+                                        }
                                     } catch (Exception e) {
                                         for (StoragePipelineResult storagePipelineResult : resultsToMerge) {
                                             storagePipelineResult.setLoadError(e);
@@ -366,6 +444,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                                         long mergeTime = mergeWatch.getTime(TimeUnit.MILLISECONDS);
                                         for (StoragePipelineResult storagePipelineResult : resultsToMerge) {
                                             storagePipelineResult.setLoadTimeMillis(storagePipelineResult.getLoadTimeMillis() + mergeTime);
+                                            updateWallTimeAndTransformedFileSize(storagePipelineResult);
                                             for (Map.Entry<String, Object> statsEntry : storagePipeline.getLoadStats().entrySet()) {
                                                 storagePipelineResult.getLoadStats()
                                                         .putIfAbsent(statsEntry.getKey(), statsEntry.getValue());
@@ -403,6 +482,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                         if (result.getLoadStats() == null) {
                             result.setLoadStats(storagePipeline.getLoadStats());
                         }
+                        updateWallTimeAndTransformedFileSize(result);
                     }
 
                 }
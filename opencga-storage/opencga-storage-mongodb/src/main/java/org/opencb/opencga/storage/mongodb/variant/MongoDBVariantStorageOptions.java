@@ -17,6 +17,7 @@ public enum MongoDBVariantStorageOptions implements ConfigurationOption {
     COLLECTION_STAGE("storage.mongodb.collection.stage", "stage"),
     COLLECTION_ANNOTATION("storage.mongodb.collection.annotation", "annot"),
     COLLECTION_TRASH("storage.mongodb.collection.trash", "trash"),
+    COLLECTION_SAMPLE_INDEX("storage.mongodb.collection.sampleIndex", "sample_index"),
 
     ALREADY_LOADED_VARIANTS("storage.mongodb.alreadyLoadedVariants", 0),
 
@@ -36,9 +37,13 @@ public enum MongoDBVariantStorageOptions implements ConfigurationOption {
     MERGE_IGNORE_OVERLAPPING_VARIANTS("storage.mongodb.merge.ignoreOverlappingVariants", false),   //Do not look for overlapping variants
     MERGE_PARALLEL_WRITE("storage.mongodb.merge.parallelWrite", false),
     MERGE_BATCH_SIZE("storage.mongodb.merge.batchSize", 10),          //Number of files to merge directly from first to second collection
+    MERGE_PIPELINE("storage.mongodb.merge.pipeline", false),   //Merge each chromosome while staging the next ones. Requires sorted input
+
+    SAMPLE_INDEX_MAX_VARIANTS("storage.mongodb.sampleIndex.maxVariants", 100000),   //Max variants from the sample index to bound a query
 
 
     EXTRA_GENOTYPE_FIELDS_COMPRESS("extra-fields.compress", true),    //Compress with gzip other sample information
+    GENOTYPES_BITMAP("genotypes.bitmap", false),    //Store the samples of each genotype as a bitmap. Set with the genotypes migration
     DEFAULT_GENOTYPE("defaultGenotype", Arrays.asList("0/0", "0|0"));
 
     private final String key;
@@ -73,6 +78,10 @@ public enum MongoDBVariantStorageOptions implements ConfigurationOption {
         return isParallelWrite(MERGE_PARALLEL_WRITE, options);
     }
 
+    public static boolean isMergePipeline(ObjectMap options) {
+        return options.getBoolean(MERGE_PIPELINE.key(), MERGE_PIPELINE.defaultValue());
+    }
+
     private static boolean isParallelWrite(MongoDBVariantStorageOptions option, ObjectMap options) {
         return options.getBoolean(PARALLEL_WRITE.key(), PARALLEL_WRITE.defaultValue())
                 || options.getBoolean(option.key(), option.defaultValue());
@@ -18,6 +18,7 @@ package org.opencb.opencga.storage.mongodb.variant;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.BiMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.time.StopWatch;
 import org.bson.Document;
 import org.opencb.biodata.formats.variant.io.VariantReader;
@@ -54,6 +55,7 @@ import org.opencb.opencga.storage.mongodb.variant.exceptions.MongoVariantStorage
 import org.opencb.opencga.storage.mongodb.variant.load.MongoDBVariantWriteResult;
 import org.opencb.opencga.storage.mongodb.variant.load.direct.MongoDBVariantDirectLoader;
 import org.opencb.opencga.storage.mongodb.variant.load.direct.MongoDBVariantStageAndFileReader;
+import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageChromosomeTracker;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageConverterTask;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageReader;
@@ -66,8 +68,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -101,6 +102,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
     private List<Integer> fileIds;
     // current running task
     private TaskMetadata currentTask;
+    private TaskMetadata stageTask;
 
     public MongoDBVariantStoragePipeline(StorageConfiguration configuration, String storageEngineId,
                                          VariantMongoDBAdaptor dbAdaptor, IOConnectorProvider ioConnectorProvider, ObjectMap options) {
@@ -171,6 +173,13 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             studyMetadata.getAttributes().put(DEFAULT_GENOTYPE.key(), defaultGenotype);
         }
 
+        // 3) Genotypes stored as bitmaps can not be merged
+        if (studyMetadata.getAttributes().getBoolean(GENOTYPES_BITMAP.key(), GENOTYPES_BITMAP.defaultValue())) {
+            throw new StorageEngineException("Unable to load new files into study '" + studyMetadata.getName() + "'. "
+                    + "Genotypes are stored as bitmaps. Migrate them back to lists with "
+                    + "MongoDBVariantStorageEngine#migrateGenotypesBitmap before loading new files.");
+        }
+
         VariantStorageEngine.SplitData splitData = VariantStorageEngine.SplitData.from(options);
         boolean newSampleBatch = checkCanLoadSampleBatch(getMetadataManager(), studyMetadata, fileId, splitData != null);
 
@@ -282,13 +291,13 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
 
         VariantFileMetadata fileMetadata = readVariantFileMetadata(inputUri);
         VariantStudyMetadata metadata = fileMetadata.toVariantStudyMetadata(String.valueOf(studyId));
-        long numRecords = fileMetadata.getStats().getVariantCount();
+        // Stats are not available yet if the transform step is streamed
+        long numRecords = fileMetadata.getStats() == null ? 0 : fileMetadata.getStats().getVariantCount();
         int batchSize = options.getInt(VariantStorageOptions.LOAD_BATCH_SIZE.key(), VariantStorageOptions.LOAD_BATCH_SIZE.defaultValue());
         int loadThreads = options.getInt(VariantStorageOptions.LOAD_THREADS.key(), VariantStorageOptions.LOAD_THREADS.defaultValue());
         final int numReaders = 1;
         boolean resume = isResume(options);
         StudyMetadata studyMetadata = getStudyMetadata();
-        boolean stdin = options.getBoolean(STDIN.key(), STDIN.defaultValue());
 
         try {
             //Dedup task
@@ -300,7 +309,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             org.opencb.commons.run.Task remapIdsTask = new RemapVariantIdsTask(studyMetadata.getId(), fileId);
 
             // File reader
-            DataReader<Variant> variantReader = variantReaderUtils.getVariantReader(inputUri, metadata, stdin)
+            DataReader<Variant> variantReader = getVariantReader(inputUri, metadata)
                     .then(duplicatedVariantsDetector)
                     .then(remapIdsTask);
 
@@ -378,6 +387,18 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
     }
 
     public void stage(URI input, URI outdir) throws StorageEngineException {
+        stage(input, outdir, null);
+    }
+
+    /**
+     * Load the file into the STAGE collection.
+     *
+     * @param input     Input file
+     * @param outdir    Output directory
+     * @param tracker   Optional tracker to be notified of the completely staged chromosomes.
+     * @throws StorageEngineException  If there is a problem executing the {@link ParallelTaskRunner}
+     */
+    private void stage(URI input, URI outdir, MongoDBVariantStageChromosomeTracker tracker) throws StorageEngineException {
         final int fileId = getFileId();
 
         if (!options.getBoolean(STAGE.key(), false)) {
@@ -388,12 +409,12 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
 
         VariantFileMetadata fileMetadata = readVariantFileMetadata(input);
         VariantStudyMetadata metadata = fileMetadata.toVariantStudyMetadata(String.valueOf(getStudyId()));
-        long numRecords = fileMetadata.getStats().getVariantCount();
+        // Stats are not available yet if the transform step is streamed
+        long numRecords = fileMetadata.getStats() == null ? 0 : fileMetadata.getStats().getVariantCount();
         int batchSize = options.getInt(VariantStorageOptions.LOAD_BATCH_SIZE.key(), VariantStorageOptions.LOAD_BATCH_SIZE.defaultValue());
         int loadThreads = options.getInt(VariantStorageOptions.LOAD_THREADS.key(), VariantStorageOptions.LOAD_THREADS.defaultValue());
         final int numReaders = 1;
 //        final int numTasks = loadThreads == 1 ? 1 : loadThreads - numReaders; //Subtract the reader thread
-        boolean stdin = options.getBoolean(STDIN.key(), STDIN.defaultValue());
 
 
         try {
@@ -401,7 +422,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             MongoDBCollection stageCollection = dbAdaptor.getStageCollection(studyMetadata.getId());
 
             //Reader
-            VariantReader variantReader = variantReaderUtils.getVariantReader(input, metadata, stdin);
+            VariantReader variantReader = getVariantReader(input, metadata);
 
             DuplicatedVariantsResolverFactory dedupFactory = new DuplicatedVariantsResolverFactory(getOptions(), ioConnectorProvider);
             AbstractDuplicatedVariantsResolver resolver = dedupFactory.getResolver(UriUtils.fileName(input), outdir);
@@ -423,7 +444,12 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
                     .setNumTasks(loadThreads)
                     .setBatchSize(batchSize)
                     .setAbortOnFail(true).build();
-            if (isStageParallelWrite(options)) {
+            if (tracker != null) {
+                // Write from the tasks, so the tracker knows when each batch is in the STAGE collection
+                logger.info("Multi thread stage load... [{} readerThreads, {} writerThreads]", numReaders, loadThreads);
+                ptr = new ParallelTaskRunner<>(variantReader.then(duplicatedVariantsDetector).then(tracker.readTask()),
+                        tracker.wrap(remapIdsTask.then(converterTask).then(stageLoader)), null, config);
+            } else if (isStageParallelWrite(options)) {
                 logger.info("Multi thread stage load... [{} readerThreads, {} writerThreads]", numReaders, loadThreads);
                 ptr = new ParallelTaskRunner<>(variantReader.then(duplicatedVariantsDetector),
                         remapIdsTask.then(converterTask).then(stageLoader), null, config);
@@ -445,6 +471,9 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             try {
                 Runtime.getRuntime().addShutdownHook(hook);
                 ptr.run();
+                if (tracker != null) {
+                    tracker.finish();
+                }
                 stageSuccess(fileMetadata);
             } finally {
                 Runtime.getRuntime().removeShutdownHook(hook);
@@ -520,6 +549,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             options.put(STAGE.key(), true);
         }
         currentTask = operation;
+        stageTask = operation;
         return operation;
     }
 
@@ -536,7 +566,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
 
         getMetadataManager().updateFileMetadata(getStudyId(), fileId, file -> file.setStatus(STAGE.key(), TaskMetadata.Status.READY));
         getMetadataManager()
-                .setStatus(getStudyId(), currentTask.getId(), TaskMetadata.Status.READY);
+                .setStatus(getStudyId(), stageTask.getId(), TaskMetadata.Status.READY);
         metadata.setId(String.valueOf(fileId));
         dbAdaptor.getMetadataManager().updateVariantFileMetadata(String.valueOf(getStudyId()), metadata);
 
@@ -568,6 +598,33 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
      */
     protected MongoDBVariantWriteResult merge(List<Integer> fileIds, long skippedVariants)
             throws StorageEngineException {
+        return merge(fileIds, skippedVariants, null, null);
+    }
+
+    /**
+     * Stage a file and merge the staged files into Variant collection, chromosome by chromosome.
+     *
+     * Each chromosome is merged once it is completely staged, while the next chromosomes are still being staged.
+     * Requires a sorted input file.
+     *
+     * @see MongoDBVariantStageChromosomeTracker
+     *
+     * @param input             Input file to stage
+     * @param outdir            Output directory
+     * @param fileIds           FileIDs of the files to be merged, including the file to stage. The rest must be already staged.
+     * @return                  Write Result with times and count
+     * @throws StorageEngineException  If there is a problem staging or merging the files
+     */
+    public MongoDBVariantWriteResult stageAndMerge(URI input, URI outdir, List<Integer> fileIds) throws StorageEngineException {
+        if (!options.getBoolean(STAGE.key(), false)) {
+            // Already staged. Nothing to overlap with
+            return merge(fileIds, options.getLong("skippedVariants"));
+        }
+        return merge(fileIds, 0, input, outdir);
+    }
+
+    private MongoDBVariantWriteResult merge(List<Integer> fileIds, long skippedVariants, URI stageInput, URI outdir)
+            throws StorageEngineException {
 
         long start = System.currentTimeMillis();
         this.fileIds = fileIds;
@@ -583,6 +640,9 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
 
         if (options.getBoolean(MERGE_SKIP.key())) {
             // It was already merged, but still some work is needed. Exit to do postLoad step
+            if (stageInput != null) {
+                stage(stageInput, outdir);
+            }
             writeResult = new MongoDBVariantWriteResult();
         } else {
             Thread hook = new Thread(() -> {
@@ -597,7 +657,11 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             });
             Runtime.getRuntime().addShutdownHook(hook);
             try {
-                writeResult = mergeByChromosome(fileIds, batchSize, loadThreads, studyMetadata);
+                if (stageInput == null) {
+                    writeResult = mergeByChromosome(fileIds, batchSize, loadThreads, studyMetadata, null, null, null);
+                } else {
+                    writeResult = stageAndMergeByChromosome(stageInput, outdir, fileIds, batchSize, loadThreads, studyMetadata);
+                }
             } catch (Exception e) {
                 getMetadataManager().atomicSetStatus(getStudyId(), TaskMetadata.Status.ERROR, MERGE.key(), fileIds);
                 throw e;
@@ -615,6 +679,9 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             logger.info("Delete variants time: " + time.getTime(TimeUnit.MILLISECONDS) / 1000.0 + "s , CleanDocuments: " + modifiedCount);
         }
 
+        if (stageInput != null) {
+            skippedVariants = options.getLong("skippedVariants");
+        }
         writeResult.setSkippedVariants(skippedVariants);
 
         logger.info("Write result: {}", writeResult.toString());
@@ -651,11 +718,120 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         });
     }
 
+    /**
+     * Stage the file, and merge each chromosome as soon as it is completely staged.
+     * Chromosomes are merged one at a time, in a separated thread. At the end, merge the chromosomes from the
+     * other files that were not found in the staged file.
+     *
+     * @param input         Input file to stage
+     * @param outdir        Output directory
+     * @param fileIds       FileIDs of the files to be merged
+     * @param batchSize     Batch size
+     * @param loadThreads   Number of threads
+     * @param studyMetadata Study metadata
+     * @return              Write Result with times and count
+     * @throws StorageEngineException  If there is a problem staging or merging the files
+     */
+    private MongoDBVariantWriteResult stageAndMergeByChromosome(URI input, URI outdir, List<Integer> fileIds, int batchSize,
+                                                                int loadThreads, StudyMetadata studyMetadata)
+            throws StorageEngineException {
+        MongoDBVariantWriteResult result = new MongoDBVariantWriteResult();
+        ObjectMap chromosomeStats = new ObjectMap();
+        List<String> mergedChromosomes = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> futures = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<Exception> mergeError = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("merge-chromosome-%d")
+                .build());
+
+        // The merge tasks abort the staging on error, so the tracker is referenced before being created
+        AtomicReference<MongoDBVariantStageChromosomeTracker> tracker = new AtomicReference<>();
+        tracker.set(new MongoDBVariantStageChromosomeTracker(chromosome -> {
+            logger.info("Chromosome '{}' staged. Start merge", chromosome);
+            futures.add(executor.submit(() -> {
+                if (mergeError.get() != null) {
+                    return null;
+                }
+                try {
+                    ObjectMap stats = new ObjectMap();
+                    MongoDBVariantWriteResult chrResult = mergeByChromosome(fileIds, batchSize, loadThreads, studyMetadata,
+                            Collections.singletonList(chromosome), null, stats);
+                    synchronized (result) {
+                        result.merge(chrResult);
+                        chromosomeStats.put(chromosome, stats);
+                    }
+                    mergedChromosomes.add(chromosome);
+                } catch (Exception e) {
+                    mergeError.compareAndSet(null, e);
+                    // Stop staging the next batches
+                    tracker.get().abort(e);
+                    throw e;
+                }
+                return null;
+            }));
+        }));
+
+        try {
+            try {
+                stage(input, outdir, tracker.get());
+            } finally {
+                executor.shutdown();
+            }
+            for (Future<?> future : new ArrayList<>(futures)) {
+                future.get();
+            }
+        } catch (StorageEngineException | ExecutionException e) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (mergeError.get() != null) {
+                // A chromosome failed to merge. Report the merge error, as the staging, if failed, was aborted because of it.
+                throw new StorageEngineException("Error while executing LoadVariants by chromosome", mergeError.get());
+            } else if (e instanceof StorageEngineException) {
+                throw (StorageEngineException) e;
+            } else {
+                throw new StorageEngineException("Error while executing LoadVariants by chromosome", e.getCause());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new StorageEngineException("Interrupted while merging by chromosome", e);
+        }
+
+        // Merge chromosomes from the rest of files, not present in the staged file
+        ObjectMap stats = new ObjectMap();
+        result.merge(mergeByChromosome(fileIds, batchSize, loadThreads, studyMetadata, null, mergedChromosomes, stats));
+        if (stats.getLong("staged") > 0) {
+            chromosomeStats.put("others", stats);
+        }
+        loadStats.append("mergeByChromosome", chromosomeStats);
+        return result;
+    }
+
+    /**
+     * Merge the staged files into the Variant collection.
+     *
+     * @param fileIds               FileIDs of the files to be merged
+     * @param batchSize             Batch size
+     * @param loadThreads           Number of threads
+     * @param studyMetadata         Study metadata
+     * @param chromosomes           Chromosomes to merge. If empty, merge all
+     * @param excludedChromosomes   Chromosomes to skip
+     * @param stats                 Optional map to be filled with the staged, merged and conflicting variants, and the throughput
+     * @return                      Write Result with times and count
+     * @throws StorageEngineException  If there is a problem executing the {@link ParallelTaskRunner}
+     */
     private MongoDBVariantWriteResult mergeByChromosome(List<Integer> fileIds, int batchSize, int loadThreads,
-                                                        StudyMetadata studyMetadata)
+                                                        StudyMetadata studyMetadata, List<String> chromosomes,
+                                                        List<String> excludedChromosomes, ObjectMap stats)
             throws StorageEngineException {
         MongoDBCollection stageCollection = dbAdaptor.getStageCollection(studyMetadata.getId());
-        MongoDBVariantStageReader reader = new MongoDBVariantStageReader(stageCollection, studyMetadata.getId());
+        MongoDBVariantStageReader reader = new MongoDBVariantStageReader(stageCollection, studyMetadata.getId(), chromosomes);
+        reader.setExcludedChromosomes(excludedChromosomes);
         MergeMode mergeMode = MergeMode.from(studyMetadata.getAttributes());
         if (mergeMode.equals(MergeMode.BASIC)) {
             // Read only files to load when MergeMode is BASIC
@@ -691,26 +867,62 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             throw new StorageEngineException("Error while creating ParallelTaskRunner", e);
         }
 
+        StopWatch stopWatch = StopWatch.createStarted();
         try {
-            logger.info("Merging files " + fileIds);
+            if (chromosomes == null || chromosomes.isEmpty()) {
+                logger.info("Merging files " + fileIds);
+            } else {
+                logger.info("Merging files " + fileIds + " at chromosomes " + chromosomes);
+            }
             ptrMerge.run();
         } catch (ExecutionException e) {
             logger.info("Write result: {}", variantLoader.getResult());
             throw new StorageEngineException("Error while executing LoadVariants in ParallelTaskRunner", e);
         }
-        return variantLoader.getResult();
+        MongoDBVariantWriteResult result = variantLoader.getResult();
+        if (stats != null) {
+            long timeMs = stopWatch.getTime(TimeUnit.MILLISECONDS);
+            long merged = result.getNewVariants() + result.getUpdatedVariants();
+            double throughput = timeMs == 0 ? 0 : reader.getNumReadDocuments() * 1000.0 / timeMs;
+            stats.append("staged", reader.getNumReadDocuments())
+                    .append("merged", merged)
+                    .append("conflicts", result.getConflictVariants())
+                    .append("timeMs", timeMs)
+                    .append("throughput", throughput);
+            logger.info("Merged chromosomes {} : {} staged variants, {} merged variants, {} conflicts, {} variants/s",
+                    chromosomes == null ? "excluding " + excludedChromosomes : chromosomes, reader.getNumReadDocuments(), merged,
+                    result.getConflictVariants(), String.format("%.2f", throughput));
+        }
+        return result;
     }
 
     @Override
     public URI postLoad(URI input, URI output) throws StorageEngineException {
 
         if (options.getBoolean(MERGE.key()) || options.getBoolean(DIRECT_LOAD.key(), DIRECT_LOAD.defaultValue())) {
+            if (YesNoAuto.parse(options, LOAD_SAMPLE_INDEX.key()).orYes().booleanValue()) {
+                buildSampleIndex(fileIds == null || fileIds.isEmpty() ? Collections.singletonList(getFileId()) : fileIds);
+            }
             return postLoad(input, output, fileIds);
         } else {
             return input;
         }
     }
 
+    private void buildSampleIndex(List<Integer> fileIds) throws StorageEngineException {
+        logger.info("Building sample index for files " + fileIds);
+        long start = System.currentTimeMillis();
+        try {
+            long numVariants = dbAdaptor.getSampleIndex().build(getStudyId(), fileIds, dbAdaptor.getVariantsCollection());
+            long end = System.currentTimeMillis();
+            logger.info("Sample index built from " + numVariants + " variants in " + (end - start) / 1000.0 + "s");
+            loadStats.put("sampleIndex.variants", numVariants);
+            loadStats.put("sampleIndex.time", end - start);
+        } catch (RuntimeException e) {
+            throw new StorageEngineException("Error building the sample index", e);
+        }
+    }
+
     @Override
     protected void securePostLoad(List<Integer> fileIds, StudyMetadata studyMetadata) throws StorageEngineException {
         super.securePostLoad(fileIds, studyMetadata);
@@ -894,6 +1106,11 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         return true; // This is a new batch of samples
     }
 
+    @Override
+    protected boolean supportsTransformStream() {
+        return true;
+    }
+
     /**
      * Check if the file can be loaded using direct load.
      *
@@ -26,6 +26,7 @@ import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.json.JsonMode;
 import org.bson.json.JsonWriterSettings;
+import org.bson.types.Binary;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
@@ -55,6 +56,7 @@ import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine;
 import org.opencb.opencga.storage.mongodb.variant.converters.*;
 import org.opencb.opencga.storage.mongodb.variant.converters.stage.StageDocumentToVariantConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.trash.DocumentToTrashVariantConverter;
+import org.opencb.opencga.storage.mongodb.variant.index.sample.MongoDBSampleIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -91,6 +93,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
     private final StorageConfiguration storageConfiguration;
     private final MongoCredentials credentials;
     private final VariantMongoDBQueryParser queryParser;
+    private final MongoDBSampleIndex sampleIndex;
 
     private VariantStorageMetadataManager metadataManager;
     private final ObjectMap configuration;
@@ -100,6 +103,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
     public static final int CHUNK_SIZE_SMALL = 1000;
     public static final int CHUNK_SIZE_BIG = 10000;
+    private static final int BATCH_SIZE_MIGRATION = 1000;
     // Number of opened dbAdaptors
     public static final AtomicInteger NUMBER_INSTANCES = new AtomicInteger(0);
 
@@ -130,6 +134,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                 : storageEngineConfiguration.getOptions();
 
         queryParser = new VariantMongoDBQueryParser(variantStorageMetadataManager);
+        sampleIndex = new MongoDBSampleIndex(db, variantStorageMetadataManager, configuration);
         NUMBER_INSTANCES.incrementAndGet();
     }
 
@@ -149,6 +154,10 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         }
     }
 
+    public MongoDBSampleIndex getSampleIndex() {
+        return sampleIndex;
+    }
+
     public MongoDBCollection getStudiesCollection() {
         return db.getCollection(configuration.getString(COLLECTION_STUDIES.key(), COLLECTION_STUDIES.defaultValue()));
     }
@@ -279,6 +288,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         for (Integer fileId : fileIds) {
             sampleIds.addAll(metadataManager.getFileMetadata(sm.getId(), fileId).getSamples());
         }
+        sampleIndex.remove(sm.getId(), sampleIds);
 
         // Update and remove variants from variants collection
         int studyId = sm.getId();
@@ -366,6 +376,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             logger.info("Remove study from stage collection - step 2/2");
             removeEmptyVariantsFromStage(studyId);
         }
+        sampleIndex.drop(studyId);
         return result;
     }
 
@@ -441,6 +452,66 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         return deletedDocuments;
     }
 
+    /**
+     * Store the samples of each genotype of the study as bitmaps, or back as lists of sampleIds.
+     * See {@link SampleIdsBitmapConverter}. Documents already in the requested format are not modified.
+     *
+     * @param studyId Study
+     * @param bitmap  Store as bitmaps, or as lists of sampleIds
+     * @return Number of updated variants
+     */
+    public long migrateGenotypesBitmap(int studyId, boolean bitmap) {
+        String studyIdField = DocumentToVariantConverter.STUDIES_FIELD + '.' + STUDYID_FIELD;
+        Bson query = eq(studyIdField, studyId);
+        Bson projection = Projections.include(studyIdField, DocumentToVariantConverter.STUDIES_FIELD + '.' + GENOTYPES_FIELD);
+
+        List<Bson> queries = new ArrayList<>(BATCH_SIZE_MIGRATION);
+        List<Bson> updates = new ArrayList<>(BATCH_SIZE_MIGRATION);
+        long updatedVariants = 0;
+        try (MongoDBIterator<Document> iterator = getVariantsCollection().nativeQuery()
+                .find(query, projection, new QueryOptions(BATCH_SIZE, BATCH_SIZE_MIGRATION))) {
+            while (iterator.hasNext()) {
+                Document variant = iterator.next();
+                Document genotypes = null;
+                for (Document study : variant.getList(DocumentToVariantConverter.STUDIES_FIELD, Document.class)) {
+                    if (study.get(STUDYID_FIELD, Number.class).intValue() == studyId) {
+                        genotypes = study.get(GENOTYPES_FIELD, Document.class);
+                        break;
+                    }
+                }
+                if (genotypes == null) {
+                    continue;
+                }
+                Document newGenotypes = new Document();
+                boolean modified = false;
+                for (Map.Entry<String, Object> entry : genotypes.entrySet()) {
+                    Object value = entry.getValue();
+                    if (bitmap && !(value instanceof Binary)) {
+                        value = SampleIdsBitmapConverter.toBitmap(SampleIdsBitmapConverter.getSampleIds(value));
+                        modified = true;
+                    } else if (!bitmap && value instanceof Binary) {
+                        value = SampleIdsBitmapConverter.getSampleIds(value);
+                        modified = true;
+                    }
+                    newGenotypes.append(entry.getKey(), value);
+                }
+                if (modified) {
+                    queries.add(and(eq("_id", variant.getString("_id")), eq(studyIdField, studyId)));
+                    updates.add(set(DocumentToVariantConverter.STUDIES_FIELD + ".$." + GENOTYPES_FIELD, newGenotypes));
+                }
+                if (queries.size() >= BATCH_SIZE_MIGRATION) {
+                    updatedVariants += getVariantsCollection().update(queries, updates, new QueryOptions()).getNumUpdated();
+                    queries.clear();
+                    updates.clear();
+                }
+            }
+        }
+        if (!queries.isEmpty()) {
+            updatedVariants += getVariantsCollection().update(queries, updates, new QueryOptions()).getNumUpdated();
+        }
+        return updatedVariants;
+    }
+
     public VariantDBIterator trashedVariants(long timeStamp) {
         MongoDBCollection collection = getTrashCollection();
         return VariantMongoDBIterator.persistentIterator(
@@ -488,7 +559,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         }
 
         VariantQueryProjection variantQueryProjection = variantQuery.getProjection();
-        Document mongoQuery = queryParser.parseQuery(variantQuery.getQuery());
+        Document mongoQuery = parseQuery(variantQuery);
         Document projection = queryParser.createProjection(variantQuery.getQuery(), options, variantQueryProjection);
 
         if (options.getBoolean("explain", false)) {
@@ -583,7 +654,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
     @Override
     public DataResult<Long> count(ParsedVariantQuery variantQuery) {
-        Document mongoQuery = queryParser.parseQuery(variantQuery.getQuery());
+        Document mongoQuery = parseQuery(variantQuery);
         DataResult<Long> count = variantsCollection.count(mongoQuery);
         count.setResults(Collections.singletonList(count.getNumMatches()));
         return count;
@@ -630,7 +701,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 
     private VariantDBIterator iteratorFinal(final ParsedVariantQuery variantQuery, final QueryOptions options) {
         VariantQueryProjection variantQueryProjection = variantQuery.getProjection();
-        Document mongoQuery = queryParser.parseQuery(variantQuery);
+        Document mongoQuery = parseQuery(variantQuery);
         Document projection = queryParser.createProjection(variantQuery.getQuery(), options, variantQueryProjection);
         DocumentToVariantConverter converter = getDocumentToVariantConverter(variantQuery.getQuery(), variantQueryProjection);
         options.putIfAbsent(MongoDBCollection.BATCH_SIZE, 100);
@@ -671,6 +742,22 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         }
     }
 
+    /**
+     * Parse the query, and bound the sample and genotype filters with the variant ids from the sample index.
+     *
+     * @param variantQuery Parsed variant query
+     * @return MongoDB query
+     */
+    private Document parseQuery(ParsedVariantQuery variantQuery) {
+        Document mongoQuery = queryParser.parseQuery(variantQuery);
+        List<String> variantIds = sampleIndex.getVariantIds(variantQuery);
+        if (variantIds == null) {
+            return mongoQuery;
+        } else {
+            return new Document("$and", Arrays.asList(new Document("_id", new Document("$in", variantIds)), mongoQuery));
+        }
+    }
+
     @Override
     public DataResult getFrequency(ParsedVariantQuery query, Region region, int regionIntervalSize) {
         // db.variants.aggregate( { $match: { $and: [ {chr: "1"}, {start: {$gt: 251391, $lt: 2701391}} ] }},
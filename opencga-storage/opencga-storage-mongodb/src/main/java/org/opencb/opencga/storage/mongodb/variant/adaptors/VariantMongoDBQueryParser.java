@@ -43,6 +43,7 @@ import org.opencb.opencga.storage.core.variant.query.*;
 import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjection;
 import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjectionParser;
 import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions;
 import org.opencb.opencga.storage.mongodb.variant.converters.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,10 +55,10 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.LOADED_GENOTYPES;
-import static org.opencb.opencga.storage.core.variant.VariantStorageOptions.SEARCH_INDEX_LAST_TIMESTAMP;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.*;
 import static org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.*;
 import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions.DEFAULT_GENOTYPE;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions.GENOTYPES_BITMAP;
 import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter.INDEX_FIELD;
 
 /**
@@ -479,8 +480,7 @@ public class VariantMongoDBQueryParser {
             }
 
             if (isValidParam(query, VARIANTS_TO_INDEX)) {
-                long ts = metadataManager.getProjectMetadata().getAttributes()
-                        .getLong(SEARCH_INDEX_LAST_TIMESTAMP.key());
+                long ts = metadataManager.getProjectMetadata().getSecondaryIndexCheckpoint().getTimestamp();
                 if (ts > 0) {
                     String key = INDEX_FIELD + '.' + DocumentToVariantConverter.INDEX_TIMESTAMP_FIELD;
                     builder.or(
@@ -672,6 +672,8 @@ public class VariantMongoDBQueryParser {
 
                 List<String> defaultGenotypes;
                 List<String> loadedGenotypes;
+                boolean genotypesBitmap = defaultStudy != null && defaultStudy.getAttributes()
+                        .getBoolean(GENOTYPES_BITMAP.key(), GENOTYPES_BITMAP.defaultValue());
                 if (defaultStudy != null) {
                     defaultGenotypes = defaultStudy.getAttributes().getAsStringList(DEFAULT_GENOTYPE.key());
                     loadedGenotypes = defaultStudy.getAttributes().getAsStringList(LOADED_GENOTYPES.key());
@@ -772,7 +774,7 @@ public class VariantMongoDBQueryParser {
                                     String key = studyQueryPrefix
                                             + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD
                                             + '.' + DocumentToSamplesConverter.genotypeToStorageType(otherGenotype);
-                                    genotypesBuilder.or(new BasicDBObject(key, sampleId));
+                                    genotypesBuilder.or(sampleWithGenotype(key, sampleId, genotypesBitmap));
                                 }
                             } else {
                                 QueryBuilder andBuilder = QueryBuilder.start();
@@ -783,8 +785,7 @@ public class VariantMongoDBQueryParser {
                                     String key = studyQueryPrefix
                                             + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD
                                             + '.' + DocumentToSamplesConverter.genotypeToStorageType(otherGenotype);
-                                    andBuilder.and(new BasicDBObject(key,
-                                            new Document("$ne", sampleId)));
+                                    andBuilder.and(sampleWithoutGenotype(key, sampleId, genotypesBitmap));
                                 }
                                 genotypesBuilder.or(andBuilder.get());
                             }
@@ -794,11 +795,11 @@ public class VariantMongoDBQueryParser {
                                     + '.' + DocumentToSamplesConverter.genotypeToStorageType(genotype);
                             if (negated) {
                                 //and [ {"gt.0|1" : { $ne : <sampleId> } } ]
-                                genotypesBuilder.and(new BasicDBObject(s, new BasicDBObject("$ne", sampleId)));
+                                genotypesBuilder.and(sampleWithoutGenotype(s, sampleId, genotypesBitmap));
 
                             } else {
                                 //or [ {"gt.0|1" : <sampleId> } ]
-                                genotypesBuilder.or(new BasicDBObject(s, sampleId));
+                                genotypesBuilder.or(sampleWithGenotype(s, sampleId, genotypesBitmap));
                             }
                         }
                     }
@@ -885,6 +886,40 @@ public class VariantMongoDBQueryParser {
         }
     }
 
+    /**
+     * Filter variants where the sample has the genotype.
+     *
+     * With {@link MongoDBVariantStorageOptions#GENOTYPES_BITMAP}, the samples of each genotype are stored as a bitmap.
+     * See {@link SampleIdsBitmapConverter}. Documents not migrated yet still have a list of sampleIds, so both are accepted.
+     *
+     * @param key             Genotype field
+     * @param sampleId        SampleId
+     * @param genotypesBitmap If the study stores the genotypes as bitmaps
+     * @return Filter
+     */
+    private static DBObject sampleWithGenotype(String key, int sampleId, boolean genotypesBitmap) {
+        if (genotypesBitmap) {
+            return new BasicDBObject("$or", Arrays.asList(
+                    new BasicDBObject(key, sampleId),
+                    new BasicDBObject(key, bitmapWithSample(sampleId))));
+        } else {
+            return new BasicDBObject(key, sampleId);
+        }
+    }
+
+    private static DBObject sampleWithoutGenotype(String key, int sampleId, boolean genotypesBitmap) {
+        if (genotypesBitmap) {
+            return new BasicDBObject(key, new BasicDBObject("$ne", sampleId).append("$not", bitmapWithSample(sampleId)));
+        } else {
+            return new BasicDBObject(key, new BasicDBObject("$ne", sampleId));
+        }
+    }
+
+    private static DBObject bitmapWithSample(int sampleId) {
+        // Check the type, or the bitwise operator would match any list containing a number with that bit set
+        return new BasicDBObject("$type", "binData").append("$bitsAllSet", Collections.singletonList(sampleId));
+    }
+
     private void addFileGroupsFilter(QueryBuilder builder, String studyQueryPrefix, QueryOperation operation,
                                      Set<List<Integer>> fileIdGroups, List<Integer> negatedFiles) {
         if (operation == QueryOperation.OR) {
@@ -39,7 +39,6 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Supplier;
 import java.util.zip.DataFormatException;
 
 import static org.opencb.opencga.storage.core.variant.adaptors.GenotypeClass.UNKNOWN_GENOTYPE;
@@ -59,6 +58,10 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
     private final Map<Integer, String> __sampleNames;
     private final Map<String, Integer> __sampleIds;
     private final Map<Integer, List<Integer>> __samplesInFile;
+    // Position of each returned sample, by sampleId. Same content as "__samplesPosition". Use "getSamplesPositionById()"
+    private final Map<Integer, Map<Integer, Integer>> __samplesPositionById;
+    // Position of the returned samples from each file, in file order, or -1 if not returned. Use "getSamplesPositionInFile()"
+    private final Map<Integer, Map<Integer, int[]>> __samplesPositionInFile;
     private final Map<Integer, Set<String>> studyDefaultGenotypeSet;
     private Map<Integer, LinkedHashSet<Integer>> includeSamples;
     private Map<Integer, List<Integer>> includeFiles;
@@ -121,6 +124,8 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         __sampleNames = new ConcurrentHashMap<>();
         __sampleIds = new ConcurrentHashMap<>();
         __samplesInFile = new ConcurrentHashMap<>();
+        __samplesPositionById = new ConcurrentHashMap<>();
+        __samplesPositionInFile = new ConcurrentHashMap<>();
         studyDefaultGenotypeSet = new ConcurrentHashMap<>();
         includeSamples = Collections.emptyMap();
         metadataManager = null;
@@ -258,8 +263,8 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         // in the position specified in the array, such as:
         // "0|1" : [ 41, 311, 342, 358, 881, 898, 903 ]
         // genotypes[41], genotypes[311], etc, will be set to "0|1"
-        Map<Integer, String> idSamples = getIndexedSamplesIdMap(studyId).inverse();
         if (!excludeGenotypes) {
+            Map<Integer, Integer> samplesPositionById = getSamplesPositionById(studyMetadata);
             Document mongoGenotypes = (Document) object.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
             for (Map.Entry<String, Object> dbo : mongoGenotypes.entrySet()) {
                 final String genotype;
@@ -269,20 +274,20 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
                 } else {
                     genotype = genotypeToDataModelType(dbo.getKey());
                 }
-                for (Integer sampleId : (List<Integer>) dbo.getValue()) {
-                    if (idSamples.containsKey(sampleId)) {
-                        sampleEntries.get(samplesPositionToReturn.get(idSamples.get(sampleId))).getData().set(0, genotype);
+                // Samples might be stored as a list or as a bitmap
+                SampleIdsBitmapConverter.forEachSampleId(dbo.getValue(), sampleId -> {
+                    Integer samplePosition = samplesPositionById.get(sampleId);
+                    if (samplePosition != null) {
+                        sampleEntries.get(samplePosition).getData().set(0, genotype);
                     }
-                }
+                });
             }
         }
         // Set fileIdx
         for (int fileIndex = 0; fileIndex < includeFileIds.size(); fileIndex++) {
             Integer fileId = includeFileIds.get(fileIndex);
-            for (Integer sampleId : getSamplesInFile(studyId, fileId)) {
-                String sampleName = getSampleName(studyId, sampleId);
-                Integer samplePosition = samplesPositionToReturn.get(sampleName);
-                if (samplePosition != null) {
+            for (int samplePosition : getSamplesPositionInFile(studyMetadata, fileId)) {
+                if (samplePosition >= 0) {
                     sampleEntries.get(samplePosition).setFileIndex(fileIndex);
                 }
             }
@@ -290,6 +295,7 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
 
         if (!extraFields.isEmpty()) {
             for (Integer fid : filesWithSamplesData) {
+                int[] samplesPositionInFile = getSamplesPositionInFile(studyMetadata, fid);
                 Document samplesDataDocument = null;
                 if (files.containsKey(fid) && files.get(fid).containsKey(DocumentToStudyVariantEntryConverter.SAMPLE_DATA_FIELD)) {
                     samplesDataDocument = files.get(fid)
@@ -326,29 +332,12 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
                         } catch (InvalidProtocolBufferException e) {
                             throw new UncheckedIOException(e);
                         }
-                        Supplier<String> supplier;
-                        if (otherFields == null) {
-                            supplier = () -> UNKNOWN_FIELD;
-                        } else if (otherFields.getIntValuesCount() > 0) {
-                            final Iterator<Integer> iterator = otherFields.getIntValuesList().iterator();
-                            supplier = () -> iterator.hasNext() ? INTEGER_COMPLEX_TYPE_CONVERTER.convertToDataModelType(iterator.next())
-                                    : UNKNOWN_FIELD;
-                        } else if (otherFields.getFloatValuesCount() > 0) {
-                            final Iterator<Integer> iterator = otherFields.getFloatValuesList().iterator();
-                            supplier = () -> iterator.hasNext() ? FLOAT_COMPLEX_TYPE_CONVERTER.convertToDataModelType(iterator.next())
-                                    : UNKNOWN_FIELD;
-                        } else {
-                            final Iterator<String> iterator = otherFields.getStringValuesList().iterator();
-                            supplier = () -> iterator.hasNext() ? iterator.next() : UNKNOWN_FIELD;
-                        }
-                        for (Integer sampleId : getSamplesInFile(studyId, fid)) {
-                            String sampleName = getSampleName(studyId, sampleId);
-                            Integer samplePosition = samplesPositionToReturn.get(sampleName);
-                            if (samplePosition == null) {
-                                // The sample on this position is not returned. Skip this value.
-                                supplier.get();
-                            } else {
-                                sampleEntries.get(samplePosition).getData().set(extraFieldPosition, supplier.get());
+                        // Values are stored in the same order as the samples in the file.
+                        // Only decode the values from the returned samples.
+                        for (int i = 0; i < samplesPositionInFile.length; i++) {
+                            int samplePosition = samplesPositionInFile[i];
+                            if (samplePosition >= 0) {
+                                sampleEntries.get(samplePosition).getData().set(extraFieldPosition, getExtraFieldValue(otherFields, i));
                             }
                         }
 
@@ -361,10 +350,8 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
                         extraFieldPosition = 1; //Skip GT
                     }
                     for (int i = 0; i < extraFields.size(); i++) {
-                        for (Integer sampleId : getSamplesInFile(studyId, fid)) {
-                            String sampleName = getSampleName(studyId, sampleId);
-                            Integer samplePosition = samplesPositionToReturn.get(sampleName);
-                            if (samplePosition != null) {
+                        for (int samplePosition : samplesPositionInFile) {
+                            if (samplePosition >= 0) {
                                 if (sampleEntries.get(samplePosition).getData().get(extraFieldPosition) == null) {
                                     sampleEntries.get(samplePosition).getData().set(extraFieldPosition, UNKNOWN_FIELD);
                                 }
@@ -395,6 +382,22 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         return sampleEntries;
     }
 
+    private static String getExtraFieldValue(VariantMongoDBProto.OtherFields otherFields, int idx) {
+        if (otherFields == null) {
+            return UNKNOWN_FIELD;
+        } else if (otherFields.getIntValuesCount() > 0) {
+            return idx < otherFields.getIntValuesCount()
+                    ? INTEGER_COMPLEX_TYPE_CONVERTER.convertToDataModelType(otherFields.getIntValues(idx))
+                    : UNKNOWN_FIELD;
+        } else if (otherFields.getFloatValuesCount() > 0) {
+            return idx < otherFields.getFloatValuesCount()
+                    ? FLOAT_COMPLEX_TYPE_CONVERTER.convertToDataModelType(otherFields.getFloatValues(idx))
+                    : UNKNOWN_FIELD;
+        } else {
+            return idx < otherFields.getStringValuesCount() ? otherFields.getStringValues(idx) : UNKNOWN_FIELD;
+        }
+    }
+
     public List<String> getExtraFormatFields(int studyId, Set<Integer> filesWithSamplesData, Map<Integer, Document> files) {
         final List<String> extraFields;
         if (expectedExtraFields != null) {
@@ -458,6 +461,9 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         boolean compressExtraParams = studyMetadata.getAttributes()
                 .getBoolean(MongoDBVariantStorageOptions.EXTRA_GENOTYPE_FIELDS_COMPRESS.key(),
                         MongoDBVariantStorageOptions.EXTRA_GENOTYPE_FIELDS_COMPRESS.defaultValue());
+        boolean genotypesBitmap = studyMetadata.getAttributes()
+                .getBoolean(MongoDBVariantStorageOptions.GENOTYPES_BITMAP.key(),
+                        MongoDBVariantStorageOptions.GENOTYPES_BITMAP.defaultValue());
 
         Set<String> defaultGenotype = new HashSet<>(studyDefaultGenotypeSet.get(studyId));
 
@@ -491,12 +497,17 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         // "def" : 0|0,
         // "0|1" : [ 41, 311, 342, 358, 881, 898, 903 ],
         // "1|0" : [ 262, 290, 300, 331, 343, 369, 374, 391, 879, 918, 930 ]
+        // With GENOTYPES_BITMAP, each list of samples is stored as a bitmap. See SampleIdsBitmapConverter
         Document mongoSamples = new Document();
         Document mongoGenotypes = new Document();
         for (Map.Entry<String, List<Integer>> entry : genotypeCodes.entrySet()) {
             String genotypeStr = genotypeToStorageType(entry.getKey());
             if (!defaultGenotype.contains(entry.getKey())) {
-                mongoGenotypes.append(genotypeStr, entry.getValue());
+                if (genotypesBitmap) {
+                    mongoGenotypes.append(genotypeStr, SampleIdsBitmapConverter.toBitmap(entry.getValue()));
+                } else {
+                    mongoGenotypes.append(genotypeStr, entry.getValue());
+                }
             }
         }
 
@@ -595,11 +606,17 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         }
         __studySamplesId.clear();
         __samplesPosition.clear();
+        __samplesPositionById.clear();
+        __samplesPositionInFile.clear();
     }
 
     public void addStudyMetadata(StudyMetadata studyMetadata) {
         this.studyMetadatas.put(studyMetadata.getId(), studyMetadata);
         this.__studySamplesId.remove(studyMetadata.getId());
+        // Sample positions might change with the new metadata. Invalidate all the derived caches
+        this.__samplesPosition.remove(studyMetadata.getId());
+        this.__samplesPositionById.remove(studyMetadata.getId());
+        this.__samplesPositionInFile.remove(studyMetadata.getId());
 
         Set defGenotypeSet = studyMetadata.getAttributes().get(DEFAULT_GENOTYPE.key(), Set.class);
         if (defGenotypeSet == null) {
@@ -695,6 +712,35 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
                 s -> metadataManager.getSamplesPosition(studyMetadata, this.includeSamples.get(studyId)));
     }
 
+    private Map<Integer, Integer> getSamplesPositionById(StudyMetadata studyMetadata) {
+        int studyId = studyMetadata.getId();
+        return __samplesPositionById.computeIfAbsent(studyId, s -> {
+            LinkedHashMap<String, Integer> samplesPosition = getSamplesPosition(studyMetadata);
+            Map<Integer, Integer> samplesPositionById = new HashMap<>(samplesPosition.size());
+            getIndexedSamplesIdMap(studyId).forEach((sampleName, sampleId) -> {
+                Integer samplePosition = samplesPosition.get(sampleName);
+                if (samplePosition != null) {
+                    samplesPositionById.put(sampleId, samplePosition);
+                }
+            });
+            return samplesPositionById;
+        });
+    }
+
+    private int[] getSamplesPositionInFile(StudyMetadata studyMetadata, int fid) {
+        int studyId = studyMetadata.getId();
+        return __samplesPositionInFile.computeIfAbsent(studyId, s -> new ConcurrentHashMap<>()).computeIfAbsent(fid, f -> {
+            LinkedHashMap<String, Integer> samplesPosition = getSamplesPosition(studyMetadata);
+            List<Integer> samplesInFile = getSamplesInFile(studyId, fid);
+            int[] samplesPositionInFile = new int[samplesInFile.size()];
+            for (int i = 0; i < samplesInFile.size(); i++) {
+                Integer samplePosition = samplesPosition.get(getSampleName(studyId, samplesInFile.get(i)));
+                samplesPositionInFile[i] = samplePosition == null ? -1 : samplePosition;
+            }
+            return samplesPositionInFile;
+        });
+    }
+
     private String getSampleName(int studyId, int sampleId) {
         return __sampleNames.computeIfAbsent(sampleId, s -> metadataManager.getSampleName(studyId, sampleId));
     }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.converters;
+
+import org.bson.types.Binary;
+import org.opencb.commons.datastore.core.ComplexTypeConverter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Converts the list of samples with a genotype into a bitmap stored as a {@link Binary}.
+ *
+ * The bit of each sample is its sampleId, starting by the least significant bit of the first byte.
+ * This is the same bit order used by the MongoDB bitwise query operators, so a bitmap can be filtered with
+ * <code>{"gt.0/1" : {"$bitsAllSet" : [sampleId]}}</code>.
+ * Trailing empty bytes are not stored.
+ */
+public class SampleIdsBitmapConverter implements ComplexTypeConverter<List<Integer>, Binary> {
+
+    @Override
+    public List<Integer> convertToDataModelType(Binary binary) {
+        List<Integer> sampleIds = new ArrayList<>();
+        forEach(binary, sampleIds::add);
+        return sampleIds;
+    }
+
+    @Override
+    public Binary convertToStorageType(List<Integer> sampleIds) {
+        return toBitmap(sampleIds);
+    }
+
+    public static Binary toBitmap(Collection<Integer> sampleIds) {
+        int maxSampleId = -1;
+        for (Integer sampleId : sampleIds) {
+            if (sampleId < 0) {
+                throw new IllegalArgumentException("Unable to store negative sampleId " + sampleId + " in a bitmap");
+            }
+            maxSampleId = Math.max(maxSampleId, sampleId);
+        }
+        byte[] bytes = new byte[(maxSampleId >> 3) + 1];
+        for (Integer sampleId : sampleIds) {
+            bytes[sampleId >> 3] |= 1 << (sampleId & 7);
+        }
+        return new Binary(bytes);
+    }
+
+    /**
+     * Iterate over the sampleIds of a genotype, stored either as a list or as a bitmap.
+     *
+     * @param value    Value of the genotype in the "gt" document
+     * @param consumer SampleId consumer
+     */
+    public static void forEachSampleId(Object value, IntConsumer consumer) {
+        if (value instanceof Binary) {
+            forEach((Binary) value, consumer);
+        } else {
+            for (Object sampleId : (Collection<?>) value) {
+                consumer.accept(((Number) sampleId).intValue());
+            }
+        }
+    }
+
+    /**
+     * Get the sampleIds of a genotype, stored either as a list or as a bitmap.
+     *
+     * @param value    Value of the genotype in the "gt" document
+     * @return List of sampleIds
+     */
+    public static List<Integer> getSampleIds(Object value) {
+        if (value instanceof Binary) {
+            List<Integer> sampleIds = new ArrayList<>();
+            forEach((Binary) value, sampleIds::add);
+            return sampleIds;
+        } else {
+            List<Integer> sampleIds = new ArrayList<>(((Collection<?>) value).size());
+            forEachSampleId(value, sampleIds::add);
+            return sampleIds;
+        }
+    }
+
+    private static void forEach(Binary binary, IntConsumer consumer) {
+        byte[] bytes = binary.getData();
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            while (b != 0) {
+                int bit = Integer.numberOfTrailingZeros(b);
+                consumer.accept((i << 3) + bit);
+                b &= b - 1;
+            }
+        }
+    }
+
+}
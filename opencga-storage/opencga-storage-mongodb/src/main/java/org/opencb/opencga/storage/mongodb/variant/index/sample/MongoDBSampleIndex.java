@@ -0,0 +1,539 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.index.sample;
+
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.mongodb.MongoDBCollection;
+import org.opencb.commons.datastore.mongodb.MongoDBIterator;
+import org.opencb.commons.datastore.mongodb.MongoDataStore;
+import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
+import org.opencb.opencga.storage.core.metadata.models.SampleMetadata;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
+import org.opencb.opencga.storage.core.metadata.models.TaskMetadata;
+import org.opencb.opencga.storage.core.variant.adaptors.GenotypeClass;
+import org.opencb.opencga.storage.core.variant.query.KeyOpValue;
+import org.opencb.opencga.storage.core.variant.query.ParsedQuery;
+import org.opencb.opencga.storage.core.variant.query.ParsedVariantQuery;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
+import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSamplesConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.SampleIdsBitmapConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.*;
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.REGION;
+import static org.opencb.opencga.storage.core.variant.query.VariantQueryUtils.isValidParam;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions.*;
+
+/**
+ * Per sample genotype index. Stored in one collection per study.
+ *
+ * Each document contains the variants of one sample within a block of {@link #BLOCK_SIZE} bases of a chromosome,
+ * grouped by genotype. As in the variants collection, the default genotype is not indexed.
+ * <pre>
+ * {
+ *   _id : "&lt;sampleId&gt;_&lt;chromosome&gt;_&lt;blockStart&gt;",
+ *   sample : &lt;sampleId&gt;,
+ *   chr : &lt;chromosome&gt;,
+ *   start : &lt;blockStart&gt;,
+ *   gt : { "0/1" : [ &lt;variantId&gt;, ... ], "1/1" : [ ... ] }
+ * }
+ * </pre>
+ *
+ * Queries by sample and genotype are bounded to the variant ids obtained from this index. The index may contain extra
+ * variants (e.g. after removing a file), so the original genotype filter must always be kept in the query.
+ * Only samples with the status {@link #SAMPLE_INDEX_STATUS} READY can be read from the index.
+ *
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class MongoDBSampleIndex {
+
+    public static final String SAMPLE_INDEX_STATUS = "mongodb_sample_index";
+    public static final int BLOCK_SIZE = 1_000_000;
+
+    public static final String SAMPLE_FIELD = "sample";
+    public static final String CHROMOSOME_FIELD = "chr";
+    public static final String START_FIELD = "start";
+    public static final String GENOTYPES_FIELD = "gt";
+
+    // Max number of variant ids to buffer before writing the index
+    private static final int BUFFER_SIZE = 100000;
+    // Max number of index documents per bulk write
+    private static final int WRITE_BATCH_SIZE = 1000;
+    private static final QueryOptions UPSERT = new QueryOptions(MongoDBCollection.UPSERT, true);
+
+    private final MongoDataStore db;
+    private final VariantStorageMetadataManager metadataManager;
+    private final String collectionName;
+    private final int maxVariants;
+    private final Logger logger = LoggerFactory.getLogger(MongoDBSampleIndex.class);
+
+    public MongoDBSampleIndex(MongoDataStore db, VariantStorageMetadataManager metadataManager, ObjectMap options) {
+        this.db = db;
+        this.metadataManager = metadataManager;
+        collectionName = options.getString(COLLECTION_SAMPLE_INDEX.key(), COLLECTION_SAMPLE_INDEX.defaultValue());
+        maxVariants = options.getInt(SAMPLE_INDEX_MAX_VARIANTS.key(), SAMPLE_INDEX_MAX_VARIANTS.defaultValue());
+    }
+
+    public MongoDBCollection getCollection(int studyId) {
+        return db.getCollection(getCollectionName(studyId));
+    }
+
+    public String getCollectionName(int studyId) {
+        return collectionName + "_study_" + studyId;
+    }
+
+    public void createIndexes(int studyId) {
+        getCollection(studyId).createIndex(new Document(SAMPLE_FIELD, 1)
+                        .append(CHROMOSOME_FIELD, 1)
+                        .append(START_FIELD, 1),
+                new ObjectMap(MongoDBCollection.BACKGROUND, true));
+    }
+
+    /**
+     * Index the genotypes of all the variants from the given files.
+     *
+     * The samples from the files are indexed, together with the samples from other files already indexed, as
+     * their genotypes could have changed while merging overlapping variants.
+     * Index entries are added with $addToSet, so building the index twice for the same file is harmless.
+     *
+     * @param studyId            Study
+     * @param fileIds            Loaded files
+     * @param variantsCollection Variants collection
+     * @return Number of read variants
+     */
+    public long build(int studyId, List<Integer> fileIds, MongoDBCollection variantsCollection) {
+        Set<Integer> samples = new HashSet<>();
+        for (Integer fileId : fileIds) {
+            samples.addAll(metadataManager.getFileMetadata(studyId, fileId).getSamples());
+        }
+        setStatus(studyId, samples, TaskMetadata.Status.RUNNING);
+
+        Set<Integer> indexedSamples = new HashSet<>(samples);
+        metadataManager.sampleMetadataIterator(studyId).forEachRemaining(sampleMetadata -> {
+            if (sampleMetadata.isReady(SAMPLE_INDEX_STATUS)) {
+                indexedSamples.add(sampleMetadata.getId());
+            }
+        });
+        long numVariants = build(studyId, fileIds, indexedSamples, variantsCollection);
+        setStatus(studyId, samples, TaskMetadata.Status.READY);
+        return numVariants;
+    }
+
+    /**
+     * Build again the index of the given samples, from the variants of their loaded files.
+     * Used to index studies loaded before the sample index existed, or to fix an inconsistent index.
+     *
+     * @param studyId            Study
+     * @param sampleIds          Samples to index. If null, rebuild the whole index of the study.
+     * @param variantsCollection Variants collection
+     * @return Number of read variants
+     */
+    public long rebuild(int studyId, Collection<Integer> sampleIds, MongoDBCollection variantsCollection) {
+        Set<Integer> indexedFiles = metadataManager.getIndexedFiles(studyId);
+        Set<Integer> samples = new HashSet<>();
+        Set<Integer> fileIds = new LinkedHashSet<>();
+        if (sampleIds == null) {
+            drop(studyId);
+            for (Integer fileId : indexedFiles) {
+                samples.addAll(metadataManager.getFileMetadata(studyId, fileId).getSamples());
+            }
+            fileIds.addAll(indexedFiles);
+        } else {
+            remove(studyId, sampleIds);
+            samples.addAll(sampleIds);
+            for (Integer sampleId : sampleIds) {
+                for (Integer fileId : metadataManager.getSampleMetadata(studyId, sampleId).getFiles()) {
+                    if (indexedFiles.contains(fileId)) {
+                        fileIds.add(fileId);
+                    }
+                }
+            }
+        }
+        setStatus(studyId, samples, TaskMetadata.Status.RUNNING);
+        long numVariants = fileIds.isEmpty() ? 0 : build(studyId, new ArrayList<>(fileIds), samples, variantsCollection);
+        setStatus(studyId, samples, TaskMetadata.Status.READY);
+        return numVariants;
+    }
+
+    private long build(int studyId, List<Integer> fileIds, Set<Integer> indexedSamples, MongoDBCollection variantsCollection) {
+        createIndexes(studyId);
+
+        // Include overlapped files, stored with negative fileId
+        List<Integer> allFileIds = new ArrayList<>(fileIds.size() * 2);
+        for (Integer fileId : fileIds) {
+            allFileIds.add(fileId);
+            allFileIds.add(-fileId);
+        }
+        Bson query = elemMatch(DocumentToVariantConverter.STUDIES_FIELD, and(
+                eq(DocumentToStudyVariantEntryConverter.STUDYID_FIELD, studyId),
+                in(DocumentToStudyVariantEntryConverter.FILES_FIELD + '.' + DocumentToStudyVariantEntryConverter.FILEID_FIELD,
+                        allFileIds)));
+        Bson projection = include(
+                DocumentToVariantConverter.CHROMOSOME_FIELD,
+                DocumentToVariantConverter.START_FIELD,
+                DocumentToVariantConverter.STUDIES_FIELD + '.' + DocumentToStudyVariantEntryConverter.STUDYID_FIELD,
+                DocumentToVariantConverter.STUDIES_FIELD + '.' + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
+
+        MongoDBCollection collection = getCollection(studyId);
+        Map<String, Block> buffer = new HashMap<>();
+        int bufferedIds = 0;
+        long numVariants = 0;
+        try (MongoDBIterator<Document> iterator = variantsCollection.nativeQuery()
+                .find(query, projection, new QueryOptions(MongoDBCollection.BATCH_SIZE, 1000))) {
+            while (iterator.hasNext()) {
+                Document variant = iterator.next();
+                numVariants++;
+                Document genotypes = getGenotypes(variant, studyId);
+                if (genotypes == null) {
+                    continue;
+                }
+                String variantId = variant.getString("_id");
+                String chromosome = variant.getString(DocumentToVariantConverter.CHROMOSOME_FIELD);
+                int blockStart = getBlockStart(variant.getInteger(DocumentToVariantConverter.START_FIELD));
+                for (Map.Entry<String, Object> entry : genotypes.entrySet()) {
+                    for (Integer sampleId : SampleIdsBitmapConverter.getSampleIds(entry.getValue())) {
+                        if (!indexedSamples.contains(sampleId)) {
+                            continue;
+                        }
+                        String blockId = buildId(sampleId, chromosome, blockStart);
+                        buffer.computeIfAbsent(blockId, k -> new Block(sampleId, chromosome, blockStart))
+                                .add(entry.getKey(), variantId);
+                        bufferedIds++;
+                    }
+                }
+                if (bufferedIds >= BUFFER_SIZE) {
+                    write(collection, buffer.values());
+                    buffer.clear();
+                    bufferedIds = 0;
+                }
+            }
+        }
+        write(collection, buffer.values());
+        return numVariants;
+    }
+
+    /**
+     * Remove the samples from the index. Used when the files of the samples are removed.
+     *
+     * @param studyId   Study
+     * @param sampleIds Samples to remove
+     */
+    public void remove(int studyId, Collection<Integer> sampleIds) {
+        setStatus(studyId, sampleIds, TaskMetadata.Status.NONE);
+        getCollection(studyId).remove(in(SAMPLE_FIELD, sampleIds), new QueryOptions(MongoDBCollection.MULTI, true));
+    }
+
+    /**
+     * Drop the whole index of the study.
+     *
+     * @param studyId Study
+     */
+    public void drop(int studyId) {
+        List<Integer> sampleIds = new ArrayList<>();
+        metadataManager.sampleMetadataIterator(studyId).forEachRemaining(sampleMetadata -> {
+            if (!sampleMetadata.getStatus(SAMPLE_INDEX_STATUS).equals(TaskMetadata.Status.NONE)) {
+                sampleIds.add(sampleMetadata.getId());
+            }
+        });
+        setStatus(studyId, sampleIds, TaskMetadata.Status.NONE);
+        db.dropCollection(getCollectionName(studyId));
+    }
+
+    /**
+     * Get the ids of the variants that may match the genotype filter of the query.
+     *
+     * The index documents of all the samples are read at the same time, sorted by block. With the AND operator, the
+     * variants of each block are intersected, and with the OR operator, merged. So, only the variant ids of one block
+     * from each sample are in memory at the same time, besides the result.
+     *
+     * @param variantQuery Parsed variant query
+     * @return Sorted list of variant ids, or null if the index can not bound this query or the result has more than
+     *         {@code maxVariants} variants.
+     */
+    public List<String> getVariantIds(ParsedVariantQuery variantQuery) {
+        StudyMetadata study = variantQuery.getStudyQuery().getDefaultStudy();
+        ParsedQuery<KeyOpValue<SampleMetadata, List<String>>> genotypesQuery = variantQuery.getStudyQuery().getGenotypes();
+        if (study == null || genotypesQuery == null || genotypesQuery.getValues().isEmpty()) {
+            return null;
+        }
+        List<String> defaultGenotypes = study.getAttributes().getAsStringList(DEFAULT_GENOTYPE.key());
+        for (KeyOpValue<SampleMetadata, List<String>> filter : genotypesQuery.getValues()) {
+            if (!canUseIndex(filter.getKey(), filter.getValue(), defaultGenotypes)) {
+                return null;
+            }
+        }
+        Query query = variantQuery.getQuery();
+        List<Region> regions = isValidParam(query, REGION)
+                ? Region.parseRegions(query.getString(REGION.key()), true)
+                : Collections.emptyList();
+
+        boolean and = genotypesQuery.getOperation() != VariantQueryUtils.QueryOperation.OR;
+        List<BlockIterator> iterators = new ArrayList<>(genotypesQuery.getValues().size());
+        try {
+            for (KeyOpValue<SampleMetadata, List<String>> filter : genotypesQuery.getValues()) {
+                iterators.add(new BlockIterator(study.getId(), filter.getKey().getId(), filter.getValue(), regions));
+            }
+            Set<String> variantIds = and ? intersect(iterators) : union(iterators);
+            if (variantIds == null) {
+                logger.debug("Too many variants from the sample index. Skip");
+                return null;
+            }
+            logger.debug("Query bounded to {} variants from the sample index", variantIds.size());
+            List<String> list = new ArrayList<>(variantIds);
+            Collections.sort(list);
+            return list;
+        } finally {
+            for (BlockIterator iterator : iterators) {
+                iterator.close();
+            }
+        }
+    }
+
+    /**
+     * Intersect the variants of the blocks present in all the iterators.
+     *
+     * @param iterators Iterators, one per sample
+     * @return Intersection, or null if exceeds the max number of variants
+     */
+    private Set<String> intersect(List<BlockIterator> iterators) {
+        Set<String> variantIds = new HashSet<>();
+        while (true) {
+            // Move all the iterators to the highest current block
+            BlockIterator max = null;
+            for (BlockIterator iterator : iterators) {
+                if (!iterator.hasBlock()) {
+                    return variantIds;
+                }
+                if (max == null || iterator.compareBlock(max) > 0) {
+                    max = iterator;
+                }
+            }
+            boolean sameBlock = true;
+            for (BlockIterator iterator : iterators) {
+                while (iterator.hasBlock() && iterator.compareBlock(max) < 0) {
+                    iterator.next();
+                }
+                if (!iterator.hasBlock()) {
+                    return variantIds;
+                }
+                sameBlock &= iterator.compareBlock(max) == 0;
+            }
+            if (sameBlock) {
+                Set<String> blockVariantIds = null;
+                for (BlockIterator iterator : iterators) {
+                    if (blockVariantIds == null) {
+                        blockVariantIds = iterator.getVariantIds();
+                    } else {
+                        blockVariantIds.retainAll(iterator.getVariantIds());
+                    }
+                    iterator.next();
+                }
+                variantIds.addAll(blockVariantIds);
+                if (variantIds.size() > maxVariants) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the variants of all the blocks of all the iterators.
+     *
+     * @param iterators Iterators, one per sample
+     * @return Union, or null if exceeds the max number of variants
+     */
+    private Set<String> union(List<BlockIterator> iterators) {
+        Set<String> variantIds = new HashSet<>();
+        for (BlockIterator iterator : iterators) {
+            while (iterator.hasBlock()) {
+                variantIds.addAll(iterator.getVariantIds());
+                if (variantIds.size() > maxVariants) {
+                    return null;
+                }
+                iterator.next();
+            }
+        }
+        return variantIds;
+    }
+
+    private boolean canUseIndex(SampleMetadata sampleMetadata, List<String> genotypes, List<String> defaultGenotypes) {
+        if (!sampleMetadata.isReady(SAMPLE_INDEX_STATUS)) {
+            return false;
+        }
+        for (String genotype : genotypes) {
+            if (VariantQueryUtils.isNegated(genotype)
+                    || defaultGenotypes.contains(genotype)
+                    || genotype.equals(GenotypeClass.UNKNOWN_GENOTYPE)
+                    || genotype.equals(GenotypeClass.NA_GT_VALUE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(MongoDBCollection collection, Collection<Block> blocks) {
+        List<Bson> queries = new ArrayList<>(WRITE_BATCH_SIZE);
+        List<Bson> updates = new ArrayList<>(WRITE_BATCH_SIZE);
+        for (Block block : blocks) {
+            List<Bson> update = new ArrayList<>(block.genotypes.size() + 3);
+            update.add(setOnInsert(SAMPLE_FIELD, block.sampleId));
+            update.add(setOnInsert(CHROMOSOME_FIELD, block.chromosome));
+            update.add(setOnInsert(START_FIELD, block.start));
+            for (Map.Entry<String, List<String>> entry : block.genotypes.entrySet()) {
+                update.add(addEachToSet(GENOTYPES_FIELD + '.' + entry.getKey(), entry.getValue()));
+            }
+            queries.add(eq("_id", buildId(block.sampleId, block.chromosome, block.start)));
+            updates.add(combine(update));
+            if (queries.size() == WRITE_BATCH_SIZE) {
+                collection.update(queries, updates, UPSERT);
+                queries.clear();
+                updates.clear();
+            }
+        }
+        if (!queries.isEmpty()) {
+            collection.update(queries, updates, UPSERT);
+        }
+    }
+
+    private void setStatus(int studyId, Collection<Integer> sampleIds, TaskMetadata.Status status) {
+        for (Integer sampleId : sampleIds) {
+            metadataManager.updateSampleMetadata(studyId, sampleId,
+                    sampleMetadata -> sampleMetadata.setStatus(SAMPLE_INDEX_STATUS, status));
+        }
+    }
+
+    private static Document getGenotypes(Document variant, int studyId) {
+        for (Object study : (List<?>) variant.get(DocumentToVariantConverter.STUDIES_FIELD)) {
+            Document studyDocument = (Document) study;
+            if (Integer.valueOf(studyId).equals(studyDocument.get(DocumentToStudyVariantEntryConverter.STUDYID_FIELD))) {
+                return studyDocument.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD, Document.class);
+            }
+        }
+        return null;
+    }
+
+    public static int getBlockStart(int start) {
+        return start - start % BLOCK_SIZE;
+    }
+
+    public static String buildId(int sampleId, String chromosome, int blockStart) {
+        return sampleId + "_" + chromosome + '_' + blockStart;
+    }
+
+    /**
+     * Iterate over the index documents of one sample, sorted by chromosome and block start.
+     */
+    private final class BlockIterator {
+        private final MongoDBIterator<Document> iterator;
+        private Document block;
+
+        private BlockIterator(int studyId, int sampleId, List<String> genotypes, List<Region> regions) {
+            Bson query = eq(SAMPLE_FIELD, sampleId);
+            if (!regions.isEmpty()) {
+                List<Bson> regionFilters = new ArrayList<>(regions.size());
+                for (Region region : regions) {
+                    regionFilters.add(and(
+                            eq(CHROMOSOME_FIELD, region.getChromosome()),
+                            gte(START_FIELD, getBlockStart(region.getStart())),
+                            lte(START_FIELD, region.getEnd())));
+                }
+                query = and(query, or(regionFilters));
+            }
+            List<String> fields = new ArrayList<>(genotypes.size() + 2);
+            fields.add(CHROMOSOME_FIELD);
+            fields.add(START_FIELD);
+            for (String genotype : genotypes) {
+                fields.add(GENOTYPES_FIELD + '.' + DocumentToSamplesConverter.genotypeToStorageType(genotype));
+            }
+            iterator = getCollection(studyId).nativeQuery().find(query, include(fields),
+                    new QueryOptions(QueryOptions.SORT, Sorts.ascending(CHROMOSOME_FIELD, START_FIELD)));
+            next();
+        }
+
+        boolean hasBlock() {
+            return block != null;
+        }
+
+        void next() {
+            block = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        /**
+         * @return Variant ids of the current block, with any of the genotypes
+         */
+        Set<String> getVariantIds() {
+            Set<String> variantIds = new HashSet<>();
+            Document genotypesDocument = block.get(GENOTYPES_FIELD, Document.class);
+            if (genotypesDocument != null) {
+                for (Object ids : genotypesDocument.values()) {
+                    for (Object id : (List<?>) ids) {
+                        variantIds.add((String) id);
+                    }
+                }
+            }
+            return variantIds;
+        }
+
+        /**
+         * @param o Other iterator
+         * @return Comparison of the current block of both iterators, by chromosome and start
+         */
+        int compareBlock(BlockIterator o) {
+            int c = block.getString(CHROMOSOME_FIELD).compareTo(o.block.getString(CHROMOSOME_FIELD));
+            if (c == 0) {
+                c = Integer.compare(block.getInteger(START_FIELD), o.block.getInteger(START_FIELD));
+            }
+            return c;
+        }
+
+        void close() {
+            iterator.close();
+        }
+    }
+
+    private static class Block {
+        private final int sampleId;
+        private final String chromosome;
+        private final int start;
+        private final Map<String, List<String>> genotypes = new HashMap<>();
+
+        Block(int sampleId, String chromosome, int start) {
+            this.sampleId = sampleId;
+            this.chromosome = chromosome;
+            this.start = start;
+        }
+
+        void add(String genotype, String variantId) {
+            genotypes.computeIfAbsent(genotype, k -> new ArrayList<>()).add(variantId);
+        }
+    }
+}
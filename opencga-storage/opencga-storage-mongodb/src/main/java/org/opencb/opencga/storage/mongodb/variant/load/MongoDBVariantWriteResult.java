@@ -65,6 +65,8 @@ public class MongoDBVariantWriteResult {
     private long skippedVariants;
     /** Non inserted variants, due to duplicated or overlapped variants in the same file. */
     private long nonInsertedVariants;
+    /** New variants concurrently inserted by another writer. Resolved as updates over the existing document. */
+    private long conflictVariants;
 
     /** Time in nanoseconds into inserting the new variants. */
     private long newVariantsNanoTime;
@@ -116,6 +118,7 @@ public class MongoDBVariantWriteResult {
             overlappedVariants += other.overlappedVariants;
             skippedVariants += other.skippedVariants;
             nonInsertedVariants += other.nonInsertedVariants;
+            conflictVariants += other.conflictVariants;
             newVariantsNanoTime += other.newVariantsNanoTime;
             existingVariantsNanoTime += other.existingVariantsNanoTime;
             fillGapsNanoTime += other.fillGapsNanoTime;
@@ -177,6 +180,15 @@ public class MongoDBVariantWriteResult {
         return this;
     }
 
+    public long getConflictVariants() {
+        return conflictVariants;
+    }
+
+    public MongoDBVariantWriteResult setConflictVariants(long conflictVariants) {
+        this.conflictVariants = conflictVariants;
+        return this;
+    }
+
     public long getNewVariantsNanoTime() {
         return newVariantsNanoTime;
     }
@@ -228,6 +240,7 @@ public class MongoDBVariantWriteResult {
                 && overlappedVariants == that.overlappedVariants
                 && skippedVariants == that.skippedVariants
                 && nonInsertedVariants == that.nonInsertedVariants
+                && conflictVariants == that.conflictVariants
                 && newVariantsNanoTime == that.newVariantsNanoTime
                 && existingVariantsNanoTime == that.existingVariantsNanoTime
                 && fillGapsNanoTime == that.fillGapsNanoTime
@@ -243,6 +256,7 @@ public class MongoDBVariantWriteResult {
                 overlappedVariants,
                 skippedVariants,
                 nonInsertedVariants,
+                conflictVariants,
                 newVariantsNanoTime,
                 existingVariantsNanoTime,
                 fillGapsNanoTime,
@@ -258,6 +272,7 @@ public class MongoDBVariantWriteResult {
                 + ", overlappedVariants:" + overlappedVariants
                 + ", skippedVariants:" + skippedVariants
                 + ", nonInsertedVariants:" + nonInsertedVariants
+                + ", conflictVariants:" + conflictVariants
                 + ", newVariantsTime=" + newVariantsNanoTime / 1000000000.0 + "s"
                 + ", existingVariantsTime=" + existingVariantsNanoTime / 1000000000.0 + "s"
                 + ", fillGapsTime=" + fillGapsNanoTime / 1000000000.0 + "s"
@@ -273,6 +288,7 @@ public class MongoDBVariantWriteResult {
                 + "\toverlappedVariants:" + overlappedVariants + ",\n"
                 + "\tskippedVariants:" + skippedVariants + ",\n"
                 + "\tnonInsertedVariants:" + nonInsertedVariants + ",\n"
+                + "\tconflictVariants:" + conflictVariants + ",\n"
                 + "\tnewVariantsTime:" + newVariantsNanoTime / 1000000000.0 + ",\n"
                 + "\texistingVariantsTime:" + existingVariantsNanoTime / 1000000000.0 + ",\n"
                 + "\tfillGapsTime:" + fillGapsNanoTime / 1000000000.0 + "\n"
@@ -281,7 +297,7 @@ public class MongoDBVariantWriteResult {
 
     public String toTSV() {
         return "#newVariants\tupdatedVariants\tupdatedMissingVariants\toverlappedVariants\tskippedVariants\tnonInsertedVariants"
-                + "\tnewVariantsTime\texistingVariantsTime\tfillGapsTime\t"
+                + "\tconflictVariants\tnewVariantsTime\texistingVariantsTime\tfillGapsTime\t"
                 + "\n"
                 + newVariants + '\t'
                 + updatedVariants + '\t'
@@ -289,6 +305,7 @@ public class MongoDBVariantWriteResult {
                 + overlappedVariants + '\t'
                 + skippedVariants + '\t'
                 + nonInsertedVariants + '\t'
+                + conflictVariants + '\t'
                 + newVariantsNanoTime / 1000000000.0 + '\t'
                 + existingVariantsNanoTime / 1000000000.0 + '\t'
                 + fillGapsNanoTime / 1000000000.0;
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.load.stage;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.run.Task;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions.MERGE_PIPELINE;
+
+/**
+ * Tracks the chromosomes completely written into the STAGE collection while staging a sorted file.
+ *
+ * A chromosome is staged once the reader has moved to another chromosome, and all the batches containing
+ * variants from that chromosome have been written. Then, the chromosome can be merged while the next
+ * chromosomes are still being staged.
+ */
+public class MongoDBVariantStageChromosomeTracker {
+
+    private final Consumer<String> listener;
+
+    /** Number of batches read but not written yet, for each chromosome. */
+    private final Map<String, Integer> pendingBatches = new HashMap<>();
+    /** Chromosomes completely read, in read order. */
+    private final Set<String> readChromosomes = new LinkedHashSet<>();
+    /** Chromosomes completely read and written. */
+    private final Set<String> stagedChromosomes = new LinkedHashSet<>();
+    private String currentChromosome;
+    private volatile Throwable abortCause;
+
+    /**
+     * @param listener Called once for each staged chromosome. Must not block.
+     */
+    public MongoDBVariantStageChromosomeTracker(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Task to be executed in the reader thread, in read order.
+     *
+     * @return Task registering the chromosomes of each read batch
+     */
+    public Task<Variant, Variant> readTask() {
+        return batch -> {
+            onRead(batch);
+            return batch;
+        };
+    }
+
+    /**
+     * Wrap the task writing the batches into the STAGE collection.
+     *
+     * @param task Task loading the variants into the STAGE collection
+     * @param <T>  Task output
+     * @return Task notifying the written chromosomes
+     */
+    public <T> Task<Variant, T> wrap(Task<Variant, T> task) {
+        return new Task<Variant, T>() {
+            @Override
+            public void pre() throws Exception {
+                task.pre();
+            }
+
+            @Override
+            public List<T> apply(List<Variant> batch) throws Exception {
+                if (abortCause != null) {
+                    throw new IllegalStateException("Abort staging", abortCause);
+                }
+                List<T> result = task.apply(batch);
+                onWritten(chromosomes(batch));
+                return result;
+            }
+
+            @Override
+            public void post() throws Exception {
+                task.post();
+            }
+        };
+    }
+
+    /**
+     * Mark as staged all the pending chromosomes. To be called once all the batches have been written.
+     */
+    public void finish() {
+        List<String> staged;
+        synchronized (this) {
+            if (currentChromosome != null) {
+                readChromosomes.add(currentChromosome);
+                currentChromosome = null;
+            }
+            staged = checkStaged();
+        }
+        staged.forEach(listener);
+    }
+
+    /**
+     * Stop staging. Next batches will fail.
+     *
+     * @param cause Cause
+     */
+    public void abort(Throwable cause) {
+        abortCause = cause;
+    }
+
+    public synchronized Set<String> getStagedChromosomes() {
+        return new LinkedHashSet<>(stagedChromosomes);
+    }
+
+    private void onRead(List<Variant> batch) {
+        List<String> staged;
+        synchronized (this) {
+            for (Variant variant : batch) {
+                String chromosome = variant.getChromosome();
+                if (!chromosome.equals(currentChromosome)) {
+                    if (stagedChromosomes.contains(chromosome)) {
+                        throw new IllegalStateException("Unsorted input. Found variant " + variant + " after staging the chromosome '"
+                                + chromosome + "'. Disable the pipelined merge with '" + MERGE_PIPELINE.key() + "=false'");
+                    }
+                    if (currentChromosome != null) {
+                        readChromosomes.add(currentChromosome);
+                    }
+                    // Chromosome read again before being staged. Wait until found again a different chromosome.
+                    readChromosomes.remove(chromosome);
+                    currentChromosome = chromosome;
+                }
+            }
+            for (String chromosome : chromosomes(batch)) {
+                pendingBatches.merge(chromosome, 1, Integer::sum);
+            }
+            staged = checkStaged();
+        }
+        staged.forEach(listener);
+    }
+
+    private void onWritten(Set<String> chromosomes) {
+        List<String> staged;
+        synchronized (this) {
+            for (String chromosome : chromosomes) {
+                pendingBatches.merge(chromosome, -1, Integer::sum);
+            }
+            staged = checkStaged();
+        }
+        staged.forEach(listener);
+    }
+
+    private List<String> checkStaged() {
+        List<String> staged = new ArrayList<>();
+        for (String chromosome : readChromosomes) {
+            if (!stagedChromosomes.contains(chromosome) && pendingBatches.getOrDefault(chromosome, 0) == 0) {
+                staged.add(chromosome);
+            }
+        }
+        stagedChromosomes.addAll(staged);
+        return staged;
+    }
+
+    private static Set<String> chromosomes(List<Variant> batch) {
+        Set<String> chromosomes = new HashSet<>();
+        for (Variant variant : batch) {
+            chromosomes.add(variant.getChromosome());
+        }
+        return chromosomes;
+    }
+}
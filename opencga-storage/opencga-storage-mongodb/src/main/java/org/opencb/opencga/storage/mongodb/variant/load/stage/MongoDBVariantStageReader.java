@@ -51,7 +51,9 @@ public class MongoDBVariantStageReader implements DataReader<Document> {
     private final int studyId;
     private Collection<Integer> fileIds;
     private final Collection<String> chromosomes;
+    private Collection<String> excludedChromosomes = Collections.emptyList();
     private MongoPersistentCursor iterator;
+    private long numReadDocuments = 0;
     private Document next = null;   // Pending variant
 
     private final Logger logger = LoggerFactory.getLogger(MongoDBVariantStageReader.class);
@@ -73,6 +75,21 @@ public class MongoDBVariantStageReader implements DataReader<Document> {
         return this;
     }
 
+    /**
+     * Skip the documents from these chromosomes. e.g. Chromosomes already merged.
+     *
+     * @param excludedChromosomes Chromosomes to skip
+     * @return this
+     */
+    public MongoDBVariantStageReader setExcludedChromosomes(Collection<String> excludedChromosomes) {
+        this.excludedChromosomes = excludedChromosomes == null ? Collections.emptyList() : excludedChromosomes;
+        return this;
+    }
+
+    public long getNumReadDocuments() {
+        return numReadDocuments;
+    }
+
     public long countNumVariants() {
         return stageCollection.nativeQuery().count(getQuery());
     }
@@ -120,12 +137,19 @@ public class MongoDBVariantStageReader implements DataReader<Document> {
         } else {
             studyFilter = eq(STUDY_FILE_FIELD, String.valueOf(studyId));
         }
+        List<Bson> excludedChrFilters = new ArrayList<>(excludedChromosomes.size());
+        for (String chromosome : excludedChromosomes) {
+            addChromosomeFilter(excludedChrFilters, chromosome);
+        }
         Bson bson;
         if (chrFilters.isEmpty()) {
             bson = studyFilter;
         } else {
             bson = and(studyFilter, or(chrFilters)); // Be in any of these chromosomes
         }
+        if (!excludedChrFilters.isEmpty()) {
+            bson = and(bson, nor(excludedChrFilters)); // Not in any of these chromosomes
+        }
         logger.debug("stage filter: " +  bson.toBsonDocument(Document.class, com.mongodb.MongoClient.getDefaultCodecRegistry()));
         return bson;
     }
@@ -186,6 +210,7 @@ public class MongoDBVariantStageReader implements DataReader<Document> {
                 }
             }
         }
+        numReadDocuments += list.size();
         return list;
     }
 
@@ -141,8 +141,11 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
         long newVariantsTime = 0; // Impossible to know how much time spend in insert or update in operation "UPSERT"
         StopWatch existingVariants = StopWatch.createStarted();
         long newVariants = 0;
+        long conflictVariants = 0;
         if (!mongoDBOps.getNewStudy().getQueries().isEmpty()) {
-            newVariants = executeMongoDBOperationsNewStudy(mongoDBOps, true);
+            MongoDBVariantWriteResult newStudyResult = executeMongoDBOperationsNewStudy(mongoDBOps);
+            newVariants = newStudyResult.getNewVariants();
+            conflictVariants = newStudyResult.getConflictVariants();
         }
         existingVariants.stop();
         StopWatch fillGapsVariants = StopWatch.createStarted();
@@ -162,7 +165,8 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
         MongoDBVariantWriteResult writeResult = new MongoDBVariantWriteResult(newVariants,
                 updatesNewStudyExistingVariant + updatesWithDataExistingStudy, mongoDBOps.getMissingVariants(),
                 mongoDBOps.getOverlappedVariants(), mongoDBOps.getSkipped(), mongoDBOps.getNonInserted(), newVariantsTime,
-                existingVariants.getNanoTime(), fillGapsVariants.getNanoTime(), mongoDBOps.getGenotypes());
+                existingVariants.getNanoTime(), fillGapsVariants.getNanoTime(), mongoDBOps.getGenotypes())
+                .setConflictVariants(conflictVariants);
 
         boolean updateGenotypes;
         synchronized (result) {
@@ -227,89 +231,95 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
         return modifiedCount;
     }
 
-    private int executeMongoDBOperationsNewStudy(MongoDBOperations mongoDBOps, boolean retry) {
-        int newVariants = 0;
+    /**
+     * Insert the new variants, or add the new study to the existing variants.
+     *
+     * The upserts are executed in an unordered bulk write. Two writers upserting the same non existing document
+     * may fail with a DuplicatedKeyException (see https://jira.mongodb.org/browse/SERVER-14322).
+     * The rest of the bulk is applied, so only the conflicting documents are updated again. Now, the document exists.
+     *
+     * @param mongoDBOps MongoDB operations to execute
+     * @return           MongoDBVariantWriteResult with the number of new and conflicting variants
+     */
+    private MongoDBVariantWriteResult executeMongoDBOperationsNewStudy(MongoDBOperations mongoDBOps) {
+        MongoDBVariantWriteResult result = new MongoDBVariantWriteResult();
+        long newVariants = 0;
         MongoDBOperations.NewStudy newStudy = mongoDBOps.getNewStudy();
-        try {
-            if (resume) {
-                // Ensure files exists
-                try {
-                    if (!newStudy.getVariants().isEmpty()) {
-                        newVariants += newStudy.getVariants().size();
-                        variantsCollection.insert(newStudy.getVariants(), QUERY_OPTIONS);
-                    }
-                } catch (MongoBulkWriteException e) {
-                    for (BulkWriteError writeError : e.getWriteErrors()) {
-                        if (!ErrorCategory.fromErrorCode(writeError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
-                            throw e;
-                        } else {
-                            // Not inserted variant
-                            newVariants--;
-                        }
+        if (resume) {
+            // Ensure files exists
+            try {
+                if (!newStudy.getVariants().isEmpty()) {
+                    newVariants += newStudy.getVariants().size();
+                    variantsCollection.insert(newStudy.getVariants(), QUERY_OPTIONS);
+                }
+            } catch (MongoBulkWriteException e) {
+                for (BulkWriteError writeError : e.getWriteErrors()) {
+                    if (!ErrorCategory.fromErrorCode(writeError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
+                        throw e;
+                    } else {
+                        // Not inserted variant
+                        newVariants--;
                     }
                 }
+            }
 
-                // Update
-                List<Bson> queriesExisting = new ArrayList<>(newStudy.getQueries().size());
-                for (Bson bson : newStudy.getQueries()) {
-                    queriesExisting.add(and(bson, nin(STUDIES_FIELD + "." + FILES_FIELD + "." + FILEID_FIELD, fileIds)));
-                }
-                // Update those existing variants
-                DataResult update = variantsCollection.update(queriesExisting, newStudy.getUpdates(), QUERY_OPTIONS);
-                //                if (update.first().getModifiedCount() != mongoDBOps.queriesExisting.size()) {
-                //                    // FIXME: Don't know if there is some error inserting. Query already existing?
-                //                    onUpdateError("existing variants", update, mongoDBOps.queriesExisting, mongoDBOps.queriesExistingId);
-                //                }
-            } else {
+            // Update
+            List<Bson> queriesExisting = new ArrayList<>(newStudy.getQueries().size());
+            for (Bson bson : newStudy.getQueries()) {
+                queriesExisting.add(and(bson, nin(STUDIES_FIELD + "." + FILES_FIELD + "." + FILEID_FIELD, fileIds)));
+            }
+            // Update those existing variants
+            DataResult update = variantsCollection.update(queriesExisting, newStudy.getUpdates(), QUERY_OPTIONS);
+            //                if (update.first().getModifiedCount() != mongoDBOps.queriesExisting.size()) {
+            //                    // FIXME: Don't know if there is some error inserting. Query already existing?
+            //                    onUpdateError("existing variants", update, mongoDBOps.queriesExisting, mongoDBOps.queriesExistingId);
+            //                }
+        } else {
+            try {
                 DataResult update = variantsCollection.update(newStudy.getQueries(), newStudy.getUpdates(), UPSERT);
-//                if (update.getNumUpdated() + update.first().getUpserts().size() != newStudy.getQueries().size()) {
                 if (update.getNumUpdated() + update.getNumInserted() != newStudy.getQueries().size()) {
                     onUpdateError("existing variants", update, newStudy.getQueries(), newStudy.getIds());
                 }
                 // Add upserted documents
-//                newVariants += update.first().getUpserts().size();
                 newVariants += update.getNumInserted();
-            }
-        } catch (MongoBulkWriteException e) {
-            // Add upserted documents
-            newVariants += e.getWriteResult().getUpserts().size();
-            Set<String> duplicatedNonInsertedId = new HashSet<>();
-            for (BulkWriteError writeError : e.getWriteErrors()) {
-                if (ErrorCategory.fromErrorCode(writeError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
-                    String id = newStudy.getIds().get(writeError.getIndex());
-                    duplicatedNonInsertedId.add(id);
-                    logger.warn("Catch error : {}. DupKey exception inserting '{}'. Retry!",
-                            writeError.toString(), id);
-                } else {
-                    throw e;
-                }
-            }
-            if (retry) {
-                // Retry once!
-                // With UPSERT=true, this command should never throw DuplicatedKeyException.
-                // See https://jira.mongodb.org/browse/SERVER-14322
-                // Assume unordered bulk
-                // Remove inserted variants
-                logger.warn("Retry! " + e);
-                Iterator<String> iteratorId = newStudy.getIds().iterator();
-                Iterator<?> iteratorQuery = newStudy.getQueries().iterator();
-                Iterator<?> iteratorUpdate = newStudy.getUpdates().iterator();
-                while (iteratorId.hasNext()) {
-                    String id = iteratorId.next();
-                    iteratorQuery.next();
-                    iteratorUpdate.next();
-                    if (!duplicatedNonInsertedId.contains(id)) {
-                        iteratorId.remove();
-                        iteratorQuery.remove();
-                        iteratorUpdate.remove();
+            } catch (MongoBulkWriteException e) {
+                // Add upserted documents
+                newVariants += e.getWriteResult().getUpserts().size();
+                List<Integer> conflicts = new ArrayList<>(e.getWriteErrors().size());
+                for (BulkWriteError writeError : e.getWriteErrors()) {
+                    if (ErrorCategory.fromErrorCode(writeError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
+                        conflicts.add(writeError.getIndex());
+                    } else {
+                        throw e;
                     }
                 }
-                newVariants += executeMongoDBOperationsNewStudy(mongoDBOps, false);
-            } else {
-                throw e;
+                resolveConflicts(newStudy, conflicts);
+                result.setConflictVariants(conflicts.size());
             }
         }
-        return newVariants;
+        return result.setNewVariants(newVariants);
+    }
+
+    /**
+     * Update again the documents that failed with a DuplicatedKeyException, in one single bulk write.
+     *
+     * @param newStudy  New study operations
+     * @param conflicts Index of the conflicting operations
+     */
+    private void resolveConflicts(MongoDBOperations.NewStudy newStudy, List<Integer> conflicts) {
+        List<Bson> queries = new ArrayList<>(conflicts.size());
+        List<Bson> updates = new ArrayList<>(conflicts.size());
+        List<String> ids = new ArrayList<>(conflicts.size());
+        for (Integer index : conflicts) {
+            ids.add(newStudy.getIds().get(index));
+            queries.add(newStudy.getQueries().get(index));
+            updates.add(newStudy.getUpdates().get(index));
+        }
+        logger.debug("Variants {} concurrently inserted. Update existing documents", ids);
+        DataResult update = variantsCollection.update(queries, updates, QUERY_OPTIONS);
+        if (update.getNumMatches() != queries.size()) {
+            onUpdateError("conflicting variants", update, queries, ids);
+        }
     }
 
     protected void onUpdateError(String updateName, DataResult update, List<Bson> queries, List<String> queryIds) {
@@ -1102,6 +1102,8 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                     id = variantDocument.getString("_id");
                 } else {
                     id = variantConverter.buildStorageId(emptyVar);
+                    // New study for an existing variant. Needs to be updated in the secondary index
+                    updates.add(MongoDBVariantSearchIndexUtils.getSetIndexNotSynchronized(ts));
                 }
                 mongoDBOps.getNewStudy().getIds().add(id);
                 mongoDBOps.getNewStudy().getQueries().add(eq("_id", id));
@@ -16,6 +16,7 @@ import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
 import org.opencb.opencga.storage.mongodb.variant.converters.AbstractDocumentConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.SampleIdsBitmapConverter;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -110,7 +111,7 @@ public class MongoDBVariantStatsCalculator extends AbstractDocumentConverter imp
         // Make a Set from the lists of genotypes for fast indexOf
         Map<String, Set<Integer>> gtsMap = new HashMap<>(gt.size());
         for (Map.Entry<String, Object> entry : gt.entrySet()) {
-            gtsMap.put(entry.getKey(), new HashSet<>((Collection) entry.getValue()));
+            gtsMap.put(entry.getKey(), new HashSet<>(SampleIdsBitmapConverter.getSampleIds(entry.getValue())));
         }
 
         for (CohortMetadata cohort : cohorts.values()) {
@@ -119,6 +119,35 @@ public class MongoLockManagerTest implements MongoDBVariantStorageTest {
 
     }
 
+    @Test
+    public void testFifoLock() throws Exception {
+        int lockId = 5;
+        insertDocument(lockId);
+        Lock lock = mongoLock.lock(lockId, 10000, 1000);
+
+        int nThreads = 5;
+        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            int applicant = t;
+            futures.add(executorService.submit(() -> {
+                mongoLock.lock(lockId, 10000, 20000).unlock();
+                order.add(applicant);
+                return null;
+            }));
+            // Let the applicant take the ticket before the next one
+            Thread.sleep(200);
+        }
+        lock.unlock();
+        executorService.shutdown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+        assertEquals(nThreads + 1, mongoLock.getMetrics().getHoldTime().getCount());
+    }
+
     @Test
     public void testLockAndLock() throws Exception {
         int lockId = 3;
@@ -0,0 +1,114 @@
+package org.opencb.opencga.storage.mongodb.variant.converters;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
+import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageMetadataDBAdaptorFactory;
+import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjection;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of the samples data of synthetic variant documents with many samples,
+ * returning all the samples or only a few of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentToSamplesConverterBenchmark {
+
+    private static final String[] GENOTYPES = {"0/0", "0/0", "0/0", "0/0", "0/0", "0/1", "0|1", "1/1", "./."};
+
+    @Param({"10000"})
+    private int numSamples;
+
+    @Param({"10", "1000", "10000"})
+    private int numIncludedSamples;
+
+    @Param({"64"})
+    private int numVariants;
+
+    private int studyId;
+    private List<Document> documents;
+    private DocumentToSamplesConverter converter;
+
+    @Setup
+    public void setUp() throws StorageEngineException {
+        DummyVariantStorageMetadataDBAdaptorFactory.clear();
+        VariantStorageMetadataManager metadataManager =
+                new VariantStorageMetadataManager(new DummyVariantStorageMetadataDBAdaptorFactory());
+        studyId = metadataManager.createStudy("s1").getId();
+        metadataManager.updateStudyMetadata(studyId, studyMetadata -> {
+            studyMetadata.getAttributes().put(MongoDBVariantStorageOptions.DEFAULT_GENOTYPE.key(), "0/0");
+            studyMetadata.getAttributes().put(VariantStorageOptions.EXTRA_FORMAT_FIELDS.key(), Arrays.asList("DP", "GQ", "AD"));
+            studyMetadata.getAttributes().put(VariantStorageOptions.EXTRA_FORMAT_FIELDS_TYPE.key(),
+                    Arrays.asList("Integer", "Float", "String"));
+            studyMetadata.getAttributes().put(MongoDBVariantStorageOptions.EXTRA_GENOTYPE_FIELDS_COMPRESS.key(), true);
+            return studyMetadata;
+        });
+        List<String> samples = new ArrayList<>(numSamples);
+        for (int s = 0; s < numSamples; s++) {
+            samples.add("S" + s);
+        }
+        int fileId = metadataManager.registerFile(studyId, "f1", samples);
+        metadataManager.addIndexedFiles(studyId, Collections.singletonList(fileId));
+        StudyMetadata studyMetadata = metadataManager.getStudyMetadata(studyId);
+
+        Random random = new Random(0);
+        DocumentToSamplesConverter storageConverter = new DocumentToSamplesConverter(metadataManager, studyMetadata);
+        LinkedHashSet<String> samplesInFile = new LinkedHashSet<>(samples);
+        documents = new ArrayList<>(numVariants);
+        for (int v = 0; v < numVariants; v++) {
+            StudyEntry studyEntry = new StudyEntry(String.valueOf(studyId));
+            studyEntry.setSampleDataKeys(Arrays.asList("GT", "DP", "GQ", "AD"));
+            studyEntry.setSamplesPosition(metadataManager.getSamplesPosition(studyMetadata));
+            for (String sample : samples) {
+                int dp = random.nextInt(60);
+                studyEntry.addSampleData(sample, Arrays.asList(GENOTYPES[random.nextInt(GENOTYPES.length)],
+                        String.valueOf(dp), String.valueOf(random.nextInt(990) / 10.0), (dp / 2) + "," + (dp - dp / 2)));
+            }
+            Document sampleData = new Document();
+            Document document = storageConverter.convertToStorageType(studyEntry, studyId, sampleData, samplesInFile);
+            // As read from MongoDB
+            for (Map.Entry<String, Object> entry : sampleData.entrySet()) {
+                entry.setValue(new Binary((byte[]) entry.getValue()));
+            }
+            document.append(DocumentToStudyVariantEntryConverter.FILES_FIELD, Collections.singletonList(
+                    new Document(DocumentToStudyVariantEntryConverter.FILEID_FIELD, fileId)
+                            .append(DocumentToStudyVariantEntryConverter.SAMPLE_DATA_FIELD, sampleData)));
+            documents.add(document);
+        }
+
+        List<Integer> includeSamples = new ArrayList<>(numIncludedSamples);
+        for (int s = 0; s < numIncludedSamples; s++) {
+            includeSamples.add(metadataManager.getSampleId(studyId, samples.get(s * (numSamples / numIncludedSamples))));
+        }
+        converter = new DocumentToSamplesConverter(metadataManager,
+                new VariantQueryProjection(studyMetadata, includeSamples, Collections.singletonList(fileId)));
+    }
+
+    @Benchmark
+    public void convertToDataModelType(Blackhole blackhole) {
+        for (Document document : documents) {
+            blackhole.consume(converter.convertToDataModelType(document, studyId));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DocumentToSamplesConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
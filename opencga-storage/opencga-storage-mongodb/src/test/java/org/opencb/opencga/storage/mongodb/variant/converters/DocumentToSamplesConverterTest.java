@@ -16,8 +16,18 @@
 
 package org.opencb.opencga.storage.mongodb.variant.converters;
 
+import org.bson.Document;
+import org.bson.types.Binary;
 import org.junit.Test;
-import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSamplesConverter;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.opencga.storage.core.metadata.VariantStorageMetadataManager;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
+import org.opencb.opencga.storage.core.variant.VariantStorageOptions;
+import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageMetadataDBAdaptorFactory;
+import org.opencb.opencga.storage.core.variant.query.projection.VariantQueryProjection;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageOptions;
+
+import java.util.*;
 
 import static org.junit.Assert.*;
 
@@ -68,6 +78,148 @@ public class DocumentToSamplesConverterTest {
 
     }
 
+    @Test
+    public void testConvertToDataModelTypeIncludeSamples() throws Exception {
+        DummyVariantStorageMetadataDBAdaptorFactory.clear();
+        VariantStorageMetadataManager metadataManager =
+                new VariantStorageMetadataManager(new DummyVariantStorageMetadataDBAdaptorFactory());
+        int studyId = metadataManager.createStudy("s1").getId();
+        metadataManager.updateStudyMetadata(studyId, studyMetadata -> {
+            studyMetadata.getAttributes().put(MongoDBVariantStorageOptions.DEFAULT_GENOTYPE.key(), "0/0");
+            studyMetadata.getAttributes().put(VariantStorageOptions.EXTRA_FORMAT_FIELDS.key(), Arrays.asList("DP", "AD"));
+            studyMetadata.getAttributes().put(VariantStorageOptions.EXTRA_FORMAT_FIELDS_TYPE.key(), Arrays.asList("Integer", "String"));
+            studyMetadata.getAttributes().put(MongoDBVariantStorageOptions.EXTRA_GENOTYPE_FIELDS_COMPRESS.key(), true);
+            return studyMetadata;
+        });
+        List<String> samples = Arrays.asList("S1", "S2", "S3", "S4", "S5", "S6");
+        int fileId = metadataManager.registerFile(studyId, "f1", samples);
+        metadataManager.addIndexedFiles(studyId, Collections.singletonList(fileId));
+        StudyMetadata studyMetadata = metadataManager.getStudyMetadata(studyId);
+
+        StudyEntry studyEntry = new StudyEntry(String.valueOf(studyId));
+        studyEntry.setSampleDataKeys(Arrays.asList("GT", "DP", "AD"));
+        studyEntry.setSamplesPosition(metadataManager.getSamplesPosition(studyMetadata));
+        for (int i = 0; i < samples.size(); i++) {
+            studyEntry.addSampleData(samples.get(i), Arrays.asList(i % 2 == 0 ? "0/0" : "0/1", String.valueOf(i * 10), i + ",1"));
+        }
+
+        Document sampleData = new Document();
+        Document document = new DocumentToSamplesConverter(metadataManager, studyMetadata)
+                .convertToStorageType(studyEntry, studyId, sampleData, new LinkedHashSet<>(samples));
+        for (Map.Entry<String, Object> entry : sampleData.entrySet()) {
+            entry.setValue(new Binary((byte[]) entry.getValue()));
+        }
+        document.append(DocumentToStudyVariantEntryConverter.FILES_FIELD, Collections.singletonList(
+                new Document(DocumentToStudyVariantEntryConverter.FILEID_FIELD, fileId)
+                        .append(DocumentToStudyVariantEntryConverter.SAMPLE_DATA_FIELD, sampleData)));
+
+        List<Integer> includeSamples = Arrays.asList(
+                metadataManager.getSampleId(studyId, "S5"),
+                metadataManager.getSampleId(studyId, "S2"));
+        StudyEntry projected = new StudyEntry(String.valueOf(studyId));
+        new DocumentToSamplesConverter(metadataManager,
+                new VariantQueryProjection(studyMetadata, includeSamples, Collections.singletonList(fileId)))
+                .convertToDataModelType(document, projected, studyId);
+
+        assertEquals(new HashSet<>(Arrays.asList("S2", "S5")), projected.getSamplesPosition().keySet());
+        assertEquals(2, projected.getSamples().size());
+        assertEquals(Arrays.asList("GT", "AD", "DP"), projected.getSampleDataKeys());
+        for (String sample : projected.getSamplesPosition().keySet()) {
+            for (String key : studyEntry.getSampleDataKeys()) {
+                assertEquals(studyEntry.getSampleData(sample, key), projected.getSampleData(sample, key));
+            }
+        }
+    }
+
+    @Test
+    public void testSampleIdsBitmap() throws Exception {
+        testSampleIdsBitmap(Collections.emptyList(), 0);
+        testSampleIdsBitmap(Collections.singletonList(0), 1);
+        testSampleIdsBitmap(Arrays.asList(0, 7), 1);
+        testSampleIdsBitmap(Arrays.asList(7, 8), 2);
+        testSampleIdsBitmap(Arrays.asList(1, 2, 3, 15, 16, 17), 3);
+        testSampleIdsBitmap(Arrays.asList(0, 8, 10000), 1251);
+
+        // Readers accept both formats
+        assertEquals(Arrays.asList(3, 5), SampleIdsBitmapConverter.getSampleIds(Arrays.asList(3, 5)));
+        assertEquals(Arrays.asList(3, 5), SampleIdsBitmapConverter.getSampleIds(SampleIdsBitmapConverter.toBitmap(Arrays.asList(5, 3))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSampleIdsBitmapNegative() {
+        SampleIdsBitmapConverter.toBitmap(Arrays.asList(1, -1));
+    }
+
+    @Test
+    public void testConvertGenotypesBitmap() throws Exception {
+        DummyVariantStorageMetadataDBAdaptorFactory.clear();
+        VariantStorageMetadataManager metadataManager =
+                new VariantStorageMetadataManager(new DummyVariantStorageMetadataDBAdaptorFactory());
+        int studyId = metadataManager.createStudy("s1").getId();
+        metadataManager.updateStudyMetadata(studyId, studyMetadata -> {
+            studyMetadata.getAttributes().put(MongoDBVariantStorageOptions.DEFAULT_GENOTYPE.key(), "0/0");
+            return studyMetadata;
+        });
+        List<String> samples = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            samples.add("S" + i);
+        }
+        int fileId = metadataManager.registerFile(studyId, "f1", samples);
+        metadataManager.addIndexedFiles(studyId, Collections.singletonList(fileId));
+        StudyMetadata studyMetadata = metadataManager.getStudyMetadata(studyId);
+
+        StudyEntry studyEntry = new StudyEntry(String.valueOf(studyId));
+        studyEntry.setSampleDataKeys(Collections.singletonList("GT"));
+        studyEntry.setSamplesPosition(metadataManager.getSamplesPosition(studyMetadata));
+        List<String> gts = Arrays.asList("0/0", "0/1", "1/1", "0/1", "./.");
+        for (int i = 0; i < samples.size(); i++) {
+            studyEntry.addSampleData(samples.get(i), Collections.singletonList(gts.get(i % gts.size())));
+        }
+
+        Document listDocument = new DocumentToSamplesConverter(metadataManager, studyMetadata)
+                .convertToStorageType(studyEntry, studyId, new Document(), new LinkedHashSet<>(samples));
+
+        studyMetadata = metadataManager.updateStudyMetadata(studyId, sm -> {
+            sm.getAttributes().put(MongoDBVariantStorageOptions.GENOTYPES_BITMAP.key(), true);
+            return sm;
+        });
+        Document bitmapDocument = new DocumentToSamplesConverter(metadataManager, studyMetadata)
+                .convertToStorageType(studyEntry, studyId, new Document(), new LinkedHashSet<>(samples));
+
+        Document listGts = listDocument.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD, Document.class);
+        Document bitmapGts = bitmapDocument.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD, Document.class);
+        assertEquals(listGts.keySet(), bitmapGts.keySet());
+        for (String gt : listGts.keySet()) {
+            assertTrue(listGts.get(gt) instanceof List);
+            assertTrue(bitmapGts.get(gt) instanceof Binary);
+            assertEquals(listGts.get(gt), SampleIdsBitmapConverter.getSampleIds(bitmapGts.get(gt)));
+        }
+
+        // Mix both formats, as found while migrating
+        Document mixedDocument = new Document(bitmapDocument);
+        Document mixedGts = new Document(bitmapGts);
+        String listGt = mixedGts.keySet().iterator().next();
+        mixedGts.put(listGt, listGts.get(listGt));
+        mixedDocument.put(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD, mixedGts);
+
+        for (Document document : Arrays.asList(listDocument, bitmapDocument, mixedDocument)) {
+            document.append(DocumentToStudyVariantEntryConverter.FILES_FIELD, Collections.singletonList(
+                    new Document(DocumentToStudyVariantEntryConverter.FILEID_FIELD, fileId)));
+            StudyEntry read = new StudyEntry(String.valueOf(studyId));
+            new DocumentToSamplesConverter(metadataManager, studyMetadata).convertToDataModelType(document, read, studyId);
+            for (String sample : samples) {
+                assertEquals(sample, studyEntry.getSampleData(sample, "GT"), read.getSampleData(sample, "GT"));
+            }
+        }
+    }
+
+    public void testSampleIdsBitmap(List<Integer> sampleIds, int expectedSize) {
+        SampleIdsBitmapConverter converter = new SampleIdsBitmapConverter();
+        Binary bitmap = converter.convertToStorageType(sampleIds);
+        assertEquals(expectedSize, bitmap.length());
+        assertEquals(sampleIds, converter.convertToDataModelType(bitmap));
+    }
+
     public void testInteger(String dataModelType) {
         assertEquals(dataModelType, DocumentToSamplesConverter.INTEGER_COMPLEX_TYPE_CONVERTER.convertToDataModelType(DocumentToSamplesConverter.INTEGER_COMPLEX_TYPE_CONVERTER.convertToStorageType(dataModelType)));
     }
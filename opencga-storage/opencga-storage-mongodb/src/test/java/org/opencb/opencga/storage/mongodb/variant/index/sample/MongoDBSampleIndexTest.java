@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.index.sample;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.metadata.models.SampleMetadata;
+import org.opencb.opencga.storage.core.metadata.models.StudyMetadata;
+import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.core.variant.query.VariantQueryUtils;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageTest;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/20.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class MongoDBSampleIndexTest extends VariantStorageBaseTest implements MongoDBVariantStorageTest {
+
+    private StudyMetadata studyMetadata;
+    private MongoDBSampleIndex sampleIndex;
+    private List<String> samples;
+
+    @Override
+    @Before
+    public void before() throws Exception {
+        clearDB(DB_NAME);
+        studyMetadata = newStudyMetadata();
+        runDefaultETL(smallInputUri, getVariantStorageEngine(), studyMetadata);
+        sampleIndex = ((MongoDBVariantStorageEngine) getVariantStorageEngine()).getDBAdaptor().getSampleIndex();
+        samples = new ArrayList<>(metadataManager.getIndexedSamplesMap(studyMetadata.getId()).keySet()).subList(0, 3);
+    }
+
+    @Test
+    public void testSamplesIndexed() {
+        Iterator<SampleMetadata> iterator = metadataManager.sampleMetadataIterator(studyMetadata.getId());
+        while (iterator.hasNext()) {
+            SampleMetadata sampleMetadata = iterator.next();
+            assertTrue(sampleMetadata.getName(), sampleMetadata.isReady(MongoDBSampleIndex.SAMPLE_INDEX_STATUS));
+        }
+        assertTrue(sampleIndex.getCollection(studyMetadata.getId()).count().first() > 0);
+    }
+
+    @Test
+    public void testQueryGenotypes() throws Exception {
+        List<Query> queries = Arrays.asList(
+                new Query(VariantQueryParam.SAMPLE.key(), samples.get(0)),
+                new Query(VariantQueryParam.GENOTYPE.key(), samples.get(0) + ":1/1"),
+                new Query(VariantQueryParam.GENOTYPE.key(), samples.get(0) + ":0/1,1/1;" + samples.get(1) + ":0/1"),
+                new Query(VariantQueryParam.GENOTYPE.key(), samples.get(0) + ":1/1," + samples.get(1) + ":1/1"),
+                new Query(VariantQueryParam.GENOTYPE.key(), samples.get(0) + ":0/1;" + samples.get(1) + ":0/1;" + samples.get(2) + ":0/1")
+                        .append(VariantQueryParam.REGION.key(), "22:16000000-17000000"));
+
+        List<Set<String>> expected = new ArrayList<>(queries.size());
+        for (Query query : queries) {
+            assertNotNull(query.toJson(), sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions())));
+            expected.add(getVariants(query));
+        }
+
+        // Without index
+        sampleIndex.drop(studyMetadata.getId());
+        for (int i = 0; i < queries.size(); i++) {
+            Query query = queries.get(i);
+            assertNull(query.toJson(), sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions())));
+            assertEquals(query.toJson(), expected.get(i), getVariants(query));
+        }
+    }
+
+    @Test
+    public void testNegatedGenotypes() throws Exception {
+        Query query = new Query(VariantQueryParam.GENOTYPE.key(), samples.get(0) + ":!0/1");
+        assertNull(sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions())));
+
+        query = new Query(VariantQueryParam.GENOTYPE.key(), samples.get(0) + ":0/0");
+        assertNull(sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions())));
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        Query query = new Query(VariantQueryParam.GENOTYPE.key(), samples.get(0) + ":0/1,1/1;" + samples.get(1) + ":0/1");
+        List<String> expected = sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions()));
+        assertNotNull(expected);
+
+        sampleIndex.drop(studyMetadata.getId());
+        assertNull(sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions())));
+
+        // Rebuild one sample
+        variantStorageEngine.sampleIndex(studyMetadata.getName(), Collections.singletonList(samples.get(0)), new ObjectMap());
+        int sampleId = metadataManager.getSampleId(studyMetadata.getId(), samples.get(0));
+        assertTrue(metadataManager.getSampleMetadata(studyMetadata.getId(), sampleId).isReady(MongoDBSampleIndex.SAMPLE_INDEX_STATUS));
+        assertNull(sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions())));
+
+        // Rebuild all the samples
+        variantStorageEngine.sampleIndex(studyMetadata.getName(), Collections.singletonList(VariantQueryUtils.ALL), new ObjectMap());
+        testSamplesIndexed();
+        assertEquals(expected, sampleIndex.getVariantIds(variantStorageEngine.parseQuery(query, new QueryOptions())));
+    }
+
+    private Set<String> getVariants(Query query) throws Exception {
+        Query studyQuery = new Query(query).append(VariantQueryParam.STUDY.key(), studyMetadata.getName());
+        Set<String> variants = variantStorageEngine.get(studyQuery, new QueryOptions(QueryOptions.INCLUDE, VariantQueryParam.ID.key()))
+                .getResults()
+                .stream()
+                .map(Variant::toString)
+                .collect(Collectors.toSet());
+        assertEquals(variants.size(), variantStorageEngine.count(studyQuery).first().longValue());
+        return variants;
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencb.opencga.storage.mongodb.variant.load;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.run.Task;
+import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageChromosomeTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class MongoDBVariantStageChromosomeTrackerTest {
+
+    private List<String> staged;
+    private MongoDBVariantStageChromosomeTracker tracker;
+    private Task<Variant, Variant> readTask;
+    private Task<Variant, Variant> writeTask;
+
+    @Before
+    public void setUp() throws Exception {
+        staged = Collections.synchronizedList(new ArrayList<>());
+        tracker = new MongoDBVariantStageChromosomeTracker(staged::add);
+        readTask = tracker.readTask();
+        writeTask = tracker.wrap(batch -> batch);
+    }
+
+    @Test
+    public void testSortedInput() throws Exception {
+        List<Variant> batch1 = readTask.apply(variants("1:100:A:T", "1:200:A:T"));
+        List<Variant> batch2 = readTask.apply(variants("1:300:A:T", "2:100:A:T"));
+        List<Variant> batch3 = readTask.apply(variants("3:100:A:T"));
+        // Chromosomes 1 and 2 read, but not written
+        assertEquals(Collections.emptyList(), staged);
+
+        writeTask.apply(batch1);
+        assertEquals(Collections.emptyList(), staged);
+        writeTask.apply(batch2);
+        assertEquals(asList("1", "2"), staged);
+
+        writeTask.apply(batch3);
+        assertEquals(asList("1", "2"), staged);
+
+        tracker.finish();
+        assertEquals(asList("1", "2", "3"), staged);
+    }
+
+    @Test
+    public void testChromosomeReadAgainBeforeStaged() throws Exception {
+        List<Variant> batch1 = readTask.apply(variants("1:100:A:T", "2:100:A:T"));
+        List<Variant> batch2 = readTask.apply(variants("1:200:A:T", "3:100:A:T"));
+        writeTask.apply(batch1);
+        // Chromosome 1 found again before being staged
+        assertEquals(asList("2"), staged);
+        writeTask.apply(batch2);
+        assertEquals(asList("2", "1"), staged);
+        tracker.finish();
+        assertEquals(asList("2", "1", "3"), staged);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsortedInput() throws Exception {
+        writeTask.apply(readTask.apply(variants("1:100:A:T", "2:100:A:T")));
+        assertEquals(asList("1"), staged);
+        readTask.apply(variants("1:200:A:T"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAbort() throws Exception {
+        List<Variant> batch = readTask.apply(variants("1:100:A:T"));
+        tracker.abort(new RuntimeException("Merge error"));
+        writeTask.apply(batch);
+    }
+
+    private static List<Variant> variants(String... variants) {
+        List<Variant> list = new ArrayList<>(variants.length);
+        for (String variant : variants) {
+            list.add(new Variant(variant));
+        }
+        return list;
+    }
+}
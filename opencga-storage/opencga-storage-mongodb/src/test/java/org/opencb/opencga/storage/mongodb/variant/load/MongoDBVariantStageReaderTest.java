@@ -120,6 +120,21 @@ public class MongoDBVariantStageReaderTest implements MongoDBVariantStorageTest
         Assert.assertEquals(read.size(), 6);
     }
 
+    @Test
+    public void testReadStageExcludedChromosomes() throws Exception {
+        MongoDBVariantStageReader reader = new MongoDBVariantStageReader(collection, 1, Collections.emptyList())
+                .setExcludedChromosomes(asList("1", "X"));
+
+        List<Document> read = readAll(reader);
+
+        Assert.assertEquals(4, read.size());
+        Assert.assertEquals(4, reader.getNumReadDocuments());
+        for (Document document : read) {
+            Assert.assertFalse(document.getString("_id").startsWith(VariantStringIdConverter.convertChromosome("1") + ':'));
+            Assert.assertFalse(document.getString("_id").startsWith(VariantStringIdConverter.convertChromosome("X") + ':'));
+        }
+    }
+
     public List<Document> readAll(MongoDBVariantStageReader reader) {
         List<Document> read;
         reader.open();